@@ -1,16 +1,43 @@
 package simpledb;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
  * min). Note that we only support aggregates over a single column, grouped by a
  * single column.
+ * <p>
+ * With a parallelism above 1 (see {@link #setParallelism}), an aggregate
+ * whose child is a SeqScan of a large HeapFile, possibly under Filters, is
+ * computed by that many workers of a fork-join pool. The workers take chunks
+ * of PARALLEL_CHUNK_PAGES pages in turn and each merges them into its own
+ * partial aggregate; the partial aggregates are then merged into the final
+ * one. The running state of the groups of integer partial aggregates is
+ * merged directly, so that sums keep their 64 bits until the final average,
+ * and counts of strings are merged as a SUM of the counts.
  */
 public class Aggregate extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /** minimum number of pages of a table to aggregate it in parallel */
+    public final static int PARALLEL_MIN_PAGES = 32;
+
+    /** number of pages a worker takes at a time */
+    public final static int PARALLEL_CHUNK_PAGES = 8;
+
+    private static ForkJoinPool pool = null;
+
+    private int parallelism = 1;
+
+    /** number of workers the last open used, 1 if it drained the child */
+    transient private int workersUsed = 0;
+
     private OpIterator iterator;
 
     private OpIterator child;
@@ -96,27 +123,187 @@ public class Aggregate extends Operator {
 	    return aop.toString();
     }
 
+    /**
+     * Set the number of threads to aggregate with. Must be called before the
+     * operator is opened; 1, the default, drains the child on the calling
+     * thread.
+     */
+    public void setParallelism(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = threads;
+    }
+
+    /**
+     * @return the number of workers the aggregate was computed with the last
+     *         time it was opened, 1 if it was not computed in parallel
+     */
+    public int getWorkersUsed() {
+        return workersUsed;
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null)
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return pool;
+    }
+
     public void open() throws NoSuchElementException, DbException,
 	    TransactionAbortedException {
 	// some code goes here
         super.open();
+        workersUsed = 1;
+        if (parallelism > 1 && canSplit()) {
+            iterator = aggregateInParallel();
+            iterator.open();
+            return;
+        }
         child.open();
-        if (!child.hasNext()) {
+        // the child is drained a batch at a time
+        TupleBatch batch = child.nextBatch();
+        if (batch == null) {
             return;
         }
-        Tuple tuple = child.next();
-        Type fieldType = tuple.getField(aggregateFieldIndex).getType();
+        TupleDesc td = batch.getTupleDesc();
+        Type fieldType = td.getFieldType(aggregateFieldIndex);
         Aggregator aggregator = fieldType.equals(Type.STRING_TYPE) ?
-                new StringAggregator(groupFieldIndex, tuple.getField(groupFieldIndex == -1 ? 0: groupFieldIndex).getType(), aggregateFieldIndex, aggOperation):
-                new IntegerAggregator(groupFieldIndex, tuple.getField(groupFieldIndex == -1 ? 0: groupFieldIndex).getType(), aggregateFieldIndex, aggOperation);
-        aggregator.mergeTupleIntoGroup(tuple);
-        while (child.hasNext()) {
-            aggregator.mergeTupleIntoGroup(child.next());
-        }
+                new StringAggregator(groupFieldIndex, td.getFieldType(groupFieldIndex == -1 ? 0: groupFieldIndex), aggregateFieldIndex, aggOperation):
+                new IntegerAggregator(groupFieldIndex, td.getFieldType(groupFieldIndex == -1 ? 0: groupFieldIndex), aggregateFieldIndex, aggOperation);
+        do {
+            aggregator.mergeBatchIntoGroup(batch);
+            batch = child.nextBatch();
+        } while (batch != null);
         iterator = aggregator.iterator();
         iterator.open();
     }
 
+    /**
+     * @return true if op can be computed by merging partial aggregates
+     */
+    static boolean isSplittable(Aggregator.Op op) {
+        switch (op) {
+        case AVG:
+        case MIN:
+        case MAX:
+        case SUM:
+        case COUNT:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the child is a SeqScan of a HeapFile of at least
+     *         PARALLEL_MIN_PAGES pages under any number of Filters, and the
+     *         aggregate can be computed in parallel
+     */
+    private boolean canSplit() {
+        if (!isSplittable(aggOperation))
+            return false;
+        OpIterator it = child;
+        while (it instanceof Filter)
+            it = ((Filter) it).getChildren()[0];
+        if (!(it instanceof SeqScan))
+            return false;
+        DbFile f = Database.getCatalog().getDatabaseFile(((SeqScan) it).getTableId());
+        return f instanceof HeapFile && ((HeapFile) f).numPages() >= PARALLEL_MIN_PAGES;
+    }
+
+    private Aggregator newAggregator(Type aggregateType, int gfield, Type groupType, int afield,
+            Aggregator.Op op) {
+        return aggregateType == Type.STRING_TYPE
+                ? new StringAggregator(gfield, groupType, afield, op)
+                : new IntegerAggregator(gfield, groupType, afield, op);
+    }
+
+    /**
+     * Compute the aggregate of the pages of the table the child scans with
+     * parallelism workers, applying the Filters of the child to them.
+     *
+     * @return the results
+     */
+    private OpIterator aggregateInParallel() throws DbException, TransactionAbortedException {
+        final ArrayList<Predicate> filters = new ArrayList<Predicate>();
+        OpIterator it = child;
+        while (it instanceof Filter) {
+            filters.add(((Filter) it).getPredicate());
+            it = ((Filter) it).getChildren()[0];
+        }
+        SeqScan scan = (SeqScan) it;
+        final TransactionId tid = scan.getTransactionId();
+        final HeapFile file = (HeapFile) Database.getCatalog().getDatabaseFile(scan.getTableId());
+        final TupleDesc td = file.getTupleDesc();
+        final Type aggregateType = td.getFieldType(aggregateFieldIndex);
+        final Type groupType = groupFieldIndex == Aggregator.NO_GROUPING ? null : td.getFieldType(groupFieldIndex);
+        final int numPages = file.numPages();
+        final AtomicInteger nextChunk = new AtomicInteger(0);
+
+        ArrayList<Callable<Aggregator>> workers = new ArrayList<Callable<Aggregator>>();
+        for (int w = 0; w < parallelism; w++) {
+            workers.add(new Callable<Aggregator>() {
+                public Aggregator call() throws DbException, TransactionAbortedException {
+                    Aggregator partial = newAggregator(aggregateType, groupFieldIndex, groupType,
+                            aggregateFieldIndex, aggOperation);
+                    TupleBatch batch = new TupleBatch(td);
+                    // large tables go through a ring, as with SeqScan
+                    BufferRing ring = new BufferRing();
+                    int first;
+                    while ((first = nextChunk.getAndAdd(PARALLEL_CHUNK_PAGES)) < numPages) {
+                        int end = Math.min(first + PARALLEL_CHUNK_PAGES, numPages);
+                        for (int pageNo = first; pageNo < end; pageNo++) {
+                            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                                    new HeapPageId(file.getId(), pageNo), Permissions.READ_ONLY, ring);
+                            for (int slot = 0; slot < page.numSlots; ) {
+                                batch.clear();
+                                slot = page.fillBatch(batch, slot);
+                                for (int i = 0; i < filters.size(); i++)
+                                    batch.filter(filters.get(i));
+                                partial.mergeBatchIntoGroup(batch);
+                            }
+                        }
+                    }
+                    return partial;
+                }
+            });
+        }
+
+        Aggregator result;
+        try {
+            if (aggregateType == Type.INT_TYPE) {
+                IntegerAggregator merged = new IntegerAggregator(groupFieldIndex, groupType,
+                        aggregateFieldIndex, aggOperation);
+                for (Future<Aggregator> f : pool().invokeAll(workers))
+                    merged.merge((IntegerAggregator) f.get());
+                result = merged;
+            } else {
+                // the partial counts are (group, count) or (count)
+                int gfield = groupFieldIndex == Aggregator.NO_GROUPING ? Aggregator.NO_GROUPING : 0;
+                int afield = groupFieldIndex == Aggregator.NO_GROUPING ? 0 : 1;
+                result = new IntegerAggregator(gfield, groupType, afield, Aggregator.Op.SUM);
+                for (Future<Aggregator> f : pool().invokeAll(workers)) {
+                    OpIterator partial = f.get().iterator();
+                    partial.open();
+                    while (partial.hasNext())
+                        result.mergeTupleIntoGroup(partial.next());
+                    partial.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("interrupted while aggregating");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TransactionAbortedException)
+                throw (TransactionAbortedException) cause;
+            if (cause instanceof DbException)
+                throw (DbException) cause;
+            throw new RuntimeException(cause);
+        }
+        workersUsed = parallelism;
+        return result.iterator();
+    }
+
     /**
      * Returns the next tuple. If there is a group by field, then the first
      * field is the field by which we are grouping, and the second field is the
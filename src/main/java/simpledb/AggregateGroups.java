@@ -0,0 +1,108 @@
+package simpledb;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * AggregateGroups numbers the groups of an aggregate, counting from 0 in the
+ * order they are first seen, so that an aggregator can keep the running state
+ * of each group in arrays indexed by group number. Int group fields are
+ * numbered by an IntHashTable without boxing them, and so is the single group
+ * of an aggregate without grouping, under key 0; other group fields through a
+ * HashMap.
+ */
+class AggregateGroups implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int field;
+
+    /** group numbers by int key, null if the group field is not an int */
+    private IntHashTable intKeys;
+
+    /** group numbers and fields, used instead of intKeys */
+    private HashMap<Field, Integer> numbers;
+    private ArrayList<Field> fields;
+
+    /**
+     * @param gbfield
+     *            the index of the group-by field in the tuples, or
+     *            Aggregator.NO_GROUPING
+     * @param gbfieldtype
+     *            the type of the group-by field, or null if there is no
+     *            grouping
+     */
+    AggregateGroups(int gbfield, Type gbfieldtype) {
+        field = gbfield;
+        if (gbfield == Aggregator.NO_GROUPING || gbfieldtype == Type.INT_TYPE) {
+            intKeys = new IntHashTable();
+        } else {
+            numbers = new HashMap<Field, Integer>();
+            fields = new ArrayList<Field>();
+        }
+    }
+
+    /**
+     * @return the number of groups seen so far
+     */
+    int size() {
+        return intKeys != null ? intKeys.numKeys() : fields.size();
+    }
+
+    /**
+     * @return the number of the group of t, which is added if it is new
+     */
+    int numberOf(Tuple t) {
+        if (field == Aggregator.NO_GROUPING)
+            return intKeys.add(0);
+        if (intKeys != null)
+            return intKeys.add(((IntField) t.getField(field)).getValue());
+        return numberOf(t.getField(field));
+    }
+
+    /**
+     * @return the number of the group of row number row of batch, which is
+     *         added if it is new
+     */
+    int numberOf(TupleBatch batch, int row) {
+        if (field == Aggregator.NO_GROUPING)
+            return intKeys.add(0);
+        if (intKeys != null)
+            return intKeys.add(batch.getIntColumn(field)[row]);
+        return numberOf(batch.getField(row, field));
+    }
+
+    /**
+     * @return the number here of the group numbered n in other, which is
+     *         added if it is new; other must group by a field of the same
+     *         type
+     */
+    int numberOf(AggregateGroups other, int n) {
+        if (field == Aggregator.NO_GROUPING)
+            return intKeys.add(0);
+        if (intKeys != null)
+            return intKeys.add(other.intKeys.getKey(n));
+        return numberOf(other.fields.get(n));
+    }
+
+    private int numberOf(Field key) {
+        Integer n = numbers.get(key);
+        if (n == null) {
+            n = fields.size();
+            numbers.put(key, n);
+            fields.add(key);
+        }
+        return n;
+    }
+
+    /**
+     * @return the group field of the group numbered n
+     * @throws IllegalStateException if there is no grouping
+     */
+    Field key(int n) {
+        if (field == Aggregator.NO_GROUPING)
+            throw new IllegalStateException("an aggregate without grouping has no group field");
+        return intKeys != null ? new IntField(intKeys.getKey(n)) : fields.get(n);
+    }
+}
@@ -2,7 +2,16 @@ package simpledb;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -12,6 +21,21 @@ import java.util.concurrent.ConcurrentHashMap;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * Frames are split into a fixed number of partitions keyed by the hash of
+ * the PageId. Each partition has its own lock and its own replacement
+ * state, so page fetches on different partitions never wait on each other,
+ * and lookups of resident pages do not take any lock at all. The capacity
+ * of the pool is shared by all partitions: a miss on a full pool evicts a
+ * clean page from its own partition first and from the others otherwise.
+ * <p>
+ * Which clean page of a partition is evicted is decided by a
+ * {@link ReplacementPolicy} chosen when the pool is constructed.
+ * <p>
+ * Scans may ask for pages ahead of time with {@link #prefetchPage}, or for a
+ * run of adjacent heap file pages with {@link #prefetchPages}, which is read
+ * with one call; those pages are read by a small set of background threads
+ * shared by all pools.
  *
  * @Threadsafe, all fields are final
  */
@@ -30,7 +54,25 @@ public class BufferPool {
      */
     public static final int DEFAULT_PAGES = 50;
 
-    private final LinkedHashMap<PageId, Page> pageMap;
+    /**
+     * Default number of partitions the frames are split into. Must be a
+     * power of two.
+     */
+    public static final int DEFAULT_PARTITIONS = 16;
+
+    /**
+     * Default replacement policy of each partition.
+     */
+    public static final ReplacementPolicy.Kind DEFAULT_POLICY = ReplacementPolicy.Kind.CLOCK;
+
+    private final Partition[] partitions;
+
+    private final int partitionMask;
+
+    /**
+     * number of pages currently resident in all partitions
+     */
+    private final AtomicInteger residentPages = new AtomicInteger(0);
 
     private final LockManagerImpl lockManager;
 
@@ -38,14 +80,113 @@ public class BufferPool {
 
     private final ConcurrentHashMap<TransactionId, Set<Page>> dirtyPagesInTid = new ConcurrentHashMap<>();
 
+    /**
+     * Number of background threads reading pages ahead of scans.
+     */
+    public static final int PREFETCH_THREADS = 4;
+
+    private static final ExecutorService prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS,
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "page-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * prefetch reads that are queued or running
+     */
+    private final ConcurrentHashMap<PageId, Prefetch> prefetching = new ConcurrentHashMap<>();
+
+    /**
+     * A queued or running prefetch read. Unlike a plain FutureTask, whose
+     * cancel also succeeds while it runs, it can only be cancelled before it
+     * starts, so a reader either waits for a running read or does its own.
+     */
+    private static class Prefetch extends FutureTask<Void> {
+        private final AtomicBoolean started = new AtomicBoolean(false);
+
+        Prefetch(Runnable read) {
+            super(read, null);
+        }
+
+        @Override
+        public void run() {
+            if (started.compareAndSet(false, true)) {
+                super.run();
+            }
+        }
+
+        /**
+         * @return true if the read was cancelled, false if it has started
+         */
+        boolean cancelIfQueued() {
+            return started.compareAndSet(false, true) && cancel(false);
+        }
+    }
+
+    /**
+     * One hash partition of the pool. Lookups go straight to the concurrent
+     * page map; anything that changes which pages are resident (load,
+     * eviction, discard, flush) holds the partition lock, and so does every
+     * call on the replacement policy.
+     */
+    private static class Partition {
+        final ConcurrentHashMap<PageId, Page> pages = new ConcurrentHashMap<>();
+        final ReplacementPolicy policy;
+        final ReentrantLock lock = new ReentrantLock();
+
+        Partition(ReplacementPolicy policy) {
+            this.policy = policy;
+        }
+    }
+
     /**
      * Creates a BufferPool that caches up to numPages pages.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, DEFAULT_PARTITIONS);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages spread over
+     * numPartitions independently locked partitions.
+     *
+     * @param numPages      maximum number of pages in this buffer pool.
+     * @param numPartitions number of partitions, rounded up to a power of two.
+     */
+    public BufferPool(int numPages, int numPartitions) {
+        this(numPages, numPartitions, DEFAULT_POLICY);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages spread over
+     * numPartitions independently locked partitions, each evicting pages
+     * according to policy.
+     *
+     * @param numPages      maximum number of pages in this buffer pool.
+     * @param numPartitions number of partitions, rounded up to a power of two.
+     * @param policy        the replacement policy of the partitions.
+     */
+    public BufferPool(int numPages, int numPartitions, ReplacementPolicy.Kind policy) {
         // some code goes here
-        pageMap = new LinkedHashMap<>(numPages, 1.1F, false);
+        if (numPages <= 0 || numPartitions <= 0) {
+            throw new IllegalArgumentException("numPages and numPartitions must be positive.");
+        }
+        int n = Integer.highestOneBit(numPartitions);
+        if (n < numPartitions) {
+            n <<= 1;
+        }
+        partitions = new Partition[n];
+        int capacity = (numPages + n - 1) / n;
+        for (int i = 0; i < n; i++) {
+            partitions[i] = new Partition(policy.create(capacity));
+        }
+        partitionMask = n - 1;
         lockManager = LockManagerImpl.create();
         maxPageNum = numPages;
     }
@@ -83,25 +224,58 @@ public class BufferPool {
             throws TransactionAbortedException, DbException {
         // some code goes here
         lockManager.acquireLock(tid, pid, perm);
-        Page page = pageMap.get(pid);
-        Set<Page> dirtyPages = dirtyPagesInTid.get(tid);
-        if (dirtyPages == null) {
-            dirtyPages = new HashSet<>();
-            dirtyPagesInTid.put(tid, dirtyPages);
+        return fetchPage(tid, pid, perm);
+    }
+
+    /**
+     * Acquire a lock on the specified page like getPage, without reading
+     * the page. For pages a file adds and builds in memory, which it hands
+     * to the pool as dirty pages of tid afterwards.
+     *
+     * @param tid  the ID of the transaction requesting the lock
+     * @param pid  the ID of the page to lock
+     * @param perm the requested permissions on the page
+     */
+    public void lockPage(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException {
+        lockManager.acquireLock(tid, pid, perm);
+    }
+
+    /**
+     * Retrieve the specified page like getPage, but only if the lock can be
+     * acquired right away.
+     *
+     * @param tid  the ID of the transaction requesting the page
+     * @param pid  the ID of the requested page
+     * @param perm the requested permissions on the page
+     * @return the page, or null if another transaction holds a conflicting
+     * lock on it
+     */
+    public Page tryGetPage(TransactionId tid, PageId pid, Permissions perm) throws DbException {
+        if (!lockManager.tryAcquireLock(tid, pid, perm)) {
+            return null;
         }
-        if (page == null) {
+        return fetchPage(tid, pid, perm);
+    }
+
+    /**
+     * look up or load a page the transaction holds the lock of
+     */
+    private Page fetchPage(TransactionId tid, PageId pid, Permissions perm) throws DbException {
+        getDirtyPages(tid);
+        Partition partition = partitionOf(pid);
+        // hit path, no partition lock needed
+        Page page = partition.pages.get(pid);
+        if (page == null && awaitPrefetch(pid)) {
+            page = partition.pages.get(pid);
+        }
+        if (page != null) {
+            recordAccess(partition, pid);
+        } else {
             page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
             if (page == null) {
-                System.err.println("no page with pid: " + pid);
                 throw new DbException("no page with pid: " + pid);
             }
-            //these codes is locked to ensure thread safe
-            synchronized (BufferPool.class) {
-                if (pageMap.size() >= maxPageNum) {
-                    evictPage();
-                }
-                pageMap.put(pid, page);
-            }
+            page = putPage(partition, page, false);
         }
         if (perm == Permissions.READ_WRITE) {
             page.markDirty(true, tid);
@@ -109,6 +283,349 @@ public class BufferPool {
         return page;
     }
 
+    /**
+     * Retrieve the specified page on behalf of a scan that reads through
+     * ring. A page resident in the pool is returned from the pool as usual,
+     * but a page that has to be read from disk goes into a frame of ring and
+     * is not cached in the pool. Pages requested with READ_WRITE always go
+     * through the pool, since only the pool tracks dirty pages.
+     *
+     * @param tid  the ID of the transaction requesting the page
+     * @param pid  the ID of the requested page
+     * @param perm the requested permissions on the page
+     * @param ring the private frames of the scan, or null to use the pool
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+            throws TransactionAbortedException, DbException {
+        if (ring == null || perm == Permissions.READ_WRITE) {
+            return getPage(tid, pid, perm);
+        }
+        lockManager.acquireLock(tid, pid, perm);
+        getDirtyPages(tid);
+        Partition partition = partitionOf(pid);
+        Page page = partition.pages.get(pid);
+        if (page != null) {
+            recordAccess(partition, pid);
+            return page;
+        }
+        page = ring.get(pid);
+        if (page == null) {
+            page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+            if (page == null) {
+                throw new DbException("no page with pid: " + pid);
+            }
+            ring.put(page);
+        }
+        return page;
+    }
+
+    /**
+     * Read the specified page into the pool in the background, unless it is
+     * resident already. No lock is acquired on behalf of any transaction; a
+     * transaction still has to fetch the page with getPage, which then finds
+     * it resident. A prefetch that finds the pool full of dirty pages is
+     * dropped.
+     *
+     * @param pid the ID of the page to read ahead
+     */
+    public void prefetchPage(final PageId pid) {
+        if (partitionOf(pid).pages.containsKey(pid) || prefetching.containsKey(pid)) {
+            return;
+        }
+        Prefetch task = new Prefetch(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loadPage(pid);
+                } catch (DbException e) {
+                    // no clean page to evict, the scan reads the page itself
+                } finally {
+                    prefetching.remove(pid);
+                }
+            }
+        });
+        if (prefetching.putIfAbsent(pid, task) == null) {
+            prefetchExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Read count adjacent pages of a heap file into the pool in the
+     * background like prefetchPage, but with one vectored read of the whole
+     * run. Pages of the run that are resident already or being read ahead
+     * are left alone. Pages of other files are prefetched one at a time.
+     *
+     * @param first the ID of the first page of the run
+     * @param count the number of pages in the run
+     */
+    public void prefetchPages(HeapPageId first, int count) {
+        final DbFile file = Database.getCatalog().getDatabaseFile(first.getTableId());
+        if (!(file instanceof HeapFile)) {
+            for (int i = 0; i < count; i++) {
+                prefetchPage(new HeapPageId(first.getTableId(), first.getPageNumber() + i));
+            }
+            return;
+        }
+        final List<PageId> pids = new ArrayList<>(count);
+        Prefetch task = new Prefetch(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loadPages((HeapFile) file, pids);
+                } catch (DbException | IOException e) {
+                    // no clean page to evict or the read failed, the scan
+                    // reads the pages itself
+                } finally {
+                    for (PageId pid : pids) {
+                        prefetching.remove(pid);
+                    }
+                }
+            }
+        });
+        for (int i = 0; i < count; i++) {
+            PageId pid = new HeapPageId(first.getTableId(), first.getPageNumber() + i);
+            if (!partitionOf(pid).pages.containsKey(pid) && prefetching.putIfAbsent(pid, task) == null) {
+                pids.add(pid);
+            }
+        }
+        if (!pids.isEmpty()) {
+            prefetchExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Wait for a prefetch of pid that is already reading the page. A
+     * prefetch that has not started yet is cancelled, since the caller reads
+     * the page sooner by itself.
+     *
+     * @return true if the page was prefetched
+     */
+    private boolean awaitPrefetch(PageId pid) {
+        Prefetch task = prefetching.get(pid);
+        if (task == null) {
+            return false;
+        }
+        if (task.cancelIfQueued()) {
+            // the task may have been reading a run of pages
+            prefetching.values().removeAll(Collections.singleton(task));
+            return false;
+        }
+        try {
+            task.get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | CancellationException e) {
+            prefetching.remove(pid, task);
+            return false;
+        }
+    }
+
+    /**
+     * Make pid resident. The page is read while holding the partition lock,
+     * so no flush or eviction of the page can interleave with the read and
+     * leave a stale version in the pool.
+     */
+    private void loadPage(PageId pid) throws DbException {
+        Partition partition = partitionOf(pid);
+        if (partition.pages.containsKey(pid)) {
+            return;
+        }
+        reserveFrame(partition);
+        boolean loaded = false;
+        partition.lock.lock();
+        try {
+            if (!partition.pages.containsKey(pid)) {
+                Page page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+                if (page != null) {
+                    partition.pages.put(pid, page);
+                    partition.policy.pageLoaded(pid);
+                    loaded = true;
+                }
+            }
+        } finally {
+            if (!loaded) {
+                residentPages.decrementAndGet();
+            }
+            partition.lock.unlock();
+        }
+    }
+
+    /**
+     * Make the pages of pids, adjacent pages of file in ascending order,
+     * resident with one read of file. The pages are read while holding the
+     * locks of all their partitions, taken in index order, for the same
+     * reason loadPage holds one. Pages that became resident meanwhile keep
+     * the resident version.
+     */
+    private void loadPages(HeapFile file, List<PageId> pids) throws DbException, IOException {
+        int reserved = 0;
+        try {
+            // frames first: evicting takes partition locks
+            for (PageId pid : pids) {
+                reserveFrame(partitionOf(pid));
+                reserved++;
+            }
+            boolean[] locked = lockPartitions(pids);
+            try {
+                int first = pids.get(0).getPageNumber();
+                int count = pids.get(pids.size() - 1).getPageNumber() - first + 1;
+                for (Page page : file.readPages(first, count)) {
+                    PageId pid = page.getId();
+                    Partition partition = partitionOf(pid);
+                    if (pids.contains(pid) && !partition.pages.containsKey(pid)) {
+                        partition.pages.put(pid, page);
+                        partition.policy.pageLoaded(pid);
+                        reserved--;
+                    }
+                }
+            } finally {
+                unlockPartitions(locked);
+            }
+        } finally {
+            residentPages.addAndGet(-reserved);
+        }
+    }
+
+    /**
+     * Lock the partitions of pids in index order. Holders of several
+     * partition locks all take them in this order.
+     *
+     * @return which partitions were locked, for unlockPartitions
+     */
+    private boolean[] lockPartitions(List<PageId> pids) {
+        boolean[] locked = new boolean[partitions.length];
+        for (PageId pid : pids) {
+            locked[partitionIndex(pid)] = true;
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            if (locked[i]) {
+                partitions[i].lock.lock();
+            }
+        }
+        return locked;
+    }
+
+    private void unlockPartitions(boolean[] locked) {
+        for (int i = 0; i < partitions.length; i++) {
+            if (locked[i]) {
+                partitions[i].lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of pages in this buffer pool
+     */
+    public int getNumPages() {
+        return maxPageNum;
+    }
+
+    private Partition partitionOf(PageId pid) {
+        return partitions[partitionIndex(pid)];
+    }
+
+    private int partitionIndex(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return h & partitionMask;
+    }
+
+    /**
+     * Tell the policy of partition about a hit. Hits must not serialize on
+     * the partition lock, so under contention the access is simply not
+     * recorded; policies only need an approximate access history.
+     */
+    private void recordAccess(Partition partition, PageId pid) {
+        if (partition.lock.tryLock()) {
+            try {
+                if (partition.pages.containsKey(pid)) {
+                    partition.policy.pageAccessed(pid);
+                }
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+    }
+
+    private Set<Page> getDirtyPages(TransactionId tid) {
+        if (tid == null) {
+            return new HashSet<>();
+        }
+        Set<Page> dirtyPages = dirtyPagesInTid.get(tid);
+        if (dirtyPages == null) {
+            dirtyPages = Collections.newSetFromMap(new ConcurrentHashMap<Page, Boolean>());
+            Set<Page> existing = dirtyPagesInTid.putIfAbsent(tid, dirtyPages);
+            if (existing != null) {
+                dirtyPages = existing;
+            }
+        }
+        return dirtyPages;
+    }
+
+    /**
+     * Make page resident in its partition, evicting a clean page somewhere in
+     * the pool first if the pool is full.
+     *
+     * @param partition the partition page belongs to
+     * @param page      the page to cache
+     * @param replace   if true an already resident version of the page is
+     *                  replaced, otherwise the resident version wins
+     * @return the page that is resident after the call
+     */
+    private Page putPage(Partition partition, Page page, boolean replace) throws DbException {
+        PageId pid = page.getId();
+        if (replace && partition.pages.containsKey(pid)) {
+            partition.lock.lock();
+            try {
+                if (partition.pages.containsKey(pid)) {
+                    partition.pages.put(pid, page);
+                    partition.policy.pageAccessed(pid);
+                    return page;
+                }
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+        reserveFrame(partition);
+        partition.lock.lock();
+        try {
+            Page resident = partition.pages.get(pid);
+            if (resident != null) {
+                // someone else loaded it while we were reading from disk
+                residentPages.decrementAndGet();
+                partition.policy.pageAccessed(pid);
+                if (!replace) {
+                    return resident;
+                }
+            } else {
+                partition.policy.pageLoaded(pid);
+            }
+            partition.pages.put(pid, page);
+            return page;
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    /**
+     * Claim one frame of the pool's capacity, evicting pages until one is
+     * available. No partition lock may be held by the caller.
+     */
+    private void reserveFrame(Partition preferred) throws DbException {
+        while (true) {
+            int resident = residentPages.get();
+            if (resident < maxPageNum) {
+                if (residentPages.compareAndSet(resident, resident + 1)) {
+                    return;
+                }
+            } else {
+                evictPage(preferred);
+            }
+        }
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -160,19 +677,27 @@ public class BufferPool {
             throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        Set<Page> pages = getDirtyPages(tid);
         if (commit) {
-            Set<Page> pages = dirtyPagesInTid.get(tid);
-            if (pages == null && tid != null) {
-                pages = new HashSet<>();
-                dirtyPagesInTid.put(tid, pages);
-            }
             for (Page dirtyPage : pages) {
                 dirtyPage.setBeforeImage();
             }
             flushPages(tid);
+        } else {
+            // no steal: the pages on disk are the ones from before tid
+            Set<Integer> tableIds = new HashSet<>();
+            for (Page dirtyPage : pages) {
+                discardPage(dirtyPage.getId());
+                DbFile file = Database.getCatalog().getDatabaseFile(dirtyPage.getId().getTableId());
+                if (file instanceof HeapFile) {
+                    ((HeapFile) file).pageRolledBack(dirtyPage.getId());
+                }
+                tableIds.add(dirtyPage.getId().getTableId());
+            }
+            flushFreeSpaceMaps(tableIds);
         }
         lockManager.releasePages(tid);
-        dirtyPagesInTid.get(tid).clear();
+        pages.clear();
     }
 
     /**
@@ -196,16 +721,23 @@ public class BufferPool {
         // not necessary for lab1
         DbFile databaseFile = Database.getCatalog().getDatabaseFile(tableId);
         ArrayList<Page> dirtyPages = databaseFile.insertTuple(tid, t);
-        for (Page dirtyPage : dirtyPages) {
-            dirtyPage.markDirty(true, tid);
-            synchronized (BufferPool.class) {
-                if (pageMap.size() >= maxPageNum) {
-                    evictPage();
-                }
-                pageMap.put(dirtyPage.getId(), dirtyPage);
-                dirtyPagesInTid.get(tid).add(dirtyPage);
-            }
-        }
+        cacheDirtyPages(tid, dirtyPages);
+    }
+
+    /**
+     * Add tuples to the specified table on behalf of transaction tid, like
+     * insertTuple does for each of them, but with one call into the table
+     * file, which can fill pages a whole page at a time.
+     *
+     * @param tid     the transaction adding the tuples
+     * @param tableId the table to add the tuples to
+     * @param tuples  the tuples to add
+     */
+    public void insertTuples(TransactionId tid, int tableId, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        DbFile databaseFile = Database.getCatalog().getDatabaseFile(tableId);
+        ArrayList<Page> dirtyPages = databaseFile.insertTuples(tid, tuples);
+        cacheDirtyPages(tid, dirtyPages);
     }
 
     /**
@@ -228,40 +760,47 @@ public class BufferPool {
         RecordId recordId = t.getRecordId();
         if (recordId != null) {
             int tableId = recordId.getPageId().getTableId();
-            System.out.println("buffer pool delete tuple: " + tableId + ", " + recordId.getTupleNumber());
             DbFile databaseFile = Database.getCatalog().getDatabaseFile(tableId);
 
             ArrayList<Page> dirtyPages = databaseFile.deleteTuple(tid, t);
-            synchronized (BufferPool.class) {
-                for (Page dirtyPage : dirtyPages) {
-                    if (pageMap.size() >= maxPageNum) {
-                        evictPage();
-                    }
-                    pageMap.put(dirtyPage.getId(), dirtyPage);
-                    dirtyPagesInTid.get(tid).add(dirtyPage);
-                }
-            }
+            cacheDirtyPages(tid, dirtyPages);
             return;
         }
         // if recordId doesn't exist, loop all the cache table ids
         throw new TransactionAbortedException();
     }
 
+    /**
+     * mark the pages dirtied by tid and make them the resident version
+     *
+     * @param tid        the transaction which dirtied the pages
+     * @param dirtyPages pages returned by the DbFile
+     */
+    private void cacheDirtyPages(TransactionId tid, List<Page> dirtyPages) throws DbException {
+        Set<Page> pagesOfTid = getDirtyPages(tid);
+        for (Page dirtyPage : dirtyPages) {
+            dirtyPage.markDirty(true, tid);
+            putPage(partitionOf(dirtyPage.getId()), dirtyPage, true);
+            pagesOfTid.add(dirtyPage);
+        }
+    }
+
     /**
      * Flush all dirty pages to disk.
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      * break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages() throws IOException {
+    public void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-        Set<Map.Entry<PageId, Page>> entries = pageMap.entrySet();
-        for (Map.Entry<PageId, Page> entry : entries) {
-            Page page = entry.getValue();
-            if (page != null) {
-                flushPage(entry.getKey());
+        Set<Integer> tableIds = new HashSet<>();
+        for (Partition partition : partitions) {
+            for (PageId pid : partition.pages.keySet()) {
+                flushPage(pid);
+                tableIds.add(pid.getTableId());
             }
         }
+        flushFreeSpaceMaps(tableIds);
     }
 
     /**
@@ -273,21 +812,26 @@ public class BufferPool {
      * Also used by B+ tree files to ensure that deleted pages
      * are removed from the cache so they can be reused safely
      */
-    public synchronized void discardPage(PageId pid) {
+    public void discardPage(PageId pid) {
         // some code goes here
         // not necessary for lab1
-//        Page page = pageMap.get(pid);
-//        if (page != null && page.isDirty() != null) {
-//            DbFile databaseFile = Database.getCatalog().getDatabaseFile(pid.getTableId());
-//            try {
-//                databaseFile.writePage(page);
-//                page.markDirty(false, null);
-//            } catch (IOException e) {
-//                e.printStackTrace();
-//                return;
-//            }
-//        }
-        pageMap.remove(pid);
+        Partition partition = partitionOf(pid);
+        partition.lock.lock();
+        try {
+            removePage(partition, pid);
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    /**
+     * drop pid from partition, the caller must hold the partition lock
+     */
+    private void removePage(Partition partition, PageId pid) {
+        if (partition.pages.remove(pid) != null) {
+            partition.policy.pageRemoved(pid);
+            residentPages.decrementAndGet();
+        }
     }
 
     /**
@@ -295,20 +839,24 @@ public class BufferPool {
      *
      * @param pid an ID indicating the page to flush
      */
-    private synchronized void flushPage(PageId pid) throws IOException {
+    private void flushPage(PageId pid) throws IOException {
         // some code goes here
         // not necessary for lab1
-        if (!pageMap.containsKey(pid))
-            return;
-        // append an update record to the log, with
-        // a before-image and after-image.
-        Page page = pageMap.get(pid);
-        if (page == null)
-            return;
-        this.beforeFlushPage(page);
-        DbFile databaseFile = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
-        databaseFile.writePage(page);
-        this.afterFlushPage(page);
+        Partition partition = partitionOf(pid);
+        partition.lock.lock();
+        try {
+            // append an update record to the log, with
+            // a before-image and after-image.
+            Page page = partition.pages.get(pid);
+            if (page == null)
+                return;
+            this.beforeFlushPage(page);
+            DbFile databaseFile = Database.getCatalog().getDatabaseFile(page.getId().getTableId());
+            databaseFile.writePage(page);
+            this.afterFlushPage(page);
+        } finally {
+            partition.lock.unlock();
+        }
     }
 
     /**
@@ -339,51 +887,150 @@ public class BufferPool {
     /**
      * Write all pages of the specified transaction to disk.
      */
-    public synchronized void flushPages(TransactionId tid) throws IOException {
+    public void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
-        Set<Map.Entry<PageId, Page>> entries = pageMap.entrySet();
-        for (Map.Entry<PageId, Page> entry : entries) {
-            Page page = entry.getValue();
-            if (page != null && page.isDirty() != null && page.isDirty().equals(tid)) {
-                flushPage(entry.getKey());
+        List<Page> pages = new ArrayList<>();
+        for (Partition partition : partitions) {
+            for (Page page : partition.pages.values()) {
+                if (page != null && page.isDirty() != null && page.isDirty().equals(tid)) {
+                    pages.add(page);
+                }
+            }
+        }
+        if (pages.isEmpty()) {
+            return;
+        }
+        // log all the pages and force the log once, instead of once per page
+        for (Page page : pages) {
+            Database.getLogFile().logWrite(tid, page.getBeforeImage(), page);
+        }
+        Database.getLogFile().force();
+        // adjacent pages of a heap file are written with one call
+        Collections.sort(pages, PAGE_ORDER);
+        Set<Integer> tableIds = new HashSet<>();
+        int start = 0;
+        while (start < pages.size()) {
+            int end = start + 1;
+            while (end < pages.size() && follows(pages.get(end - 1), pages.get(end))) {
+                end++;
+            }
+            writePages(pages.subList(start, end));
+            tableIds.add(pages.get(start).getId().getTableId());
+            start = end;
+        }
+        flushFreeSpaceMaps(tableIds);
+    }
+
+    /**
+     * orders pages by table, then by page number
+     */
+    private static final Comparator<Page> PAGE_ORDER = new Comparator<Page>() {
+        @Override
+        public int compare(Page a, Page b) {
+            int byTable = Integer.compare(a.getId().getTableId(), b.getId().getTableId());
+            return byTable != 0 ? byTable : Integer.compare(a.getId().getPageNumber(), b.getId().getPageNumber());
+        }
+    };
+
+    /**
+     * @return true if next is the heap page right after page in the same file
+     */
+    private static boolean follows(Page page, Page next) {
+        return page.getId() instanceof HeapPageId && next.getId() instanceof HeapPageId
+                && page.getId().getTableId() == next.getId().getTableId()
+                && page.getId().getPageNumber() + 1 == next.getId().getPageNumber();
+    }
+
+    /**
+     * Write pages, which are logged already, while holding the locks of
+     * their partitions. Adjacent pages of a heap file go out with one
+     * gathering write.
+     *
+     * @param pages pages of one file in ascending page number order
+     */
+    private void writePages(List<Page> pages) throws IOException {
+        List<PageId> pids = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            pids.add(page.getId());
+        }
+        boolean[] locked = lockPartitions(pids);
+        try {
+            DbFile file = Database.getCatalog().getDatabaseFile(pids.get(0).getTableId());
+            if (pages.size() > 1 && file instanceof HeapFile) {
+                ((HeapFile) file).writePages(pages);
+            } else {
+                for (Page page : pages) {
+                    file.writePage(page);
+                }
+            }
+            for (Page page : pages) {
+                this.afterFlushPage(page);
+            }
+        } finally {
+            unlockPartitions(locked);
+        }
+    }
+
+    /**
+     * Write the free space maps of the heap files among the specified tables,
+     * once the pages of a flush or an abort are done with
+     *
+     * @param tableIds the ids of the tables whose pages were written or rolled back
+     * @throws IOException
+     */
+    private void flushFreeSpaceMaps(Set<Integer> tableIds) throws IOException {
+        for (int tableId : tableIds) {
+            DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+            if (file instanceof HeapFile) {
+                ((HeapFile) file).flushFreeSpaceMap();
             }
         }
     }
 
     /**
      * Discards a page from the buffer pool.
-     * Flushes the oldest page that isn't lock by another transaction to disk to ensure no steal.
+     * Only clean pages are evicted to ensure no steal.
+     * The preferred partition is tried first, then the others in order.
+     *
+     * @param preferred the partition to take a victim from if possible
      */
-    private synchronized void evictPage() throws DbException {
+    private void evictPage(Partition preferred) throws DbException {
         // some code goes here
         // not necessary for lab1
-        // remove the longest existing page and not lock by another transaction
-        boolean allDirtyAndLocked = true;
-        for (Map.Entry<PageId, Page> next : pageMap.entrySet()) {
-            PageId pageId = next.getKey();
-            if (next.getValue().isDirty() != null) {
-                continue;
+        int start = 0;
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitions[i] == preferred) {
+                start = i;
+                break;
             }
-            try {
-                flushPage(pageId);
-                allDirtyAndLocked = false;
-            } catch (IOException e) {
-                throw new DbException("System error.Can't flush page with pid: " + pageId);
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            if (evictFrom(partitions[(start + i) & partitionMask])) {
+                return;
+            }
+        }
+        throw new DbException("can't evictPage because all pages are locked and dirty");
+    }
+
+    /**
+     * remove the clean page the policy of partition picks
+     *
+     * @return false if every page of the partition is dirty
+     */
+    private boolean evictFrom(Partition partition) throws DbException {
+        partition.lock.lock();
+        try {
+            PageId victim = partition.policy.evict(partition.pages);
+            if (victim == null) {
+                return false;
+            }
+            if (partition.pages.remove(victim) != null) {
+                residentPages.decrementAndGet();
             }
-            pageMap.remove(pageId);
-            break;
-        }
-        if (allDirtyAndLocked) {
-            throw new DbException("can't evictPage because all pages are locked and dirty");
-//            it = pageMap.entrySet().iterator();
-//            Map.Entry<PageId, Page> next = it.next();
-//            try {
-//                flushPage(next.getKey());
-//                pageMap.remove(next.getKey());
-//            } catch (IOException e) {
-//                e.printStackTrace();
-//            }
+            return true;
+        } finally {
+            partition.lock.unlock();
         }
     }
 }
@@ -0,0 +1,78 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * BufferRing is a small private set of frames a large sequential scan reads
+ * its pages into instead of the shared {@link BufferPool}. Once the ring is
+ * full the scan reuses its oldest frame, so a scan over a table bigger than
+ * the pool only ever occupies the ring and leaves the pages other queries
+ * are working with in the pool.
+ * <p>
+ * Only pages that are not resident in the pool and are read with
+ * {@link Permissions#READ_ONLY} end up in the ring, see
+ * {@link BufferPool#getPage(TransactionId, PageId, Permissions, BufferRing)}.
+ * A ring belongs to one iterator and is not thread safe.
+ */
+public class BufferRing {
+
+    /**
+     * Default number of frames in a ring.
+     */
+    public static final int DEFAULT_FRAMES = 16;
+
+    private final int numFrames;
+
+    /**
+     * pages in the ring, oldest first
+     */
+    private final LinkedHashMap<PageId, Page> frames = new LinkedHashMap<>();
+
+    public BufferRing() {
+        this(DEFAULT_FRAMES);
+    }
+
+    /**
+     * @param numFrames the number of frames of the ring
+     */
+    public BufferRing(int numFrames) {
+        if (numFrames <= 0) {
+            throw new IllegalArgumentException("numFrames must be positive.");
+        }
+        this.numFrames = numFrames;
+    }
+
+    /**
+     * @return the page with id pid if it is in the ring, null otherwise
+     */
+    Page get(PageId pid) {
+        return frames.get(pid);
+    }
+
+    /**
+     * Put page in the ring, reusing the oldest frame if the ring is full.
+     */
+    void put(Page page) {
+        if (!frames.containsKey(page.getId()) && frames.size() >= numFrames) {
+            Iterator<PageId> it = frames.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+        frames.put(page.getId(), page);
+    }
+
+    /**
+     * @return the number of pages in the ring
+     */
+    public int size() {
+        return frames.size();
+    }
+
+    /**
+     * Drop all pages in the ring.
+     */
+    public void clear() {
+        frames.clear();
+    }
+}
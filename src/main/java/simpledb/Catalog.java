@@ -57,7 +57,10 @@ public class Catalog {
     public void addTable(DbFile file, String name, String pkeyField) {
         // some code goes here
 //        tableList.add(new Table(file, name, pkeyField));
-        tableMap.put(file.getId(), new Table(file, name, pkeyField));
+        Table replaced = tableMap.put(file.getId(), new Table(file, name, pkeyField));
+        if (replaced != null && replaced.dbFile != file) {
+            close(replaced.dbFile);
+        }
     }
 
     public void addTable(DbFile file, String name) {
@@ -151,8 +154,24 @@ public class Catalog {
     /** Delete all tables from the catalog */
     public void clear() {
         // some code goes here
+        for (Table table : tableMap.values()) {
+            close(table.dbFile);
+        }
         tableMap.clear();
     }
+
+    /**
+     * Release the open file of a table that is no longer in the catalog.
+     */
+    private void close(DbFile file) {
+        if (file instanceof HeapFile) {
+            try {
+                ((HeapFile) file).close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
@@ -0,0 +1,93 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CLOCK (second chance) replacement. Frames form a ring swept by a hand;
+ * an access sets the frame's reference bit, and the hand clears set bits
+ * until it reaches an unreferenced clean frame, which is the victim.
+ */
+public class ClockReplacementPolicy implements ReplacementPolicy {
+
+    private static class Frame {
+        final PageId pid;
+        boolean referenced = true;
+        Frame prev;
+        Frame next;
+
+        Frame(PageId pid) {
+            this.pid = pid;
+        }
+    }
+
+    private final HashMap<PageId, Frame> frames = new HashMap<>();
+
+    private Frame hand;
+
+    @Override
+    public void pageLoaded(PageId pid) {
+        Frame frame = new Frame(pid);
+        if (hand == null) {
+            frame.prev = frame;
+            frame.next = frame;
+            hand = frame;
+        } else {
+            // just behind the hand, so it is the last frame the hand reaches
+            frame.next = hand;
+            frame.prev = hand.prev;
+            hand.prev.next = frame;
+            hand.prev = frame;
+        }
+        frames.put(pid, frame);
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        Frame frame = frames.get(pid);
+        if (frame != null) {
+            frame.referenced = true;
+        }
+    }
+
+    @Override
+    public void pageRemoved(PageId pid) {
+        Frame frame = frames.remove(pid);
+        if (frame != null) {
+            unlink(frame);
+        }
+    }
+
+    @Override
+    public PageId evict(Map<PageId, Page> resident) {
+        // the first sweep may only clear reference bits, the second one must
+        // find a victim unless every page is dirty
+        for (int i = 0, n = 2 * frames.size(); i < n; i++) {
+            Frame frame = hand;
+            hand = hand.next;
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+            if (resident.get(frame.pid).isDirty() != null) {
+                continue;
+            }
+            frames.remove(frame.pid);
+            unlink(frame);
+            return frame.pid;
+        }
+        return null;
+    }
+
+    private void unlink(Frame frame) {
+        if (frame.next == frame) {
+            hand = null;
+            return;
+        }
+        frame.prev.next = frame.next;
+        frame.next.prev = frame.prev;
+        if (hand == frame) {
+            hand = frame.next;
+        }
+    }
+}
@@ -11,4 +11,6 @@ public class CostCard {
     public int card;
     /** The optimal subplan */
     public Vector<LogicalJoinNode> plan;
+    /** The algorithm of the last join of the optimal subplan */
+    public LogicalJoinNode.Algorithm algorithm;
 }
@@ -0,0 +1,298 @@
+package simpledb;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * A class to represent an equi-depth histogram over a single field, with a
+ * list of the most common values of the field.
+ * <p>
+ * The most common values are kept with their exact number of occurrences, so
+ * that predicates on them, which skewed fields are mostly queried with, are
+ * estimated exactly. The other values are split into buckets of about the
+ * same number of values each, so that each bucket covers a narrow range
+ * where values are dense and a wide one where they are sparse. Within a
+ * bucket, values are assumed to be spread evenly over its range, and the
+ * distinct values of the bucket to be equally common.
+ * <p>
+ * Buckets are over integer keys: the value of an IntField, or
+ * {@link StringHistogram#stringToInt} of a StringField.
+ */
+public class EquiDepthHistogram {
+
+    /** orders fields by their values */
+    private static final Comparator<Field> FIELD_ORDER = new Comparator<Field>() {
+        @Override
+        public int compare(Field a, Field b) {
+            if (a.compare(Predicate.Op.LESS_THAN, b))
+                return -1;
+            return a.compare(Predicate.Op.GREATER_THAN, b) ? 1 : 0;
+        }
+    };
+
+    /** the most common values, and the number of times each occurs */
+    private final Field[] mcvs;
+    private final int[] mcvCounts;
+    private final int mcvTotal;
+
+    /** the lowest and highest key of each bucket, and its number of values
+     * and of distinct values */
+    private final int[] lows;
+    private final int[] highs;
+    private final int[] counts;
+    private final int[] distincts;
+
+    /** number of values, of distinct values, and of values occurring once */
+    private final int total;
+    private final int distinct;
+    private final int singletons;
+
+    /**
+     * Create a new EquiDepthHistogram of the specified values.
+     *
+     * @param buckets
+     *            The maximum number of buckets to split the values that are
+     *            not among the most common ones into
+     * @param maxMcvs
+     *            The maximum number of most common values to keep
+     * @param values
+     *            The values to build the histogram of, all of the same type;
+     *            the first count are sorted in place
+     * @param count
+     *            The number of values
+     */
+    public EquiDepthHistogram(int buckets, int maxMcvs, Field[] values, int count) {
+        Arrays.sort(values, 0, count, FIELD_ORDER);
+        total = count;
+
+        // the first value of each run of equal values
+        int[] runs = new int[count + 1];
+        int numRuns = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || !values[i].equals(values[i - 1]))
+                runs[numRuns++] = i;
+        }
+        runs[numRuns] = count;
+        distinct = numRuns;
+        int once = 0;
+        for (int r = 0; r < numRuns; r++) {
+            if (runs[r + 1] - runs[r] == 1)
+                once++;
+        }
+        singletons = once;
+
+        // keep every value if there are few, and otherwise the values that
+        // are clearly more common than the average one
+        boolean[] common = new boolean[numRuns];
+        int numMcvs = 0;
+        if (numRuns <= maxMcvs) {
+            Arrays.fill(common, true);
+            numMcvs = numRuns;
+        } else if (maxMcvs > 0) {
+            final int[] bounds = runs;
+            PriorityQueue<Integer> top = new PriorityQueue<Integer>(maxMcvs, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return (bounds[a + 1] - bounds[a]) - (bounds[b + 1] - bounds[b]);
+                }
+            });
+            double threshold = Math.max(1.0, 1.25 * count / numRuns);
+            for (int r = 0; r < numRuns; r++) {
+                int length = runs[r + 1] - runs[r];
+                if (length <= threshold)
+                    continue;
+                if (top.size() < maxMcvs) {
+                    top.add(r);
+                } else if (length > runs[top.peek() + 1] - runs[top.peek()]) {
+                    top.poll();
+                    top.add(r);
+                }
+            }
+            for (int r : top)
+                common[r] = true;
+            numMcvs = top.size();
+        }
+        mcvs = new Field[numMcvs];
+        mcvCounts = new int[numMcvs];
+        int inMcvs = 0;
+        for (int r = 0, m = 0; r < numRuns; r++) {
+            if (common[r]) {
+                mcvs[m] = values[runs[r]];
+                mcvCounts[m++] = runs[r + 1] - runs[r];
+                inMcvs += runs[r + 1] - runs[r];
+            }
+        }
+        mcvTotal = inMcvs;
+        int rest = count - inMcvs;
+
+        // split the other values into buckets of about rest / buckets values,
+        // keeping the values of a run in one bucket
+        int numBuckets = Math.min(Math.max(buckets, 1), distinct - numMcvs);
+        lows = new int[numBuckets];
+        highs = new int[numBuckets];
+        counts = new int[numBuckets];
+        distincts = new int[numBuckets];
+        int b = 0;
+        int filled = 0;
+        for (int r = 0; r < numRuns && numBuckets > 0; r++) {
+            if (common[r])
+                continue;
+            int key = keyOf(values[runs[r]]);
+            if (distincts[b] == 0)
+                lows[b] = key;
+            highs[b] = key;
+            counts[b] += runs[r + 1] - runs[r];
+            distincts[b]++;
+            filled += runs[r + 1] - runs[r];
+            if (b < numBuckets - 1 && filled >= (long) rest * (b + 1) / numBuckets)
+                b++;
+        }
+    }
+
+    /**
+     * @return the key of a value in the buckets
+     */
+    private static int keyOf(Field f) {
+        if (f.getType() == Type.STRING_TYPE)
+            return StringHistogram.stringToInt(((StringField) f).getValue());
+        return ((IntField) f).getValue();
+    }
+
+    /**
+     * @return the number of values in the buckets that are less than key
+     */
+    private double countBelow(int key) {
+        double below = 0;
+        for (int b = 0; b < lows.length; b++) {
+            if (highs[b] < key) {
+                below += counts[b];
+            } else if (lows[b] < key) {
+                // the part of the bucket below key, without the values equal
+                // to it
+                double part = counts[b] * ((double) key - lows[b]) / ((double) highs[b] - lows[b] + 1);
+                below += Math.min(part, counts[b] - equalInBucket(b));
+            }
+        }
+        return below;
+    }
+
+    /**
+     * @return the number of values of bucket b equal to one of its distinct
+     *         values
+     */
+    private double equalInBucket(int b) {
+        return (double) counts[b] / distincts[b];
+    }
+
+    /**
+     * @return the number of values in the buckets equal to key
+     */
+    private double countEqual(int key) {
+        for (int b = 0; b < lows.length; b++) {
+            if (lows[b] <= key && key <= highs[b])
+                return equalInBucket(b);
+        }
+        return 0;
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on the
+     * values of this histogram.
+     *
+     * @param op
+     *            Operator
+     * @param v
+     *            Value, of the same type as the values of the histogram
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, Field v) {
+        if (total == 0)
+            return 0.0;
+        double matches = 0;
+        boolean common = false;
+        for (int i = 0; i < mcvs.length; i++) {
+            if (mcvs[i].compare(op, v))
+                matches += mcvCounts[i];
+            common |= mcvs[i].equals(v);
+        }
+
+        int key = keyOf(v);
+        double rest = total - mcvTotal;
+        // a most common value is not in the buckets
+        double equal = common ? 0 : countEqual(key);
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            matches += equal;
+            break;
+        case NOT_EQUALS:
+            matches += rest - equal;
+            break;
+        case LESS_THAN:
+            matches += countBelow(key);
+            break;
+        case LESS_THAN_OR_EQ:
+            matches += countBelow(key) + equal;
+            break;
+        case GREATER_THAN:
+            matches += rest - countBelow(key) - equal;
+            break;
+        case GREATER_THAN_OR_EQ:
+            matches += rest - countBelow(key);
+            break;
+        default:
+            break;
+        }
+        return Math.max(0.0, Math.min(1.0, matches / total));
+    }
+
+    /**
+     * @return the selectivity of an equality with a value drawn from the
+     *         values of the histogram: a value is drawn with probability
+     *         count / total, and then selects count / total of the values
+     */
+    public double avgSelectivity() {
+        if (total == 0)
+            return 1.0;
+        double selectivity = 0;
+        for (int i = 0; i < mcvs.length; i++) {
+            double f = (double) mcvCounts[i] / total;
+            selectivity += f * f;
+        }
+        for (int b = 0; b < counts.length; b++) {
+            double f = equalInBucket(b) / total;
+            selectivity += distincts[b] * f * f;
+        }
+        return Math.min(1.0, selectivity);
+    }
+
+    /**
+     * @return the number of distinct values
+     */
+    public int distinctValues() {
+        return distinct;
+    }
+
+    /**
+     * @return the number of distinct values that occur exactly once
+     */
+    public int singletons() {
+        return singletons;
+    }
+
+    /**
+     * @return the number of most common values kept
+     */
+    public int numMostCommonValues() {
+        return mcvs.length;
+    }
+
+    /**
+     * @return A string describing this histogram, for debugging purposes
+     */
+    public String toString() {
+        return "EquiDepthHistogram(" + total + " values, " + distinct + " distinct, "
+                + mcvs.length + " most common, " + counts.length + " buckets)";
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Interface for values of fields in tuples in SimpleDB.
@@ -14,6 +15,13 @@ public interface Field extends Serializable {
      */
     void serialize(DataOutputStream dos) throws IOException;
 
+    /**
+     * Write the bytes representing this field to buffer at its position, in
+     * the same format as serialize(DataOutputStream).
+     * @param buffer The buffer to write to.
+     */
+    void serialize(ByteBuffer buffer);
+
     /**
      * Compare the value of this field object to the passed in value.
      * @param op The operator
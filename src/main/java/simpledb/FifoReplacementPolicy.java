@@ -0,0 +1,41 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Evicts the clean page that was loaded first, ignoring later accesses.
+ */
+public class FifoReplacementPolicy implements ReplacementPolicy {
+
+    private final LinkedHashSet<PageId> loadOrder = new LinkedHashSet<>();
+
+    @Override
+    public void pageLoaded(PageId pid) {
+        loadOrder.add(pid);
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        // load order only
+    }
+
+    @Override
+    public void pageRemoved(PageId pid) {
+        loadOrder.remove(pid);
+    }
+
+    @Override
+    public PageId evict(Map<PageId, Page> resident) {
+        Iterator<PageId> it = loadOrder.iterator();
+        while (it.hasNext()) {
+            PageId pid = it.next();
+            if (resident.get(pid).isDirty() == null) {
+                it.remove();
+                return pid;
+            }
+        }
+        return null;
+    }
+}
@@ -94,6 +94,26 @@ public class Filter extends Operator {
         return next;
     }
 
+    /**
+     * Filters the batches of the child in place, by narrowing their
+     * selection to the tuples that pass the predicate.
+     */
+    @Override
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        while (childrenIndex < children.length) {
+            TupleBatch batch = children[childrenIndex].nextBatch();
+            if (batch == null) {
+                childrenIndex++;
+                continue;
+            }
+            batch.filter(predicate);
+            if (batch.size() > 0) {
+                return batch;
+            }
+        }
+        return null;
+    }
+
 //    @Override
 //    public boolean hasNext() throws DbException, TransactionAbortedException {
 //        return childrenIndex < children.length;
@@ -0,0 +1,136 @@
+package simpledb;
+
+import java.io.*;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap keeps one bit per page of a HeapFile telling whether the page
+ * may have an empty slot, so an insert can go straight to such a page
+ * instead of locking and reading every page before it. The map is kept in a
+ * file next to the table file, named like it with ".fsm" appended.
+ * <p>
+ * The map is a hint. A set bit may belong to a page that has filled up
+ * since, which the inserter finds out and clears. The bits of the pages an
+ * aborted transaction dirtied are set again, since inserts that filled them
+ * were rolled back, so the map errs towards room. Pages the file has and the
+ * map does not know about, for example after the table file was written by
+ * another program, are taken to have room.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    /** suffix appended to the table file name to name the map file */
+    public static final String SUFFIX = ".fsm";
+
+    private final File file;
+
+    /** bit n is set if page n may have an empty slot */
+    private final BitSet free = new BitSet();
+
+    /** number of pages the map knows about */
+    private int numPages;
+
+    private boolean dirty;
+
+    /**
+     * Load the map of tableFile, which has numPages pages. A map file left
+     * by a larger table of the same name is cut to numPages, and a missing
+     * or unreadable one is replaced by a map of pages that all have room.
+     */
+    public FreeSpaceMap(File tableFile, int numPages) {
+        file = fileOf(tableFile);
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                int pages = in.readInt();
+                BitSet bits = BitSet.valueOf(readFully(in, (pages + 7) / 8));
+                free.or(bits);
+                this.numPages = pages;
+            } catch (IOException e) {
+                // the map only holds hints, start over
+                free.clear();
+                this.numPages = 0;
+            }
+        }
+        if (this.numPages > numPages) {
+            free.clear(numPages, this.numPages);
+            this.numPages = numPages;
+            dirty = true;
+        }
+        grow(numPages);
+    }
+
+    /**
+     * @return the file the map of tableFile is kept in
+     */
+    public static File fileOf(File tableFile) {
+        return new File(tableFile.getPath() + SUFFIX);
+    }
+
+    private static byte[] readFully(DataInputStream in, int length) throws IOException {
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+    /**
+     * Make the map cover numPages pages. Pages added are taken to have room.
+     * Table files never shrink, so neither does the map.
+     */
+    public synchronized void grow(int numPages) {
+        if (numPages > this.numPages) {
+            free.set(this.numPages, numPages);
+            this.numPages = numPages;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Find a page that may have an empty slot.
+     *
+     * @return the number of the first such page at or after start, or -1 if
+     * there is none
+     */
+    public synchronized int nextFreePage(int start) {
+        int pageNo = free.nextSetBit(start);
+        return pageNo < numPages ? pageNo : -1;
+    }
+
+    /**
+     * Record whether page pageNo has an empty slot. The map grows to cover
+     * the page if needed.
+     */
+    public synchronized void setFree(int pageNo, boolean hasRoom) {
+        if (pageNo >= numPages) {
+            grow(pageNo + 1);
+        }
+        if (free.get(pageNo) != hasRoom) {
+            free.set(pageNo, hasRoom);
+            dirty = true;
+        }
+    }
+
+    /**
+     * @return true if page pageNo may have an empty slot
+     */
+    public synchronized boolean isFree(int pageNo) {
+        return free.get(pageNo);
+    }
+
+    /**
+     * Write the map to its file if it changed since it was last written.
+     */
+    public synchronized void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(numPages);
+            byte[] bits = free.toByteArray();
+            out.write(bits);
+            // toByteArray stops at the last set bit
+            out.write(new byte[(numPages + 7) / 8 - bits.length]);
+        }
+        dirty = false;
+    }
+}
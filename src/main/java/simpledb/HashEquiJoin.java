@@ -1,9 +1,20 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * HashEquiJoin builds a hash table of the tuples of child1 and probes it with
+ * the tuples of child2. When child1 has more tuples than the memory budget,
+ * it turns into a hybrid hash join: both children are split into partitions
+ * by the hash of their join field, the first partition stays in memory and
+ * is joined while child2 is read, and the others are spilled to disk and
+ * joined one pair at a time afterwards. A spilled pair whose child1 side
+ * still does not fit is split again with another hash function. Each child
+ * is thus read once, and spilled tuples are written and read back once more
+ * per split.
  */
 public class HashEquiJoin extends Operator {
 
@@ -13,11 +24,17 @@ public class HashEquiJoin extends Operator {
     private TupleDesc comboTD;
     transient private Tuple t1 = null;
     transient private Tuple t2 = null;
+    transient private TupleBatch batch = null;
+    /** batch of child2 being probed by nextBatch, and the row probed */
+    transient private TupleBatch probe = null;
+    transient private int probeIndex = 0;
+    transient private int probeRow = 0;
+    transient private boolean done = false;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
      * on
-     * 
+     *
      * @param p
      *            The predicate to use to join the children
      * @param child1
@@ -39,7 +56,7 @@ public class HashEquiJoin extends Operator {
     public TupleDesc getTupleDesc() {
         return comboTD;
     }
-    
+
     public String getJoinField1Name()
     {
 	return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
@@ -49,33 +66,428 @@ public class HashEquiJoin extends Operator {
     {
 	return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
     }
-    
+
     HashMap<Object, ArrayList<Tuple>> map = new HashMap<Object, ArrayList<Tuple>>();
+
+    /**
+     * used instead of map when both join fields are ints: the tuples of
+     * child1 in memory, and their numbers in rows by join field
+     */
+    transient private IntHashTable intMap = null;
+    transient private ArrayList<Tuple> rows = null;
+    transient private IntMatches intMatches = null;
+
+    /** default number of tuples of child1 kept in memory */
     public final static int MAP_SIZE = 20000;
 
-    private boolean loadMap() throws DbException, TransactionAbortedException {
-        int cnt = 0;
-        map.clear();
-        while (child1.hasNext()) {
-            t1 = child1.next();
-            ArrayList<Tuple> list = map.get(t1.getField(pred.getField1()));
+    /** number of partitions an input is split into at a time */
+    public final static int FANOUT = 16;
+
+    /**
+     * number of times a partition is split before it is joined in chunks of
+     * the memory budget instead, which happens when one key has more tuples
+     * than fit in memory
+     */
+    private final static int MAX_LEVEL = 3;
+
+    private int memoryBudget = MAP_SIZE;
+
+    /** number of tuples in map */
+    transient private int mapSize = 0;
+
+    /** true once child1 did not fit in memory */
+    transient private boolean spilled = false;
+
+    /**
+     * the partitions child1 and child2 are split into while they are read,
+     * null if child1 fits in memory; partition 0 is kept in map instead as
+     * long as it fits
+     */
+    transient private SpillFile[] buildFiles = null;
+    transient private SpillFile[] probeFiles = null;
+    transient private boolean memoryPartition = false;
+
+    /** a spilled pair of partitions of child1 and child2 */
+    private static class Partition {
+        final SpillFile build;
+        final SpillFile probe;
+        /** number of times the children were split to get here */
+        final int level;
+        /** rest of build, when it is joined a chunk at a time */
+        SpillFile.Reader chunks;
+
+        Partition(SpillFile build, SpillFile probe, int level) {
+            this.build = build;
+            this.probe = probe;
+            this.level = level;
+        }
+
+        void delete() throws IOException {
+            if (chunks != null)
+                chunks.close();
+            build.delete();
+            probe.delete();
+        }
+    }
+
+    transient private LinkedList<Partition> pending = new LinkedList<Partition>();
+    /** the partition being joined, null while the children are read */
+    transient private Partition current = null;
+    transient private SpillFile.Reader probeReader = null;
+
+    /**
+     * Set the number of tuples of child1 to keep in memory. Must be called
+     * before the join is opened.
+     */
+    public void setMemoryBudget(int tuples) {
+        if (tuples <= 0)
+            throw new IllegalArgumentException("memory budget must be positive");
+        this.memoryBudget = tuples;
+    }
+
+    /**
+     * @return true if the last time the join was opened child1 did not fit
+     *         in memory and partitions were spilled to disk
+     */
+    public boolean hasSpilled() {
+        return spilled;
+    }
+
+    /**
+     * @return the partition key belongs to, among FANOUT, when split for the
+     *         level-th time. Every level mixes the hash code differently, so
+     *         a partition is spread out when it is split again.
+     */
+    private static int partitionOf(Field key, int level) {
+        int h = key.hashCode() + level * 0x9e3779b9;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % FANOUT;
+    }
+
+    /** Iterates over the tuples of rows on the chain of an entry of intMap. */
+    private class IntMatches implements Iterator<Tuple> {
+        private int entry = IntHashTable.NONE;
+
+        IntMatches reset(int entry) {
+            this.entry = entry;
+            return this;
+        }
+
+        public boolean hasNext() {
+            return entry != IntHashTable.NONE;
+        }
+
+        public Tuple next() {
+            if (entry == IntHashTable.NONE)
+                throw new NoSuchElementException();
+            Tuple t = rows.get(intMap.value(entry));
+            entry = intMap.next(entry);
+            return t;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private void addToMap(Tuple t) {
+        Field key = t.getField(pred.getField1());
+        if (intMap != null) {
+            intMap.put(((IntField) key).getValue(), rows.size());
+            rows.add(t);
+        } else {
+            ArrayList<Tuple> list = map.get(key);
             if (list == null) {
                 list = new ArrayList<Tuple>();
-                map.put(t1.getField(pred.getField1()), list);
+                map.put(key, list);
+            }
+            list.add(t);
+        }
+        mapSize++;
+    }
+
+    private void clearMap() {
+        map.clear();
+        if (intMap != null) {
+            intMap.clear();
+            rows.clear();
+        }
+        mapSize = 0;
+    }
+
+    /**
+     * @return the tuples of child1 in memory
+     */
+    private ArrayList<Tuple> mapTuples() {
+        if (intMap != null)
+            return new ArrayList<Tuple>(rows);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>(mapSize);
+        for (ArrayList<Tuple> list : map.values())
+            tuples.addAll(list);
+        return tuples;
+    }
+
+    /**
+     * @return the tuples of child1 in memory whose join field equals key, or
+     *         null if there are none
+     */
+    private Iterator<Tuple> matches(Field key) {
+        if (intMap != null)
+            return matches(((IntField) key).getValue());
+        ArrayList<Tuple> l = map.get(key);
+        return l == null ? null : l.iterator();
+    }
+
+    private Iterator<Tuple> matches(int key) {
+        int entry = intMap.first(key);
+        return entry == IntHashTable.NONE ? null : intMatches.reset(entry);
+    }
+
+    /**
+     * Read child1 into the map, splitting it into partitions once it does not
+     * fit.
+     */
+    private void build() throws DbException, TransactionAbortedException, IOException {
+        if (child1.getTupleDesc().getFieldType(pred.getField1()) == Type.INT_TYPE
+                && child2.getTupleDesc().getFieldType(pred.getField2()) == Type.INT_TYPE) {
+            if (intMap == null) {
+                intMap = new IntHashTable();
+                rows = new ArrayList<Tuple>();
+                intMatches = new IntMatches();
             }
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
+        } else {
+            intMap = null;
+            rows = null;
+        }
+        clearMap();
+        spilled = false;
+        memoryPartition = false;
+        done = false;
+        while (child1.hasNext()) {
+            Tuple t = child1.next();
+            if (buildFiles == null) {
+                addToMap(t);
+                if (mapSize > memoryBudget)
+                    split();
+                continue;
+            }
+            int p = partitionOf(t.getField(pred.getField1()), 0);
+            if (p == 0 && memoryPartition) {
+                addToMap(t);
+                if (mapSize > memoryBudget) {
+                    // the partition kept in memory does not fit either
+                    spillMap(buildFiles[0]);
+                    memoryPartition = false;
+                }
+            } else {
+                buildFiles[p].add(t);
+            }
+        }
+    }
+
+    /**
+     * Split the tuples of child1 read so far into partitions, keeping
+     * partition 0 in memory.
+     */
+    private void split() throws IOException {
+        spilled = true;
+        buildFiles = new SpillFile[FANOUT];
+        probeFiles = new SpillFile[FANOUT];
+        for (int p = 0; p < FANOUT; p++) {
+            buildFiles[p] = new SpillFile(child1.getTupleDesc());
+            probeFiles[p] = new SpillFile(child2.getTupleDesc());
+        }
+        memoryPartition = true;
+        ArrayList<Tuple> inMemory = mapTuples();
+        clearMap();
+        for (Tuple t : inMemory) {
+            int p = partitionOf(t.getField(pred.getField1()), 0);
+            if (p == 0)
+                addToMap(t);
+            else
+                buildFiles[p].add(t);
+        }
+        if (mapSize > memoryBudget) {
+            spillMap(buildFiles[0]);
+            memoryPartition = false;
+        }
+    }
+
+    private void spillMap(SpillFile file) throws IOException {
+        for (Tuple t : mapTuples())
+            file.add(t);
+        clearMap();
+    }
+
+    /**
+     * @return the next tuple of child2 or of the spilled partition being
+     *         joined that probes the map, or null if there are no more
+     */
+    private Tuple nextProbe() throws DbException, TransactionAbortedException, IOException {
+        if (current != null)
+            return probeReader.next();
+        while (child2.hasNext()) {
+            Tuple t = child2.next();
+            if (buildFiles == null)
+                return t;
+            int p = partitionOf(t.getField(pred.getField2()), 0);
+            if (p == 0 && memoryPartition)
+                return t;
+            probeFiles[p].add(t);
+        }
+        return null;
+    }
+
+    private void addPending(Partition partition) throws IOException {
+        // an empty side has nothing to join with
+        if (partition.build.size() == 0 || partition.probe.size() == 0)
+            partition.delete();
+        else
+            pending.add(partition);
+    }
+
+    /**
+     * Load the map with the next chunk of the memory budget of the child1
+     * side of partition.
+     *
+     * @return false if there were no tuples left
+     */
+    private boolean loadChunk(Partition partition) throws IOException {
+        clearMap();
+        Tuple t;
+        while (mapSize < memoryBudget && (t = partition.chunks.next()) != null)
+            addToMap(t);
+        return mapSize > 0;
+    }
+
+    /**
+     * Split both sides of a partition again.
+     *
+     * @return false if splitting did not make the child1 side any smaller,
+     *         in which case the partition is left as it was
+     */
+    private boolean resplit(Partition partition) throws IOException {
+        SpillFile[] builds = new SpillFile[FANOUT];
+        SpillFile[] probes = new SpillFile[FANOUT];
+        for (int p = 0; p < FANOUT; p++) {
+            builds[p] = new SpillFile(partition.build.getTupleDesc());
+            probes[p] = new SpillFile(partition.probe.getTupleDesc());
+        }
+        try (SpillFile.Reader in = partition.build.reader()) {
+            for (Tuple t = in.next(); t != null; t = in.next())
+                builds[partitionOf(t.getField(pred.getField1()), partition.level)].add(t);
+        }
+        for (int p = 0; p < FANOUT; p++) {
+            if (builds[p].size() == partition.build.size()) {
+                for (int q = 0; q < FANOUT; q++) {
+                    builds[q].delete();
+                    probes[q].delete();
+                }
+                return false;
+            }
+        }
+        try (SpillFile.Reader in = partition.probe.reader()) {
+            for (Tuple t = in.next(); t != null; t = in.next())
+                probes[partitionOf(t.getField(pred.getField2()), partition.level)].add(t);
+        }
+        partition.delete();
+        for (int p = 0; p < FANOUT; p++)
+            addPending(new Partition(builds[p], probes[p], partition.level + 1));
+        return true;
+    }
+
+    /**
+     * Move on to the next spilled partition, or the next chunk of the one
+     * being joined, once its probe side is done.
+     *
+     * @return false if there is nothing left to join
+     */
+    private boolean nextPartition() throws IOException {
+        if (current == null) {
+            // the children have been read
+            if (buildFiles == null)
+                return false;
+            for (int p = 0; p < FANOUT; p++) {
+                Partition partition = new Partition(buildFiles[p], probeFiles[p], 1);
+                if (p == 0 && memoryPartition)
+                    partition.delete();
+                else
+                    addPending(partition);
+            }
+            buildFiles = null;
+            probeFiles = null;
+        } else {
+            probeReader.close();
+            if (current.chunks != null && loadChunk(current)) {
+                probeReader = current.probe.reader();
                 return true;
+            }
+            current.delete();
+            current = null;
         }
-        return cnt > 0;
 
+        clearMap();
+        while (!pending.isEmpty()) {
+            Partition partition = pending.removeFirst();
+            if (partition.build.size() > memoryBudget) {
+                if (partition.level < MAX_LEVEL && resplit(partition))
+                    continue;
+                partition.chunks = partition.build.reader();
+                loadChunk(partition);
+            } else {
+                try (SpillFile.Reader in = partition.build.reader()) {
+                    for (Tuple t = in.next(); t != null; t = in.next())
+                        addToMap(t);
+                }
+            }
+            current = partition;
+            probeReader = partition.probe.reader();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Delete the spilled partitions.
+     */
+    private void release() {
+        try {
+            if (probeReader != null)
+                probeReader.close();
+            if (current != null)
+                current.delete();
+            for (Partition partition : pending)
+                partition.delete();
+        } catch (IOException e) {
+            // the spill files are deleted anyway
+        }
+        if (buildFiles != null) {
+            for (int p = 0; p < FANOUT; p++) {
+                buildFiles[p].delete();
+                probeFiles[p].delete();
+            }
+        }
+        probeReader = null;
+        current = null;
+        pending.clear();
+        buildFiles = null;
+        probeFiles = null;
     }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
-        loadMap();
+        try {
+            build();
+        } catch (IOException e) {
+            release();
+            throw new DbException("could not spill join partition: " + e.getMessage());
+        }
         super.open();
     }
 
@@ -86,12 +498,28 @@ public class HashEquiJoin extends Operator {
         this.t1=null;
         this.t2=null;
         this.listIt=null;
-        this.map.clear();
+        clearMap();
+        release();
+        this.probe=null;
+        this.done=false;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        child1.rewind();
         child2.rewind();
+        this.listIt=null;
+        this.probe=null;
+        this.done=false;
+        if (!spilled)
+            return;
+        // the map only holds the last partition joined
+        release();
+        child1.rewind();
+        try {
+            build();
+        } catch (IOException e) {
+            release();
+            throw new DbException("could not spill join partition: " + e.getMessage());
+        }
     }
 
     transient Iterator<Tuple> listIt = null;
@@ -110,53 +538,77 @@ public class HashEquiJoin extends Operator {
      * <p>
      * For example, if one tuple is {1,2,3} and the other tuple is {1,5,6},
      * joined on equality of the first column, then this returns {1,2,3,1,5,6}.
-     * 
+     *
      * @return The next matching tuple.
      * @see JoinPredicate#filter
      */
     private Tuple processList() throws TransactionAbortedException, DbException {
         t1 = listIt.next();
-
-        int td1n = t1.getTupleDesc().numFields();
-        int td2n = t2.getTupleDesc().numFields();
-
-        // set fields in combined tuple
-        Tuple t = new Tuple(comboTD);
-        for (int i = 0; i < td1n; i++)
-            t.setField(i, t1.getField(i));
-        for (int i = 0; i < td2n; i++)
-            t.setField(td1n + i, t2.getField(i));
-        return t;
-
+        return Tuple.merge(comboTD, t1, t2);
     }
 
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
-            return processList();
-        }
-
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
-
-            // if match, create a combined tuple and fill it with the values
-            // from both tuples
-            ArrayList<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
-                continue;
-            listIt = l.iterator();
-
-            return processList();
+        try {
+            while (true) {
+                if (listIt != null && listIt.hasNext())
+                    return processList();
+                if (done)
+                    return null;
 
+                t2 = nextProbe();
+                if (t2 == null) {
+                    // the probe side is done: join the next partition
+                    listIt = null;
+                    done = !nextPartition();
+                    continue;
+                }
+                // if match, create a combined tuple and fill it with the
+                // values from both tuples
+                listIt = matches(t2.getField(pred.getField2()));
+            }
+        } catch (IOException e) {
+            throw new DbException("could not read join partition: " + e.getMessage());
         }
+    }
 
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
+    /**
+     * Probes the map with batches of child2, writing the joined tuples
+     * straight into the column vectors of the result. A join that spilled
+     * partitions is run a tuple at a time.
+     */
+    @Override
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (batch == null)
+            batch = new TupleBatch(comboTD);
+        if (spilled)
+            return TupleBatch.fill(this, batch);
+        batch.clear();
+        int td1n = child1.getTupleDesc().numFields();
+        while (!batch.isFull() && !done) {
+            if (listIt != null && listIt.hasNext()) {
+                t1 = listIt.next();
+                int row = batch.addRow();
+                for (int i = 0; i < td1n; i++)
+                    batch.setField(row, i, t1.getField(i));
+                batch.copyRow(row, td1n, probe, probeRow);
+                continue;
+            }
+            if (probe == null || probeIndex == probe.size()) {
+                probe = child2.nextBatch();
+                probeIndex = 0;
+                if (probe == null) {
+                    listIt = null;
+                    done = true;
+                    continue;
+                }
+            }
+            probeRow = probe.getSelection()[probeIndex++];
+            if (intMap != null)
+                listIt = matches(probe.getIntColumn(pred.getField2())[probeRow]);
+            else
+                listIt = matches(probe.getField(probeRow, pred.getField2()));
         }
-
-        return null;
+        return batch.size() > 0 ? batch : null;
     }
 
     @Override
@@ -169,5 +621,5 @@ public class HashEquiJoin extends Operator {
         this.child1 = children[0];
         this.child2 = children[1];
     }
-    
+
 }
@@ -1,6 +1,11 @@
 package simpledb;
 
 import java.io.*;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -12,20 +17,71 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * A HeapFile can be opened memory-mapped, which suits read-mostly tables:
+ * pages are then decoded straight out of the mapped file, without copying
+ * them, and written back into the mapping instead of going through read and
+ * write calls. Writing a page copies the region first if pages or tuples
+ * still decode it, see {@link PageData}.
+ * <p>
+ * Inserts find a page with an empty slot through the FreeSpaceMap of the
+ * file and skip pages other transactions have locked. Batch inserts fill
+ * whole new pages in memory, which are added to the file several at a time
+ * and written when the buffer pool flushes them.
  * 
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 
+    /**
+     * Number of pages a planned scan reads ahead of the page it is on.
+     */
+    public static final int DEFAULT_PREFETCH_PAGES = 8;
+
+    /**
+     * Number of pages a batch insert adds to the end of the file at once.
+     */
+    public static final int BULK_APPEND_PAGES = 16;
+
     private File heapFile;
 
+    private final PageChannel channel;
+
+    private final boolean memoryMapped;
+
+    /**
+     * mapping of the whole file in memory-mapped mode, replaced by a larger
+     * one when the file grows
+     */
+    private volatile MappedByteBuffer mapped;
+
+    /**
+     * the page data decoded in place from the mapping, by page number, so a
+     * write can detach it before overwriting the region; entries go away
+     * once no page or tuple uses their data
+     */
+    private final Map<Integer, MappedRegion> mappedRegions = new HashMap<>();
+
+    private final ReferenceQueue<PageData> unusedRegions = new ReferenceQueue<>();
+
+    private static class MappedRegion extends WeakReference<PageData> {
+        final int pageNo;
+
+        MappedRegion(PageData data, int pageNo, ReferenceQueue<PageData> queue) {
+            super(data, queue);
+            this.pageNo = pageNo;
+        }
+    }
+
     private TupleDesc tupleDesc;
 
     private int pageNumbers;
 
     private AtomicInteger lastModifiedPageOffset = new AtomicInteger(0);
 
+    private final FreeSpaceMap freeSpaceMap;
+
     /**
      * Constructs a heap file backed by the specified file.
      * 
@@ -34,12 +90,29 @@ public class HeapFile implements DbFile {
      *            file.
      */
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, optionally
+     * memory-mapping it. A mapped file must stay smaller than 2GB.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param memoryMapped
+     *            true to access the pages through a mapping of the file
+     */
+    public HeapFile(File f, TupleDesc td, boolean memoryMapped) {
         // some code goes here
         heapFile = f;
         tupleDesc = td;
+        channel = new PageChannel(f);
+        this.memoryMapped = memoryMapped;
 
         pageNumbers = numPages();
         lastModifiedPageOffset.set(pageNumbers > 0 ? pageNumbers - 1 : 0);
+        freeSpaceMap = new FreeSpaceMap(f, pageNumbers);
     }
 
     /**
@@ -79,54 +152,192 @@ public class HeapFile implements DbFile {
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
         // some code goes here
-        int[] pageInfo = pid.serialize();
+        if (pid.getTableId() != getId()) {
+            throw new IllegalArgumentException("page " + pid + " does not belong to this file");
+        }
         try {
-            RandomAccessFile raf = new RandomAccessFile(heapFile, "rw");
-            int eachPageSize = BufferPool.getPageSize();
-            long pos = 0; // start of the file
-            long fileLength = raf.length();
-            int pageNo = 0;
-            while (pos < fileLength) {
-                raf.seek(pos);
-                byte[] data = HeapPage.createEmptyPageData();
-                int nRead = raf.read(data);
-                if (nRead <= -1) {
-                    System.err.println("reading problem...read data is under zero, please check");
-                    pos += (long)eachPageSize;
-                    continue;
-                }
-                if (pageNo == pageInfo[1] && getId() == pageInfo[0]) {
-                    // find the correct page and then return this page
-//                    System.out.printf("page with pageId: %s, %s is found.", getId(), pageNo);
-//                    System.out.println();
+            if (memoryMapped) {
+                PageData data = mappedData(pid.getPageNumber());
+                if (data != null) {
                     return new HeapPage(new HeapPageId(pid.getTableId(), pid.getPageNumber()), data);
                 }
-                pos += (long)eachPageSize;
-                pageNo++;
+                throw new IllegalArgumentException("please check that page with pageid: "+pid+" exists");
+            }
+            byte[] data = channel.read((long) pid.getPageNumber() * BufferPool.getPageSize(), BufferPool.getPageSize());
+            if (data != null) {
+                return new HeapPage(new HeapPageId(pid.getTableId(), pid.getPageNumber()), data);
             }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            System.out.println("file not exists in this file");
         } catch (IOException e) {
-            e.printStackTrace();
-            System.out.println("system ioe exception!");
+            throw new RuntimeException(e);
         }
         throw new IllegalArgumentException("please check that page with pageid: "+pid+" exists");
     }
 
+    /**
+     * @return the region of the mapping holding page pageNo, or null if the
+     * page is past the end of the file
+     */
+    private ByteBuffer mappedPage(int pageNo) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        long offset = (long) pageNo * pageSize;
+        MappedByteBuffer map = mapped;
+        if (map == null || map.capacity() < offset + pageSize) {
+            map = remap(offset + pageSize);
+            if (map == null) {
+                return null;
+            }
+        }
+        ByteBuffer page = map.duplicate();
+        page.limit((int) offset + pageSize);
+        page.position((int) offset);
+        return page.slice();
+    }
+
+    /**
+     * @return the data of page pageNo decoded in place from the mapping, or
+     * null if the page is past the end of the file
+     */
+    private PageData mappedData(int pageNo) throws IOException {
+        ByteBuffer region = mappedPage(pageNo);
+        if (region == null) {
+            return null;
+        }
+        synchronized (mappedRegions) {
+            Reference<? extends PageData> unused;
+            while ((unused = unusedRegions.poll()) != null) {
+                MappedRegion r = (MappedRegion) unused;
+                if (mappedRegions.get(r.pageNo) == r) {
+                    mappedRegions.remove(r.pageNo);
+                }
+            }
+            MappedRegion r = mappedRegions.get(pageNo);
+            PageData data = r == null ? null : r.get();
+            if (data == null) {
+                data = new PageData(region);
+                mappedRegions.put(pageNo, new MappedRegion(data, pageNo, unusedRegions));
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Map the whole file again if the current mapping ends before end.
+     *
+     * @return the mapping, or null if the file ends before end
+     */
+    private synchronized MappedByteBuffer remap(long end) throws IOException {
+        if (mapped == null || mapped.capacity() < end) {
+            long size = channel.size();
+            if (size < end) {
+                return null;
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file is too large to map: " + heapFile);
+            }
+            mapped = channel.map(size);
+        }
+        return mapped;
+    }
+
+    /**
+     * Read count adjacent pages starting at page number pageNo with one
+     * vectored read, or straight out of the mapping in memory-mapped mode.
+     * Like readPage, this should only be called by the BufferPool.
+     *
+     * @return the pages read, which stop at the end of the file
+     */
+    public List<Page> readPages(int pageNo, int count) throws IOException {
+        List<Page> pages = new ArrayList<>(count);
+        if (memoryMapped) {
+            for (int i = 0; i < count; i++) {
+                PageData data = mappedData(pageNo + i);
+                if (data == null) {
+                    break;
+                }
+                pages.add(new HeapPage(new HeapPageId(getId(), pageNo + i), data));
+            }
+            return pages;
+        }
+        byte[][] data = channel.readPages((long) pageNo * BufferPool.getPageSize(), BufferPool.getPageSize(), count);
+        for (int i = 0; i < count && data[i] != null; i++) {
+            pages.add(new HeapPage(new HeapPageId(getId(), pageNo + i), data[i]));
+        }
+        return pages;
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
         // not necessary for lab1
         int pageNo = page.getId().getPageNumber();
-        RandomAccessFile raf = new RandomAccessFile(heapFile, "rw");
-        raf.seek(pageNo*BufferPool.getPageSize());
-        raf.write(page.getPageData());
+        int pageSize = BufferPool.getPageSize();
+        long offset = (long) pageNo * pageSize;
+        if (!memoryMapped) {
+            channel.write(offset, page.getPageData());
+            pageNumbers = numPages();
+            return;
+        }
+        synchronized (mappedRegions) {
+            // pages and tuples decoding the region in place get a copy of it,
+            // which can be the page being written
+            MappedRegion r = mappedRegions.remove(pageNo);
+            PageData readers = r == null ? null : r.get();
+            if (readers != null) {
+                readers.detach();
+            }
+            MappedByteBuffer map = mapped;
+            if (map != null && map.capacity() >= offset + pageSize) {
+                // serialize straight into the mapping
+                ByteBuffer region = map.duplicate();
+                region.position((int) offset);
+                page.writePageData(region);
+            } else {
+                // pages past the mapping are appended, the next read remaps
+                channel.write(offset, page.getPageData());
+            }
+        }
+        pageNumbers = numPages();
+    }
 
-        raf.close();
+    /**
+     * Write adjacent pages, in page number order, with one gathering write,
+     * or into the mapping in memory-mapped mode. Like writePage, this should
+     * only be called by the BufferPool.
+     */
+    public void writePages(List<Page> pages) throws IOException {
+        if (memoryMapped) {
+            for (Page page : pages) {
+                writePage(page);
+            }
+            return;
+        }
+        byte[][] data = new byte[pages.size()][];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = pages.get(i).getPageData();
+        }
+        channel.writePages((long) pages.get(0).getId().getPageNumber() * BufferPool.getPageSize(), data);
         pageNumbers = numPages();
     }
 
+    /**
+     * Write the free space map of this file to its map file if it changed.
+     * The buffer pool calls this once for each file it wrote pages of, after
+     * writing them, rather than once per page.
+     */
+    public void flushFreeSpaceMap() throws IOException {
+        freeSpaceMap.flush();
+    }
+
+    /**
+     * Write the free space map and close the file. The catalog calls this
+     * when the file is replaced or dropped; a later read or write opens the
+     * file again.
+     */
+    public void close() throws IOException {
+        freeSpaceMap.flush();
+        channel.close();
+    }
+
     /**
      * Returns the number of pages in this HeapFile.
      */
@@ -141,37 +352,149 @@ public class HeapFile implements DbFile {
         // some code goes here
         // not necessary for lab1
         ArrayList<Page> dirtyPages = new ArrayList<>();
+        freeSpaceMap.grow(numPages());
 
-        int N = numPages();
-        boolean alreadyInsert = false;
+        HeapPage heapPage = pageWithRoom(tid);
+        if (heapPage == null) {
+            heapPage = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(getId(), allocatePages(1)), Permissions.READ_WRITE);
+        }
+        insertInto(heapPage, t);
+        dirtyPages.add(heapPage);
+        return dirtyPages;
+    }
 
-        int offset = lastModifiedPageOffset.get();
-        while (offset < numPages()) {
-            HeapPageId pageId = new HeapPageId(getId(), offset);
-            HeapPage heapPage = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
-            if (heapPage.getNumEmptySlots() > 0) {
-                heapPage.insertTuple(t);
-                alreadyInsert = true;
-                // no need to change the lastModifiedPageOffset
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuples(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        ArrayList<Page> dirtyPages = new ArrayList<>();
+        freeSpaceMap.grow(numPages());
+
+        // top up the pages that have room first
+        HeapPage heapPage = null;
+        while (tuples.hasNext()) {
+            if (heapPage == null || heapPage.getNumEmptySlots() == 0) {
+                heapPage = pageWithRoom(tid);
+                if (heapPage == null) {
+                    break;
+                }
                 dirtyPages.add(heapPage);
-                lastModifiedPageOffset.set(offset);
-                break;
             }
-            offset++;
+            insertInto(heapPage, tuples.next());
         }
 
-        if (!alreadyInsert) {
-            HeapPageId heapPageId = new HeapPageId(getId(), N);
-            HeapPage heapPage = new HeapPage(heapPageId, HeapPage.createEmptyPageData());
-            heapPage.insertTuple(t);
-            // new page should write at once
-            writePage(heapPage);
-            dirtyPages.add(heapPage);
-            lastModifiedPageOffset.set(N);
+        // then fill new pages, allocated BULK_APPEND_PAGES at a time; they
+        // are built in memory and go to disk when the buffer pool flushes
+        // them, so they are neither written empty nor read back
+        BufferPool bufferPool = Database.getBufferPool();
+        // as in HeapPage, every tuple takes its size plus a header bit
+        int slotsPerPage = BufferPool.getPageSize() * 8 / (tupleDesc.getSize() * 8 + 1);
+        ArrayList<Tuple> chunk = new ArrayList<>();
+        ArrayList<Integer> allocated = new ArrayList<>();
+        boolean handedOver = false;
+        try {
+            while (tuples.hasNext()) {
+                while (chunk.size() < slotsPerPage * BULK_APPEND_PAGES && tuples.hasNext()) {
+                    chunk.add(tuples.next());
+                }
+                int count = (chunk.size() + slotsPerPage - 1) / slotsPerPage;
+                int first = allocatePages(count);
+                Iterator<Tuple> it = chunk.iterator();
+                for (int pageNo = first; pageNo < first + count; pageNo++) {
+                    allocated.add(pageNo);
+                    HeapPageId pageId = new HeapPageId(getId(), pageNo);
+                    // locked before the free space map can show the page
+                    // has room, so other inserters pass it over
+                    bufferPool.lockPage(tid, pageId, Permissions.READ_WRITE);
+                    heapPage = new HeapPage(pageId, HeapPage.createEmptyPageData());
+                    while (it.hasNext() && heapPage.getNumEmptySlots() > 0) {
+                        heapPage.insertTuple(it.next());
+                    }
+                    freeSpaceMap.setFree(pageNo, heapPage.getNumEmptySlots() > 0);
+                    lastModifiedPageOffset.set(pageNo);
+                    dirtyPages.add(heapPage);
+                }
+                chunk.clear();
+            }
+            handedOver = true;
+        } finally {
+            // new pages only become dirty pages of tid once they are
+            // returned, so an abort would not give them back
+            if (!handedOver) {
+                for (int pageNo : allocated) {
+                    freeSpaceMap.setFree(pageNo, true);
+                }
+            }
         }
         return dirtyPages;
     }
 
+    /**
+     * Find a page with an empty slot through the free space map and lock it
+     * for writing. Pages locked by other inserters are passed over instead of
+     * waited for, and a page is only locked for writing once it is known to
+     * have room, so full pages probed on a stale hint stay clean.
+     *
+     * @return the page, or null if no page can take a tuple right now
+     */
+    private HeapPage pageWithRoom(TransactionId tid) throws DbException {
+        BufferPool bufferPool = Database.getBufferPool();
+        int offset = freeSpaceMap.nextFreePage(0);
+        while (offset >= 0) {
+            HeapPageId pageId = new HeapPageId(getId(), offset);
+            HeapPage heapPage = (HeapPage) bufferPool.tryGetPage(tid, pageId, Permissions.READ_ONLY);
+            if (heapPage != null) {
+                if (heapPage.getNumEmptySlots() == 0) {
+                    freeSpaceMap.setFree(offset, false);
+                } else {
+                    heapPage = (HeapPage) bufferPool.tryGetPage(tid, pageId, Permissions.READ_WRITE);
+                    if (heapPage != null) {
+                        return heapPage;
+                    }
+                }
+            }
+            offset = freeSpaceMap.nextFreePage(offset + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Add count empty pages at the end of the file by growing it, which
+     * writes no page data. The free space map shows them full, so only the
+     * caller knows about them until it has inserted into them. The caller
+     * must mark any page it does not hand to the buffer pool as free; pages
+     * it does are marked free again if its transaction aborts, see
+     * {@link #pageRolledBack}.
+     *
+     * @return the number of the first page added
+     */
+    private synchronized int allocatePages(int count) throws IOException {
+        int first = numPages();
+        for (int i = 0; i < count; i++) {
+            freeSpaceMap.setFree(first + i, false);
+        }
+        channel.extend((long) (first + count) * BufferPool.getPageSize());
+        pageNumbers = numPages();
+        return first;
+    }
+
+    private void insertInto(HeapPage heapPage, Tuple t) throws DbException {
+        heapPage.insertTuple(t);
+        int pageNo = heapPage.getId().getPageNumber();
+        freeSpaceMap.setFree(pageNo, heapPage.getNumEmptySlots() > 0);
+        lastModifiedPageOffset.set(pageNo);
+    }
+
+    /**
+     * Called for each page of this file an aborted transaction dirtied, once
+     * the page is back to its contents from before the transaction. Inserts
+     * of the transaction may have filled the page, so it is marked as
+     * possibly having room again.
+     */
+    public void pageRolledBack(PageId pid) {
+        freeSpaceMap.setFree(pid.getPageNumber(), true);
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
@@ -183,6 +506,7 @@ public class HeapFile implements DbFile {
             PageId pageId = recordId.getPageId();
             HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
             page.deleteTuple(t);
+            freeSpaceMap.setFree(page.getId().getPageNumber(), true);
             lastModifiedPageOffset.set(page.getId().getPageNumber());
             dirtyPages.add(page);
         }
@@ -202,23 +526,76 @@ public class HeapFile implements DbFile {
         return new HeapFileIterator(tid);
     }
 
+    /**
+     * Returns an iterator over all the tuples stored in this HeapFile that
+     * reads pages missing from the buffer pool into ring instead of the pool.
+     *
+     * @param ring the private frames of the scan
+     */
+    public DbFileIterator iterator(TransactionId tid, BufferRing ring) {
+        return new HeapFileIterator(tid, ring, 0);
+    }
+
+    /**
+     * Returns an iterator over all the tuples stored in this HeapFile that
+     * asks the buffer pool to read the next prefetchPages pages in the
+     * background while it works through the current one.
+     *
+     * @param prefetchPages the number of pages to read ahead, 0 for none
+     */
+    public DbFileIterator iterator(TransactionId tid, int prefetchPages) {
+        return new HeapFileIterator(tid, null, prefetchPages);
+    }
+
     public class HeapFileIterator extends AbstractDbFileIterator {
         /**
          * index for page iterator
          */
         private int pageIndex;
 
+        private HeapPage page;
+
+        /**
+         * tuples of page, created when next is first called on it
+         */
         private Iterator<Tuple> itr;
 
+        /**
+         * slot of page fillBatch continues from
+         */
+        private int slot;
+
         private TransactionId transactionId;
 
         private int tableId;
 
         private boolean opened;
 
+        private final BufferRing ring;
+
+        private final int prefetchPages;
+
+        /**
+         * highest page number a prefetch has been issued for
+         */
+        private int prefetchedPage;
+
         public HeapFileIterator(TransactionId id)  {
+            this(id, null, 0);
+        }
+
+        /**
+         * @param ring          the private frames of the scan, or null to read
+         *                      through the buffer pool
+         * @param prefetchPages the number of pages to read ahead; ignored
+         *                      with a ring, which must not be filled from
+         *                      another thread
+         */
+        public HeapFileIterator(TransactionId id, BufferRing ring, int prefetchPages)  {
             transactionId = id;
             tableId = HeapFile.this.getId();
+            this.ring = ring;
+            this.prefetchPages = ring == null ? prefetchPages : 0;
         }
 
         @Override
@@ -227,14 +604,35 @@ public class HeapFile implements DbFile {
             if (isPageOver())
                 return;
             PageId pageId = new HeapPageId(tableId, pageIndex);
-            Page page = Database.getBufferPool().getPage(transactionId, pageId, Permissions.READ_ONLY);
+            Page page = Database.getBufferPool().getPage(transactionId, pageId, Permissions.READ_ONLY, ring);
+            prefetch();
 
-            HeapPage heapPage = (HeapPage) page;
-            itr = heapPage.iterator();
+            this.page = (HeapPage) page;
+            itr = null;
+            slot = 0;
 
             setOpened(true);
         }
 
+        /**
+         * keep prefetches issued for the pages up to prefetchPages after the
+         * current one
+         */
+        private void prefetch() {
+            if (prefetchPages <= 0) {
+                return;
+            }
+            int last = Math.min(pageIndex + prefetchPages, HeapFile.this.pageNumbers - 1);
+            int first = Math.max(prefetchedPage, pageIndex) + 1;
+            // pages are asked for in runs of at least half the window, which
+            // the pool reads with one call, except at the end of the file
+            if (first > last || (last - first + 1 < (prefetchPages + 1) / 2 && last < HeapFile.this.pageNumbers - 1)) {
+                return;
+            }
+            Database.getBufferPool().prefetchPages(new HeapPageId(tableId, first), last - first + 1);
+            prefetchedPage = last;
+        }
+
         private void setOpened(boolean opened) {
             this.opened = opened;
         }
@@ -246,6 +644,7 @@ public class HeapFile implements DbFile {
         @Override
         public void rewind() throws DbException, TransactionAbortedException {
             pageIndex = 0;
+            prefetchedPage = 0;
             open();
         }
 
@@ -253,12 +652,12 @@ public class HeapFile implements DbFile {
         protected Tuple readNext() throws DbException, TransactionAbortedException {
             if (isPageOver())
                 return null;
-            if (!itr.hasNext()) {
+            if (!tuples().hasNext()) {
                 increasePageIndex();
                 open();
                 return readNext();
             }
-            Tuple next = itr.next();
+            Tuple next = tuples().next();
             if (next == null)
                 increasePageIndex();
             return next;
@@ -282,11 +681,50 @@ public class HeapFile implements DbFile {
             if (!isOpened() || isPageOver())
                 return false;
 
-            while (!itr.hasNext() && !isPageOver()) {
+            while (!tuples().hasNext() && !isPageOver()) {
                 increasePageIndex();
                 open();
             }
-            return !isPageOver() && itr!=null&& itr.hasNext();
+            return !isPageOver() && tuples().hasNext();
+        }
+
+        private Iterator<Tuple> tuples() {
+            if (itr == null) {
+                itr = page.iterator();
+            }
+            return itr;
+        }
+
+        /**
+         * Append the next tuples to batch, until it is full or the file
+         * ends. Pages are decoded straight into the batch, so this must not
+         * be mixed with next until the iterator is rewound.
+         *
+         * @return false if there were no tuples left
+         */
+        public boolean fillBatch(TupleBatch batch) throws DbException, TransactionAbortedException {
+            if (!isOpened() || isPageOver()) {
+                return false;
+            }
+            int before = batch.size();
+            while (!batch.isFull() && !isPageOver()) {
+                slot = page.fillBatch(batch, slot);
+                if (slot >= page.numSlots) {
+                    increasePageIndex();
+                    if (!isPageOver()) {
+                        open();
+                    }
+                }
+            }
+            return batch.size() > before;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            if (ring != null) {
+                ring.clear();
+            }
         }
     }
 
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -20,6 +21,15 @@ public class HeapPage implements Page {
     final Tuple tuples[];
     final int numSlots;
 
+    /**
+     * the page as read from disk; tuples not asked for yet are decoded
+     * from it
+     */
+    private final PageData data;
+
+    /**
+     * the before image, or null while it is still data
+     */
     byte[] oldData;
     private final Byte oldDataLock=new Byte((byte)0);
 
@@ -44,31 +54,40 @@ public class HeapPage implements Page {
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, new PageData(data));
+    }
+
+    /**
+     * Create a HeapPage from a region of a buffer, for example of a
+     * memory-mapped file, which is decoded in place. Whoever overwrites the
+     * region while the page or its tuples may still be read must copy it
+     * first, see {@link PageData#detach}.
+     *
+     * @param data the bytes of the page, from its position to its limit
+     * @see #HeapPage(HeapPageId, byte[])
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, new PageData(data));
+    }
+
+    HeapPage(HeapPageId id, PageData data) {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.data = data;
 
         // allocate and read the header slots of this page
         header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
+        data.copyTo(0, ByteBuffer.wrap(header), header.length);
+
+        // the tuples are decoded from data when they are first asked for
         tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++) {
-                tuples[i] = readNextTuple(dis, i);
-                if (tuples[i] != null) {
-                    lastModifiedIndex.set(i);
-                }
+        for (int i = numSlots - 1; i >= 0; i--) {
+            if (isSlotUsed(i)) {
+                lastModifiedIndex.set(i);
+                break;
             }
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
         }
-        dis.close();
-
-        setBeforeImage();
     }
 
     /** Retrieve the number of tuples on this page.
@@ -104,6 +123,11 @@ public class HeapPage implements Page {
             {
                 oldDataRef = oldData;
             }
+            // data is never written to, so until the before image is set it
+            // is the before image
+            if (oldDataRef == null) {
+                return new HeapPage(pid, data);
+            }
             return new HeapPage(pid,oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
@@ -116,7 +140,7 @@ public class HeapPage implements Page {
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        oldData = getPageData();
         }
     }
 
@@ -129,37 +153,20 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * @return the tuple in slot slotId, or null if the slot is empty. A
+     * tuple read from disk is created on the first call, with its fields
+     * still to be decoded.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
+    private Tuple tupleAt(int slotId) {
         if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    System.out.println(slotId);
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
             return null;
         }
-
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+        Tuple t = tuples[slotId];
+        if (t == null) {
+            t = new Tuple(td, data, header.length + slotId * td.getSize());
+            t.setRecordId(new RecordId(pid, slotId));
+            tuples[slotId] = t;
         }
-
         return t;
     }
 
@@ -175,64 +182,41 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
+        byte[] data = new byte[BufferPool.getPageSize()];
+        writePageData(ByteBuffer.wrap(data));
+        return data;
+    }
 
+    // see Page.java for javadocs
+    public void writePageData(ByteBuffer buffer) {
         // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
+        buffer.put(header);
 
         // create the tuples
+        int tupleSize = td.getSize();
         for (int i=0; i<tuples.length; i++) {
 
             // empty slot
             if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
+                Utility.putZeros(buffer, tupleSize);
+                continue;
+            }
+
+            // tuple never asked for, still as it was read
+            if (tuples[i] == null) {
+                data.copyTo(header.length + i * tupleSize, buffer, tupleSize);
                 continue;
             }
 
             // non-empty slot
             for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                tuples[i].getField(j).serialize(buffer);
             }
         }
 
         // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        int zerolen = BufferPool.getPageSize() - (header.length + tupleSize * tuples.length); //- numSlots * td.getSize();
+        Utility.putZeros(buffer, zerolen);
     }
 
     /**
@@ -262,7 +246,7 @@ public class HeapPage implements Page {
         RecordId recordId = t.getRecordId();
         if (recordId != null) {
             int tupNo = recordId.getTupleNumber();
-            Tuple tuple = tuples[tupNo];
+            Tuple tuple = tupleAt(tupNo);
             if (tuple==null) {
                 throw new DbException(String.format("tuple slot: %d is empty.", tupNo));
             }
@@ -276,8 +260,8 @@ public class HeapPage implements Page {
 
         boolean found = false;
         for (int i = 0; i < tuples.length; i++) {
-            Tuple tuple = tuples[i];
-            if (tuple!=null&&tuple.equals(t) &&isSlotUsed(i)) {
+            Tuple tuple = tupleAt(i);
+            if (tuple!=null&&tuple.equals(t)) {
                 found = true;
                 tuples[i] = null;
                 markSlotUsed(i, false);
@@ -306,11 +290,11 @@ public class HeapPage implements Page {
         if (isFull) {
             throw new DbException("page is full!");
         }
-        while (tuples[lastModifiedIndex.get()] != null) {
-            // only one thread can succeed in this race
-            lastModifiedIndex.incrementAndGet();
-        }
         int index = lastModifiedIndex.get();
+        while (isSlotUsed(index)) {
+            // wrap around, the free slots may all be before the last one used
+            index = (index + 1) % numSlots;
+        }
         tuples[index] = t;
         tuples[index].setRecordId(new RecordId(getId(), index));
         markSlotUsed(index, true);
@@ -350,13 +334,12 @@ public class HeapPage implements Page {
      */
     public int getNumEmptySlots() {
         // some code goes here
-        int numEmptySlots = 0;
-        for (int i = 0; i < numSlots; i++) {
-            if (!isSlotUsed(i)) {
-                numEmptySlots++;
-            }
+        int usedSlots = 0;
+        for (int i = 0; i < header.length; i++) {
+            usedSlots += Integer.bitCount(header[i] & 0xff);
         }
-        return numEmptySlots;
+        // bits past the last slot are never set
+        return numSlots - usedSlots;
     }
 
     /**
@@ -364,26 +347,11 @@ public class HeapPage implements Page {
      */
     public boolean isSlotUsed(int i) {
         // some code goes here
-        int index = getHeaderIndex(i);
-        String s = getBit(header[index]);
-        return s.charAt(getBitIndex(i)) == '1';
-    }
-
-    private static String getBit(byte by){
-        StringBuilder sb = new StringBuilder();
-        sb.append((by>>7)&0x1)
-                .append((by>>6)&0x1)
-                .append((by>>5)&0x1)
-                .append((by>>4)&0x1)
-                .append((by>>3)&0x1)
-                .append((by>>2)&0x1)
-                .append((by>>1)&0x1)
-                .append((by>>0)&0x1);
-        return sb.toString();
+        return ((header[getHeaderIndex(i)] >> getBitIndex(i)) & 1) == 1;
     }
 
     private static int getBitIndex(int i) {
-        return 7-(i%8);
+        return i % 8;
     }
 
     private static int getHeaderIndex(int i) {
@@ -397,14 +365,33 @@ public class HeapPage implements Page {
         // some code goes here
         // not necessary for lab1
         int index = getHeaderIndex(i);
-        char[] bitChArr = getBit(header[index]).toCharArray();
-        bitChArr[getBitIndex(i)] = value ? '1':'0';
-        byte sum = 0; byte base = 1;
-        for (int j = 0; j < bitChArr.length; j++) {
-            sum += base * (bitChArr[bitChArr.length - j - 1]-'0');
-            base *= 2;
+        if (value) {
+            header[index] |= 1 << getBitIndex(i);
+        } else {
+            header[index] &= ~(1 << getBitIndex(i));
         }
-        header[index] = sum;
+    }
+
+    /**
+     * Append the tuples in the used slots from slot on to batch, until it is
+     * full. Tuples read from disk and not asked for yet are decoded straight
+     * into the batch, without creating Tuple objects.
+     *
+     * @return the slot to continue from, numSlots if the page is done
+     */
+    int fillBatch(TupleBatch batch, int slot) {
+        for (; slot < numSlots && !batch.isFull(); slot++) {
+            if (!isSlotUsed(slot)) {
+                continue;
+            }
+            Tuple t = tuples[slot];
+            if (t != null) {
+                batch.addTuple(t);
+            } else {
+                batch.addTuple(data, header.length + slot * td.getSize(), pid, slot);
+            }
+        }
+        return slot;
     }
 
     /**
@@ -413,8 +400,9 @@ public class HeapPage implements Page {
      */
     public Iterator<Tuple> iterator() {
         // some code goes here
-        List<Tuple> list = new ArrayList<>();
-        for (Tuple tuple : tuples) {
+        List<Tuple> list = new ArrayList<>(numSlots - getNumEmptySlots());
+        for (int i = 0; i < numSlots; i++) {
+            Tuple tuple = tupleAt(i);
             if (tuple != null)
                 list.add(tuple);
         }
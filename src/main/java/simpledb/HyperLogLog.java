@@ -0,0 +1,147 @@
+package simpledb;
+
+/**
+ * A HyperLogLog sketch, which estimates the number of distinct values added
+ * to it in a fixed amount of memory (Flajolet et al., "HyperLogLog: the
+ * analysis of a near-optimal cardinality estimation algorithm").
+ * <p>
+ * Each value is hashed to 64 bits. The first bits of the hash pick one of
+ * 2^precision registers, which keeps the largest number of leading zeros
+ * plus one seen in the rest of the hashes it was picked for. Adding a value
+ * again does not change the sketch, and two sketches built from different
+ * values, such as the pages of a table read separately, can be merged into
+ * the sketch of all their values. The standard error of the estimate is
+ * about 1.04 / sqrt(2^precision).
+ */
+public class HyperLogLog {
+
+    /**
+     * Default number of bits that pick a register: 4096 registers of one
+     * byte, for a standard error of about 1.6%.
+     */
+    public static final int DEFAULT_PRECISION = 12;
+
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 16;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision
+     *            The number of bits of the hash that pick a register, from 4
+     *            to 16
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+            throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and "
+                    + MAX_PRECISION + ".");
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * @return the number of bits of the hash that pick a register
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Add a value to the sketch.
+     */
+    public void add(Field f) {
+        addHash(hash(f));
+    }
+
+    /**
+     * Add a value with the specified 64 bit hash to the sketch. The bits of
+     * the hash must be about equally likely to be set.
+     */
+    public void addHash(long hash) {
+        int register = (int) (hash >>> (64 - precision));
+        // a one bit after the other bits stops the count of leading zeros
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[register])
+            registers[register] = rank;
+    }
+
+    /**
+     * Add the values of another sketch to this one, so that this one is the
+     * sketch of the values of both.
+     *
+     * @throws IllegalArgumentException
+     *             if other has a different precision
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision)
+            throw new IllegalArgumentException("cannot merge sketches of precision " + precision + " and "
+                    + other.precision + ".");
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i])
+                registers[i] = other.registers[i];
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct values added to the sketch
+     */
+    public double estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0)
+                zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // few values leave registers empty, which linear counting uses
+        if (estimate <= 2.5 * m && zeros > 0)
+            return m * Math.log((double) m / zeros);
+        return estimate;
+    }
+
+    /**
+     * @return a 64 bit hash of the value of f, whose bits are about equally
+     *         likely to be set
+     */
+    public static long hash(Field f) {
+        long h;
+        if (f.getType() == Type.STRING_TYPE) {
+            // FNV-1a over the characters
+            String s = ((StringField) f).getValue();
+            h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+        } else {
+            h = ((IntField) f).getValue();
+        }
+        return mix(h);
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads each bit of h over all
+     * the bits of the result.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public String toString() {
+        return "HyperLogLog(precision " + precision + ", estimate " + Math.round(estimate()) + ")";
+    }
+}
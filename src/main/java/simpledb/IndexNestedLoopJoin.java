@@ -0,0 +1,207 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexNestedLoopJoin joins child1 with a table that is a B+ tree keyed on
+ * the join field of child2. Instead of scanning the table, it looks up the
+ * matching tuples of each tuple of child1 with
+ * {@link BTreeFile#indexIterator}, which reads only the pages from the root
+ * to the matching leaves. This is cheap when child1 has few tuples and the
+ * table many.
+ * <p>
+ * child2 must be a SeqScan of such a table, possibly under Filters (see
+ * {@link #canProbe}). It is never read itself: the Filters are applied to the
+ * tuples looked up instead.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private JoinPredicate pred;
+    private OpIterator child1, child2;
+    private TupleDesc comboTD;
+
+    /** the table child2 scans, and the filters over it */
+    private BTreeFile file;
+    private TransactionId tid;
+    private ArrayList<Predicate> filters;
+
+    /** the tuple of child1 being joined, and its matches in file */
+    transient private Tuple left = null;
+    transient private DbFileIterator matches = null;
+
+    /** number of lookups since the join was opened */
+    transient private int numLookups = 0;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join them
+     * on
+     *
+     * @param p
+     *            The predicate to use to join the children; one of
+     *            Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+     *            Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN or
+     *            Predicate.Op.GREATER_THAN_OR_EQ
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join, which
+     *            {@link #canProbe} on the join field
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        if (probeOp(p.getOperator()) == null)
+            throw new IllegalArgumentException("index nested-loop join cannot join on " + p.getOperator());
+        if (!canProbe(child2, p.getField2()))
+            throw new IllegalArgumentException("child2 is not a scan of a B+ tree keyed on the join field");
+        this.pred = p;
+        this.child1 = child1;
+        setInner(child2);
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /**
+     * @return true if child2 is a SeqScan of a BTreeFile keyed on field, under
+     *         any number of Filters
+     */
+    public static boolean canProbe(OpIterator child2, int field) {
+        while (child2 instanceof Filter)
+            child2 = ((Filter) child2).getChildren()[0];
+        if (!(child2 instanceof SeqScan))
+            return false;
+        DbFile f = Database.getCatalog().getDatabaseFile(((SeqScan) child2).getTableId());
+        return f instanceof BTreeFile && ((BTreeFile) f).keyField() == field;
+    }
+
+    /**
+     * @return the operation to look up the tuples t2 of the index that
+     *         satisfy <tt>t1 op t2</tt> with, comparing t2 with t1, or null if
+     *         the index cannot look them up
+     */
+    static Predicate.Op probeOp(Predicate.Op op) {
+        switch (op) {
+        case EQUALS:
+            return Predicate.Op.EQUALS;
+        case LESS_THAN:
+            return Predicate.Op.GREATER_THAN;
+        case LESS_THAN_OR_EQ:
+            return Predicate.Op.GREATER_THAN_OR_EQ;
+        case GREATER_THAN:
+            return Predicate.Op.LESS_THAN;
+        case GREATER_THAN_OR_EQ:
+            return Predicate.Op.LESS_THAN_OR_EQ;
+        default:
+            return null;
+        }
+    }
+
+    private void setInner(OpIterator child2) {
+        this.child2 = child2;
+        filters = new ArrayList<Predicate>();
+        while (child2 instanceof Filter) {
+            filters.add(((Filter) child2).getPredicate());
+            child2 = ((Filter) child2).getChildren()[0];
+        }
+        SeqScan scan = (SeqScan) child2;
+        file = (BTreeFile) Database.getCatalog().getDatabaseFile(scan.getTableId());
+        tid = scan.getTransactionId();
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    public String getJoinField1Name()
+    {
+        return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
+    }
+
+    public String getJoinField2Name()
+    {
+        return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
+    }
+
+    /**
+     * @return the number of index lookups since the join was opened or
+     *         rewound, one per tuple of child1
+     */
+    public int getNumLookups() {
+        return numLookups;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        left = null;
+        numLookups = 0;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        closeMatches();
+        child1.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        closeMatches();
+        left = null;
+        numLookups = 0;
+    }
+
+    private void closeMatches() {
+        if (matches != null) {
+            matches.close();
+            matches = null;
+        }
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. The tuples returned are the concatenation of joining tuples
+     * from the left and right relation.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        Predicate.Op op = probeOp(pred.getOperator());
+        while (true) {
+            while (matches != null && matches.hasNext()) {
+                Tuple right = matches.next();
+                if (passesFilters(right))
+                    return Tuple.merge(comboTD, left, right);
+            }
+            closeMatches();
+            if (!child1.hasNext())
+                return null;
+            left = child1.next();
+            matches = file.indexIterator(tid, new IndexPredicate(op, left.getField(pred.getField1())));
+            matches.open();
+            numLookups++;
+        }
+    }
+
+    private boolean passesFilters(Tuple t) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (!filters.get(i).filter(t))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { child1, child2 };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        setInner(children[1]);
+    }
+
+}
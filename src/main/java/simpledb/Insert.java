@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -12,6 +13,11 @@ public class Insert extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Number of child tuples passed to the buffer pool in one batch insert.
+     */
+    public static final int BATCH_SIZE = 4096;
+
     private TransactionId transactionId;
 
     private OpIterator child;
@@ -89,12 +95,18 @@ public class Insert extends Operator {
         if (times != 0)
             return null;
         int effectedRows = 0;
+        // hand the tuples to the buffer pool a batch at a time
+        ArrayList<Tuple> batch = new ArrayList<>(BATCH_SIZE);
         while (child.hasNext()) {
-            try {
-                Database.getBufferPool().insertTuple(this.transactionId, this.tableId, child.next());
-                effectedRows++;
-            } catch (IOException e) {
-                e.printStackTrace();
+            batch.add(child.next());
+            if (batch.size() == BATCH_SIZE || !child.hasNext()) {
+                try {
+                    Database.getBufferPool().insertTuples(this.transactionId, this.tableId, batch.iterator());
+                    effectedRows += batch.size();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                batch.clear();
             }
         }
         Tuple tuple = new Tuple(tupleDesc);
@@ -0,0 +1,240 @@
+package simpledb;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * IntHashTable maps int keys to lists of int values, for operators that hash
+ * on an int column such as HashEquiJoin and IntegerAggregator. It keeps
+ * everything in int arrays instead of boxing keys into Fields and values into
+ * lists: the keys are in an open-addressing table with linear probing, and
+ * the values of a key are entries chained through an array. Before the
+ * values are first looked up after a put, the entries are reordered so that
+ * those of a key are next to each other, which makes following a chain read
+ * memory in order. Values are typically row numbers into a list of tuples
+ * the operator keeps.
+ * <p>
+ * Every distinct key also gets a number, counting from 0 in the order the
+ * keys were added, so per-key state can be kept in arrays.
+ */
+public class IntHashTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** returned for a missing key or past the last entry of a key */
+    public static final int NONE = -1;
+
+    /** key number of each slot, NONE for an empty slot */
+    private int[] slots;
+
+    /** 32 minus the number of bits of a slot index */
+    private int shift;
+
+    /** key and first entry by key number */
+    private int[] keys;
+    private int[] firsts;
+    private int numKeys;
+
+    /** value, next entry of the same key and key number by entry */
+    private int[] values;
+    private int[] nexts;
+    private int[] owners;
+    private int size;
+
+    /** true if the entries of each key are next to each other */
+    private boolean compacted = true;
+
+    public IntHashTable() {
+        this(16);
+    }
+
+    /**
+     * @param expectedKeys the number of keys to make room for up front
+     */
+    public IntHashTable(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(expectedKeys, 8) * 2 - 1) * 2;
+        slots = new int[capacity];
+        Arrays.fill(slots, NONE);
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        keys = new int[capacity / 2];
+        firsts = new int[capacity / 2];
+        values = new int[capacity / 2];
+        nexts = new int[capacity / 2];
+        owners = new int[capacity / 2];
+    }
+
+    /**
+     * @return the slot to look for key from; the multiplication spreads
+     *         consecutive keys and the high bits are the best mixed
+     */
+    private int slotOf(int key) {
+        return (key * 0x9e3779b9) >>> shift;
+    }
+
+    /**
+     * @return the number of key, or NONE if it was never added
+     */
+    public int find(int key) {
+        int mask = slots.length - 1;
+        for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+            int n = slots[slot];
+            if (n == NONE || keys[n] == key) {
+                return n;
+            }
+        }
+    }
+
+    /**
+     * @return the number of key, which is added without values if missing
+     */
+    public int add(int key) {
+        int mask = slots.length - 1;
+        int slot = slotOf(key);
+        for (; slots[slot] != NONE; slot = (slot + 1) & mask) {
+            if (keys[slots[slot]] == key) {
+                return slots[slot];
+            }
+        }
+        if (numKeys == keys.length) {
+            keys = Arrays.copyOf(keys, numKeys * 2);
+            firsts = Arrays.copyOf(firsts, numKeys * 2);
+        }
+        int n = numKeys++;
+        keys[n] = key;
+        firsts[n] = NONE;
+        slots[slot] = n;
+        // keep at most half of the slots used
+        if (numKeys * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return n;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, NONE);
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        int mask = capacity - 1;
+        for (int n = 0; n < numKeys; n++) {
+            int slot = slotOf(keys[n]);
+            while (slots[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = n;
+        }
+    }
+
+    /**
+     * Add value to the values of key.
+     */
+    public void put(int key, int value) {
+        int n = add(key);
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            nexts = Arrays.copyOf(nexts, size * 2);
+            owners = Arrays.copyOf(owners, size * 2);
+        }
+        values[size] = value;
+        nexts[size] = firsts[n];
+        owners[size] = n;
+        firsts[n] = size;
+        size++;
+        compacted = false;
+    }
+
+    /**
+     * Reorder the entries by key number, keeping the order of the entries of
+     * a key, and chain them again.
+     */
+    private void compact() {
+        int[] starts = new int[numKeys + 1];
+        for (int e = 0; e < size; e++) {
+            starts[owners[e] + 1]++;
+        }
+        for (int n = 0; n < numKeys; n++) {
+            starts[n + 1] += starts[n];
+        }
+        // firsts holds where the next entry of each key goes meanwhile
+        System.arraycopy(starts, 0, firsts, 0, numKeys);
+        int[] sorted = new int[values.length];
+        for (int e = 0; e < size; e++) {
+            sorted[firsts[owners[e]]++] = values[e];
+        }
+        values = sorted;
+        for (int n = 0; n < numKeys; n++) {
+            int end = starts[n + 1];
+            firsts[n] = starts[n] == end ? NONE : starts[n];
+            for (int e = starts[n]; e < end; e++) {
+                nexts[e] = e + 1 < end ? e + 1 : NONE;
+                owners[e] = n;
+            }
+        }
+        compacted = true;
+    }
+    /**
+     * @return the first entry of the values of key, or NONE if it has none
+     */
+    public int first(int key) {
+        if (!compacted) {
+            compact();
+        }
+        int n = find(key);
+        return n == NONE ? NONE : firsts[n];
+    }
+
+    /**
+     * @return the first entry of the values of the key numbered n, or NONE if
+     *         it has none
+     */
+    public int firstOf(int n) {
+        if (!compacted) {
+            compact();
+        }
+        return firsts[n];
+    }
+
+    /**
+     * @return the entry after entry among the values of its key, or NONE
+     */
+    public int next(int entry) {
+        return nexts[entry];
+    }
+
+    /**
+     * @return the value of entry
+     */
+    public int value(int entry) {
+        return values[entry];
+    }
+
+    /**
+     * @return the key numbered n
+     */
+    public int getKey(int n) {
+        return keys[n];
+    }
+
+    /**
+     * @return the number of distinct keys
+     */
+    public int numKeys() {
+        return numKeys;
+    }
+
+    /**
+     * @return the number of values of all keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all keys, keeping the arrays for reuse.
+     */
+    public void clear() {
+        Arrays.fill(slots, NONE);
+        numKeys = 0;
+        size = 0;
+        compacted = true;
+    }
+}
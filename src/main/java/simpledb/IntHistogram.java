@@ -199,7 +199,19 @@ public class IntHistogram {
     public double avgSelectivity()
     {
         // some code goes here
-        return 1.0;
+        // the selectivity of an equality with a value drawn from the
+        // histogram itself: a bucket is drawn with probability h / ntups,
+        // and then selects h / w of the tuples
+        int ntups = getNumberOfTuples();
+        if (ntups == 0)
+            return 1.0;
+        double w = getW();
+        double selectivity = 0D;
+        for (int i = 0; i < numB; i++) {
+            double f = (double) getHeight(i) / ntups;
+            selectivity += f * f / w;
+        }
+        return Math.min(1.0, selectivity);
     }
     
     /**
@@ -1,13 +1,21 @@
 package simpledb;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Knows how to compute some aggregate over a set of IntFields.
+ * <p>
+ * The values are not kept: each group has a running count, sum, minimum and
+ * maximum, updated as tuples are merged, so memory grows with the number of
+ * groups rather than the number of tuples.
+ * <p>
+ * SUM_COUNT and SC_AVG split an average in two: SUM_COUNT returns the sum
+ * and the count of each group, and SC_AVG averages tuples of such sums and
+ * counts, whose count follows the sum field. The sum of a SUM_COUNT tuple is
+ * an int, so aggregators of the same process are combined with
+ * {@link #merge(IntegerAggregator)} instead, which keeps sums at 64 bits.
  */
 public class IntegerAggregator implements Aggregator {
 
@@ -21,7 +29,12 @@ public class IntegerAggregator implements Aggregator {
 
     private int aFieldIndex;
 
-    private Map<Field, ArrayList<IntField>> groupMap = new ConcurrentHashMap<>();
+    /** the groups seen, and their running state by group number */
+    private AggregateGroups groups;
+    private int[] counts = new int[16];
+    private long[] sums = new long[16];
+    private int[] mins = new int[16];
+    private int[] maxs = new int[16];
 
     /**
      * Aggregate constructor
@@ -44,6 +57,7 @@ public class IntegerAggregator implements Aggregator {
         groupFieldType = gbfieldtype;
         aFieldIndex = afield;
         operation = what;
+        groups = new AggregateGroups(gbfield, gbfieldtype);
     }
 
     /**
@@ -55,12 +69,97 @@ public class IntegerAggregator implements Aggregator {
      */
     public void mergeTupleIntoGroup(Tuple tup) {
         // some code goes here
-        Field gbField = groupFieldIndex == NO_GROUPING ? null : tup.getField(groupFieldIndex);
-        if (!groupMap.containsKey(gbField)) {
-            groupMap.put(gbField, new ArrayList<IntField>());
+        int n = groups.numberOf(tup);
+        int value = ((IntField) tup.getField(aFieldIndex)).getValue();
+        if (operation == Op.SC_AVG)
+            merge(n, value, ((IntField) tup.getField(aFieldIndex + 1)).getValue());
+        else
+            merge(n, value);
+    }
+
+    /**
+     * Merge the selected rows of a batch into the aggregate, reading the
+     * aggregate values from their column vector
+     *
+     * @param batch
+     *            rows containing an aggregate field and a group-by field
+     */
+    public void mergeBatchIntoGroup(TupleBatch batch) {
+        int[] values = batch.getIntColumn(aFieldIndex);
+        int[] selection = batch.getSelection();
+        if (operation == Op.SC_AVG) {
+            int[] partialCounts = batch.getIntColumn(aFieldIndex + 1);
+            for (int i = 0; i < batch.size(); i++) {
+                int row = selection[i];
+                merge(groups.numberOf(batch, row), values[row], partialCounts[row]);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            int row = selection[i];
+            merge(groups.numberOf(batch, row), values[row]);
+        }
+    }
+
+    /**
+     * Update the running state of the group numbered n with value.
+     */
+    private void merge(int n, int value) {
+        grow(n);
+        if (counts[n] == 0) {
+            mins[n] = value;
+            maxs[n] = value;
+        } else {
+            mins[n] = Math.min(mins[n], value);
+            maxs[n] = Math.max(maxs[n], value);
+        }
+        counts[n]++;
+        sums[n] += value;
+    }
+
+    /**
+     * Add a partial sum and count to the group numbered n, for SC_AVG.
+     */
+    private void merge(int n, int sum, int count) {
+        grow(n);
+        counts[n] += count;
+        sums[n] += sum;
+    }
+
+    /**
+     * Merge the running state of every group of partial into this
+     * aggregate, as if the tuples merged into partial had been merged into
+     * this one. Sums are added at their full width, so the merged sum of a
+     * group may exceed what one int field of a result tuple holds.
+     *
+     * @param partial
+     *            an aggregator of the same aggregate and group field types
+     */
+    void merge(IntegerAggregator partial) {
+        for (int n = 0; n < partial.groups.size(); n++) {
+            int m = groups.numberOf(partial.groups, n);
+            grow(m);
+            if (partial.counts[n] == 0)
+                continue;
+            if (counts[m] == 0) {
+                mins[m] = partial.mins[n];
+                maxs[m] = partial.maxs[n];
+            } else {
+                mins[m] = Math.min(mins[m], partial.mins[n]);
+                maxs[m] = Math.max(maxs[m], partial.maxs[n]);
+            }
+            counts[m] += partial.counts[n];
+            sums[m] += partial.sums[n];
+        }
+    }
+
+    private void grow(int n) {
+        if (n == counts.length) {
+            counts = Arrays.copyOf(counts, n * 2);
+            sums = Arrays.copyOf(sums, n * 2);
+            mins = Arrays.copyOf(mins, n * 2);
+            maxs = Arrays.copyOf(maxs, n * 2);
         }
-        ArrayList<IntField> list = groupMap.get(gbField);
-        list.add((IntField) tup.getField(aFieldIndex));
     }
 
     /**
@@ -69,64 +168,52 @@ public class IntegerAggregator implements Aggregator {
      * @return a OpIterator whose tuples are the pair (groupVal, aggregateVal)
      *         if using group, or a single (aggregateVal) if no grouping. The
      *         aggregateVal is determined by the type of aggregate specified in
-     *         the constructor.
+     *         the constructor. For SUM_COUNT, aggregateVal is two fields, the
+     *         sum and the count.
      */
     public OpIterator iterator() {
         // some code goes here
-        Set<Map.Entry<Field, ArrayList<IntField>>> entrySet = groupMap.entrySet();
-        List<Tuple> tupleList = new ArrayList<>();
-        TupleDesc tupleDesc = new TupleDesc(new Type[]{groupFieldType, Type.INT_TYPE});
-        for (Map.Entry<Field, ArrayList<IntField>> entry : entrySet) {
+        ArrayList<Type> types = new ArrayList<Type>();
+        if (groupFieldIndex != NO_GROUPING)
+            types.add(groupFieldType);
+        types.add(Type.INT_TYPE);
+        if (operation == Op.SUM_COUNT)
+            types.add(Type.INT_TYPE);
+        TupleDesc tupleDesc = new TupleDesc(types.toArray(new Type[types.size()]));
+        List<Tuple> tupleList = new ArrayList<>(groups.size());
+        for (int n = 0; n < groups.size(); n++) {
             Tuple tuple = new Tuple(tupleDesc);
-            tuple.setField(0, entry.getKey());
-            ArrayList<IntField> fieldArrayList = entry.getValue();
+            int aggregateIndex = 0;
+            if (groupFieldIndex != NO_GROUPING) {
+                tuple.setField(0, groups.key(n));
+                aggregateIndex = 1;
+            }
             switch (operation) {
-                case SUM_COUNT:
-                    // TODO: 2018/2/23
-                    break;
                 case SUM:
-                    int sum = 0;
-                    for (IntField intField : fieldArrayList) {
-                        sum+=intField.getValue();
-                    }
-                    tuple.setField(1, new IntField(sum));
-                    break;
-                case SC_AVG:
-                    // TODO: 2018/2/23
+                    tuple.setField(aggregateIndex, new IntField((int) sums[n]));
                     break;
                 case MIN:
-                    Field minField = null;
-                    for (IntField intField : fieldArrayList) {
-                        if (minField == null || minField.compare(Predicate.Op.GREATER_THAN, intField))
-                            minField = intField;
-                    }
-                    tuple.setField(1, minField);
+                    tuple.setField(aggregateIndex, new IntField(mins[n]));
                     break;
                 case AVG:
-                    sum = 0;
-                    for (IntField intField : fieldArrayList) {
-                        sum += intField.getValue();
-                    }
-                    tuple.setField(1, new IntField(sum/fieldArrayList.size()));
+                    tuple.setField(aggregateIndex, new IntField((int) (sums[n] / counts[n])));
                     break;
                 case COUNT:
-                    tuple.setField(1, new IntField(fieldArrayList.size()));
+                    tuple.setField(aggregateIndex, new IntField(counts[n]));
                     break;
                 case MAX:
-                    Field maxField = null;
-                    for (IntField intField : fieldArrayList) {
-                        if (maxField == null || maxField.compare(Predicate.Op.LESS_THAN, intField))
-                            maxField = intField;
-                    }
-                    tuple.setField(1, maxField);
+                    tuple.setField(aggregateIndex, new IntField(maxs[n]));
+                    break;
+                case SUM_COUNT:
+                    tuple.setField(aggregateIndex, new IntField((int) sums[n]));
+                    tuple.setField(aggregateIndex + 1, new IntField(counts[n]));
+                    break;
+                case SC_AVG:
+                    tuple.setField(aggregateIndex, new IntField((int) (sums[n] / counts[n])));
                     break;
-                    default:
-                        break;
             }
-
             tupleList.add(tuple);
         }
-
         return new TupleIterator(tupleDesc, tupleList);
     }
 
@@ -54,8 +54,8 @@ public class Join extends Operator {
      * */
     public String getJoinField2Name() {
         // some code goes here
-        int field1 = joinPredicate.getField1();
-        String fieldName = children[1].getTupleDesc().getFieldName(field1);
+        int field2 = joinPredicate.getField2();
+        String fieldName = children[1].getTupleDesc().getFieldName(field2);
         return fieldName;
     }
 
@@ -75,6 +75,8 @@ public class Join extends Operator {
         for (OpIterator iterator:children) {
             iterator.open();
         }
+        comboTD = getTupleDesc();
+        reset();
     }
 
     public void close() {
@@ -83,6 +85,8 @@ public class Join extends Operator {
         for (OpIterator iterator : children) {
             iterator.close();
         }
+        block = null;
+        right = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
@@ -90,17 +94,65 @@ public class Join extends Operator {
         for (OpIterator iterator : children) {
             iterator.rewind();
         }
+        reset();
+    }
+
+    private void reset() {
+        block = null;
+        right = null;
+        innerFresh = true;
+        numBlocks = 0;
     }
 
-//    private Tuple tuple1;
-//
-//    private Tuple tuple2;
+    /** default number of tuples of the outer relation kept in memory */
+    public final static int BLOCK_SIZE = 20000;
+
+    private int memoryBudget = BLOCK_SIZE;
+
+    transient private TupleDesc comboTD;
+
+    /** the tuples of the outer relation being joined, null before the first */
+    transient private ArrayList<Tuple> block = null;
+
+    /** the tuple of the inner relation being joined with block, or null */
+    transient private Tuple right = null;
+
+    /** index in block of the next tuple to compare right with */
+    transient private int blockPos = 0;
+
+    /** true while the inner relation has not been read since it was opened */
+    transient private boolean innerFresh = true;
+
+    /** number of blocks read since the join was opened */
+    transient private int numBlocks = 0;
+
+    /**
+     * Set the number of tuples of the outer relation to keep in memory. The
+     * inner relation is scanned once per block of that many tuples. Must be
+     * called before the join is opened.
+     */
+    public void setMemoryBudget(int tuples) {
+        if (tuples <= 0)
+            throw new IllegalArgumentException("memory budget must be positive");
+        this.memoryBudget = tuples;
+    }
+
+    /**
+     * @return the number of blocks of the outer relation read since the join
+     *         was opened or rewound, which is also the number of scans of the
+     *         inner relation
+     */
+    public int getNumBlocks() {
+        return numBlocks;
+    }
 
     /**
      * Returns the next tuple generated by the join, or null if there are no
      * more tuples. Logically, this is the next tuple in r1 cross r2 that
-     * satisfies the join predicate. There are many possible implementations;
-     * the simplest is a nested loops join.
+     * satisfies the join predicate. This is a block nested loops join: it
+     * reads a block of up to the memory budget of tuples from the outer
+     * relation and scans the inner relation once per block, comparing each
+     * inner tuple with every tuple of the block.
      * <p>
      * Note that the tuples returned from this particular implementation of Join
      * are simply the concatenation of joining tuples from the left and right
@@ -114,67 +166,49 @@ public class Join extends Operator {
      * @return The next matching tuple.
      * @see JoinPredicate#filter
      */
-//    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-//        // some code goes here
-//        if (!children[0].hasNext())
-//            return null;
-//        if (tuple1 == null)
-//            tuple1 = children[0].next();
-//        if (!children[1].hasNext()) {
-//            children[1].rewind();
-//            tuple1 = children[0].next();
-//        }
-//        tuple2 = children[1].next();
-//        if (!joinPredicate.filter(tuple1, tuple2)) {
-//            return fetchNext();
-//        }
-//        TupleDesc merge = TupleDesc.merge(tuple1.getTupleDesc(), tuple2.getTupleDesc());
-//        Tuple tuple = new Tuple(merge);
-//        int numFields1 = tuple1.getTupleDesc().numFields();
-//        int numFields2 = tuple2.getTupleDesc().numFields();
-//        for (int i = 0; i < numFields1; i++) {
-//            tuple.setField(i, tuple1.getField(i));
-//        }
-//        for (int i = 0; i < numFields2; i++) {
-//            tuple.setField(i + numFields1, tuple2.getField(i));
-//        }
-//        System.out.println(tuple);
-//        return tuple;
-//    }
-    Tuple left;
-    Tuple right;
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-//    	TODO could be sped up
         OpIterator outer = children[0];
         OpIterator inner = children[1];
-        while(true){
-            if(left == null) {
-                left = outer.next();
+        int field1 = joinPredicate.getField1();
+        Predicate.Op op = joinPredicate.getOperator();
+        while (true) {
+            if (right != null) {
+                Field f = right.getField(joinPredicate.getField2());
+                while (blockPos < block.size()) {
+                    Tuple left = block.get(blockPos++);
+                    if (left.getField(field1).compare(op, f))
+                        return Tuple.merge(comboTD, left, right);
+                }
+                right = null;
             }
-//    		System.out.println("Left::" + left);
-            while(inner.hasNext() ) {
+            if (block != null && inner.hasNext()) {
                 right = inner.next();
-//	    		System.out.println("Right : "+right);
-                if(joinPredicate.filter(left, right)) {
-//	    			System.out.println("I matched: " + left + "::" + right);
-                    Tuple tup = new Tuple(this.getTupleDesc());
-                    int i,j;
-                    for(i =0; i < outer.getTupleDesc().numFields(); i++) {
-                        tup.setField(i, left.getField(i));
-                    }
-                    for(j=0; j < inner.getTupleDesc().numFields(); j++){
-                        tup.setField(i+j, right.getField(j));
-                    }
-	    			System.out.println(tup);
-                    return tup;
-                }
+                blockPos = 0;
+                innerFresh = false;
+                continue;
             }
-            if(!outer.hasNext())
-                break;
-            left = outer.next();
-            inner.rewind();
+            if (!nextBlock(outer))
+                return null;
+            if (!innerFresh)
+                inner.rewind();
         }
-        return null;
+    }
+
+    /**
+     * Read the next block of the outer relation.
+     *
+     * @return false if the outer relation has no more tuples
+     */
+    private boolean nextBlock(OpIterator outer) throws DbException, TransactionAbortedException {
+        if (block == null)
+            block = new ArrayList<Tuple>(Math.min(memoryBudget, 1024));
+        block.clear();
+        while (block.size() < memoryBudget && outer.hasNext())
+            block.add(outer.next());
+        if (block.isEmpty())
+            return false;
+        numBlocks++;
+        return true;
     }
 
     @Override
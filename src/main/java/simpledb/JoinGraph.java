@@ -0,0 +1,147 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * JoinGraph numbers the tables of a list of joins so that a set of tables
+ * can be kept as a bitmask of their numbers, with the joins as the edges
+ * between them. Tables are numbered in breadth-first order, which the DPccp
+ * enumeration of {@link JoinOptimizer#orderJoins} relies on to build the
+ * plans of subsets before those of the sets containing them.
+ */
+class JoinGraph {
+
+    /** maximum number of tables, one per bit of a long */
+    static final int MAX_TABLES = 64;
+
+    /** the alias of each table, by number */
+    private final ArrayList<String> aliases = new ArrayList<String>();
+    private final HashMap<String, Integer> numbers = new HashMap<String, Integer>();
+
+    /** the joins between tables, and the bits of their two tables */
+    private final ArrayList<LogicalJoinNode> edges = new ArrayList<LogicalJoinNode>();
+    private long[] t1s;
+    private long[] t2s;
+
+    /** the tables each table is joined with, by table number */
+    private long[] neighbors;
+
+    /** the joins with a subquery, which join whatever their table is in */
+    private final ArrayList<LogicalJoinNode> subplanJoins = new ArrayList<LogicalJoinNode>();
+
+    /**
+     * @throws ParsingException if the joins have more than MAX_TABLES tables
+     */
+    JoinGraph(List<LogicalJoinNode> joins) throws ParsingException {
+        HashMap<String, ArrayList<String>> adjacent = new HashMap<String, ArrayList<String>>();
+        ArrayList<String> seen = new ArrayList<String>();
+        for (LogicalJoinNode j : joins) {
+            if (j instanceof LogicalSubplanJoinNode) {
+                subplanJoins.add(j);
+                continue;
+            }
+            edges.add(j);
+            link(adjacent, seen, j.t1Alias, j.t2Alias);
+            link(adjacent, seen, j.t2Alias, j.t1Alias);
+        }
+        // number each connected part breadth first from its first table
+        for (String start : seen) {
+            if (numbers.containsKey(start))
+                continue;
+            addTable(start);
+            for (int next = aliases.size() - 1; next < aliases.size(); next++) {
+                for (String t : adjacent.get(aliases.get(next))) {
+                    if (!numbers.containsKey(t))
+                        addTable(t);
+                }
+            }
+        }
+        if (aliases.size() > MAX_TABLES)
+            throw new ParsingException("Cannot join more than " + MAX_TABLES + " tables");
+
+        neighbors = new long[aliases.size()];
+        t1s = new long[edges.size()];
+        t2s = new long[edges.size()];
+        for (int k = 0; k < edges.size(); k++) {
+            int t1 = numbers.get(edges.get(k).t1Alias);
+            int t2 = numbers.get(edges.get(k).t2Alias);
+            t1s[k] = 1L << t1;
+            t2s[k] = 1L << t2;
+            if (t1 != t2) {
+                neighbors[t1] |= t2s[k];
+                neighbors[t2] |= t1s[k];
+            }
+        }
+    }
+
+    private static void link(HashMap<String, ArrayList<String>> adjacent, ArrayList<String> seen,
+            String from, String to) {
+        ArrayList<String> ts = adjacent.get(from);
+        if (ts == null) {
+            ts = new ArrayList<String>();
+            adjacent.put(from, ts);
+            seen.add(from);
+        }
+        ts.add(to);
+    }
+
+    private void addTable(String alias) {
+        numbers.put(alias, aliases.size());
+        aliases.add(alias);
+    }
+
+    /** @return the number of tables */
+    int size() {
+        return aliases.size();
+    }
+
+    /** @return the set of all the tables */
+    long all() {
+        return aliases.size() == MAX_TABLES ? -1L : (1L << aliases.size()) - 1;
+    }
+
+    /** @return the alias of table number i */
+    String alias(int i) {
+        return aliases.get(i);
+    }
+
+    /** @return the number of the table alias, or null if no join has it */
+    Integer number(String alias) {
+        return numbers.get(alias);
+    }
+
+    /** @return the tables not in s joined with a table in s */
+    long neighbors(long s) {
+        long n = 0;
+        for (long rest = s; rest != 0; rest &= rest - 1)
+            n |= neighbors[Long.numberOfTrailingZeros(rest)];
+        return n & ~s;
+    }
+
+    /** @return the number of joins between tables */
+    int numEdges() {
+        return edges.size();
+    }
+
+    /** @return join number k */
+    LogicalJoinNode edge(int k) {
+        return edges.get(k);
+    }
+
+    /** @return the bit of the first table of join number k */
+    long t1(int k) {
+        return t1s[k];
+    }
+
+    /** @return the bit of the second table of join number k */
+    long t2(int k) {
+        return t2s[k];
+    }
+
+    /** @return the joins with a subquery */
+    ArrayList<LogicalJoinNode> subplanJoins() {
+        return subplanJoins;
+    }
+}
@@ -14,6 +14,15 @@ public class JoinOptimizer {
     LogicalPlan p;
     Vector<LogicalJoinNode> joins;
 
+    /** default number of tables up to which joins are ordered by dynamic
+     * programming */
+    public final static int MAX_DP_TABLES = 12;
+
+    private int maxDpTables = MAX_DP_TABLES;
+
+    /** number of pairs of plans considered by the last call to orderJoins */
+    private long numPairs = 0;
+
     /**
      * Constructor
      * 
@@ -34,6 +43,14 @@ public class JoinOptimizer {
      * inner/outer here -- because OpIterator's don't provide any cardinality
      * estimates, and stats only has information about the base tables. For this
      * reason, the plan1
+     * <p>
+     * The join is evaluated with the algorithm the optimizer chose for it
+     * (see {@link LogicalJoinNode#algorithm}), if that algorithm can evaluate
+     * it over these children. Two sides that are already sorted on their
+     * join fields are merged with a SortMergeJoin unless the optimizer chose
+     * a nested-loops join. Otherwise an equality join is hashed with a
+     * HashEquiJoin, a range join sorts its unsorted sides and merges them,
+     * and other joins are block nested-loops Joins.
      * 
      * @param lj
      *            The join being considered
@@ -68,7 +85,38 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        LogicalJoinNode.Algorithm algorithm = lj.algorithm;
+        if (algorithm == LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP
+                && !IndexNestedLoopJoin.canProbe(plan2, t2id))
+            // the inner side is no longer a scan of the index
+            algorithm = null;
+
+        if (algorithm == LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP) {
+            j = new IndexNestedLoopJoin(p, plan1, plan2);
+        } else if (algorithm == LogicalJoinNode.Algorithm.NESTED_LOOP) {
+            Join nl = new Join(p, plan1, plan2);
+            nl.setMemoryBudget(1);
+            j = nl;
+        } else if (algorithm == LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP
+                || !SortMergeJoin.canJoin(lj.p)) {
+            // only a nested-loops join can evaluate <> and LIKE
+            j = new Join(p, plan1, plan2);
+        } else if (SortMergeJoin.isSortedOn(plan1, t1id)
+                && SortMergeJoin.isSortedOn(plan2, t2id)) {
+            j = new SortMergeJoin(p, plan1, plan2);
+        } else if (lj.p == Predicate.Op.EQUALS
+                && algorithm != LogicalJoinNode.Algorithm.SORT_MERGE) {
+            // hashing reads each side once without sorting either
+            j = new HashEquiJoin(p, plan1, plan2);
+        } else {
+            // sorting the sides of a range join costs less than comparing
+            // every pair of tuples
+            if (!SortMergeJoin.isSortedOn(plan1, t1id))
+                plan1 = new OrderBy(t1id, true, plan1);
+            if (!SortMergeJoin.isSortedOn(plan2, t2id))
+                plan2 = new OrderBy(t2id, true, plan2);
+            j = new SortMergeJoin(p, plan1, plan2);
+        }
 
         return j;
 
@@ -82,6 +130,10 @@ public class JoinOptimizer {
      * the amount of data that must be read over the course of the query, as
      * well as the number of CPU opertions performed by your join. Assume that
      * the cost of a single predicate application is roughly 1.
+     * <p>
+     * This is the cost of the cheapest algorithm that can evaluate j without
+     * an index; see {@link #estimateJoinCost(LogicalJoinNode,
+     * LogicalJoinNode.Algorithm, int, int, double, double)}.
      * 
      * 
      * @param j
@@ -106,15 +158,138 @@ public class JoinOptimizer {
             // A LogicalSubplanJoinNode represents a subquery.
             // You do not need to implement proper support for these for Lab 3.
             return card1 + cost1 + cost2;
-        } else {
-            // Insert your code here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic
-            // nested-loops join.
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (LogicalJoinNode.Algorithm a : LogicalJoinNode.Algorithm.values()) {
+            if (a != LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP)
+                best = Math.min(best, estimateJoinCost(j, a, card1, card2, cost1, cost2));
+        }
+        return best;
+    }
+
+    /**
+     * Estimate the cost of evaluating a join with the specified algorithm,
+     * given the memory budgets its operator starts with. The index
+     * nested-loops join needs the stats of t2, and is costed by
+     * {@link #estimateIndexJoinCost} instead.
+     * 
+     * @param j
+     *            A LogicalJoinNode representing the join operation being
+     *            performed.
+     * @param algorithm
+     *            The algorithm to evaluate j with
+     * @param card1
+     *            Estimated cardinality of the left-hand side of the query
+     * @param card2
+     *            Estimated cardinality of the right-hand side of the query
+     * @param cost1
+     *            Estimated cost of one full scan of the table on the left-hand
+     *            side of the query
+     * @param cost2
+     *            Estimated cost of one full scan of the table on the right-hand
+     *            side of the query
+     * @return An estimate of the cost of this query, or
+     *         Double.POSITIVE_INFINITY if the algorithm cannot evaluate j
+     */
+    public double estimateJoinCost(LogicalJoinNode j, LogicalJoinNode.Algorithm algorithm,
+            int card1, int card2, double cost1, double cost2) {
+        if (j instanceof LogicalSubplanJoinNode)
+            return card1 + cost1 + cost2;
+        switch (algorithm) {
+        case NESTED_LOOP:
             // joincost(t1 join t2) = scancost(t1) + ntups(t1) x scancost(t2) //IO cost
             //         + ntups(t1) x ntups(t2)  //CPU cost
-            return cost1 + card1 * cost2 + card1 * card2;
+            return cost1 + (double) card1 * cost2 + (double) card1 * card2;
+        case BLOCK_NESTED_LOOP: {
+            // Join scans t2 once per block of Join.BLOCK_SIZE tuples of t1:
+            // joincost(t1 join t2) = scancost(t1) + nblocks(t1) x scancost(t2) //IO cost
+            //         + ntups(t1) x ntups(t2)  //CPU cost
+            double blocks = Math.max(1, Math.ceil(card1 / (double) Join.BLOCK_SIZE));
+            return cost1 + blocks * cost2 + (double) card1 * card2;
+        }
+        case HASH:
+            if (j.p != Predicate.Op.EQUALS)
+                return Double.POSITIVE_INFINITY;
+            // HashEquiJoin reads each side once and hashes each tuple, and
+            // writes and reads both sides back once per level of partitions
+            // when t1 does not fit in HashEquiJoin.MAP_SIZE tuples:
+            // joincost(t1 join t2) = scancost(t1) + scancost(t2) //IO cost
+            //         + (1 + 2 x nlevels) x (ntups(t1) + ntups(t2))  //CPU cost
+            return cost1 + cost2 + (1 + 2 * hashLevels(card1)) * ((double) card1 + card2);
+        case SORT_MERGE:
+            if (!SortMergeJoin.canJoin(j.p))
+                return Double.POSITIVE_INFINITY;
+            // SortMergeJoin sorts both sides and merges them:
+            // joincost(t1 join t2) = scancost(t1) + scancost(t2) //IO cost
+            //         + sortcost(t1) + sortcost(t2) + ntups(t1) + ntups(t2)  //CPU cost
+            return cost1 + cost2 + sortCost(card1) + sortCost(card2) + card1 + card2;
+        default:
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * @return the number of times HashEquiJoin partitions card tuples before
+     *         they fit in memory
+     */
+    private static int hashLevels(int card) {
+        int levels = 0;
+        for (double size = card; size > HashEquiJoin.MAP_SIZE; size /= HashEquiJoin.FANOUT)
+            levels++;
+        return levels;
+    }
+
+    /**
+     * @return the cost of sorting card tuples with OrderBy: the comparisons,
+     *         and the tuples written and read back once per merge pass when
+     *         they do not fit in OrderBy.SORT_SIZE tuples
+     */
+    private static double sortCost(int card) {
+        if (card <= 1)
+            return 0;
+        double cost = card * (Math.log(card) / Math.log(2));
+        for (double runs = Math.ceil(card / (double) OrderBy.SORT_SIZE); runs > 1;
+                runs = Math.ceil(runs / OrderBy.MERGE_FANIN))
+            cost += 2.0 * card;
+        return cost;
+    }
+
+    /**
+     * Estimate the cost of a join that looks up the matching tuples of t2
+     * through its B+ tree index for each tuple of t1, as an
+     * IndexNestedLoopJoin does. The cost of a lookup comes from the
+     * TableStats of t2.
+     * 
+     * @param j
+     *            A LogicalJoinNode representing the join operation being
+     *            performed.
+     * @param card1
+     *            Estimated cardinality of the left-hand side of the query
+     * @param cost1
+     *            Estimated cost of one full scan of the table on the left-hand
+     *            side of the query
+     * @param stats
+     *            The table stats, referenced by table names, not alias
+     * @return An estimate of the cost of this query, or
+     *         Double.POSITIVE_INFINITY if t2 has no index on the join field
+     */
+    public double estimateIndexJoinCost(LogicalJoinNode j, int card1,
+            double cost1, Map<String, TableStats> stats) {
+        Predicate.Op op = IndexNestedLoopJoin.probeOp(j.p);
+        Integer t2id = j.t2Alias == null ? null : p.getTableId(j.t2Alias);
+        if (j instanceof LogicalSubplanJoinNode || op == null || t2id == null)
+            return Double.POSITIVE_INFINITY;
+        TableStats s = stats.get(Database.getCatalog().getTableName(t2id));
+        int field;
+        try {
+            field = Database.getCatalog().getTupleDesc(t2id).fieldNameToIndex(j.f2PureName);
+        } catch (NoSuchElementException e) {
+            return Double.POSITIVE_INFINITY;
         }
+        if (s == null)
+            return Double.POSITIVE_INFINITY;
+        // joincost(t1 join t2) = scancost(t1) + ntups(t1) x lookupcost(t2)
+        return cost1 + card1 * s.estimateIndexLookupCost(field, op);
     }
 
     /**
@@ -150,7 +325,10 @@ public class JoinOptimizer {
     }
 
     /**
-     * Estimate the join cardinality of two tables.
+     * Estimate the join cardinality of two tables. An equi-join of fields
+     * that are not keys is estimated as card1 * card2 / max(ndv1, ndv2),
+     * where ndv is the number of distinct values of each field, from the
+     * statistics of its table, among the tuples of its side.
      * */
     public static int estimateTableJoinCardinality(Predicate.Op joinOp,
                                                    String table1Alias, String table2Alias, String field1PureName,
@@ -167,7 +345,15 @@ public class JoinOptimizer {
                 } else if (t2pkey) {
                     joinCardinality = card1;
                 } else {
-                    joinCardinality = Math.max(card1, card2);
+                    double ndv1 = distinctValues(table1Alias, field1PureName, card1, stats, tableAliasToId);
+                    double ndv2 = distinctValues(table2Alias, field2PureName, card2, stats, tableAliasToId);
+                    if (ndv1 >= 0 && ndv2 >= 0) {
+                        double ndv = Math.max(ndv1, ndv2);
+                        double card = ndv == 0 ? 0 : (double) card1 * card2 / ndv;
+                        joinCardinality = (int) Math.min(Integer.MAX_VALUE, Math.round(card));
+                    } else {
+                        joinCardinality = Math.max(card1, card2);
+                    }
                 }
                 break;
             case NOT_EQUALS:
@@ -180,6 +366,29 @@ public class JoinOptimizer {
         return joinCardinality;
     }
 
+    /**
+     * @return the number of distinct values of the field of a table among
+     *         card of its tuples, or -1 if there are no statistics on it
+     */
+    private static double distinctValues(String tableAlias, String fieldPureName, int card,
+            Map<String, TableStats> stats, Map<String, Integer> tableAliasToId) {
+        Integer tableId = tableAliasToId.get(tableAlias);
+        if (tableId == null)
+            return -1;
+        TableStats s = stats.get(Database.getCatalog().getTableName(tableId));
+        if (s == null)
+            return -1;
+        int field;
+        try {
+            field = Database.getCatalog().getTupleDesc(tableId).fieldNameToIndex(fieldPureName);
+        } catch (NoSuchElementException e) {
+            return -1;
+        }
+        // a side with fewer tuples than distinct values has at most one
+        // distinct value per tuple
+        return Math.min(s.estimateDistinctValues(field), card);
+    }
+
     /**
      * Helper method to enumerate all of the subsets of a given size of a
      * specified vector.
@@ -216,6 +425,14 @@ public class JoinOptimizer {
     /**
      * Compute a logical, reasonably efficient join on the specified tables. See
      * PS4 for hints on how this should be implemented.
+     * <p>
+     * Sets of tables are bitmasks over the tables of a {@link JoinGraph}.
+     * Queries of up to {@link #setMaxDpTables} tables are planned by dynamic
+     * programming over the pairs of connected sets of tables that a join
+     * connects, enumerated as in DPccp, so no set of tables is considered
+     * that would need a cross product, and bushy plans are considered as
+     * well as left-deep ones. Larger queries are planned greedily, by
+     * joining the two plans with the smallest result until one is left.
      * 
      * @param stats
      *            Statistics for each table involved in the join, referenced by
@@ -227,8 +444,9 @@ public class JoinOptimizer {
      * @param explain
      *            Indicates whether your code should explain its query plan or
      *            simply execute it
-     * @return A Vector<LogicalJoinNode> that stores joins in the left-deep
-     *         order in which they should be executed.
+     * @return A Vector<LogicalJoinNode> that stores joins in the order in
+     *         which they should be executed; a join of two tables that are
+     *         both already joined joins the plans they are in.
      * @throws ParsingException
      *             when stats or filter selectivities is missing a table in the
      *             join, or or when another internal error occurs
@@ -240,299 +458,289 @@ public class JoinOptimizer {
         //Not necessary for labs 1--3
 
         // some code goes here
-        //Replace the following
-        int lengthOfJ = joins.size();
-        Vector<LogicalJoinNode> bestPlan = null;
+        JoinGraph graph = new JoinGraph(joins);
         PlanCache planCache = new PlanCache();
-        for (int i = 1; i <= lengthOfJ; i++) {
-            Iterator<Set<LogicalJoinNode>> subsetIterator = getSubsetIterator(joins, i);
-//            Set<Set<LogicalJoinNode>> subsets = enumerateSubsets(joins, i);
-            while (subsetIterator.hasNext()) {
-                Set<LogicalJoinNode> s = subsetIterator.next();
-                double bestCostSoFar = Double.MAX_VALUE;
-                CostCard bestPlanSoFar = null;
-                for (LogicalJoinNode joinNode : s) {
-                    CostCard costCard = computeCostAndCardOfSubplan(stats, filterSelectivities, joinNode, s, bestCostSoFar, planCache);
-                    if (costCard != null && costCard.cost < bestCostSoFar) {
-                        bestCostSoFar = costCard.cost;
-                        bestPlanSoFar = costCard;
-                    }
-                }
-                if (bestPlanSoFar != null) {
-                    planCache.addPlan(s, bestPlanSoFar.cost, bestPlanSoFar.card, bestPlanSoFar.plan);
-                }
+        numPairs = 0;
+        for (int i = 0; i < graph.size(); i++) {
+            String alias = graph.alias(i);
+            Integer tableId = p.getTableId(alias);
+            if (tableId == null)
+                throw new ParsingException("Unknown table " + alias);
+            TableStats s = stats.get(Database.getCatalog().getTableName(tableId));
+            Double selectivity = filterSelectivities.get(alias);
+            if (s == null || selectivity == null)
+                throw new ParsingException("No statistics for table " + alias);
+            planCache.addPlan(1L << i, s.estimateScanCost(),
+                    s.estimateTableCardinality(selectivity), 0, -1, null, false);
+        }
+        if (graph.size() <= maxDpTables) {
+            for (int i = graph.size() - 1; i >= 0; i--) {
+                long start = 1L << i;
+                emitCsg(graph, start, planCache, stats);
+                enumerateCsgRec(graph, start, upTo(i), planCache, stats);
             }
+        } else {
+            orderGreedily(graph, planCache, stats);
         }
-        bestPlan = planCache.getOrder(new HashSet<LogicalJoinNode>(joins));
+
+        Vector<LogicalJoinNode> bestPlan = new Vector<LogicalJoinNode>();
+        if (graph.size() > 0) {
+            if (planCache.find(graph.all()) == PlanCache.NONE)
+                // the joins do not connect all the tables
+                return bestPlan;
+            boolean[] added = new boolean[graph.numEdges()];
+            addJoins(graph, graph.all(), planCache, added, bestPlan);
+            // joins of a table with itself never connect two sets of tables
+            for (int k = 0; k < graph.numEdges(); k++) {
+                if (!added[k])
+                    bestPlan.addElement(graph.edge(k));
+            }
+        }
+        bestPlan.addAll(graph.subplanJoins());
         if (explain) {
-            printJoins(bestPlan, planCache, stats, filterSelectivities);
+            printJoins(bestPlan, graph, planCache, stats, filterSelectivities);
         }
         return bestPlan;
     }
 
-    public <T> Iterator<Set<T>> getSubsetIterator(final Vector<T> v, int size) {
-        final SubsetBitsetIterator bitsetIterator = new SubsetBitsetIterator(v.size(), size);
-        return new Iterator<Set<T>>() {
-
-            @Override
-            public boolean hasNext() {
-                return bitsetIterator.hasNext();
-            }
-
-            @Override
-            public Set<T> next() {
-                List<Integer> bitset = bitsetIterator.next();
-                Set<T> subset = new HashSet<T>();
-                for (int i = 0; i < v.size(); i++) {
-                    if (bitset.get(i) == SubsetBitsetIterator.ONE) {
-                        subset.add(v.get(i));
-                    }
-                }
-                return subset;
-            }
-
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException();
-            }
-
-        };
+    /**
+     * Set the number of tables up to which orderJoins finds the best plan by
+     * dynamic programming; larger queries are planned greedily.
+     */
+    public void setMaxDpTables(int tables) {
+        if (tables < 0)
+            throw new IllegalArgumentException("number of tables must not be negative");
+        this.maxDpTables = tables;
     }
 
-    private static class SubsetBitsetIterator implements Iterator<List<Integer>> {
+    /**
+     * @return the number of pairs of plans the last call to orderJoins
+     *         considered joining
+     */
+    public long getNumPairs() {
+        return numPairs;
+    }
 
-        private final int superSize;
-        private final List<Integer> next;
+    /** @return the set of the tables numbered up to i */
+    private static long upTo(int i) {
+        return i == JoinGraph.MAX_TABLES - 1 ? -1L : (1L << (i + 1)) - 1;
+    }
 
-        protected static final Integer ZERO = Integer.valueOf(0);
-        protected static final Integer ONE = Integer.valueOf(1);
+    /**
+     * Enumerate the connected sets of tables that contain s and no table of
+     * x, other than s itself, and the complements of each (EnumerateCsgRec
+     * of DPccp).
+     */
+    private void enumerateCsgRec(JoinGraph graph, long s, long x, PlanCache pc,
+            HashMap<String, TableStats> stats) {
+        long n = graph.neighbors(s) & ~x;
+        // the subsets of n in increasing order
+        for (long sub = (0 - n) & n; sub != 0; sub = (sub - n) & n)
+            emitCsg(graph, s | sub, pc, stats);
+        for (long sub = (0 - n) & n; sub != 0; sub = (sub - n) & n)
+            enumerateCsgRec(graph, s | sub, x | n, pc, stats);
+    }
 
-        protected SubsetBitsetIterator(int superSize, int subSize) {
-            this.superSize = superSize;
-            this.next = new ArrayList<Integer>();
-            for (int i = 0; i < superSize; i++) {
-                if (i < subSize) {
-                    next.add(ONE);
-                } else {
-                    next.add(ZERO);
-                }
-            }
+    /**
+     * Join the connected set of tables s1 with each connected set of tables
+     * joined with it whose smallest table is numbered above those of s1
+     * (EmitCsg of DPccp).
+     */
+    private void emitCsg(JoinGraph graph, long s1, PlanCache pc,
+            HashMap<String, TableStats> stats) {
+        long x = s1 | upTo(Long.numberOfTrailingZeros(s1));
+        long n = graph.neighbors(s1) & ~x;
+        for (int i = 63 - Long.numberOfLeadingZeros(n); i >= 0; i--) {
+            long s2 = 1L << i;
+            if ((n & s2) == 0)
+                continue;
+            joinSubplans(graph, s1, s2, pc, stats);
+            enumerateCmpRec(graph, s1, s2, x | (upTo(i) & n), pc, stats);
         }
+    }
 
-        @Override
-        public boolean hasNext() {
-            return !next.isEmpty();
-        }
+    /**
+     * Join s1 with each connected set of tables that contains s2 and no table
+     * of x, other than s2 itself (EnumerateCmpRec of DPccp).
+     */
+    private void enumerateCmpRec(JoinGraph graph, long s1, long s2, long x,
+            PlanCache pc, HashMap<String, TableStats> stats) {
+        long n = graph.neighbors(s2) & ~x;
+        for (long sub = (0 - n) & n; sub != 0; sub = (sub - n) & n)
+            joinSubplans(graph, s1, s2 | sub, pc, stats);
+        for (long sub = (0 - n) & n; sub != 0; sub = (sub - n) & n)
+            enumerateCmpRec(graph, s1, s2 | sub, x | n, pc, stats);
+    }
 
-        @Override
-        public List<Integer> next() {
-            List<Integer> oldNext = new ArrayList<Integer>(next);
-            if (oldNext.get(superSize - 1) == ZERO) {
-                int i;
-                for (i  = superSize - 2; i >= 0; i--) {
-                    if (oldNext.get(i) == ONE) {
-                        break;
-                    }
-                }
-                next.set(i, ZERO);
-                next.set(i + 1, ONE);
-            } else {
-                int numberOfTrailingOnes = 0;
-                int i;
-                for (i = superSize - 1; i >= 0; i--) {
-                    if (oldNext.get(i) == ZERO) {
-                        break;
-                    }
-                    next.set(i, ZERO);
-                    numberOfTrailingOnes++;
-                }
-                for (i-- ; i >= 0; i--) {
-                    if (oldNext.get(i) == ONE) {
-                        break;
+    /**
+     * Plan the tables of graph by greedy operator ordering: start with a plan
+     * per table, and join the two plans whose join has the smallest
+     * cardinality until one plan is left or no two plans are joined.
+     */
+    private void orderGreedily(JoinGraph graph, PlanCache pc,
+            HashMap<String, TableStats> stats) {
+        long[] parts = new long[graph.size()];
+        for (int i = 0; i < parts.length; i++)
+            parts[i] = 1L << i;
+        for (int count = parts.length; count > 1; count--) {
+            int bestA = -1, bestB = -1;
+            for (int a = 0; a < count; a++) {
+                for (int b = a + 1; b < count; b++) {
+                    if ((graph.neighbors(parts[a]) & parts[b]) == 0)
+                        continue;
+                    joinSubplans(graph, parts[a], parts[b], pc, stats);
+                    long s = parts[a] | parts[b];
+                    if (bestA < 0 || isSmaller(pc, s, parts[bestA] | parts[bestB])) {
+                        bestA = a;
+                        bestB = b;
                     }
                 }
-                if (i < 0) {
-                    next.clear();
-                    return oldNext;
-                }
-                next.set(i, ZERO);
-                i++;
-                for (int j = 0; j < numberOfTrailingOnes + 1; j++) {
-                    next.set(i + j, ONE);
-                }
             }
-            return oldNext;
+            if (bestA < 0)
+                return;
+            parts[bestA] |= parts[bestB];
+            parts[bestB] = parts[count - 1];
         }
+    }
 
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
+    /**
+     * @return true if the plan of s1 has a smaller cardinality than that of
+     *         s2, or the same cardinality and a smaller cost
+     */
+    private static boolean isSmaller(PlanCache pc, long s1, long s2) {
+        int card1 = pc.getCard(s1), card2 = pc.getCard(s2);
+        return card1 < card2 || (card1 == card2 && pc.getCost(s1) < pc.getCost(s2));
+    }
+
+    /**
+     * Add the joins of the best plan for s in pc to plan, in the order they
+     * are executed: the joins of its outer subset, those of its inner subset,
+     * and then the join of the two, followed by any other join of a table of
+     * one with a table of the other.
+     */
+    private static void addJoins(JoinGraph graph, long s, PlanCache pc,
+            boolean[] added, Vector<LogicalJoinNode> plan) {
+        long outer = pc.getOuter(s);
+        if (outer == 0)
+            return;
+        long inner = s & ~outer;
+        addJoins(graph, outer, pc, added, plan);
+        addJoins(graph, inner, pc, added, plan);
+        plan.addElement(pc.getJoin(s));
+        added[pc.getEdge(s)] = true;
+        for (int k = 0; k < graph.numEdges(); k++) {
+            if (!added[k] && connects(graph, k, outer, inner)) {
+                plan.addElement(graph.edge(k));
+                added[k] = true;
+            }
         }
+    }
 
+    /** @return true if join number k joins a table of s1 with one of s2 */
+    private static boolean connects(JoinGraph graph, int k, long s1, long s2) {
+        return ((graph.t1(k) & s1) != 0 && (graph.t2(k) & s2) != 0)
+                || ((graph.t1(k) & s2) != 0 && (graph.t2(k) & s1) != 0);
     }
 
     // ===================== Private Methods =================================
 
     /**
      * This is a helper method that computes the cost and cardinality of joining
-     * joinToRemove to joinSet (joinSet should contain joinToRemove), given that
-     * all of the subsets of size joinSet.size() - 1 have already been computed
-     * and stored in PlanCache pc.
+     * the best plans of the disjoint sets of tables s1 and s2, which must both
+     * be in PlanCache pc, through each join of a table of one with a table of
+     * the other, with either plan as the outer one, and with the cheapest
+     * algorithm. The cheapest of these is stored in pc as the plan of the
+     * union of s1 and s2, unless pc has a cheaper plan for it already.
      * 
+     * @param graph
+     *            the tables and joins of the query
+     * @param s1
+     *            a set of tables
+     * @param s2
+     *            another set of tables, joined with s1
+     * @param pc
+     *            the PlanCache for this join
      * @param stats
      *            table stats for all of the tables, referenced by table names
      *            rather than alias (see {@link #orderJoins})
-     * @param filterSelectivities
-     *            the selectivities of the filters over each of the tables
-     *            (where tables are indentified by their alias or name if no
-     *            alias is given)
-     * @param joinToRemove
-     *            the join to remove from joinSet
-     * @param joinSet
-     *            the set of joins being considered
-     * @param bestCostSoFar
-     *            the best way to join joinSet so far (minimum of previous
-     *            invocations of computeCostAndCardOfSubplan for this joinSet,
-     *            from returned CostCard)
-     * @param pc
-     *            the PlanCache for this join; should have subplans for all
-     *            plans of size joinSet.size()-1
-     * @return A {@link CostCard} objects desribing the cost, cardinality,
-     *         optimal subplan
-     * @throws ParsingException
-     *             when stats, filterSelectivities, or pc object is missing
-     *             tables involved in join
      */
-    @SuppressWarnings("unchecked")
-    private CostCard computeCostAndCardOfSubplan(
-            HashMap<String, TableStats> stats,
-            HashMap<String, Double> filterSelectivities,
-            LogicalJoinNode joinToRemove, Set<LogicalJoinNode> joinSet,
-            double bestCostSoFar, PlanCache pc) throws ParsingException {
-
-        LogicalJoinNode j = joinToRemove;
-
-        Vector<LogicalJoinNode> prevBest;
-
-        if (this.p.getTableId(j.t1Alias) == null)
-            throw new ParsingException("Unknown table " + j.t1Alias);
-        if (this.p.getTableId(j.t2Alias) == null)
-            throw new ParsingException("Unknown table " + j.t2Alias);
-
-        String table1Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t1Alias));
-        String table2Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t2Alias));
-        String table1Alias = j.t1Alias;
-        String table2Alias = j.t2Alias;
-
-        Set<LogicalJoinNode> news = (Set<LogicalJoinNode>) ((HashSet<LogicalJoinNode>) joinSet)
-                .clone();
-        news.remove(j);
-
-        double t1cost, t2cost;
-        int t1card, t2card;
-        boolean leftPkey, rightPkey;
-
-        if (news.isEmpty()) { // base case -- both are base relations
-            prevBest = new Vector<LogicalJoinNode>();
-            t1cost = stats.get(table1Name).estimateScanCost();
-            t1card = stats.get(table1Name).estimateTableCardinality(
-                    filterSelectivities.get(j.t1Alias));
-            leftPkey = isPkey(j.t1Alias, j.f1PureName);
-
-            t2cost = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateScanCost();
-            t2card = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateTableCardinality(
-                            filterSelectivities.get(j.t2Alias));
-            rightPkey = table2Alias == null ? false : isPkey(table2Alias,
-                    j.f2PureName);
-        } else {
-            // news is not empty -- figure best way to join j to news
-            prevBest = pc.getOrder(news);
-
-            // possible that we have not cached an answer, if subset
-            // includes a cross product
-            if (prevBest == null) {
-                return null;
-            }
-
-            double prevBestCost = pc.getCost(news);
-            int bestCard = pc.getCard(news);
-
-            // estimate cost of right subtree
-            if (doesJoin(prevBest, table1Alias)) { // j.t1 is in prevBest
-                t1cost = prevBestCost; // left side just has cost of whatever
-                                       // left
-                // subtree is
-                t1card = bestCard;
-                leftPkey = hasPkey(prevBest);
-
-                t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateScanCost();
-                t2card = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateTableCardinality(
-                                filterSelectivities.get(j.t2Alias));
-                rightPkey = j.t2Alias == null ? false : isPkey(j.t2Alias,
-                        j.f2PureName);
-            } else if (doesJoin(prevBest, j.t2Alias)) { // j.t2 is in prevbest
-                                                        // (both
-                // shouldn't be)
-                t2cost = prevBestCost; // left side just has cost of whatever
-                                       // left
-                // subtree is
-                t2card = bestCard;
-                rightPkey = hasPkey(prevBest);
-                t1cost = stats.get(table1Name).estimateScanCost();
-                t1card = stats.get(table1Name).estimateTableCardinality(
-                        filterSelectivities.get(j.t1Alias));
-                leftPkey = isPkey(j.t1Alias, j.f1PureName);
-
-            } else {
-                // don't consider this plan if one of j.t1 or j.t2
-                // isn't a table joined in prevBest (cross product)
-                return null;
-            }
-        }
-
-        // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
-
-        LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
-        if (cost2 < cost1) {
-            boolean tmp;
-            j = j2;
-            cost1 = cost2;
-            tmp = rightPkey;
-            rightPkey = leftPkey;
-            leftPkey = tmp;
+    private void joinSubplans(JoinGraph graph, long s1, long s2, PlanCache pc,
+            HashMap<String, TableStats> stats) {
+        numPairs++;
+        for (int k = 0; k < graph.numEdges(); k++) {
+            LogicalJoinNode j;
+            if ((graph.t1(k) & s1) != 0 && (graph.t2(k) & s2) != 0)
+                j = graph.edge(k);
+            else if ((graph.t1(k) & s2) != 0 && (graph.t2(k) & s1) != 0)
+                j = graph.edge(k).swapInnerOuter();
+            else
+                continue;
+            // case where s1 is the outer plan, and the reverse
+            considerJoin(j, k, s1, s2, pc, stats);
+            considerJoin(j.swapInnerOuter(), k, s2, s1, pc, stats);
         }
-        if (cost1 >= bestCostSoFar)
-            return null;
-
-        CostCard cc = new CostCard();
+    }
 
-        cc.card = estimateJoinCardinality(j, t1card, t2card, leftPkey,
+    /**
+     * Store the join j of the best plans of outer and inner as the plan of
+     * their union in pc, if it is cheaper than the plan pc has for it.
+     */
+    private void considerJoin(LogicalJoinNode j, int edge, long outer,
+            long inner, PlanCache pc, HashMap<String, TableStats> stats) {
+        boolean outerIsBase = Long.bitCount(outer) == 1;
+        boolean innerIsBase = Long.bitCount(inner) == 1;
+        double cost1 = pc.getCost(outer), cost2 = pc.getCost(inner);
+        int card1 = pc.getCard(outer), card2 = pc.getCard(inner);
+
+        // a base table on the inner side can also be looked up through its
+        // index instead of being scanned
+        CostCard best = cheapestAlgorithm(j, card1, card2, cost1, cost2,
+                innerIsBase, stats);
+        long s = outer | inner;
+        if (pc.find(s) != PlanCache.NONE && pc.getCost(s) <= best.cost)
+            return;
+
+        boolean leftPkey = outerIsBase ? isPkey(j.t1Alias, j.f1PureName)
+                : pc.hasPkey(outer);
+        boolean rightPkey = innerIsBase ? isPkey(j.t2Alias, j.f2PureName)
+                : pc.hasPkey(inner);
+        int card = estimateJoinCardinality(j, card1, card2, leftPkey,
                 rightPkey, stats);
-        cc.cost = cost1;
-        cc.plan = (Vector<LogicalJoinNode>) prevBest.clone();
-        cc.plan.addElement(j); // prevbest is left -- add new join to end
-        return cc;
+        boolean pkey = isPkey(j.t1Alias, j.f1PureName)
+                || isPkey(j.t2Alias, j.f2PureName)
+                || (!outerIsBase && pc.hasPkey(outer))
+                || (!innerIsBase && pc.hasPkey(inner));
+        pc.addPlan(s, best.cost, card, outer, edge,
+                j.withAlgorithm(best.algorithm), pkey);
     }
 
     /**
-     * Return true if the specified table is in the list of joins, false
-     * otherwise
+     * Find the cheapest algorithm for a join whose sides have the specified
+     * cardinalities and costs.
+     * 
+     * @param innerIsBase
+     *            true if t2 is a base table, which can be looked up through
+     *            its index
+     * @return a {@link CostCard} with the cost and the algorithm, but no plan
      */
-    private boolean doesJoin(Vector<LogicalJoinNode> joinlist, String table) {
-        for (LogicalJoinNode j : joinlist) {
-            if (j.t1Alias.equals(table)
-                    || (j.t2Alias != null && j.t2Alias.equals(table)))
-                return true;
+    private CostCard cheapestAlgorithm(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2, boolean innerIsBase,
+            HashMap<String, TableStats> stats) {
+        CostCard best = new CostCard();
+        best.cost = Double.POSITIVE_INFINITY;
+        for (LogicalJoinNode.Algorithm a : LogicalJoinNode.Algorithm.values()) {
+            double cost;
+            if (a == LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP)
+                cost = innerIsBase ? estimateIndexJoinCost(j, card1, cost1, stats)
+                        : Double.POSITIVE_INFINITY;
+            else
+                cost = estimateJoinCost(j, a, card1, card2, cost1, cost2);
+            if (best.algorithm == null || cost < best.cost) {
+                best.cost = cost;
+                best.algorithm = a;
+            }
         }
-        return false;
+        return best;
     }
 
     /**
@@ -551,20 +759,6 @@ public class JoinOptimizer {
         return pkey1.equals(field);
     }
 
-    /**
-     * Return true if a primary key field is joined by one of the joins in
-     * joinlist
-     */
-    private boolean hasPkey(Vector<LogicalJoinNode> joinlist) {
-        for (LogicalJoinNode j : joinlist) {
-            if (isPkey(j.t1Alias, j.f1PureName)
-                    || (j.t2Alias != null && isPkey(j.t2Alias, j.f2PureName)))
-                return true;
-        }
-        return false;
-
-    }
-
     /**
      * Helper function to display a Swing window with a tree representation of
      * the specified list of joins. See {@link #orderJoins}, which may want to
@@ -572,6 +766,8 @@ public class JoinOptimizer {
      * 
      * @param js
      *            the join plan to visualize
+     * @param graph
+     *            the tables and joins of the query
      * @param pc
      *            the PlanCache accumulated whild building the optimal plan
      * @param stats
@@ -581,8 +777,8 @@ public class JoinOptimizer {
      *            (where tables are indentified by their alias or name if no
      *            alias is given)
      */
-    private void printJoins(Vector<LogicalJoinNode> js, PlanCache pc,
-                            HashMap<String, TableStats> stats,
+    private void printJoins(Vector<LogicalJoinNode> js, JoinGraph graph,
+                            PlanCache pc, HashMap<String, TableStats> stats,
                             HashMap<String, Double> selectivities) {
 
         JFrame f = new JFrame("Join Plan for " + p.getQuery());
@@ -595,74 +791,42 @@ public class JoinOptimizer {
 
         f.setSize(300, 500);
 
+        // the plan each table is in, and the set of tables of that plan
         HashMap<String, DefaultMutableTreeNode> m = new HashMap<String, DefaultMutableTreeNode>();
+        HashMap<String, Long> sets = new HashMap<String, Long>();
 
-        // int numTabs = 0;
-
-        // int k;
         DefaultMutableTreeNode root = null, treetop = null;
-        HashSet<LogicalJoinNode> pathSoFar = new HashSet<LogicalJoinNode>();
-        boolean neither;
 
         System.out.println(js);
         for (LogicalJoinNode j : js) {
-            pathSoFar.add(j);
-            System.out.println("PATH SO FAR = " + pathSoFar);
-
-            String table1Name = Database.getCatalog().getTableName(
-                    this.p.getTableId(j.t1Alias));
-            String table2Name = Database.getCatalog().getTableName(
-                    this.p.getTableId(j.t2Alias));
-
-            // Double c = pc.getCost(pathSoFar);
-            neither = true;
-
-            root = new DefaultMutableTreeNode("Join " + j + " (Cost ="
-                    + pc.getCost(pathSoFar) + ", card = "
-                    + pc.getCard(pathSoFar) + ")");
-            DefaultMutableTreeNode n = m.get(j.t1Alias);
-            if (n == null) { // never seen this table before
-                n = new DefaultMutableTreeNode(j.t1Alias
-                        + " (Cost = "
-                        + stats.get(table1Name).estimateScanCost()
-                        + ", card = "
-                        + stats.get(table1Name).estimateTableCardinality(
-                                selectivities.get(j.t1Alias)) + ")");
-                root.add(n);
-            } else {
-                // make left child root n
-                root.add(n);
-                neither = false;
+            if (j.t2Alias == null) {
+                // a subplan join has no entry in pc
+                root = new DefaultMutableTreeNode("Join " + j);
+                root.add(treetop);
+                root.add(new DefaultMutableTreeNode("Subplan"));
+                treetop = root;
+                continue;
             }
-            m.put(j.t1Alias, root);
-
-            n = m.get(j.t2Alias);
-            if (n == null) { // never seen this table before
-
-                n = new DefaultMutableTreeNode(
-                        j.t2Alias == null ? "Subplan"
-                                : (j.t2Alias
-                                        + " (Cost = "
-                                        + stats.get(table2Name)
-                                                .estimateScanCost()
-                                        + ", card = "
-                                        + stats.get(table2Name)
-                                                .estimateTableCardinality(
-                                                        selectivities
-                                                                .get(j.t2Alias)) + ")"));
-                root.add(n);
-            } else {
-                // make right child root n
-                root.add(n);
-                neither = false;
+            long set1 = planOf(graph, sets, j.t1Alias);
+            long set2 = planOf(graph, sets, j.t2Alias);
+            long set = set1 | set2;
+            if (set1 == set2) {
+                // a further join of two tables that are already joined
+                continue;
             }
-            m.put(j.t2Alias, root);
-
-            // unless this table doesn't join with other tables,
-            // all tables are accessed from root
-            if (!neither) {
-                for (String key : m.keySet()) {
-                    m.put(key, root);
+            System.out.println("PLAN OF " + j + " = " + Long.toBinaryString(set));
+
+            root = new DefaultMutableTreeNode("Join " + j + " by " + j.algorithm + " (Cost ="
+                    + pc.getCost(set) + ", card = "
+                    + pc.getCard(set) + ")");
+            root.add(subtree(m, j.t1Alias, pc, set1));
+            root.add(subtree(m, j.t2Alias, pc, set2));
+
+            // every table of either side is now accessed from root
+            for (int i = 0; i < graph.size(); i++) {
+                if ((set & (1L << i)) != 0) {
+                    m.put(graph.alias(i), root);
+                    sets.put(graph.alias(i), set);
                 }
             }
 
@@ -697,4 +861,22 @@ public class JoinOptimizer {
 
     }
 
+    /** @return the set of tables of the plan alias is in so far */
+    private static long planOf(JoinGraph graph, HashMap<String, Long> sets,
+            String alias) {
+        Long set = sets.get(alias);
+        return set != null ? set : 1L << graph.number(alias);
+    }
+
+    /** @return the tree of the plan alias is in so far, with set as its tables */
+    private DefaultMutableTreeNode subtree(HashMap<String, DefaultMutableTreeNode> m,
+            String alias, PlanCache pc, long set) {
+        DefaultMutableTreeNode n = m.get(alias);
+        if (n == null) { // never seen this table before
+            n = new DefaultMutableTreeNode(alias + " (Cost = "
+                    + pc.getCost(set) + ", card = " + pc.getCard(set) + ")");
+        }
+        return n;
+    }
+
 }
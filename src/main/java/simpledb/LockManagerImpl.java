@@ -59,6 +59,47 @@ public class LockManagerImpl {
         return true;
     }
 
+    /**
+     * Acquire the lock only if no other transaction holds a conflicting one,
+     * without waiting and without recording a dependency.
+     *
+     * @return true if transactionId holds the lock after the call
+     */
+    public boolean tryAcquireLock(TransactionId transactionId, PageId pageId, Permissions permissions) {
+        TransactionId notNullTransactionId = (transactionId == null) ? new TransactionId()
+                : transactionId;
+        boolean acquired = false;
+        Object lock = getLock(pageId);
+        if (permissions == Permissions.READ_ONLY) {
+            if (hasReadPermissions(notNullTransactionId, pageId)) {
+                return true;
+            }
+            synchronized (lock) {
+                TransactionId exclusiveLockHolder = exclusiveLocks.get(pageId);
+                if (exclusiveLockHolder == null || notNullTransactionId.equals(exclusiveLockHolder)) {
+                    addSharedUser(notNullTransactionId, pageId);
+                    acquired = true;
+                }
+            }
+        } else if (permissions == Permissions.READ_WRITE) {
+            if (hasWritePermissions(notNullTransactionId, pageId)) {
+                return true;
+            }
+            synchronized (lock) {
+                if (!isLockedByOthers(notNullTransactionId, getLockHolders(pageId))) {
+                    addExclusiveUser(notNullTransactionId, pageId);
+                    acquired = true;
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Expected either READ_ONLY or READ_WRITE permissions.");
+        }
+        if (acquired) {
+            addPageToTransactionLocks(notNullTransactionId, pageId);
+        }
+        return acquired;
+    }
+
     private boolean hasReadPermissions(TransactionId transactionId, PageId pageId) {
         if (hasWritePermissions(transactionId, pageId)) {
             return true;
@@ -2,6 +2,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.lang.reflect.*;
 
@@ -88,6 +89,9 @@ public class LogFile {
     final static int LONG_SIZE = 8;
 
     long currentOffset = -1;//protected by this
+
+    /** buffer page data is serialized into before it goes to the log, protected by this */
+    private ByteBuffer pageBuffer;
     //    int pageSize;
     int totalRecords = 0; // for PatchTest //protected by this
 
@@ -240,12 +244,32 @@ public class LogFile {
         for (int i = 0; i < pageInfo.length; i++) {
             raf.writeInt(pageInfo[i]);
         }
-        byte[] pageData = p.getPageData();
-        raf.writeInt(pageData.length);
-        raf.write(pageData);
+        // serialize into the same buffer for every record, all callers hold
+        // the log's lock
+        if (pageBuffer == null || pageBuffer.capacity() < BufferPool.getPageSize()) {
+            pageBuffer = ByteBuffer.allocate(BufferPool.getPageSize());
+        }
+        pageBuffer.clear();
+        p.writePageData(pageBuffer);
+        raf.writeInt(pageBuffer.position());
+        raf.write(pageBuffer.array(), 0, pageBuffer.position());
         //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
     }
 
+    /**
+     * @return the constructor taking a page id and the page data, pages may
+     * have others
+     */
+    private static Constructor<?> pageConstructor(Constructor<?>[] pageConsts) {
+        for (Constructor<?> c : pageConsts) {
+            Class<?>[] params = c.getParameterTypes();
+            if (params.length == 2 && params[1] == byte[].class) {
+                return c;
+            }
+        }
+        return pageConsts[0];
+    }
+
     Page readPageData(RandomAccessFile raf) throws IOException {
         PageId pid;
         Page newPage = null;
@@ -275,7 +299,7 @@ public class LogFile {
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
 
-            newPage = (Page) pageConsts[0].newInstance(pageArgs);
+            newPage = (Page) pageConstructor(pageConsts).newInstance(pageArgs);
 
             //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
         } catch (ClassNotFoundException e) {
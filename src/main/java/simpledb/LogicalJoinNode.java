@@ -23,6 +23,26 @@ public class LogicalJoinNode {
     /** The join predicate */
     public Predicate.Op p;
 
+    /** The algorithms a join can be evaluated with */
+    public enum Algorithm {
+        /** compare every tuple of t1 with every tuple of t2 (a Join with a
+         * block of one tuple) */
+        NESTED_LOOP,
+        /** scan t2 once per block of tuples of t1 (a Join) */
+        BLOCK_NESTED_LOOP,
+        /** hash t1 and probe it with t2 (a HashEquiJoin) */
+        HASH,
+        /** sort both sides and merge them (a SortMergeJoin) */
+        SORT_MERGE,
+        /** look up the tuples of t2 through its B+ tree index for each
+         * tuple of t1 (an IndexNestedLoopJoin) */
+        INDEX_NESTED_LOOP
+    }
+
+    /** The algorithm the optimizer chose for this join, or null if it has
+     * not chosen one */
+    public Algorithm algorithm;
+
     public LogicalJoinNode() {
     }
 
@@ -63,6 +83,14 @@ public class LogicalJoinNode {
         return j2;
     }
     
+    /** Return a copy of this join that is evaluated with the specified
+     * algorithm. */
+    public LogicalJoinNode withAlgorithm(Algorithm algorithm) {
+        LogicalJoinNode j2 = new LogicalJoinNode(t1Alias,t2Alias,f1PureName,f2PureName, p);
+        j2.algorithm = algorithm;
+        return j2;
+    }
+
     @Override
     public boolean equals(Object o) {
         LogicalJoinNode j2 =(LogicalJoinNode)o;
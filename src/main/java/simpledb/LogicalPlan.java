@@ -35,6 +35,7 @@ public class LogicalPlan {
     private String aggField;
     private boolean oByAsc, hasOrderBy = false;
     private String oByField;
+    private int limit = -1;
     private String query;
 //    private Query owner;
 
@@ -216,6 +217,23 @@ public class LogicalPlan {
         hasOrderBy = true;
     }
 
+    /** Add a LIMIT clause: the query returns at most the first n tuples.  With an ORDER BY,
+        only the first n tuples in order are kept while the input is sorted.
+        @param n the number of tuples to return at most
+        @throws ParsingException if n is negative
+    */
+    public void addLimit(int n) throws ParsingException {
+        if (n < 0)
+            throw new ParsingException("LIMIT must not be negative");
+        limit = n;
+    }
+
+    /** Get the limit added via {@link #addLimit}, or -1 if the query has none.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
     /** Given a name of a field, try to figure out what table it belongs to by looking
      *   through all of the tables added via {@link #addScan}. 
      *  @return A fully qualified name of the form tableAlias.name.  If the name parameter is already qualified
@@ -294,7 +312,11 @@ public class LogicalPlan {
             LogicalScanNode table = tableIt.next();
             SeqScan ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias);
+                 TableStats stats = baseTableStats.get(Database.getCatalog().getTableName(table.t));
+                 // keep a scan bigger than the buffer pool from flushing it
+                 BufferRing ring = stats != null && stats.scanExceedsBufferPool() ? new BufferRing() : null;
+                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias, ring);
+                 ss.setPrefetchPages(HeapFile.DEFAULT_PREFETCH_PAGES);
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
@@ -471,14 +493,24 @@ public class LogicalPlan {
             } catch (IllegalArgumentException e) {
                 throw new simpledb.ParsingException(e);
             }
+            // a large table is aggregated on every core
+            aggNode.setParallelism(Runtime.getRuntime().availableProcessors());
             node = aggNode;
         }
 
         if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+            int oByIndex = node.getTupleDesc().fieldNameToIndex(oByField);
+            if (limit >= 0)
+                node = new TopN(oByIndex, oByAsc, limit, node);
+            else
+                node = new OrderBy(oByIndex, oByAsc, node);
         }
 
-        return new Project(outFields, outTypes, node);
+        Project project = new Project(outFields, outTypes, node);
+        if (limit >= 0 && !hasOrderBy)
+            // stop reading the plan once enough tuples were returned
+            return new Limit(limit, project);
+        return project;
     }
 
     public static void main(String argv[]) {
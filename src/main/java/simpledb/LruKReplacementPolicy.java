@@ -0,0 +1,137 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). The victim is the page whose
+ * K-th most recent reference is the oldest. Pages referenced fewer than K
+ * times have an infinite backward K-distance and are evicted first, oldest
+ * first, so a page touched once by a scan goes before a page that has been
+ * used repeatedly.
+ */
+public class LruKReplacementPolicy implements ReplacementPolicy {
+
+    public static final int DEFAULT_K = 2;
+
+    private static class History {
+        final PageId pid;
+        /**
+         * ring of the last k reference times
+         */
+        final long[] refs;
+        int count;
+
+        History(PageId pid, int k) {
+            this.pid = pid;
+            this.refs = new long[k];
+        }
+
+        void reference(long time) {
+            refs[count % refs.length] = time;
+            count++;
+        }
+
+        /**
+         * @return the time of the k-th most recent reference, valid once
+         * count >= k
+         */
+        long kthReference() {
+            return refs[count % refs.length];
+        }
+    }
+
+    private final int k;
+
+    private long clock = 0;
+
+    private final HashMap<PageId, History> histories = new HashMap<>();
+
+    /**
+     * pages with fewer than k references, in order of first reference
+     */
+    private final LinkedHashMap<PageId, History> young = new LinkedHashMap<>();
+
+    /**
+     * pages with at least k references, keyed by their k-th most recent
+     * reference time (unique since the clock ticks on every reference)
+     */
+    private final TreeMap<Long, History> old = new TreeMap<>();
+
+    public LruKReplacementPolicy(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1.");
+        }
+        this.k = k;
+    }
+
+    @Override
+    public void pageLoaded(PageId pid) {
+        History history = new History(pid, k);
+        histories.put(pid, history);
+        history.reference(++clock);
+        if (k == 1) {
+            old.put(history.kthReference(), history);
+        } else {
+            young.put(pid, history);
+        }
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        History history = histories.get(pid);
+        if (history == null) {
+            return;
+        }
+        if (history.count >= k) {
+            old.remove(history.kthReference());
+            history.reference(++clock);
+            old.put(history.kthReference(), history);
+        } else {
+            history.reference(++clock);
+            if (history.count == k) {
+                young.remove(pid);
+                old.put(history.kthReference(), history);
+            }
+        }
+    }
+
+    @Override
+    public void pageRemoved(PageId pid) {
+        History history = histories.remove(pid);
+        if (history == null) {
+            return;
+        }
+        if (history.count >= k) {
+            old.remove(history.kthReference());
+        } else {
+            young.remove(pid);
+        }
+    }
+
+    @Override
+    public PageId evict(Map<PageId, Page> resident) {
+        PageId victim = firstClean(young.values().iterator(), resident);
+        if (victim == null) {
+            victim = firstClean(old.values().iterator(), resident);
+        }
+        if (victim != null) {
+            histories.remove(victim);
+        }
+        return victim;
+    }
+
+    private PageId firstClean(Iterator<History> it, Map<PageId, Page> resident) {
+        while (it.hasNext()) {
+            History history = it.next();
+            if (resident.get(history.pid).isDirty() == null) {
+                it.remove();
+                return history.pid;
+            }
+        }
+        return null;
+    }
+}
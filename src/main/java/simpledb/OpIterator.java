@@ -34,6 +34,18 @@ public interface OpIterator extends Serializable {
    */
   public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException;
 
+  /**
+   * Returns the next tuples from the operator as a batch of column vectors.
+   * The batch belongs to the operator and is overwritten by the next call;
+   * see {@link TupleBatch}. An operator is read either with next or with
+   * nextBatch, not both, until it is rewound.
+   *
+   * @return a batch of at least one selected row, or null if there are no
+   *         more tuples.
+   * @throws IllegalStateException If the iterator has not been opened
+   */
+  public TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+
   /**
    * Resets the iterator to the start.
    * @throws DbException when rewind is unsupported.
@@ -33,6 +33,19 @@ public abstract class Operator implements OpIterator {
         return result;
     }
 
+    /**
+     * Fills a batch from hasNext and next, so operators that work one tuple
+     * at a time can feed operators that work on batches. Operators with a
+     * batch implementation of their own override this.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (!this.open)
+            throw new IllegalStateException("Operator not yet open");
+        if (batch == null)
+            batch = new TupleBatch(getTupleDesc());
+        return TupleBatch.fill(this, batch);
+    }
+
     /**
      * Returns the next Tuple in the iterator, or null if the iteration is
      * finished. Operator uses this method to implement both <code>next</code>
@@ -55,6 +68,7 @@ public abstract class Operator implements OpIterator {
     }
 
     private Tuple next = null;
+    private transient TupleBatch batch = null;
     private boolean open = false;
     private int estimatedCardinality = 0;
 
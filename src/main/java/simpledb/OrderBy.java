@@ -1,9 +1,18 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * OrderBy is an operator that implements a relational ORDER BY.
+ * <p>
+ * When the child has no more tuples than the memory budget, they are sorted
+ * in memory. Otherwise OrderBy does an external merge sort: the child is read
+ * in runs of the memory budget, each run is sorted and spilled to disk, and
+ * the runs are merged with a heap that holds one tuple of each. When there
+ * are more than MERGE_FANIN runs, groups of them are first merged into longer
+ * runs, so that the number of files read at once stays bounded too. The sort
+ * is stable, like the sort in memory.
  */
 public class OrderBy extends Operator {
 
@@ -16,6 +25,36 @@ public class OrderBy extends Operator {
     private Iterator<Tuple> it;
     private boolean asc;
 
+    /** default number of tuples sorted in memory at a time */
+    public final static int SORT_SIZE = 20000;
+
+    /** maximum number of runs merged at a time */
+    public final static int MERGE_FANIN = 64;
+
+    private int memoryBudget = SORT_SIZE;
+
+    /** the sorted runs spilled to disk, null if the child fits in memory */
+    transient private ArrayList<SpillFile> runs = null;
+
+    /** the head of each run being merged, ordered by merge order */
+    transient private PriorityQueue<RunHead> heads = null;
+
+    /** number of runs the child was split into the last time it was sorted */
+    transient private int numRuns = 0;
+
+    /** the next tuple of a run being merged */
+    private static class RunHead {
+        final SpillFile.Reader reader;
+        /** position of the run, which breaks ties to keep the sort stable */
+        final int run;
+        Tuple tuple;
+
+        RunHead(SpillFile.Reader reader, int run) {
+            this.reader = reader;
+            this.run = run;
+        }
+    }
+
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
      * 
@@ -53,24 +92,175 @@ public class OrderBy extends Operator {
         return td;
     }
 
+    /**
+     * Set the number of tuples to sort in memory at a time. Must be called
+     * before the operator is opened.
+     */
+    public void setMemoryBudget(int tuples) {
+        if (tuples <= 0)
+            throw new IllegalArgumentException("memory budget must be positive");
+        this.memoryBudget = tuples;
+    }
+
+    /**
+     * @return the number of sorted runs spilled to disk the last time the
+     *         operator was opened, or 0 if the child was sorted in memory
+     */
+    public int getNumRuns() {
+        return numRuns;
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        childTups.clear();
+        release();
+        numRuns = 0;
+        try {
+            sort();
+        } catch (IOException e) {
+            release();
+            throw new DbException("could not spill sorted run: " + e.getMessage());
+        }
         super.open();
     }
 
+    /**
+     * Read the child and sort it, in memory if it fits, or else into sorted
+     * runs on disk which are then merged.
+     */
+    private void sort() throws DbException, TransactionAbortedException, IOException {
+        TupleComparator comparator = new TupleComparator(orderByField, asc);
+        while (child.hasNext()) {
+            if (childTups.size() == memoryBudget) {
+                if (runs == null)
+                    runs = new ArrayList<SpillFile>();
+                runs.add(spill(childTups, comparator));
+            }
+            childTups.add(child.next());
+        }
+        Collections.sort(childTups, comparator);
+        if (runs == null) {
+            it = childTups.iterator();
+            return;
+        }
+        runs.add(spill(childTups, comparator));
+        numRuns = runs.size();
+        while (runs.size() > MERGE_FANIN) {
+            // merge consecutive runs, so that ties stay in input order
+            ArrayList<SpillFile> merged = new ArrayList<SpillFile>();
+            while (!runs.isEmpty()) {
+                List<SpillFile> group = runs.subList(0, Math.min(MERGE_FANIN, runs.size()));
+                SpillFile run = new SpillFile(td);
+                merged.add(run);
+                startMerge(group);
+                Tuple t;
+                while ((t = nextMerged()) != null)
+                    run.add(t);
+                closeHeads();
+                for (SpillFile r : group)
+                    r.delete();
+                group.clear();
+            }
+            runs = merged;
+        }
+        startMerge(runs);
+    }
+
+    /**
+     * Sort tuples and write them to a new run, leaving tuples empty.
+     */
+    private SpillFile spill(ArrayList<Tuple> tuples, TupleComparator comparator) throws IOException {
+        Collections.sort(tuples, comparator);
+        SpillFile run = new SpillFile(td);
+        for (Tuple t : tuples)
+            run.add(t);
+        tuples.clear();
+        return run;
+    }
+
+    /**
+     * Start merging runs, reading them from the beginning.
+     */
+    private void startMerge(List<SpillFile> toMerge) throws IOException {
+        final TupleComparator comparator = new TupleComparator(orderByField, asc);
+        heads = new PriorityQueue<RunHead>(toMerge.size(), new Comparator<RunHead>() {
+            public int compare(RunHead h1, RunHead h2) {
+                int c = comparator.compare(h1.tuple, h2.tuple);
+                return c != 0 ? c : Integer.compare(h1.run, h2.run);
+            }
+        });
+        for (int i = 0; i < toMerge.size(); i++) {
+            RunHead head = new RunHead(toMerge.get(i).reader(), i);
+            head.tuple = head.reader.next();
+            if (head.tuple != null)
+                heads.add(head);
+            else
+                head.reader.close();
+        }
+    }
+
+    /**
+     * @return the next tuple of the runs being merged, or null if all were
+     *         read
+     */
+    private Tuple nextMerged() throws IOException {
+        RunHead head = heads.poll();
+        if (head == null)
+            return null;
+        Tuple t = head.tuple;
+        head.tuple = head.reader.next();
+        if (head.tuple != null)
+            heads.add(head);
+        else
+            head.reader.close();
+        return t;
+    }
+
+    private void closeHeads() throws IOException {
+        if (heads != null) {
+            for (RunHead head : heads)
+                head.reader.close();
+            heads = null;
+        }
+    }
+
+    /**
+     * Delete the spilled runs.
+     */
+    private void release() {
+        try {
+            closeHeads();
+        } catch (IOException e) {
+            // the runs are deleted anyway
+        }
+        heads = null;
+        if (runs != null) {
+            for (SpillFile run : runs)
+                run.delete();
+            runs = null;
+        }
+    }
+
     public void close() {
         super.close();
+        child.close();
         it = null;
+        childTups.clear();
+        release();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        if (runs == null) {
+            it = childTups.iterator();
+            return;
+        }
+        try {
+            closeHeads();
+            startMerge(runs);
+        } catch (IOException e) {
+            throw new DbException("could not read sorted run: " + e.getMessage());
+        }
     }
 
     /**
@@ -82,6 +272,13 @@ public class OrderBy extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
+        if (heads != null) {
+            try {
+                return nextMerged();
+            } catch (IOException e) {
+                throw new DbException("could not read sorted run: " + e.getMessage());
+            }
+        }
         if (it != null && it.hasNext()) {
             return it.next();
         } else
@@ -99,29 +296,3 @@ public class OrderBy extends Operator {
     }
 
 }
-
-class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
-
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
-    }
-
-    public TupleComparator(int field) {
-        this(field, false);
-    }
-
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
-    }
-    
-}
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.nio.ByteBuffer;
+
 /**
  * Page is the interface used to represent pages that are resident in the
  * BufferPool.  Typically, DbFiles will read and write pages from disk.
@@ -46,6 +48,15 @@ public interface Page {
 
     public byte[] getPageData();
 
+  /**
+   * Write the contents of this page, the same bytes getPageData returns,
+   * into buffer at its position. Lets callers serialize pages into a buffer
+   * they reuse, or straight into the place the page goes.
+   *
+   * @param buffer the buffer to write to, with room for the whole page
+   */
+    public void writePageData(ByteBuffer buffer);
+
     /** Provide a representation of this page before any modifications were made
         to it.  Used by recovery.
     */
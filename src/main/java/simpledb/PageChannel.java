@@ -0,0 +1,187 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+
+/**
+ * PageChannel does the page I/O of one table file. The file is opened once,
+ * and single pages are read and written with positional FileChannel calls,
+ * so reading page n costs one read at its offset wherever it is in the file,
+ * and concurrent readers do not share a file pointer. Runs of adjacent pages
+ * are transferred with one scattering read or gathering write.
+ *
+ * @Threadsafe
+ */
+public class PageChannel {
+
+    private final File file;
+
+    private FileChannel channel;
+
+    public PageChannel(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the open channel of the file, opening it again if it was closed
+     * by an interrupted reader or writer
+     */
+    private synchronized FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return channel;
+    }
+
+    /**
+     * Read length bytes starting at offset.
+     *
+     * @return the bytes read, or null if the file ends before offset + length
+     */
+    public byte[] read(long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        for (int attempt = 0; ; attempt++) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                FileChannel ch = channel();
+                while (buffer.hasRemaining()) {
+                    if (ch.read(buffer, offset + buffer.position()) < 0) {
+                        return null;
+                    }
+                }
+                return data;
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (ClosedChannelException e) {
+                // another thread got interrupted and closed the channel
+                if (attempt > 0) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Read count adjacent pages of pageSize bytes starting at offset with one
+     * scattering read.
+     *
+     * @return the pages read; pages past the end of the file are null
+     */
+    public byte[][] readPages(long offset, int pageSize, int count) throws IOException {
+        byte[][] pages = new byte[count][];
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            pages[i] = new byte[pageSize];
+            buffers[i] = ByteBuffer.wrap(pages[i]);
+        }
+        synchronized (this) {
+            FileChannel ch = channel();
+            ch.position(offset);
+            long end = offset + (long) pageSize * count;
+            while (ch.position() < end && ch.read(buffers) >= 0) {
+                // keep reading until every buffer is full or the file ends
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (buffers[i].hasRemaining()) {
+                pages[i] = null;
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Write data starting at offset, growing the file if needed.
+     */
+    public void write(long offset, byte[] data) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                FileChannel ch = channel();
+                while (buffer.hasRemaining()) {
+                    ch.write(buffer, offset + buffer.position());
+                }
+                return;
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (ClosedChannelException e) {
+                if (attempt > 0) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Write adjacent pages starting at offset with one gathering write.
+     */
+    public void writePages(long offset, byte[][] pages) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[pages.length];
+        long length = 0;
+        for (int i = 0; i < pages.length; i++) {
+            buffers[i] = ByteBuffer.wrap(pages[i]);
+            length += pages[i].length;
+        }
+        synchronized (this) {
+            FileChannel ch = channel();
+            ch.position(offset);
+            long written = 0;
+            while (written < length) {
+                written += ch.write(buffers);
+            }
+        }
+    }
+
+    /**
+     * Grow the file to size bytes if it is smaller. The bytes added read as
+     * zeros, and only the last of them is written.
+     */
+    public synchronized void extend(long size) throws IOException {
+        FileChannel ch = channel();
+        if (ch.size() < size) {
+            ch.write(ByteBuffer.wrap(new byte[1]), size - 1);
+        }
+    }
+
+    /**
+     * Append data at the end of the file.
+     *
+     * @return the offset data was written at
+     */
+    public synchronized long append(byte[] data) throws IOException {
+        long offset = channel().size();
+        write(offset, data);
+        return offset;
+    }
+
+    /**
+     * Map the first size bytes of the file into memory. Writes to the
+     * mapping change the file.
+     */
+    public MappedByteBuffer map(long size) throws IOException {
+        return channel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * @return the current size of the file in bytes
+     */
+    public long size() throws IOException {
+        return channel().size();
+    }
+
+    /**
+     * Close the file. It is opened again by the next read or write.
+     */
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The bytes a HeapPage was read from, which the page and its tuples decode
+ * fields from until they are changed. The bytes are either an array of
+ * their own or a region of a memory-mapped file, decoded in place.
+ * <p>
+ * A mapped region is overwritten when the file writes the page. Before
+ * that, the file calls detach, which copies the region so that pages and
+ * tuples still reading it keep seeing the old bytes. A read that overlaps
+ * a detach is repeated on the copy, so readers never take a lock.
+ *
+ * @Threadsafe
+ */
+class PageData {
+
+    /** the bytes, read with absolute gets only */
+    private volatile ByteBuffer bytes;
+
+    PageData(byte[] data) {
+        bytes = ByteBuffer.wrap(data);
+    }
+
+    /**
+     * @param region the bytes of the page, from its position to its limit,
+     *            decoded in place until detach is called
+     */
+    PageData(ByteBuffer region) {
+        bytes = region.slice();
+    }
+
+
+    /**
+     * @return the big-endian int at offset
+     */
+    int readInt(int offset) {
+        while (true) {
+            ByteBuffer b = bytes;
+            int value = b.getInt(offset);
+            if (b == bytes) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * @return the field of the specified type serialized at offset
+     */
+    Field parse(Type type, int offset) {
+        while (true) {
+            ByteBuffer b = bytes;
+            Field field;
+            try {
+                field = type.parse(b, offset);
+            } catch (RuntimeException e) {
+                // bytes half overwritten may not parse at all
+                if (b == bytes) {
+                    throw e;
+                }
+                continue;
+            }
+            if (b == bytes) {
+                return field;
+            }
+        }
+    }
+
+    /**
+     * Put length bytes starting at offset into dst.
+     */
+    void copyTo(int offset, ByteBuffer dst, int length) {
+        int start = dst.position();
+        while (true) {
+            ByteBuffer b = bytes;
+            ByteBuffer src = b.duplicate();
+            src.limit(offset + length);
+            src.position(offset);
+            dst.put(src);
+            if (b == bytes) {
+                return;
+            }
+            dst.position(start);
+        }
+    }
+
+    /**
+     * Give the readers a private copy of the bytes, before whoever decoded
+     * them in place overwrites them. The caller must not change the bytes
+     * until detach returns.
+     */
+    void detach() {
+        ByteBuffer b = bytes;
+        if (b.hasArray()) {
+            return;
+        }
+        byte[] copy = new byte[b.capacity()];
+        ByteBuffer d = b.duplicate();
+        d.clear();
+        d.get(copy);
+        bytes = ByteBuffer.wrap(copy);
+    }
+}
@@ -4,6 +4,8 @@ import Zql.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -276,9 +278,24 @@ public class Parser {
     public Query handleQueryStatement(ZQuery s, TransactionId tId)
             throws TransactionAbortedException, DbException, IOException,
             simpledb.ParsingException, Zql.ParseException {
+        return handleQueryStatement(s, tId, -1);
+    }
+
+    /**
+     * Like {@link #handleQueryStatement(ZQuery, TransactionId)}, for a query
+     * that had a LIMIT clause.
+     *
+     * @param limit
+     *            the limit of the query, or -1 if it has none
+     */
+    public Query handleQueryStatement(ZQuery s, TransactionId tId, int limit)
+            throws TransactionAbortedException, DbException, IOException,
+            simpledb.ParsingException, Zql.ParseException {
         Query query = new Query(tId);
 
         LogicalPlan lp = parseQueryLogicalPlan(tId, s);
+        if (limit >= 0)
+            lp.addLimit(limit);
         OpIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
@@ -463,14 +480,41 @@ public class Parser {
         }
     }
 
+    /**
+     * A LIMIT clause at the end of a statement. ZQL does not know LIMIT, so
+     * the clause is taken off the statement before it is parsed, and added to
+     * the logical plan afterwards. Only a SELECT may have one.
+     */
+    private static final Pattern LIMIT_CLAUSE = Pattern.compile(
+            "(.*)\\s+limit\\s+(\\d{1,9})\\s*(;?)\\s*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * @return the limit of statement s, or -1 if it has no LIMIT clause
+     */
+    static int limitOf(String s) {
+        Matcher m = LIMIT_CLAUSE.matcher(s);
+        return m.matches() ? Integer.parseInt(m.group(2)) : -1;
+    }
+
+    /**
+     * @return statement s without its LIMIT clause, if it has one
+     */
+    static String withoutLimit(String s) {
+        Matcher m = LIMIT_CLAUSE.matcher(s);
+        return m.matches() ? m.group(1) + m.group(3) : s;
+    }
+
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
+        ByteArrayInputStream bis = new ByteArrayInputStream(withoutLimit(s).getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
             if (stmt instanceof ZQuery) {
                 LogicalPlan lp = parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                int limit = limitOf(s);
+                if (limit >= 0)
+                    lp.addLimit(limit);
                 return lp;
             }
         } catch (Zql.ParseException e) {
@@ -503,8 +547,19 @@ public class Parser {
 
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            // read the statement first to take its LIMIT clause off
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = is.read(buf)) > 0)
+                text.write(buf, 0, n);
+            String statement = text.toString("UTF-8");
+            int limit = limitOf(statement);
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(
+                    withoutLimit(statement).getBytes("UTF-8")));
             ZStatement s = p.readStatement();
+            if (limit >= 0 && !(s instanceof ZQuery))
+                throw new simpledb.ParsingException("LIMIT is only supported in SELECT statements");
 
             Query query = null;
             if (s instanceof ZTransactStmt)
@@ -525,7 +580,7 @@ public class Parser {
                                 curtrans.getId());
                     else if (s instanceof ZQuery)
                         query = handleQueryStatement((ZQuery) s,
-                                curtrans.getId());
+                                curtrans.getId(), limit);
                     else {
                         System.out
                                 .println("Can't parse "
@@ -581,7 +636,7 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "limit" };
 
     public static void main(String argv[]) throws IOException {
 
@@ -709,6 +764,7 @@ class TupleArrayIterator implements OpIterator {
     private static final long serialVersionUID = 1L;
     ArrayList<Tuple> tups;
     Iterator<Tuple> it = null;
+    transient TupleBatch batch = null;
 
     public TupleArrayIterator(ArrayList<Tuple> tups) {
         this.tups = tups;
@@ -735,6 +791,12 @@ class TupleArrayIterator implements OpIterator {
         return it.next();
     }
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null)
+            batch = new TupleBatch(getTupleDesc());
+        return TupleBatch.fill(this, batch);
+    }
+
     /**
      * Resets the iterator to the start.
      *
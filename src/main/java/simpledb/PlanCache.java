@@ -1,50 +1,178 @@
 package simpledb;
-import java.util.HashMap;
-import java.util.Set;
-import java.util.Vector;
+import java.util.Arrays;
 
 /** A PlanCache is a helper class that can be used to store the best
- * way to order a given set of joins */
+ * way to join a given set of tables. Sets of tables are bitmasks of the
+ * table numbers of a {@link JoinGraph}, and the plans are kept in arrays
+ * indexed through an open-addressing table on those bitmasks, so that
+ * looking a plan up allocates nothing.
+ * <p>
+ * The plan of a set of tables is the join of the plans of two of its
+ * subsets, the outer and the inner one; the plan of a single table is a
+ * scan of that table.
+ */
 public class PlanCache {
-    HashMap<Set<LogicalJoinNode>,Vector<LogicalJoinNode>> bestOrders= new HashMap<Set<LogicalJoinNode>,Vector<LogicalJoinNode>>();
-    HashMap<Set<LogicalJoinNode>,Double> bestCosts= new HashMap<Set<LogicalJoinNode>,Double>();
-    HashMap<Set<LogicalJoinNode>,Integer> bestCardinalities = new HashMap<Set<LogicalJoinNode>,Integer>();
-    
-    /** Add a new cost, cardinality and ordering for a particular join set.  Does not verify that the
+
+    /** returned for a set of tables with no plan */
+    public static final int NONE = -1;
+
+    /** plan number of each slot, NONE for an empty slot */
+    private int[] slots;
+
+    /** 64 minus the number of bits of a slot index */
+    private int shift;
+
+    /** set of tables, cost, cardinality, outer subset, join number and
+     * join, and whether a primary key is joined, by plan number */
+    private long[] sets;
+    private double[] costs;
+    private int[] cards;
+    private long[] outers;
+    private int[] edges;
+    private LogicalJoinNode[] joins;
+    private boolean[] pkeys;
+    private int size;
+
+    public PlanCache() {
+        this(16);
+    }
+
+    /**
+     * @param expectedPlans the number of plans to make room for up front
+     */
+    public PlanCache(int expectedPlans) {
+        int capacity = Integer.highestOneBit(Math.max(expectedPlans, 8) * 2 - 1) * 2;
+        slots = new int[capacity];
+        Arrays.fill(slots, NONE);
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        sets = new long[capacity / 2];
+        costs = new double[capacity / 2];
+        cards = new int[capacity / 2];
+        outers = new long[capacity / 2];
+        edges = new int[capacity / 2];
+        joins = new LogicalJoinNode[capacity / 2];
+        pkeys = new boolean[capacity / 2];
+    }
+
+    private int slotOf(long s) {
+        return (int) ((s * 0x9e3779b97f4a7c15L) >>> shift);
+    }
+
+    /**
+     * @return the number of the plan of s, or NONE if there is none
+     */
+    int find(long s) {
+        int mask = slots.length - 1;
+        for (int slot = slotOf(s); ; slot = (slot + 1) & mask) {
+            int n = slots[slot];
+            if (n == NONE || sets[n] == s) {
+                return n;
+            }
+        }
+    }
+
+    /** Add a new cost, cardinality and join for a particular set of tables.  Does not verify that the
         new cost is less than any previously added cost -- simply adds or replaces an existing plan for the
-        specified join set
-        @param s the set of joins for which a new ordering (plan) is being added
+        specified set
+        @param s the set of tables for which a new plan is being added
         @param cost the estimated cost of the specified plan
         @param card the estimatied cardinality of the specified plan
-        @param order the ordering of the joins in the plan
-    */
-    void addPlan(Set<LogicalJoinNode> s, double cost, int card, Vector<LogicalJoinNode> order) {
-        bestOrders.put(s,order);                        
-        bestCosts.put(s,cost);
-        bestCardinalities.put(s,card);
-    }
-    
-    /** Find the best join order in the cache for the specified plan 
-        @param s the set of joins to look up the best order for
-        @return the best order for s in the cache
+        @param outer the subset of s on the outer side of the join, 0 for a single table
+        @param edge the number of the join in the {@link JoinGraph}
+        @param join the join of outer with the rest of s, null for a single table
+        @param pkey true if a primary key is joined in the plan
     */
-    Vector<LogicalJoinNode> getOrder(Set<LogicalJoinNode> s) {
-        return bestOrders.get(s);
+    void addPlan(long s, double cost, int card, long outer, int edge, LogicalJoinNode join, boolean pkey) {
+        int mask = slots.length - 1;
+        int slot = slotOf(s);
+        for (; slots[slot] != NONE; slot = (slot + 1) & mask) {
+            if (sets[slots[slot]] == s) {
+                break;
+            }
+        }
+        int n = slots[slot];
+        if (n == NONE) {
+            if (size == sets.length) {
+                grow(size * 2);
+            }
+            n = size++;
+            sets[n] = s;
+            slots[slot] = n;
+        }
+        costs[n] = cost;
+        cards[n] = card;
+        outers[n] = outer;
+        edges[n] = edge;
+        joins[n] = join;
+        pkeys[n] = pkey;
+        // keep at most half of the slots used
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+    }
+
+    private void grow(int capacity) {
+        sets = Arrays.copyOf(sets, capacity);
+        costs = Arrays.copyOf(costs, capacity);
+        cards = Arrays.copyOf(cards, capacity);
+        outers = Arrays.copyOf(outers, capacity);
+        edges = Arrays.copyOf(edges, capacity);
+        joins = Arrays.copyOf(joins, capacity);
+        pkeys = Arrays.copyOf(pkeys, capacity);
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, NONE);
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        int mask = capacity - 1;
+        for (int n = 0; n < size; n++) {
+            int slot = slotOf(sets[n]);
+            while (slots[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = n;
+        }
+    }
+
+    /** @return the number of sets of tables with a plan */
+    int size() {
+        return size;
     }
-    
-    /** Find the cost of the best join order in the cache for the specified plan 
-        @param s the set of joins to look up the best cost for
-        @return the cost of the best order for s in the cache
+
+    /** Find the cost of the best plan in the cache for the specified set
+        @param s the set of tables to look up the best cost for
+        @return the cost of the best plan for s in the cache
     */
-    double getCost(Set<LogicalJoinNode> s) {
-        return bestCosts.get(s);
+    double getCost(long s) {
+        return costs[find(s)];
     }
-    
-    /** Find the cardinality of the best join order in the cache for the specified plan 
-        @param s the set of joins to look up the best cardinality for
-        @return the cardinality of the best order for s in the cache
+
+    /** Find the cardinality of the best plan in the cache for the specified set
+        @param s the set of tables to look up the best cardinality for
+        @return the cardinality of the best plan for s in the cache
     */
-    int getCard(Set<LogicalJoinNode> s) {
-        return bestCardinalities.get(s);
+    int getCard(long s) {
+        return cards[find(s)];
+    }
+
+    /** @return the outer subset of the best plan for s, 0 for a single table */
+    long getOuter(long s) {
+        return outers[find(s)];
+    }
+
+    /** @return the number of the join of the best plan for s in the {@link JoinGraph} */
+    int getEdge(long s) {
+        return edges[find(s)];
+    }
+
+    /** @return the last join of the best plan for s, null for a single table */
+    LogicalJoinNode getJoin(long s) {
+        return joins[find(s)];
+    }
+
+    /** @return true if a primary key is joined in the best plan for s */
+    boolean hasPkey(long s) {
+        return pkeys[find(s)];
     }
 }
@@ -11,6 +11,7 @@ public class Project extends Operator {
     private OpIterator child;
     private TupleDesc td;
     private ArrayList<Integer> outFieldIds;
+    private int[] outColumns;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -39,6 +40,10 @@ public class Project extends Operator {
             fieldAr[i] = childtd.getFieldName(fieldList.get(i));
         }
         td = new TupleDesc(types, fieldAr);
+        outColumns = new int[fieldList.size()];
+        for (int i = 0; i < outColumns.length; i++) {
+            outColumns[i] = fieldList.get(i);
+        }
     }
 
     public TupleDesc getTupleDesc() {
@@ -80,6 +85,16 @@ public class Project extends Operator {
         return null;
     }
 
+    /**
+     * Returns a batch that shares the column vectors of the child's batch,
+     * so no values are copied.
+     */
+    @Override
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch batch = child.nextBatch();
+        return batch == null ? null : batch.project(outColumns, td);
+    }
+
     @Override
     public OpIterator[] getChildren() {
         return new OpIterator[] { this.child };
@@ -0,0 +1,73 @@
+package simpledb;
+
+import java.util.Map;
+
+/**
+ * ReplacementPolicy decides which page of a buffer pool partition is evicted
+ * when the pool is full. Each partition of the {@link BufferPool} owns one
+ * instance; all calls on an instance are made while holding the lock of that
+ * partition, so implementations need not be thread safe.
+ * <p>
+ * The policy tracks exactly the pages that are resident in its partition.
+ * Since the buffer pool is NO STEAL, a victim must be a clean page.
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * The replacement policies a BufferPool can be constructed with.
+     */
+    public enum Kind {
+        FIFO {
+            @Override
+            public ReplacementPolicy create(int capacity) {
+                return new FifoReplacementPolicy();
+            }
+        }, CLOCK {
+            @Override
+            public ReplacementPolicy create(int capacity) {
+                return new ClockReplacementPolicy();
+            }
+        }, LRU_K {
+            @Override
+            public ReplacementPolicy create(int capacity) {
+                return new LruKReplacementPolicy(LruKReplacementPolicy.DEFAULT_K);
+            }
+        }, TWO_Q {
+            @Override
+            public ReplacementPolicy create(int capacity) {
+                return new TwoQueueReplacementPolicy(capacity);
+            }
+        };
+
+        /**
+         * @param capacity the expected number of pages the partition holds
+         * @return a new, empty policy instance
+         */
+        public abstract ReplacementPolicy create(int capacity);
+    }
+
+    /**
+     * A page that was not resident has been added to the partition.
+     */
+    public void pageLoaded(PageId pid);
+
+    /**
+     * A resident page has been requested again.
+     */
+    public void pageAccessed(PageId pid);
+
+    /**
+     * A resident page has been dropped from the partition without going
+     * through {@link #evict}.
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Choose a clean page to evict and stop tracking it.
+     *
+     * @param resident the resident pages of the partition, used to skip
+     *                 dirty pages
+     * @return the id of the victim, or null if every resident page is dirty
+     */
+    public PageId evict(Map<PageId, Page> resident);
+}
@@ -21,6 +21,12 @@ public class SeqScan implements OpIterator {
 
     private DbFileIterator dbFileIterator;
 
+    private BufferRing bufferRing;
+
+    private int prefetchPages = 0;
+
+    private transient TupleBatch batch;
+
     /**
      * Creates a sequential scan over the specified table as a part of the
      * specified transaction.
@@ -39,8 +45,27 @@ public class SeqScan implements OpIterator {
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
         // some code goes here
-        init(tid, tableid, tableAlias);
+        this(tid, tableid, tableAlias, null);
+    }
 
+    /**
+     * Creates a sequential scan that reads pages missing from the buffer pool
+     * into a private ring of frames, so scanning a table larger than the pool
+     * does not evict the pages other operators are using.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan.
+     * @param tableAlias
+     *            the alias of this table (needed by the parser)
+     * @param bufferRing
+     *            the private frames of the scan, or null to read through the
+     *            buffer pool
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, BufferRing bufferRing) {
+        this.bufferRing = bufferRing;
+        init(tid, tableid, tableAlias);
     }
 
     private void init(TransactionId tid, int tableId, String tableAlias) {
@@ -64,8 +89,34 @@ public class SeqScan implements OpIterator {
             index++;
         }
         tupleDesc = new TupleDesc(typeAr, fieldAr);
+        batch = null;
+
+        createIterator();
+    }
+
+    private void createIterator() {
+        if (bufferRing != null && dbFile instanceof HeapFile) {
+            dbFileIterator = ((HeapFile) dbFile).iterator(transactionId, bufferRing);
+        } else if (bufferRing != null && dbFile instanceof BTreeFile) {
+            dbFileIterator = ((BTreeFile) dbFile).iterator(transactionId, bufferRing);
+        } else if (prefetchPages > 0 && dbFile instanceof HeapFile) {
+            dbFileIterator = ((HeapFile) dbFile).iterator(transactionId, prefetchPages);
+        } else {
+            dbFileIterator = dbFile.iterator(transactionId);
+        }
+    }
 
-        dbFileIterator = dbFile.iterator(transactionId);
+    /**
+     * Read the given number of pages ahead of the current one in the
+     * background. Only heap files scanned without a buffer ring prefetch.
+     * Must be called before the scan is opened.
+     *
+     * @param prefetchPages
+     *            the number of pages to read ahead, 0 to turn prefetching off
+     */
+    public void setPrefetchPages(int prefetchPages) {
+        this.prefetchPages = prefetchPages;
+        createIterator();
     }
 
     /**
@@ -77,6 +128,20 @@ public class SeqScan implements OpIterator {
         return Database.getCatalog().getTableName(this.dbFile.getId());
     }
 
+    /**
+     * @return the id of the table the operator scans
+     */
+    public int getTableId() {
+        return this.dbFile.getId();
+    }
+
+    /**
+     * @return the transaction the scan is running as a part of
+     */
+    public TransactionId getTransactionId() {
+        return this.transactionId;
+    }
+
     /**
      * @return Return the alias of the table this operator scans.
      * */
@@ -138,6 +203,21 @@ public class SeqScan implements OpIterator {
         return dbFileIterator.next();
     }
 
+    /**
+     * Heap files are decoded page by page straight into the batch; other
+     * files are read a tuple at a time.
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null) {
+            batch = new TupleBatch(tupleDesc);
+        }
+        if (!(dbFileIterator instanceof HeapFile.HeapFileIterator)) {
+            return TupleBatch.fill(this, batch);
+        }
+        batch.clear();
+        return ((HeapFile.HeapFileIterator) dbFileIterator).fillBatch(batch) ? batch : null;
+    }
+
     public void close() {
         // some code goes here
         dbFileIterator.close();
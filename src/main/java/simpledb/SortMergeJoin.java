@@ -0,0 +1,259 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * SortMergeJoin joins two children that are both sorted in ascending order
+ * on their join fields, for example BTreeScans of the join key or OrderBys.
+ * <p>
+ * For an equality predicate both children are streamed side by side, and
+ * only the current run of child2 tuples with the same key is kept in memory,
+ * so that duplicate keys in child1 can be joined with it again. For a range
+ * predicate (&lt;, &lt;=, &gt;, &gt;=) the tuples of child1 that match a
+ * tuple of child2 form a prefix or a suffix of child2, which moves forward as
+ * child1 goes on. child2 is then kept in memory as it is read, and each tuple
+ * of child1 is compared only with the tuples at the edge of its range instead
+ * of with all of child2.
+ * <p>
+ * The output is sorted on the join field of child1, like the input.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private JoinPredicate pred;
+    private OpIterator child1, child2;
+    private TupleDesc comboTD;
+
+    /** the tuple of child1 being joined */
+    transient private Tuple left = null;
+
+    /** for an equality predicate: the tuples of child2 with the key of left */
+    transient private ArrayList<Tuple> run = null;
+    /** the first tuple of child2 after run */
+    transient private Tuple nextRight = null;
+
+    /** for a range predicate: the tuples of child2 read so far */
+    transient private ArrayList<Tuple> rights = null;
+    /**
+     * for a range predicate: the index in rights of the first tuple that
+     * matches left for a suffix, or the first that does not for a prefix
+     */
+    transient private int bound = 0;
+
+    /** index of the next tuple of run or rights to join left with */
+    transient private int pos = 0;
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join them
+     * on
+     *
+     * @param p
+     *            The predicate to use to join the children; one of
+     *            Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+     *            Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN or
+     *            Predicate.Op.GREATER_THAN_OR_EQ
+     * @param child1
+     *            Iterator for the left relation to join, sorted in ascending
+     *            order on the join field
+     * @param child2
+     *            Iterator for the right relation to join, sorted in ascending
+     *            order on the join field
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        if (!canJoin(p.getOperator()))
+            throw new IllegalArgumentException("sort-merge join cannot join on " + p.getOperator());
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /**
+     * @return true if a sort-merge join can join on op
+     */
+    public static boolean canJoin(Predicate.Op op) {
+        switch (op) {
+        case EQUALS:
+        case LESS_THAN:
+        case LESS_THAN_OR_EQ:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQ:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the tuples of it come in ascending order of field, as
+     *         far as can be told from the operators it is made of
+     */
+    public static boolean isSortedOn(OpIterator it, int field) {
+        if (it instanceof OrderBy) {
+            OrderBy o = (OrderBy) it;
+            return o.isASC() && o.getOrderByField() == field;
+        } else if (it instanceof BTreeScan) {
+            return ((BTreeScan) it).getKeyField() == field;
+        } else if (it instanceof Filter) {
+            return isSortedOn(((Filter) it).getChildren()[0], field);
+        } else if (it instanceof SortMergeJoin) {
+            SortMergeJoin j = (SortMergeJoin) it;
+            return j.pred.getField1() == field;
+        }
+        return false;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    public String getJoinField1Name()
+    {
+        return this.child1.getTupleDesc().getFieldName(this.pred.getField1());
+    }
+
+    public String getJoinField2Name()
+    {
+        return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        reset();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child2.close();
+        child1.close();
+        run = null;
+        rights = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        child2.rewind();
+        reset();
+    }
+
+    private void reset() {
+        left = null;
+        nextRight = null;
+        bound = 0;
+        pos = 0;
+        if (pred.getOperator() == Predicate.Op.EQUALS) {
+            run = new ArrayList<Tuple>();
+        } else {
+            rights = new ArrayList<Tuple>();
+        }
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. The tuples returned are the concatenation of joining tuples
+     * from the left and right relation.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        if (pred.getOperator() == Predicate.Op.EQUALS)
+            return fetchNextEqual();
+        return fetchNextRange();
+    }
+
+    private Tuple fetchNextEqual() throws TransactionAbortedException, DbException {
+        int field1 = pred.getField1();
+        int field2 = pred.getField2();
+        while (true) {
+            if (left != null && pos < run.size())
+                return Tuple.merge(comboTD, left, run.get(pos++));
+            if (!child1.hasNext())
+                return null;
+            Tuple prev = left;
+            left = child1.next();
+            Field key = left.getField(field1);
+            pos = 0;
+            if (!run.isEmpty() && prev.getField(field1).equals(key))
+                continue;
+            // find the run of child2 with key, skipping smaller keys
+            run.clear();
+            while (nextRight != null || child2.hasNext()) {
+                Tuple r = nextRight != null ? nextRight : child2.next();
+                nextRight = null;
+                Field f = r.getField(field2);
+                if (f.compare(Predicate.Op.LESS_THAN, key))
+                    continue;
+                if (!f.equals(key)) {
+                    nextRight = r;
+                    break;
+                }
+                run.add(r);
+            }
+            if (run.isEmpty() && nextRight == null)
+                // child2 is exhausted, so nothing else can match
+                return null;
+        }
+    }
+
+    /**
+     * @return the i-th tuple of child2, reading it if needed, or null if
+     *         child2 has fewer tuples
+     */
+    private Tuple right(int i) throws TransactionAbortedException, DbException {
+        while (i >= rights.size() && child2.hasNext())
+            rights.add(child2.next());
+        return i < rights.size() ? rights.get(i) : null;
+    }
+
+    private Tuple fetchNextRange() throws TransactionAbortedException, DbException {
+        // for < and <= the matches of left are a suffix of child2, for > and
+        // >= they are a prefix
+        Predicate.Op op = pred.getOperator();
+        boolean suffix = op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ;
+        while (true) {
+            if (left != null) {
+                Tuple r = suffix ? right(pos) : (pos < bound ? rights.get(pos) : null);
+                if (r != null) {
+                    pos++;
+                    return Tuple.merge(comboTD, left, r);
+                }
+            }
+            if (!child1.hasNext())
+                return null;
+            left = child1.next();
+            Tuple r;
+            if (suffix) {
+                while ((r = right(bound)) != null && !pred.filter(left, r))
+                    bound++;
+                if (r == null)
+                    // left is past the end of child2, and so is every later
+                    // tuple of child1
+                    return null;
+                pos = bound;
+            } else {
+                while ((r = right(bound)) != null && pred.filter(left, r))
+                    bound++;
+                pos = 0;
+            }
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { child1, child2 };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+
+}
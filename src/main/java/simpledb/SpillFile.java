@@ -0,0 +1,130 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * SpillFile is a temporary file an operator writes tuples to when they do
+ * not fit in memory, for example a partition of a HashEquiJoin. Tuples are
+ * stored back to back in a compact format: an int field as its 4 bytes, and
+ * a string field as its length followed by its characters, without the
+ * padding a page has. Record ids are not kept.
+ * <p>
+ * A spill file is written first and read afterwards, as often as needed.
+ * Operators delete their spill files when they are closed.
+ */
+class SpillFile {
+
+    private final TupleDesc td;
+
+    private final File file;
+
+    /** open while tuples are being written, then null */
+    private DataOutputStream out;
+
+    private int numTuples;
+
+    /**
+     * Create an empty spill file for tuples of td.
+     */
+    SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        file = File.createTempFile("simpledb", ".spill");
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the number of tuples written to the file
+     */
+    int size() {
+        return numTuples;
+    }
+
+    /**
+     * Append a tuple to the file.
+     *
+     * @throws IllegalStateException if the file has already been read
+     */
+    void add(Tuple t) throws IOException {
+        if (out == null) {
+            throw new IllegalStateException("spill file is no longer written");
+        }
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                out.writeInt(((IntField) f).getValue());
+            } else {
+                String s = ((StringField) f).getValue();
+                out.writeInt(s.length());
+                out.writeBytes(s);
+            }
+        }
+        numTuples++;
+    }
+
+    /**
+     * Finish writing the file and start reading it from the beginning.
+     */
+    Reader reader() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        return new Reader();
+    }
+
+    /**
+     * Remove the file.
+     */
+    void delete() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // the file goes away anyway
+            }
+            out = null;
+        }
+        file.delete();
+    }
+
+    /**
+     * Reads the tuples of a spill file in the order they were written.
+     */
+    class Reader implements Closeable {
+        private final DataInputStream in;
+        private int remaining = numTuples;
+
+        private Reader() throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        /**
+         * @return the next tuple, or null if all were read
+         */
+        Tuple next() throws IOException {
+            if (remaining == 0) {
+                return null;
+            }
+            remaining--;
+            Tuple t = new Tuple(td);
+            for (int i = 0; i < td.numFields(); i++) {
+                if (td.getFieldType(i) == Type.INT_TYPE) {
+                    t.setField(i, new IntField(in.readInt()));
+                } else {
+                    byte[] s = new byte[in.readInt()];
+                    in.readFully(s);
+                    t.setField(i, new StringField(new String(s), Type.STRING_LEN));
+                }
+            }
+            return t;
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
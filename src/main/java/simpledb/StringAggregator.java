@@ -1,10 +1,11 @@
 package simpledb;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Knows how to compute some aggregate over a set of StringFields.
+ * <p>
+ * Each group only has a running count, so the strings are never kept.
  */
 public class StringAggregator implements Aggregator {
 
@@ -18,7 +19,9 @@ public class StringAggregator implements Aggregator {
 
     private Op operation;
 
-    private Map<Field, Integer> groupMap = new ConcurrentHashMap<>();
+    /** the groups seen, and their counts by group number */
+    private AggregateGroups groups;
+    private int[] counts = new int[16];
 
     /**
      * Aggregate constructor
@@ -37,6 +40,7 @@ public class StringAggregator implements Aggregator {
         if (what != Op.COUNT)
             throw new IllegalArgumentException("StringField Operation must be COUNT!");
         operation = what;
+        groups = new AggregateGroups(gbfield, gbfieldtype);
     }
 
     /**
@@ -45,11 +49,25 @@ public class StringAggregator implements Aggregator {
      */
     public void mergeTupleIntoGroup(Tuple tup) {
         // some code goes here
-        Field groupField = groupFieldIndex == NO_GROUPING ? null : tup.getField(groupFieldIndex);
-        if (!groupMap.containsKey(groupField)) {
-            groupMap.put(groupField, 0);
+        count(groups.numberOf(tup));
+    }
+
+    /**
+     * Merge the selected rows of a batch into the aggregate
+     * @param batch rows containing an aggregate field and a group-by field
+     */
+    public void mergeBatchIntoGroup(TupleBatch batch) {
+        int[] selection = batch.getSelection();
+        for (int i = 0; i < batch.size(); i++) {
+            count(groups.numberOf(batch, selection[i]));
         }
-        groupMap.put(groupField, groupMap.get(groupField) + 1);
+    }
+
+    private void count(int n) {
+        if (n == counts.length) {
+            counts = Arrays.copyOf(counts, n * 2);
+        }
+        counts[n]++;
     }
 
     /**
@@ -62,15 +80,17 @@ public class StringAggregator implements Aggregator {
      */
     public OpIterator iterator() {
         // some code goes here
-        Set<Map.Entry<Field, Integer>> entries = groupMap.entrySet();
-        List<Tuple> tupleList = new ArrayList<>();
-        TupleDesc tupleDesc = new TupleDesc(new Type[]{groupFieldType, Type.INT_TYPE}, new String[]{null, null});
-        for (Map.Entry<Field, Integer> entry : entries) {
+        TupleDesc tupleDesc = groupFieldIndex == NO_GROUPING ? new TupleDesc(new Type[]{Type.INT_TYPE})
+                : new TupleDesc(new Type[]{groupFieldType, Type.INT_TYPE}, new String[]{null, null});
+        List<Tuple> tupleList = new ArrayList<>(groups.size());
+        for (int n = 0; n < groups.size(); n++) {
             Tuple tuple = new Tuple(tupleDesc);
-            tuple.setField(0, entry.getKey());
-
-            tuple.setField(1, new IntField(entry.getValue()));
-
+            if (groupFieldIndex == NO_GROUPING) {
+                tuple.setField(0, new IntField(counts[n]));
+            } else {
+                tuple.setField(0, groups.key(n));
+                tuple.setField(1, new IntField(counts[n]));
+            }
             tupleList.add(tuple);
         }
         return new TupleIterator(tupleDesc, tupleList);
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Instance of Field that stores a single String of a fixed length.
@@ -66,6 +67,23 @@ public class StringField implements Field {
 			dos.write((byte) 0);
 	}
 
+	/**
+	 * Write this string to buffer, in the same maxSize + 4 bytes as
+	 * serialize(DataOutputStream).
+	 * 
+	 * @param buffer
+	 *            Where the string is written
+	 */
+	public void serialize(ByteBuffer buffer) {
+		int length = Math.min(value.length(), maxSize);
+		buffer.putInt(length);
+		for (int i = 0; i < length; i++) {
+			// like DataOutputStream.writeBytes, keep the low byte of each char
+			buffer.put((byte) value.charAt(i));
+		}
+		Utility.putZeros(buffer, maxSize - length);
+	}
+
 	/**
 	 * Compare the specified field to the value of this Field. Return semantics
 	 * are as specified by Field.compare
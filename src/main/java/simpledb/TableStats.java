@@ -1,5 +1,6 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -64,13 +65,43 @@ public class TableStats {
      */
     static final int NUM_HIST_BINS = 100;
 
+    /**
+     * Number of most common values kept per field, whose selectivities are
+     * then estimated exactly.
+     */
+    static final int NUM_MCVS = 50;
+
+    /**
+     * Default number of tuples the histograms of a table are built from. A
+     * larger table is summarized by a uniform random sample of this many of
+     * its tuples.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 100000;
+
+    /**
+     * Number of tuples read from a sampled heap file for each tuple of the
+     * sample. Whole pages are read, and the tuples of a page tend to be
+     * alike, so more pages are read than the sample could hold and the
+     * reservoir keeps a random part of their tuples.
+     */
+    static final int PAGE_OVERSAMPLING = 2;
+
     private DbFile dbFile;
     private int ioCostPerPage;
 
     private int totalTuples;
 
-    Map<Integer, IntHistogram> intHistogramMap = new HashMap<>();
-    Map<Integer, StringHistogram> stringHistogramMap = new HashMap<>();
+    /** the number of tuples the histograms were built from */
+    private int sampledTuples;
+
+    /** the histogram of each field */
+    private EquiDepthHistogram[] histograms;
+
+    /** the sketch of the distinct values of each field among the tuples read */
+    private HyperLogLog[] sketches;
+
+    /** the estimated number of distinct values of each field */
+    private double[] distinctValues;
 
     /**
      * Create a new TableStats object, that keeps track of statistics on each
@@ -83,6 +114,25 @@ public class TableStats {
      *            sequential-scan IO and disk seeks.
      */
     public TableStats(int tableid, int ioCostPerPage) {
+        this(tableid, ioCostPerPage, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * Create a new TableStats object from a sample of at most sampleSize
+     * tuples of a table. A heap file with more pages than
+     * PAGE_OVERSAMPLING * sampleSize tuples fill is sampled by reading that
+     * many of its pages at random, and its number of tuples is scaled up
+     * from them; any other table is read in full.
+     * 
+     * @param tableid
+     *            The table over which to compute statistics
+     * @param ioCostPerPage
+     *            The cost per page of IO. This doesn't differentiate between
+     *            sequential-scan IO and disk seeks.
+     * @param sampleSize
+     *            The maximum number of tuples to build the histograms from
+     */
+    public TableStats(int tableid, int ioCostPerPage, int sampleSize) {
         // For this function, you'll have to get the
         // DbFile for the table in question,
         // then scan through its tuples and calculate
@@ -91,66 +141,171 @@ public class TableStats {
         // necessarily have to (for example) do everything
         // in a single scan of the table.
         // some code goes here
+        if (sampleSize <= 0)
+            throw new IllegalArgumentException("sampleSize must be positive.");
         this.dbFile = Database.getCatalog().getDatabaseFile(tableid);
         this.ioCostPerPage = ioCostPerPage;
-        TupleDesc tupleDesc = dbFile.getTupleDesc();
-        int numFields = tupleDesc.numFields();
+        int numFields = dbFile.getTupleDesc().numFields();
 
-        DbFileIterator itr = dbFile.iterator(new TransactionId());
-        Map<Integer, List<Integer>> integerListMap = new HashMap<>();
-        Map<Integer, Integer> maxIntMap = new HashMap<>();
-        Map<Integer, Integer> minIntMap = new HashMap<>();
-        for (int i = 0; i < numFields; i++) {
-            integerListMap.put(i, new ArrayList<Integer>());
-            maxIntMap.put(i, Integer.MIN_VALUE);
-            minIntMap.put(i, Integer.MAX_VALUE);
-        }
+        // the same seed for a table each time, so that plans are repeatable
+        Reservoir sample = new Reservoir(numFields, sampleSize, new Random(tableid));
+        sketches = new HyperLogLog[numFields];
+        for (int i = 0; i < numFields; i++)
+            sketches[i] = new HyperLogLog();
+        TransactionId tid = new TransactionId();
         try {
-            itr.open();
-            while (itr.hasNext()) {
-                Tuple next = itr.next();
-                totalTuples++;
-                for (int i = 0; i < numFields; i++) {
-                    Field field = next.getField(i);
-                    Type fieldType = tupleDesc.getFieldType(i);
-                    if (fieldType == Type.INT_TYPE) {
-                        IntField intField = (IntField) field;
-                        int value = intField.getValue();
-                        int max = maxIntMap.get(i);
-                        int min = minIntMap.get(i);
-                        if (value > max)
-                            max = value;
-                        if (value < min)
-                            min = value;
-                        maxIntMap.put(i, max);
-                        minIntMap.put(i, min);
-
-                        integerListMap.get(i).add(value);
-                    } else if (fieldType == Type.STRING_TYPE) {
-                        if (stringHistogramMap.get(i) == null) {
-                            stringHistogramMap.put(i, new StringHistogram(NUM_HIST_BINS));
-                        }
-                        StringField stringField = (StringField) field;
-                        stringHistogramMap.get(i).addValue(stringField.getValue());
-                    }
-                }
+            if (dbFile instanceof HeapFile) {
+                totalTuples = sampleHeapFile((HeapFile) dbFile, tid, sample, sampleSize);
+            } else {
+                DbFileIterator itr = dbFile.iterator(tid);
+                itr.open();
+                while (itr.hasNext())
+                    addTuple(itr.next(), sample);
+                itr.close();
+                totalTuples = (int) sample.seen;
             }
         } catch (DbException e) {
             e.printStackTrace();
         } catch (TransactionAbortedException e) {
             e.printStackTrace();
+        } finally {
+            try {
+                Database.getBufferPool().transactionComplete(tid);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
+        sampledTuples = sample.size();
+        histograms = new EquiDepthHistogram[numFields];
+        distinctValues = new double[numFields];
         for (int i = 0; i < numFields; i++) {
-            Type fieldType = tupleDesc.getFieldType(i);
-            if (fieldType == Type.INT_TYPE) {
-                if (intHistogramMap.get(i) == null) {
-                    intHistogramMap.put(i, new IntHistogram(NUM_HIST_BINS, minIntMap.get(i), maxIntMap.get(i)));
+            histograms[i] = new EquiDepthHistogram(NUM_HIST_BINS, NUM_MCVS, sample.values[i], sampledTuples);
+            sample.values[i] = null;
+            distinctValues[i] = estimateDistinctValues(sketches[i].estimate(), histograms[i], sample.seen);
+        }
+    }
+
+    private void addTuple(Tuple t, Reservoir sample) {
+        for (int i = 0; i < sketches.length; i++)
+            sketches[i].add(t.getField(i));
+        sample.add(t);
+    }
+
+    /**
+     * Estimate the number of distinct values of a field. If every tuple was
+     * read, the sketch of the field counts them; otherwise the number of
+     * distinct values in the sample is scaled up by the Duj1 estimator of
+     * Haas et al., "Sampling-Based Estimation of the Number of Distinct
+     * Values of an Attribute", which scales more the more values occur only
+     * once in the sample, and the count of the sketch is a lower bound.
+     *
+     * @param sketched
+     *            The estimate of the sketch of the tuples read
+     * @param sampled
+     *            The histogram of the sampled values of the field
+     * @param tuplesRead
+     *            The number of tuples read
+     */
+    private double estimateDistinctValues(double sketched, EquiDepthHistogram sampled, long tuplesRead) {
+        double estimate = sketched;
+        if (tuplesRead < totalTuples && sampledTuples > 0) {
+            double n = sampledTuples;
+            double q = n / totalTuples;
+            double duj1 = n * sampled.distinctValues() / (n - (1 - q) * sampled.singletons());
+            estimate = Math.max(estimate, duj1);
+        }
+        return Math.min(estimate, totalTuples);
+    }
+
+    /**
+     * Add the tuples of f, or of a random subset of its pages if it has more
+     * than PAGE_OVERSAMPLING * sampleSize tuples fill, to sample and to the
+     * sketches of the fields. The pages are read in order through a
+     * {@link BufferRing}, so that sampling does not evict the pages in the
+     * buffer pool.
+     * 
+     * @return the number of tuples of f, estimated from the pages read if
+     *         not all of them were
+     */
+    private int sampleHeapFile(HeapFile f, TransactionId tid, Reservoir sample, int sampleSize)
+            throws DbException, TransactionAbortedException {
+        int numPages = f.numPages();
+        int tuplesPerPage = Math.max(1, BufferPool.getPageSize() * 8 / (f.getTupleDesc().getSize() * 8 + 1));
+        long pagesNeeded = ((long) sampleSize * PAGE_OVERSAMPLING + tuplesPerPage - 1) / tuplesPerPage;
+        boolean[] read = new boolean[numPages];
+        int pagesRead;
+        if (numPages <= pagesNeeded) {
+            Arrays.fill(read, true);
+            pagesRead = numPages;
+        } else {
+            // Floyd's algorithm picks pagesNeeded distinct pages uniformly
+            pagesRead = (int) pagesNeeded;
+            for (int j = numPages - pagesRead; j < numPages; j++) {
+                int pageNo = sample.random.nextInt(j + 1);
+                read[read[pageNo] ? j : pageNo] = true;
+            }
+        }
+        BufferRing ring = new BufferRing();
+        for (int pageNo = 0; pageNo < numPages; pageNo++) {
+            if (!read[pageNo])
+                continue;
+            PageId pid = new HeapPageId(f.getId(), pageNo);
+            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY, ring);
+            Iterator<Tuple> tuples = page.iterator();
+            while (tuples.hasNext())
+                addTuple(tuples.next(), sample);
+        }
+        if (pagesRead == numPages)
+            return (int) sample.seen;
+        return (int) Math.round((double) sample.seen * numPages / pagesRead);
+    }
+
+    /**
+     * A uniform random sample of at most a given number of the tuples added
+     * to it, kept as the values of each field (Vitter's algorithm R).
+     */
+    private static class Reservoir {
+        final Random random;
+        final int capacity;
+
+        /** the values of each field of the sampled tuples */
+        final Field[][] values;
+
+        /** the number of tuples added */
+        long seen;
+
+        Reservoir(int numFields, int capacity, Random random) {
+            this.random = random;
+            this.capacity = capacity;
+            values = new Field[numFields][Math.min(capacity, 16)];
+        }
+
+        int size() {
+            return (int) Math.min(seen, capacity);
+        }
+
+        void add(Tuple t) {
+            int slot;
+            if (seen < capacity) {
+                slot = (int) seen;
+                if (slot == values[0].length) {
+                    int length = (int) Math.min((long) slot * 2, capacity);
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = Arrays.copyOf(values[i], length);
                 }
-                List<Integer> list = integerListMap.get(i);
-                for (int j = 0; j < list.size(); j++) {
-                    intHistogramMap.get(i).addValue(list.get(j));
+            } else {
+                // the tuple replaces a sampled one with probability
+                // capacity / (seen + 1)
+                long r = (long) (random.nextDouble() * (seen + 1));
+                if (r >= capacity) {
+                    seen++;
+                    return;
                 }
+                slot = (int) r;
             }
+            for (int i = 0; i < values.length; i++)
+                values[i][slot] = t.getField(i);
+            seen++;
         }
     }
 
@@ -181,6 +336,53 @@ public class TableStats {
         return 0;
     }
 
+    /**
+     * A sequential scan of a table that does not fit in the buffer pool would
+     * evict every other page from it, so such a scan should read through a
+     * {@link BufferRing} instead.
+     *
+     * @return true if the estimated cost of scanning the table is larger than
+     *         the cost of reading as many pages as the buffer pool holds
+     */
+    public boolean scanExceedsBufferPool() {
+        return estimateScanCost() > (double) Database.getBufferPool().getNumPages() * ioCostPerPage;
+    }
+
+    /**
+     * Estimates the cost of one lookup of the tuples whose field satisfies
+     * <tt>field op constant</tt> through the B+ tree index of the table, as
+     * done by {@link BTreeFile#indexIterator}: the pages from the root to the
+     * first matching leaf are read, then the leaves holding the matching
+     * tuples, and each matching tuple is compared. An equality is expected
+     * to match as many tuples as the average selectivity of the field, and a
+     * range half of the table.
+     * 
+     * @param field
+     *            The field the lookup compares
+     * @param op
+     *            The operation of the lookup
+     * @return The estimated cost of the lookup, or
+     *         Double.POSITIVE_INFINITY if the table is not a B+ tree keyed
+     *         on field
+     */
+    public double estimateIndexLookupCost(int field, Predicate.Op op) {
+        if (!(dbFile instanceof BTreeFile) || ((BTreeFile) dbFile).keyField() != field)
+            return Double.POSITIVE_INFINITY;
+        TupleDesc td = dbFile.getTupleDesc();
+        int pageBits = BufferPool.getPageSize() * 8;
+        // keys per internal page and tuples per leaf, as in BTreeInternalPage
+        // and BTreeLeafPage
+        int fanout = Math.max(2, pageBits / ((td.getFieldType(field).getLen() + 4) * 8 + 1));
+        int tuplesPerLeaf = Math.max(1, pageBits / (td.getSize() * 8 + 1));
+        double leaves = Math.max(1.0, Math.ceil((double) totalTuples() / tuplesPerLeaf));
+        // the root pointer page and the internal pages down to a leaf
+        double depth = 1 + Math.ceil(Math.log(leaves) / Math.log(fanout));
+        double matches = totalTuples()
+                * (op == Predicate.Op.EQUALS ? avgSelectivity(field, op) : 0.5);
+        double matchingLeaves = Math.max(1.0, Math.ceil(matches / tuplesPerLeaf));
+        return (depth + matchingLeaves) * ioCostPerPage + matches;
+    }
+
     /**
      * This method returns the number of tuples in the relation, given that a
      * predicate with selectivity selectivityFactor is applied.
@@ -207,18 +409,13 @@ public class TableStats {
      * */
     public double avgSelectivity(int field, Predicate.Op op) {
         // some code goes here
-        Type fieldType = this.dbFile.getTupleDesc().getFieldType(field);
-        if (fieldType == Type.INT_TYPE) {
-            return intHistogramMap.get(field).avgSelectivity();
-        } else if (fieldType == Type.STRING_TYPE) {
-            return stringHistogramMap.get(field).avgSelectivity();
-        }
-        return 1.0;
+        return histograms[field].avgSelectivity();
     }
 
     /**
      * Estimate the selectivity of predicate <tt>field op constant</tt> on the
-     * table.
+     * table, from the most common values of the field and its equi-depth
+     * histogram.
      * 
      * @param field
      *            The field over which the predicate ranges
@@ -231,15 +428,7 @@ public class TableStats {
      */
     public double estimateSelectivity(int field, Predicate.Op op, Field constant) {
         // some code goes here
-        Type fieldType = this.dbFile.getTupleDesc().getFieldType(field);
-        if (fieldType == Type.INT_TYPE) {
-            IntField f = (IntField) constant;
-            return intHistogramMap.get(field).estimateSelectivity(op, f.getValue());
-        } else if (fieldType == Type.STRING_TYPE) {
-            StringField f = (StringField) constant;
-            return stringHistogramMap.get(field).estimateSelectivity(op, f.getValue());
-        }
-        return 1.0;
+        return histograms[field].estimateSelectivity(op, constant);
     }
 
     /**
@@ -250,4 +439,33 @@ public class TableStats {
         return totalTuples;
     }
 
+    /**
+     * @param field
+     *            the index of the field
+     * @return the estimated number of distinct values of the field in the
+     *         table
+     */
+    public double estimateDistinctValues(int field) {
+        return distinctValues[field];
+    }
+
+    /**
+     * @param field
+     *            the index of the field
+     * @return the sketch of the distinct values of the field among the
+     *         tuples read, which can be merged with other sketches of the
+     *         same precision
+     */
+    public HyperLogLog distinctSketch(int field) {
+        return sketches[field];
+    }
+
+    /**
+     * @return the number of tuples the statistics were computed from, which
+     *         is less than totalTuples() if the table was sampled
+     */
+    public int sampledTuples() {
+        return sampledTuples;
+    }
+
 }
@@ -0,0 +1,146 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * TopN implements ORDER BY ... LIMIT n: it returns the first n tuples of the
+ * child in the order OrderBy would return them. Instead of sorting the whole
+ * child, it keeps the best n tuples seen so far in a heap whose root is the
+ * worst of them, so reading the child takes O(m log n) time for m tuples and
+ * O(n) memory. Like OrderBy, tuples with equal fields come in the order the
+ * child returned them.
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private OpIterator child;
+    private TupleDesc td;
+    private int orderByField;
+    private boolean asc;
+    private int limit;
+
+    /** the first limit tuples in order, once the child is read */
+    transient private ArrayList<Tuple> top = null;
+    transient private Iterator<Tuple> it = null;
+
+    /** a tuple of the child and its position, which breaks ties */
+    private static class Entry {
+        final Tuple tuple;
+        final int pos;
+
+        Entry(Tuple tuple, int pos) {
+            this.tuple = tuple;
+            this.pos = pos;
+        }
+    }
+
+    /**
+     * Creates a new TopN node over the tuples from the iterator.
+     *
+     * @param orderbyField
+     *            the field to which the sort is applied.
+     * @param asc
+     *            true if the sort order is ascending.
+     * @param limit
+     *            the number of tuples to return at most.
+     * @param child
+     *            the tuples to sort.
+     */
+    public TopN(int orderbyField, boolean asc, int limit, OpIterator child) {
+        if (limit < 0)
+            throw new IllegalArgumentException("limit must not be negative");
+        this.child = child;
+        td = child.getTupleDesc();
+        this.orderByField = orderbyField;
+        this.asc = asc;
+        this.limit = limit;
+    }
+
+    public boolean isASC() {
+        return this.asc;
+    }
+
+    public int getOrderByField() {
+        return this.orderByField;
+    }
+
+    public String getOrderFieldName() {
+        return td.getFieldName(orderByField);
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        final TupleComparator comparator = new TupleComparator(orderByField, asc);
+        // the root of the heap is the entry that comes last
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>(Math.max(1, limit), new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                int c = comparator.compare(e2.tuple, e1.tuple);
+                return c != 0 ? c : Integer.compare(e2.pos, e1.pos);
+            }
+        });
+        int pos = 0;
+        while (limit > 0 && child.hasNext()) {
+            Entry e = new Entry(child.next(), pos++);
+            if (heap.size() < limit) {
+                heap.add(e);
+            } else if (comparator.compare(e.tuple, heap.peek().tuple) < 0) {
+                // e comes before the last of the heap; a tie comes after it
+                heap.poll();
+                heap.add(e);
+            }
+        }
+        top = new ArrayList<Tuple>(heap.size());
+        for (int i = 0; i < heap.size(); i++)
+            top.add(null);
+        for (int i = top.size() - 1; i >= 0; i--)
+            top.set(i, heap.poll().tuple);
+        it = top.iterator();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        top = null;
+        it = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        it = top.iterator();
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the first tuples of the
+     * child in order
+     *
+     * @return The next tuple in the ordering, or null if there are no more
+     *         tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (it != null && it.hasNext()) {
+            return it.next();
+        } else
+            return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+
+}
@@ -1,33 +1,45 @@
 package simpledb;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 
 /**
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * A tuple read from a page can keep the page data and decode a field only
+ * when it is first asked for.
  */
 public class Tuple implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private List<Field> fieldList;
+    private Field[] fields;
 
     private RecordId recordId;
 
     private TupleDesc tupleDesc;
 
+    /**
+     * serialized tuple the fields not decoded yet are read from, or null;
+     * the fields are decoded before the tuple is serialized
+     */
+    private transient PageData data;
+
+    private int offset;
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Tuple)) {
             return false;
         }
         Tuple tuple = (Tuple) obj;
-        for (int i=0;i<fieldList.size();i++) {
-            if (!this.fieldList.get(i).equals(tuple.getField(i)))
+        for (int i=0;i<fields.length;i++) {
+            if (!this.getField(i).equals(tuple.getField(i)))
                 return false;
         }
         return this.tupleDesc.equals(tuple.getTupleDesc()) &&
@@ -44,17 +56,36 @@ public class Tuple implements Serializable {
     public Tuple(TupleDesc td) {
         // some code goes here
         tupleDesc = td;
-        fieldList = new ArrayList<>();
         if (td == null || td.numFields() <= 0) {
             throw new IllegalArgumentException("tuple create failure, please check parameter.");
         }
         int numFields = td.numFields();
+        fields = new Field[numFields];
         for (int i = 0; i < numFields; i++) {
             Field field = td.getFieldType(i).equals(Type.INT_TYPE) ?
                     new IntField(0) : new StringField("", Type.STRING_LEN);
 
-            fieldList.add(field);
+            fields[i] = field;
+        }
+    }
+
+    /**
+     * Create a tuple with the specified schema whose fields are decoded from
+     * data when they are first asked for.
+     *
+     * @param data
+     *            serialized tuples
+     * @param offset
+     *            the offset of this tuple in data
+     */
+    Tuple(TupleDesc td, PageData data, int offset) {
+        if (td == null || td.numFields() <= 0) {
+            throw new IllegalArgumentException("tuple create failure, please check parameter.");
         }
+        tupleDesc = td;
+        fields = new Field[td.numFields()];
+        this.data = data;
+        this.offset = offset;
     }
 
     /**
@@ -95,7 +126,7 @@ public class Tuple implements Serializable {
      */
     public void setField(int i, Field f) {
         // some code goes here
-        fieldList.set(i, f);
+        fields[i] = f;
     }
 
     /**
@@ -106,7 +137,43 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         // some code goes here
-        return fieldList.get(i);
+        Field field = fields[i];
+        if (field == null && data != null) {
+            field = data.parse(tupleDesc.getFieldType(i), offset + tupleDesc.getFieldOffset(i));
+            fields[i] = field;
+        }
+        return field;
+    }
+
+    /**
+     * Concatenate two tuples into one, with the fields of t1 first and those
+     * of t2 after them, as joins return them.
+     *
+     * @param td
+     *            the TupleDesc of the new tuple, such as
+     *            TupleDesc.merge(t1.getTupleDesc(), t2.getTupleDesc())
+     * @param t1
+     *            The tuple with the first fields of the new tuple
+     * @param t2
+     *            The tuple with the last fields of the new tuple
+     * @return the new tuple
+     * @see TupleDesc#merge(TupleDesc, TupleDesc)
+     */
+    public static Tuple merge(TupleDesc td, Tuple t1, Tuple t2) {
+        Tuple t = new Tuple(td);
+        int numFields1 = t1.getTupleDesc().numFields();
+        for (int i = 0; i < numFields1; i++)
+            t.setField(i, t1.getField(i));
+        for (int i = 0; i < t2.getTupleDesc().numFields(); i++)
+            t.setField(numFields1 + i, t2.getField(i));
+        return t;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            getField(i);
+        }
+        out.defaultWriteObject();
     }
 
     /**
@@ -121,8 +188,8 @@ public class Tuple implements Serializable {
         // some code goes here
 //        throw new UnsupportedOperationException("Implement this");
         StringBuilder sb = new StringBuilder();
-        for (Field field :fieldList) {
-            sb.append(field.toString());
+        for (int i = 0; i < fields.length; i++) {
+            sb.append(getField(i).toString());
             sb.append("\t");
         }
         int len = sb.length();
@@ -139,7 +206,10 @@ public class Tuple implements Serializable {
     public Iterator<Field> fields()
     {
         // some code goes here
-        return fieldList.iterator();
+        for (int i = 0; i < fields.length; i++) {
+            getField(i);
+        }
+        return Arrays.asList(fields).iterator();
     }
 
     /**
@@ -148,16 +218,17 @@ public class Tuple implements Serializable {
     public void resetTupleDesc(TupleDesc td)
     {
         // some code goes here
-        fieldList.clear();
+        data = null;
         if (td == null || td.numFields() <= 0) {
             throw new IllegalArgumentException();
         }
         int numFields = td.numFields();
+        fields = new Field[numFields];
         for (int i = 0; i < numFields; i++) {
             Field field = td.getFieldType(i).equals(Type.INT_TYPE) ?
                     new IntField(td.getSize()) : new StringField(td.getFieldName(i), 1024);
 
-            fieldList.add(field);
+            fields[i] = field;
         }
     }
 }
@@ -0,0 +1,356 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * TupleBatch holds up to a fixed number of rows of a TupleDesc column by
+ * column, so an operator can work on many tuples per call instead of one.
+ * Int columns are kept as int vectors and the others as Field vectors.
+ * <p>
+ * The rows that belong to the batch are listed in a selection vector, so a
+ * filter drops rows by shrinking the selection instead of copying the rows
+ * that pass. Row numbers index the column vectors; the i-th row of the batch
+ * is row number getSelection()[i], for i below size().
+ * <p>
+ * A batch returned by {@link OpIterator#nextBatch} belongs to the operator
+ * that returned it and is overwritten by its next call. The caller may
+ * narrow the selection of the batch, but must not add rows to it.
+ */
+public class TupleBatch {
+
+    /** number of rows of the batches operators return */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final TupleDesc td;
+
+    private final int capacity;
+
+    /** ints[c] holds column c if it is an int column, otherwise null */
+    private final int[][] ints;
+
+    /** fields[c] holds column c if it is not an int column, otherwise null */
+    private final Field[][] fields;
+
+    /** page and slot of the tuple each row was read from, if any */
+    private final PageId[] pageIds;
+    private final int[] tupleNos;
+
+    private final int[] selection;
+
+    /** number of rows stored, selected or not */
+    private int numRows;
+
+    /** number of rows selected */
+    private int size;
+
+    /**
+     * Create an empty batch of DEFAULT_CAPACITY rows.
+     */
+    public TupleBatch(TupleDesc td) {
+        this(td, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty batch.
+     *
+     * @param capacity the number of rows the batch can hold
+     */
+    public TupleBatch(TupleDesc td, int capacity) {
+        this.td = td;
+        this.capacity = capacity;
+        int numFields = td.numFields();
+        ints = new int[numFields][];
+        fields = new Field[numFields][];
+        for (int c = 0; c < numFields; c++) {
+            if (td.getFieldType(c) == Type.INT_TYPE) {
+                ints[c] = new int[capacity];
+            } else {
+                fields[c] = new Field[capacity];
+            }
+        }
+        pageIds = new PageId[capacity];
+        tupleNos = new int[capacity];
+        selection = new int[capacity];
+    }
+
+    /**
+     * Create a batch that shares its columns with another one.
+     */
+    private TupleBatch(TupleDesc td, TupleBatch source, int[] columns) {
+        this.td = td;
+        this.capacity = source.capacity;
+        ints = new int[columns.length][];
+        fields = new Field[columns.length][];
+        for (int c = 0; c < columns.length; c++) {
+            ints[c] = source.ints[columns[c]];
+            fields[c] = source.fields[columns[c]];
+        }
+        pageIds = source.pageIds;
+        tupleNos = source.tupleNos;
+        selection = source.selection;
+        numRows = source.numRows;
+        size = source.size;
+    }
+
+    /**
+     * Fill batch with the next tuples of an iterator that is read one tuple
+     * at a time. This is how iterators without a batch implementation of
+     * their own implement {@link OpIterator#nextBatch}.
+     *
+     * @param batch a batch of the TupleDesc of source, which is cleared first
+     * @return batch, or null if source has no more tuples
+     */
+    public static TupleBatch fill(OpIterator source, TupleBatch batch)
+            throws DbException, TransactionAbortedException {
+        batch.clear();
+        while (!batch.isFull() && source.hasNext()) {
+            batch.addTuple(source.next());
+        }
+        return batch.size() > 0 ? batch : null;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the number of rows the batch can hold
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of selected rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if no more rows can be added
+     */
+    public boolean isFull() {
+        return numRows == capacity;
+    }
+
+    /**
+     * Remove all rows.
+     */
+    public void clear() {
+        numRows = 0;
+        size = 0;
+    }
+
+    /**
+     * @return the row numbers of the selected rows, in its first size()
+     * elements
+     */
+    public int[] getSelection() {
+        return selection;
+    }
+
+    /**
+     * Keep only the first size rows of the selection, which the caller may
+     * have rearranged.
+     */
+    public void setSize(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IllegalArgumentException("selection can only shrink");
+        }
+        this.size = size;
+    }
+
+    /**
+     * @return the vector of int column c, indexed by row number
+     * @throws IllegalArgumentException if column c is not an int column
+     */
+    public int[] getIntColumn(int c) {
+        if (ints[c] == null) {
+            throw new IllegalArgumentException("column " + c + " is not an int column");
+        }
+        return ints[c];
+    }
+
+    /**
+     * @return the value of column c in row number row
+     */
+    public Field getField(int row, int c) {
+        return ints[c] != null ? new IntField(ints[c][row]) : fields[c][row];
+    }
+
+    /**
+     * @return the tuple of the i-th selected row
+     * @throws NoSuchElementException if fewer than i + 1 rows are selected
+     */
+    public Tuple getTuple(int i) {
+        if (i >= size) {
+            throw new NoSuchElementException();
+        }
+        int row = selection[i];
+        Tuple t = new Tuple(td);
+        for (int c = 0; c < ints.length; c++) {
+            t.setField(c, getField(row, c));
+        }
+        if (pageIds[row] != null) {
+            t.setRecordId(new RecordId(pageIds[row], tupleNos[row]));
+        }
+        return t;
+    }
+
+    /**
+     * Append an empty row and select it. Its columns are set with setInt
+     * and setField.
+     *
+     * @return the row number of the new row
+     * @throws IllegalStateException if the batch is full
+     */
+    public int addRow() {
+        if (isFull()) {
+            throw new IllegalStateException("batch is full");
+        }
+        int row = numRows++;
+        pageIds[row] = null;
+        selection[size++] = row;
+        return row;
+    }
+
+    /**
+     * Append a tuple and select it.
+     */
+    public void addTuple(Tuple t) {
+        int row = addRow();
+        for (int c = 0; c < ints.length; c++) {
+            setField(row, c, t.getField(c));
+        }
+        RecordId rid = t.getRecordId();
+        if (rid != null) {
+            pageIds[row] = rid.getPageId();
+            tupleNos[row] = rid.getTupleNumber();
+        }
+    }
+
+    /**
+     * Append a serialized tuple and select it.
+     *
+     * @param data the serialized tuple, in the format of a HeapPage
+     * @param offset the offset of the tuple in data
+     * @param pid the page the tuple is on
+     * @param tupleNo the slot of the tuple on the page
+     */
+    void addTuple(PageData data, int offset, PageId pid, int tupleNo) {
+        int row = addRow();
+        for (int c = 0; c < ints.length; c++) {
+            int fieldOffset = offset + td.getFieldOffset(c);
+            if (ints[c] != null) {
+                ints[c][row] = data.readInt(fieldOffset);
+            } else {
+                fields[c][row] = data.parse(td.getFieldType(c), fieldOffset);
+            }
+        }
+        pageIds[row] = pid;
+        tupleNos[row] = tupleNo;
+    }
+
+    public void setInt(int row, int c, int value) {
+        ints[c][row] = value;
+    }
+
+    public void setField(int row, int c, Field f) {
+        if (ints[c] != null) {
+            ints[c][row] = ((IntField) f).getValue();
+        } else {
+            fields[c][row] = f;
+        }
+    }
+
+    /**
+     * Copy all columns of a row of another batch into row number row,
+     * starting at column toColumn.
+     */
+    public void copyRow(int row, int toColumn, TupleBatch source, int sourceRow) {
+        for (int c = 0; c < source.ints.length; c++) {
+            if (source.ints[c] != null) {
+                ints[toColumn + c][row] = source.ints[c][sourceRow];
+            } else {
+                fields[toColumn + c][row] = source.fields[c][sourceRow];
+            }
+        }
+    }
+
+    /**
+     * Drop the selected rows that do not pass p from the selection.
+     */
+    public void filter(Predicate p) {
+        int c = p.getField();
+        int n = 0;
+        if (ints[c] != null) {
+            int[] column = ints[c];
+            int operand = ((IntField) p.getOperand()).getValue();
+            // one loop per operator, so the loops have no branch but the test
+            switch (p.getOp()) {
+            case EQUALS:
+            case LIKE:
+                for (int i = 0; i < size; i++) {
+                    int row = selection[i];
+                    if (column[row] == operand)
+                        selection[n++] = row;
+                }
+                break;
+            case NOT_EQUALS:
+                for (int i = 0; i < size; i++) {
+                    int row = selection[i];
+                    if (column[row] != operand)
+                        selection[n++] = row;
+                }
+                break;
+            case GREATER_THAN:
+                for (int i = 0; i < size; i++) {
+                    int row = selection[i];
+                    if (column[row] > operand)
+                        selection[n++] = row;
+                }
+                break;
+            case GREATER_THAN_OR_EQ:
+                for (int i = 0; i < size; i++) {
+                    int row = selection[i];
+                    if (column[row] >= operand)
+                        selection[n++] = row;
+                }
+                break;
+            case LESS_THAN:
+                for (int i = 0; i < size; i++) {
+                    int row = selection[i];
+                    if (column[row] < operand)
+                        selection[n++] = row;
+                }
+                break;
+            case LESS_THAN_OR_EQ:
+                for (int i = 0; i < size; i++) {
+                    int row = selection[i];
+                    if (column[row] <= operand)
+                        selection[n++] = row;
+                }
+                break;
+            default:
+                throw new IllegalStateException("impossible to reach here");
+            }
+        } else {
+            Field[] column = fields[c];
+            for (int i = 0; i < size; i++) {
+                int row = selection[i];
+                if (column[row].compare(p.getOp(), p.getOperand()))
+                    selection[n++] = row;
+            }
+        }
+        size = n;
+    }
+
+    /**
+     * @return a batch of the given columns of this one, which shares its
+     * vectors and selection with this batch
+     */
+    public TupleBatch project(int[] columns, TupleDesc td) {
+        return new TupleBatch(td, this, columns);
+    }
+}
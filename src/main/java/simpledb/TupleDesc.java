@@ -54,6 +54,11 @@ public class TupleDesc implements Serializable {
 
     private List<TDItem> tdItemList;
 
+    /**
+     * byte offset of each field within a serialized tuple
+     */
+    private int[] fieldOffsets;
+
     /**
      * Create a new TupleDesc with typeAr.length fields with fields of the
      * specified types, with associated named fields.
@@ -72,9 +77,13 @@ public class TupleDesc implements Serializable {
         }
         tdItemList = new ArrayList<>();
 
+        fieldOffsets = new int[typeAr.length];
+        int offset = 0;
         for (int i = 0; i < typeAr.length; i++) {
             TDItem tdItem = new TDItem(typeAr[i], fieldAr[i]);
             tdItemList.add(tdItem);
+            fieldOffsets[i] = offset;
+            offset += typeAr[i].getLen();
         }
     }
 
@@ -159,6 +168,16 @@ public class TupleDesc implements Serializable {
         return index;
     }
 
+    /**
+     * @return the offset in bytes of the ith field from the start of a
+     *         serialized tuple
+     * @param i
+     *            index of the field. It must be a valid index.
+     */
+    public int getFieldOffset(int i) {
+        return fieldOffsets[i];
+    }
+
     /**
      * @return The size (in bytes) of tuples corresponding to this TupleDesc.
      *         Note that tuples from a given TupleDesc are of a fixed size.
@@ -13,6 +13,7 @@ public class TupleIterator implements OpIterator {
     Iterator<Tuple> i = null;
     TupleDesc td = null;
     Iterable<Tuple> tuples = null;
+    transient TupleBatch batch = null;
 
     /**
      * Constructs an iterator from the specified Iterable, and the specified
@@ -45,6 +46,12 @@ public class TupleIterator implements OpIterator {
         return i.next();
     }
 
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (batch == null)
+            batch = new TupleBatch(td);
+        return TupleBatch.fill(this, batch);
+    }
+
     public void rewind() {
         close();
         open();
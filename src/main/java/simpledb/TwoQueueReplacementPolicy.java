@@ -0,0 +1,101 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * 2Q replacement (Johnson and Shasha). A page seen for the first time goes
+ * to the FIFO queue A1in; when it is evicted from there its id is remembered
+ * in the ghost queue A1out. A page loaded again while its id is still in
+ * A1out has proven it is reused and goes to the LRU queue Am. Pages that are
+ * only ever touched by a scan therefore never displace the Am working set.
+ */
+public class TwoQueueReplacementPolicy implements ReplacementPolicy {
+
+    /**
+     * share of the capacity reserved for A1in, and the length of A1out
+     */
+    private static final double IN_RATIO = 0.25;
+    private static final double OUT_RATIO = 0.5;
+
+    private final int maxIn;
+    private final int maxOut;
+
+    private final LinkedHashSet<PageId> a1in = new LinkedHashSet<>();
+    private final LinkedHashSet<PageId> a1out = new LinkedHashSet<>();
+    private final LinkedHashSet<PageId> am = new LinkedHashSet<>();
+
+    /**
+     * @param capacity the expected number of resident pages
+     */
+    public TwoQueueReplacementPolicy(int capacity) {
+        maxIn = Math.max(1, (int) (capacity * IN_RATIO));
+        maxOut = Math.max(1, (int) (capacity * OUT_RATIO));
+    }
+
+    @Override
+    public void pageLoaded(PageId pid) {
+        if (a1out.remove(pid)) {
+            am.add(pid);
+        } else {
+            a1in.add(pid);
+        }
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        // move to the MRU end of Am; hits in A1in are correlated references
+        if (am.remove(pid)) {
+            am.add(pid);
+        }
+    }
+
+    @Override
+    public void pageRemoved(PageId pid) {
+        if (!a1in.remove(pid)) {
+            am.remove(pid);
+        }
+    }
+
+    @Override
+    public PageId evict(Map<PageId, Page> resident) {
+        PageId victim;
+        if (a1in.size() > maxIn || am.isEmpty()) {
+            victim = evictFromIn(resident);
+            if (victim == null) {
+                victim = firstClean(am.iterator(), resident);
+            }
+        } else {
+            victim = firstClean(am.iterator(), resident);
+            if (victim == null) {
+                victim = evictFromIn(resident);
+            }
+        }
+        return victim;
+    }
+
+    private PageId evictFromIn(Map<PageId, Page> resident) {
+        PageId victim = firstClean(a1in.iterator(), resident);
+        if (victim != null) {
+            a1out.add(victim);
+            if (a1out.size() > maxOut) {
+                Iterator<PageId> it = a1out.iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        return victim;
+    }
+
+    private PageId firstClean(Iterator<PageId> it, Map<PageId, Page> resident) {
+        while (it.hasNext()) {
+            PageId pid = it.next();
+            if (resident.get(pid).isDirty() == null) {
+                it.remove();
+                return pid;
+            }
+        }
+        return null;
+    }
+}
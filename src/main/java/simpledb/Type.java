@@ -2,6 +2,7 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +25,11 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer data, int offset) {
+            return new IntField(data.getInt(offset));
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,6 +48,19 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer data, int offset) {
+            int strLen = data.getInt(offset);
+            if (data.hasArray()) {
+                return new StringField(new String(data.array(), data.arrayOffset() + offset + 4, strLen), STRING_LEN);
+            }
+            byte[] bs = new byte[strLen];
+            ByteBuffer chars = data.duplicate();
+            chars.position(offset + 4);
+            chars.get(bs);
+            return new StringField(new String(bs), STRING_LEN);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -60,4 +79,13 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object with the contents
+   *   serialized in data at offset, in the format parse(DataInputStream)
+   *   reads.
+   * @param data the serialized tuples, read with absolute gets only
+   * @param offset the offset of the field in data
+   */
+    public abstract Field parse(ByteBuffer data, int offset);
+
 }
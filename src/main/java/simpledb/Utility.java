@@ -1,11 +1,25 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.UUID;
 
 /** Helper methods used for testing and implementing random features. */
 public class Utility {
+    private static final byte[] ZEROS = new byte[4096];
+
+    /**
+     * Put count zero bytes into buffer at its position.
+     */
+    public static void putZeros(ByteBuffer buffer, int count) {
+        while (count > 0) {
+            int n = Math.min(count, ZEROS.length);
+            buffer.put(ZEROS, 0, n);
+            count -= n;
+        }
+    }
+
     /**
      * @return a Type array of length len populated with Type.INT_TYPE
      */
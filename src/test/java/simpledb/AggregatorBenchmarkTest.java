@@ -0,0 +1,131 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Merges many rows into few groups with each kind of aggregator, printing the
+ * time and heap allocation per row, and checks that merging allocates next to
+ * nothing, so the aggregator's memory does not grow with the rows.
+ */
+public class AggregatorBenchmarkTest extends SimpleDbTestBase {
+    private static final int GROUPS = 10;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * @return a full batch of (group, value) rows, with GROUPS distinct
+     *         groups, which are strings if stringGroups
+     */
+    private static TupleBatch createBatch(boolean stringGroups, boolean stringValues) {
+        Type groupType = stringGroups ? Type.STRING_TYPE : Type.INT_TYPE;
+        Type valueType = stringValues ? Type.STRING_TYPE : Type.INT_TYPE;
+        TupleBatch batch = new TupleBatch(new TupleDesc(new Type[] { groupType, valueType }));
+        Random random = new Random(0);
+        while (!batch.isFull()) {
+            int row = batch.addRow();
+            int group = random.nextInt(GROUPS);
+            if (stringGroups)
+                batch.setField(row, 0, new StringField("group" + group, Type.STRING_LEN));
+            else
+                batch.setInt(row, 0, group);
+            if (stringValues)
+                batch.setField(row, 1, new StringField("value", Type.STRING_LEN));
+            else
+                batch.setInt(row, 1, random.nextInt());
+        }
+        return batch;
+    }
+
+    /**
+     * Merge batch into aggregator over and over and print the cost per row.
+     *
+     * @return the bytes allocated per row
+     */
+    private static double measure(String name, Aggregator aggregator, TupleBatch batch) {
+        for (int i = 0; i < WARMUP; i++) {
+            aggregator.mergeBatchIntoGroup(batch);
+        }
+        long thread = Thread.currentThread().getId();
+        long bytes = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            aggregator.mergeBatchIntoGroup(batch);
+        }
+        long rows = (long) ITERATIONS * batch.size();
+        double nanos = (System.nanoTime() - start) / (double) rows;
+        double perRow = (THREADS.getThreadAllocatedBytes(thread) - bytes) / (double) rows;
+        System.out.println(String.format("%-40s %8.1f ns/row %8.3f bytes/row, %d rows into %d groups",
+                name, nanos, perRow, rows, GROUPS));
+        return perRow;
+    }
+
+    private static int countGroups(Aggregator aggregator) throws Exception {
+        OpIterator it = aggregator.iterator();
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    private static void benchmark(String name, Aggregator aggregator, TupleBatch batch) throws Exception {
+        double perRow = measure(name, aggregator, batch);
+        assertTrue(perRow < 1);
+        assertEquals(GROUPS, countGroups(aggregator));
+    }
+
+    @Test
+    public void intGroups() throws Exception {
+        TupleBatch batch = createBatch(false, false);
+        for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.MAX }) {
+            benchmark("IntegerAggregator " + op + " by int",
+                    new IntegerAggregator(0, Type.INT_TYPE, 1, op), batch);
+        }
+    }
+
+    @Test
+    public void stringGroups() throws Exception {
+        benchmark("IntegerAggregator sum by string",
+                new IntegerAggregator(0, Type.STRING_TYPE, 1, Aggregator.Op.SUM), createBatch(true, false));
+    }
+
+    @Test
+    public void noGrouping() throws Exception {
+        TupleBatch batch = createBatch(false, false);
+        IntegerAggregator aggregator = new IntegerAggregator(Aggregator.NO_GROUPING, null, 1, Aggregator.Op.COUNT);
+        assertTrue(measure("IntegerAggregator count", aggregator, batch) < 1);
+        OpIterator it = aggregator.iterator();
+        it.open();
+        assertEquals((WARMUP + ITERATIONS) * batch.size(), ((IntField) it.next().getField(0)).getValue());
+        assertFalse(it.hasNext());
+        it.close();
+    }
+
+    @Test
+    public void stringAggregator() throws Exception {
+        benchmark("StringAggregator count by int",
+                new StringAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.COUNT), createBatch(false, true));
+        benchmark("StringAggregator count by string",
+                new StringAggregator(0, Type.STRING_TYPE, 1, Aggregator.Op.COUNT), createBatch(true, true));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(AggregatorBenchmarkTest.class);
+    }
+}
@@ -8,6 +8,8 @@ import simpledb.TestUtil.SkeletonFile;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
@@ -97,6 +99,44 @@ public class CatalogTest extends SimpleDbTestBase {
     	assertEquals(f, Database.getCatalog().getDatabaseFile(id2));
     }
 
+    /** A HeapFile that counts how often it was closed. */
+    private static class ClosingFile extends HeapFile {
+        int closed;
+
+        ClosingFile(File f) {
+            super(f, Utility.getTupleDesc(2));
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed++;
+            super.close();
+        }
+    }
+
+    /**
+     * Check that the files of replaced and cleared tables are closed
+     */
+    @Test
+    public void closeDroppedFiles() throws Exception {
+        File file = File.createTempFile("catalog", ".dat");
+        file.deleteOnExit();
+        ClosingFile first = new ClosingFile(file);
+        ClosingFile second = new ClosingFile(file);
+        Database.getCatalog().addTable(first, nameThisTestRun);
+        Database.getCatalog().addTable(first, nameThisTestRun);
+        assertEquals(0, first.closed);
+
+        // the same table id is replaced by another file
+        Database.getCatalog().addTable(second, nameThisTestRun);
+        assertEquals(1, first.closed);
+        assertEquals(0, second.closed);
+
+        Database.getCatalog().clear();
+        assertEquals(1, first.closed);
+        assertEquals(1, second.closed);
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,117 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Assert;
+import org.junit.Test;
+import simpledb.Predicate.Op;
+
+import java.util.HashSet;
+import java.util.Random;
+
+public class EquiDepthHistogramTest {
+
+    private static Field[] ints(int... values) {
+        Field[] fields = new Field[values.length];
+        for (int i = 0; i < values.length; i++)
+            fields[i] = new IntField(values[i]);
+        return fields;
+    }
+
+    /**
+     * Values that are more common than the rest are estimated exactly
+     */
+    @Test
+    public void mostCommonValuesTest() {
+        Random random = new Random(0);
+        int[] values = new int[10000];
+        for (int i = 0; i < values.length; i++) {
+            // 7 is a fifth of the values, 5000 a tenth
+            int r = random.nextInt(10);
+            values[i] = r < 2 ? 7 : r < 3 ? 5000 : random.nextInt(100000);
+        }
+        int sevens = 0, fiveThousands = 0;
+        for (int v : values) {
+            sevens += v == 7 ? 1 : 0;
+            fiveThousands += v == 5000 ? 1 : 0;
+        }
+        EquiDepthHistogram h = new EquiDepthHistogram(100, 10, ints(values), values.length);
+
+        Assert.assertEquals(sevens / 10000.0, h.estimateSelectivity(Op.EQUALS, new IntField(7)), 1e-12);
+        Assert.assertEquals(fiveThousands / 10000.0, h.estimateSelectivity(Op.EQUALS, new IntField(5000)), 1e-12);
+        Assert.assertEquals(1 - sevens / 10000.0, h.estimateSelectivity(Op.NOT_EQUALS, new IntField(7)), 1e-12);
+        // the rest are spread over 100000 values, so mostly occur once
+        Assert.assertEquals(1 / 10000.0, h.estimateSelectivity(Op.EQUALS, new IntField(12345)), 0.5 / 10000);
+        // 7 is the smallest common value
+        Assert.assertEquals(0.2, h.estimateSelectivity(Op.LESS_THAN_OR_EQ, new IntField(7)), 0.02);
+        Assert.assertEquals(0.0, h.estimateSelectivity(Op.LESS_THAN, new IntField(7)), 0.01);
+        Assert.assertEquals(0.2 + 0.1 + 0.7 * 0.05, h.estimateSelectivity(Op.LESS_THAN_OR_EQ, new IntField(5000)), 0.02);
+    }
+
+    /**
+     * A field with fewer distinct values than the most common values kept is
+     * estimated exactly, however the values are distributed
+     */
+    @Test
+    public void fewValuesTest() {
+        EquiDepthHistogram h = new EquiDepthHistogram(100, 10, ints(1, 1, 1, 1, 1, 1, 2, 100, 100, 1000), 10);
+        Assert.assertEquals(0.6, h.estimateSelectivity(Op.EQUALS, new IntField(1)), 1e-12);
+        Assert.assertEquals(0.0, h.estimateSelectivity(Op.EQUALS, new IntField(50)), 1e-12);
+        Assert.assertEquals(0.7, h.estimateSelectivity(Op.LESS_THAN, new IntField(50)), 1e-12);
+        Assert.assertEquals(0.3, h.estimateSelectivity(Op.GREATER_THAN_OR_EQ, new IntField(100)), 1e-12);
+        Assert.assertEquals(0.1, h.estimateSelectivity(Op.GREATER_THAN, new IntField(100)), 1e-12);
+        Assert.assertEquals(0.36 + 0.01 + 0.04 + 0.01, h.avgSelectivity(), 1e-12);
+        Assert.assertEquals(4, h.distinctValues());
+    }
+
+    /**
+     * The selectivities of equalities with each of the values add up to 1
+     */
+    @Test
+    public void equalitiesAddUpTest() {
+        Random random = new Random(1);
+        int[] values = new int[5000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = (int) Math.abs(random.nextGaussian() * 300);
+        EquiDepthHistogram h = new EquiDepthHistogram(20, 5, ints(values), values.length);
+        HashSet<Integer> distinct = new HashSet<Integer>();
+        for (int v : values)
+            distinct.add(v);
+        double sum = 0;
+        for (int v : distinct)
+            sum += h.estimateSelectivity(Op.EQUALS, new IntField(v));
+        Assert.assertEquals(1.0, sum, 0.05);
+        Assert.assertEquals(0.5, h.estimateSelectivity(Op.LESS_THAN, new IntField(202)), 0.05);
+    }
+
+    /**
+     * Strings with the same first characters are told apart when they are
+     * common
+     */
+    @Test
+    public void stringTest() {
+        String[] statuses = { "status_active", "status_closed", "status_pending" };
+        Field[] values = new Field[1000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = new StringField(statuses[i % 10 == 0 ? 2 : i % 2], Type.STRING_LEN);
+        EquiDepthHistogram h = new EquiDepthHistogram(100, 10, values, values.length);
+        Assert.assertEquals(0.4, h.estimateSelectivity(Op.EQUALS, new StringField("status_active", Type.STRING_LEN)), 1e-12);
+        Assert.assertEquals(0.1, h.estimateSelectivity(Op.EQUALS, new StringField("status_pending", Type.STRING_LEN)), 1e-12);
+        Assert.assertEquals(0.0, h.estimateSelectivity(Op.EQUALS, new StringField("status_open", Type.STRING_LEN)), 1e-12);
+        Assert.assertEquals(0.6, h.estimateSelectivity(Op.GREATER_THAN, new StringField("status_b", Type.STRING_LEN)), 1e-12);
+        Assert.assertEquals(1.0, h.estimateSelectivity(Op.LIKE, new StringField("status", Type.STRING_LEN)), 1e-12);
+    }
+
+    @Test
+    public void emptyTest() {
+        EquiDepthHistogram h = new EquiDepthHistogram(100, 10, new Field[0], 0);
+        Assert.assertEquals(0.0, h.estimateSelectivity(Op.EQUALS, new IntField(1)), 1e-12);
+        Assert.assertEquals(1.0, h.avgSelectivity(), 1e-12);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EquiDepthHistogramTest.class);
+    }
+}
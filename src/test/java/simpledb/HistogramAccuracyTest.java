@@ -0,0 +1,219 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Estimates the selectivity of equalities and ranges on Zipfian-distributed
+ * fields with TableStats and with an equi-width IntHistogram, printing the
+ * mean and worst q-error (the factor by which an estimate is off) of each,
+ * and checks that TableStats estimates the skewed fields much better.
+ */
+public class HistogramAccuracyTest extends SimpleDbTestBase {
+    private static final int ROWS = 50000;
+    private static final int IO_COST = 10;
+
+    /**
+     * @return values from 0 to n - 1 drawn with a probability proportional to
+     *         1 / rank^s, where the ranks are a random permutation of the
+     *         values, so that the common values are not the smallest ones
+     */
+    private static int[] zipf(Random random, int n, double s) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, s);
+            cumulative[k] = sum;
+        }
+        ArrayList<Integer> ranks = new ArrayList<Integer>();
+        for (int k = 0; k < n; k++)
+            ranks.add(k);
+        Collections.shuffle(ranks, random);
+        int[] values = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            double u = random.nextDouble() * sum;
+            int lo = 0, hi = n - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) / 2;
+                if (cumulative[mid] < u)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            values[i] = ranks.get(lo);
+        }
+        return values;
+    }
+
+    private static TableStats createStats(int[]... columns) throws IOException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            ArrayList<Integer> t = new ArrayList<Integer>();
+            for (int[] column : columns)
+                t.add(column[i]);
+            tuples.add(t);
+        }
+        File temp = File.createTempFile("table", ".dat");
+        temp.deleteOnExit();
+        HeapFileEncoder.convert(tuples, temp, BufferPool.getPageSize(), columns.length);
+        HeapFile f = Utility.openHeapFile(columns.length, temp);
+        Database.getCatalog().addTable(f, "zipf");
+        return new TableStats(f.getId(), IO_COST);
+    }
+
+    private static IntHistogram createEquiWidth(int[] values) {
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int v : values) {
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        IntHistogram h = new IntHistogram(TableStats.NUM_HIST_BINS, min, max);
+        for (int v : values)
+            h.addValue(v);
+        return h;
+    }
+
+    /**
+     * @return the factor by which estimate is off from actual, counting a
+     *         fraction below that of one tuple as one tuple
+     */
+    private static double qError(double estimate, double actual) {
+        double e = Math.max(estimate, 1.0 / ROWS);
+        double a = Math.max(actual, 1.0 / ROWS);
+        return Math.max(e / a, a / e);
+    }
+
+    /** the mean and worst q-errors of a kind of estimate */
+    private static class Errors {
+        double sum;
+        double max;
+        int n;
+
+        void add(double q) {
+            sum += q;
+            max = Math.max(max, q);
+            n++;
+        }
+
+        double mean() {
+            return sum / n;
+        }
+    }
+
+    /**
+     * Estimate "field op v" for each v of constants with both the TableStats
+     * and the equi-width histogram, print their q-errors and return them.
+     */
+    private static Errors[] measure(String name, TableStats stats, int field, int[] values,
+            Predicate.Op op, int[] constants) {
+        HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (int v : values) {
+            Integer c = counts.get(v);
+            counts.put(v, c == null ? 1 : c + 1);
+        }
+        IntHistogram equiWidth = createEquiWidth(values);
+        Errors[] errors = { new Errors(), new Errors() };
+        for (int c : constants) {
+            int matches = 0;
+            if (op == Predicate.Op.EQUALS) {
+                Integer count = counts.get(c);
+                matches = count == null ? 0 : count;
+            } else {
+                for (int v : values) {
+                    if (new IntField(v).compare(op, new IntField(c)))
+                        matches++;
+                }
+            }
+            double actual = (double) matches / ROWS;
+            errors[0].add(qError(stats.estimateSelectivity(field, op, new IntField(c)), actual));
+            errors[1].add(qError(equiWidth.estimateSelectivity(op, c), actual));
+        }
+        System.out.println(String.format("%-36s q-error mean %8.2f max %10.2f, equi-width mean %8.2f max %10.2f",
+                name, errors[0].mean(), errors[0].max, errors[1].mean(), errors[1].max));
+        return errors;
+    }
+
+    /**
+     * @return the n most common values of values
+     */
+    private static int[] mostCommon(int[] values, int n) {
+        final HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (int v : values) {
+            Integer c = counts.get(v);
+            counts.put(v, c == null ? 1 : c + 1);
+        }
+        ArrayList<Integer> distinct = new ArrayList<Integer>(counts.keySet());
+        Collections.sort(distinct, new java.util.Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return counts.get(b) - counts.get(a);
+            }
+        });
+        int[] top = new int[Math.min(n, distinct.size())];
+        for (int i = 0; i < top.length; i++)
+            top[i] = distinct.get(i);
+        return top;
+    }
+
+    private static int[] randomValues(Random random, int[] values, int n) {
+        int[] picked = new int[n];
+        for (int i = 0; i < n; i++)
+            picked[i] = values[random.nextInt(values.length)];
+        return picked;
+    }
+
+    private static int[] range(int from, int to, int n) {
+        int[] constants = new int[n];
+        for (int i = 0; i < n; i++)
+            constants[i] = from + (int) ((long) (to - from) * i / (n - 1));
+        return constants;
+    }
+
+    @Test
+    public void zipfianFields() throws IOException {
+        Random random = new Random(42);
+        // customer ids, status codes, and a uniform field
+        int[] ids = zipf(random, 10000, 1.1);
+        int[] statuses = zipf(random, 20, 1.5);
+        int[] uniform = new int[ROWS];
+        for (int i = 0; i < ROWS; i++)
+            uniform[i] = random.nextInt(10000);
+        TableStats stats = createStats(ids, statuses, uniform);
+
+        Errors[] common = measure("= most common id", stats, 0, ids, Predicate.Op.EQUALS, mostCommon(ids, 20));
+        assertEquals(1.0, common[0].max, 1e-9);
+        Errors[] rows = measure("= id of a random row", stats, 0, ids, Predicate.Op.EQUALS,
+                randomValues(random, ids, 200));
+        assertTrue(rows[0].mean() < rows[1].mean() / 2);
+        Errors[] ranges = measure("< id", stats, 0, ids, Predicate.Op.LESS_THAN, range(0, 10000, 50));
+        assertTrue(ranges[0].mean() < 1.5);
+
+        Errors[] codes = measure("= status", stats, 1, statuses, Predicate.Op.EQUALS, range(0, 19, 20));
+        // every status is a most common value
+        assertEquals(1.0, codes[0].max, 1e-9);
+        Errors[] codeRanges = measure("> status", stats, 1, statuses, Predicate.Op.GREATER_THAN, range(0, 19, 20));
+        assertTrue(codeRanges[0].mean() < 1.0 + 1e-9);
+
+        Errors[] flat = measure("= uniform", stats, 2, uniform, Predicate.Op.EQUALS,
+                randomValues(random, uniform, 200));
+        assertTrue(flat[0].mean() < 2.0);
+        measure("< uniform", stats, 2, uniform, Predicate.Op.LESS_THAN, range(0, 10000, 50));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HistogramAccuracyTest.class);
+    }
+}
@@ -0,0 +1,82 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+    /**
+     * Test that the number of distinct values is estimated within a few
+     * standard errors, from a handful of values to a million
+     */
+    @Test
+    public void estimateTest() {
+        int[] sizes = { 1, 10, 100, 1000, 10000, 100000, 1000000 };
+        for (int n : sizes) {
+            HyperLogLog h = new HyperLogLog();
+            for (int i = 0; i < n; i++)
+                h.add(new IntField(i));
+            Assert.assertEquals(n, h.estimate(), Math.max(1.0, n * 0.05));
+        }
+        Assert.assertEquals(0.0, new HyperLogLog().estimate(), 0.0);
+    }
+
+    /**
+     * Test that adding values again does not change the estimate
+     */
+    @Test
+    public void duplicatesTest() {
+        HyperLogLog h = new HyperLogLog();
+        for (int i = 0; i < 5000; i++)
+            h.add(new IntField(i));
+        double estimate = h.estimate();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 5000; i++)
+                h.add(new IntField(i));
+        }
+        Assert.assertEquals(estimate, h.estimate(), 0.0);
+    }
+
+    @Test
+    public void stringTest() {
+        HyperLogLog h = new HyperLogLog();
+        for (int i = 0; i < 20000; i++)
+            h.add(new StringField("customer_" + (i % 7000), Type.STRING_LEN));
+        Assert.assertEquals(7000, h.estimate(), 7000 * 0.05);
+    }
+
+    /**
+     * Test that merging the sketches of overlapping sets of values gives the
+     * sketch of their union
+     */
+    @Test
+    public void mergeTest() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (int i = 0; i < 30000; i++) {
+            a.add(new IntField(i));
+            union.add(new IntField(i));
+        }
+        for (int i = 20000; i < 50000; i++) {
+            b.add(new IntField(i));
+            union.add(new IntField(i));
+        }
+        a.merge(b);
+        Assert.assertEquals(union.estimate(), a.estimate(), 0.0);
+        Assert.assertEquals(50000, a.estimate(), 50000 * 0.05);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergePrecisionTest() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HyperLogLogTest.class);
+    }
+}
@@ -0,0 +1,166 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntHashTableTest extends SimpleDbTestBase {
+
+  private static final int BENCHMARK_ROWS = 1000000;
+  private static final int BENCHMARK_KEYS = 200000;
+
+  /**
+   * @return the values of key, in any order
+   */
+  private static HashSet<Integer> valuesOf(IntHashTable table, int key) {
+    HashSet<Integer> values = new HashSet<Integer>();
+    for (int e = table.first(key); e != IntHashTable.NONE; e = table.next(e)) {
+      assertTrue(values.add(table.value(e)));
+    }
+    return values;
+  }
+
+  /**
+   * Unit test for IntHashTable.put() and lookups, across rehashes
+   */
+  @Test
+  public void putAndFind() {
+    IntHashTable table = new IntHashTable();
+    HashMap<Integer, HashSet<Integer>> expected = new HashMap<Integer, HashSet<Integer>>();
+    Random random = new Random(0);
+    for (int i = 0; i < 10000; i++) {
+      int key = random.nextInt(3000) - 1500;
+      table.put(key, i);
+      if (!expected.containsKey(key)) {
+        expected.put(key, new HashSet<Integer>());
+      }
+      expected.get(key).add(i);
+    }
+    assertEquals(10000, table.size());
+    assertEquals(expected.size(), table.numKeys());
+    for (int key : expected.keySet()) {
+      assertEquals(expected.get(key), valuesOf(table, key));
+    }
+    assertEquals(IntHashTable.NONE, table.first(1500));
+    assertEquals(IntHashTable.NONE, table.find(Integer.MIN_VALUE));
+  }
+
+  /**
+   * Unit test for the key numbers of IntHashTable.add()
+   */
+  @Test
+  public void keyNumbers() {
+    IntHashTable table = new IntHashTable(2);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, table.add(i * 1024));
+    }
+    assertEquals(7, table.add(7 * 1024));
+    assertEquals(7, table.find(7 * 1024));
+    assertEquals(7 * 1024, table.getKey(7));
+    assertEquals(IntHashTable.NONE, table.firstOf(7));
+    table.put(7 * 1024, 42);
+    assertEquals(42, table.value(table.firstOf(7)));
+  }
+
+  /**
+   * Unit test for IntHashTable.clear()
+   */
+  @Test
+  public void clear() {
+    IntHashTable table = new IntHashTable();
+    for (int i = 0; i < 100; i++) {
+      table.put(i, i);
+    }
+    table.clear();
+    assertEquals(0, table.size());
+    assertEquals(0, table.numKeys());
+    assertEquals(IntHashTable.NONE, table.first(5));
+    table.put(5, 6);
+    assertEquals(6, table.value(table.first(5)));
+  }
+
+  /**
+   * Compares the build and probe rates of IntHashTable with those of the
+   * HashMap of Field to tuple lists the operators used before
+   */
+  @Test
+  public void benchmark() {
+    int[] keys = new int[BENCHMARK_ROWS];
+    IntField[] fields = new IntField[BENCHMARK_ROWS];
+    // probe keys, half of which are missing
+    int[] probes = new int[BENCHMARK_ROWS];
+    IntField[] probeFields = new IntField[BENCHMARK_ROWS];
+    Random random = new Random(0);
+    for (int i = 0; i < BENCHMARK_ROWS; i++) {
+      keys[i] = random.nextInt(BENCHMARK_KEYS);
+      fields[i] = new IntField(keys[i]);
+      probes[i] = random.nextInt(2 * BENCHMARK_KEYS);
+      probeFields[i] = new IntField(probes[i]);
+    }
+    Tuple tuple = new Tuple(Utility.getTupleDesc(1));
+
+    long tableBuild = 0, tableProbe = 0, mapBuild = 0, mapProbe = 0;
+    long tableMatches = 0, mapMatches = 0;
+    // the first round warms up
+    for (int round = 0; round < 3; round++) {
+      long start = System.nanoTime();
+      IntHashTable table = new IntHashTable();
+      for (int i = 0; i < BENCHMARK_ROWS; i++) {
+        table.put(keys[i], i);
+      }
+      // the first lookup finishes the build
+      table.first(0);
+      tableBuild = System.nanoTime() - start;
+      start = System.nanoTime();
+      tableMatches = 0;
+      for (int i = 0; i < BENCHMARK_ROWS; i++) {
+        for (int e = table.first(probes[i]); e != IntHashTable.NONE; e = table.next(e)) {
+          tableMatches++;
+        }
+      }
+      tableProbe = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      HashMap<Object, ArrayList<Tuple>> map = new HashMap<Object, ArrayList<Tuple>>();
+      for (int i = 0; i < BENCHMARK_ROWS; i++) {
+        ArrayList<Tuple> list = map.get(fields[i]);
+        if (list == null) {
+          list = new ArrayList<Tuple>();
+          map.put(fields[i], list);
+        }
+        list.add(tuple);
+      }
+      mapBuild = System.nanoTime() - start;
+      start = System.nanoTime();
+      mapMatches = 0;
+      for (int i = 0; i < BENCHMARK_ROWS; i++) {
+        ArrayList<Tuple> list = map.get(probeFields[i]);
+        if (list != null) {
+          for (Tuple t : list) {
+            mapMatches++;
+          }
+        }
+      }
+      mapProbe = System.nanoTime() - start;
+    }
+    System.out.println(String.format("%d rows, %d keys: IntHashTable build %.1f M rows/s probe %.1f M rows/s, "
+        + "HashMap build %.1f M rows/s probe %.1f M rows/s", BENCHMARK_ROWS, BENCHMARK_KEYS,
+        BENCHMARK_ROWS * 1e3 / tableBuild, BENCHMARK_ROWS * 1e3 / tableProbe,
+        BENCHMARK_ROWS * 1e3 / mapBuild, BENCHMARK_ROWS * 1e3 / mapProbe));
+    assertEquals(mapMatches, tableMatches);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(IntHashTableTest.class);
+  }
+}
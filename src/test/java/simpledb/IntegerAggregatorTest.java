@@ -182,6 +182,35 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * Test IntegerAggregator SUM_COUNT partials merged with SC_AVG
+   */
+  @Test
+  public void mergeSumCountAvg() throws Exception {
+    scan1.open();
+    IntegerAggregator first = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.SUM_COUNT);
+    IntegerAggregator second = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.SUM_COUNT);
+    for (int i = 0; i < 7; i++) {
+      (i % 2 == 0 ? first : second).mergeTupleIntoGroup(scan1.next());
+    }
+    OpIterator it = first.iterator();
+    it.open();
+    TestUtil.matchAllTuples(TestUtil.createTupleList(3,
+        new int[] { 1, 8, 2, 3, 4, 1, 5, 7, 1 }), it);
+
+    IntegerAggregator avg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.SC_AVG);
+    for (IntegerAggregator partial : new IntegerAggregator[] { first, second }) {
+      it = partial.iterator();
+      it.open();
+      while (it.hasNext())
+        avg.mergeTupleIntoGroup(it.next());
+    }
+    it = avg.iterator();
+    it.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1,
+        new int[] { 1, 4, 3, 4, 5, 7 }), it);
+  }
+
   /**
    * JUnit suite target
    */
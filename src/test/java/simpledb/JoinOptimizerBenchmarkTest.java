@@ -0,0 +1,115 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+import static org.junit.Assert.*;
+
+/**
+ * Orders the joins of chain and star queries of 4 to 16 tables, printing the
+ * time to plan them by dynamic programming and greedily, and checks that the
+ * dynamic programming considers each pair of connected sets of tables once.
+ */
+public class JoinOptimizerBenchmarkTest extends SimpleDbTestBase {
+    private static final int MAX_TABLES = 16;
+    private static final int WARMUP = 3;
+
+    private HashMap<String, TableStats> stats;
+    private HashMap<String, Double> filterSelectivities;
+    private LogicalPlan plan;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        stats = new HashMap<String, TableStats>();
+        filterSelectivities = new HashMap<String, Double>();
+        StringBuilder from = new StringBuilder();
+        for (int i = 0; i < MAX_TABLES; i++) {
+            String name = "bench" + i;
+            HeapFile f = SystemTestUtil.createRandomHeapFile(2, 100 * (i + 1), 100, null, null, "c");
+            Database.getCatalog().addTable(f, name);
+            stats.put(name, new TableStats(f.getId(), 10));
+            filterSelectivities.put(name, 1.0);
+            from.append(i == 0 ? "" : ", ").append(name);
+        }
+        plan = new Parser().generateLogicalPlan(new TransactionId(), "SELECT * FROM " + from + ";");
+    }
+
+    /**
+     * @return the joins of a chain of n tables, or of a star of n tables
+     *         around the first one
+     */
+    private static Vector<LogicalJoinNode> createJoins(int n, boolean star) {
+        Vector<LogicalJoinNode> joins = new Vector<LogicalJoinNode>();
+        for (int i = 1; i < n; i++) {
+            String t1 = "bench" + (star ? 0 : i - 1);
+            joins.add(new LogicalJoinNode(t1, "bench" + i, "c0", "c1", Predicate.Op.EQUALS));
+        }
+        return joins;
+    }
+
+    /**
+     * Order joins with at most maxDpTables tables planned by dynamic
+     * programming and print the time it took.
+     *
+     * @return the optimizer, for its number of pairs
+     */
+    private JoinOptimizer measure(String name, Vector<LogicalJoinNode> joins, int maxDpTables)
+            throws ParsingException {
+        JoinOptimizer jo = new JoinOptimizer(plan, joins);
+        jo.setMaxDpTables(maxDpTables);
+        for (int i = 0; i < WARMUP; i++) {
+            jo.orderJoins(stats, filterSelectivities, false);
+        }
+        long start = System.nanoTime();
+        Vector<LogicalJoinNode> result = jo.orderJoins(stats, filterSelectivities, false);
+        System.out.println(String.format("%-32s %10.3f ms, %d pairs of plans",
+                name, (System.nanoTime() - start) / 1e6, jo.getNumPairs()));
+        assertEquals(joins.size(), result.size());
+        return jo;
+    }
+
+    @Test
+    public void chainQueries() throws ParsingException {
+        for (int n = 4; n <= MAX_TABLES; n += 2) {
+            Vector<LogicalJoinNode> joins = createJoins(n, false);
+            JoinOptimizer dp = measure("chain of " + n + " by DP", joins, MAX_TABLES);
+            // each subchain is joined with each subchain next to it
+            assertEquals((n * n * n - n) / 6, dp.getNumPairs());
+            measure("chain of " + n + " greedily", joins, 0);
+        }
+    }
+
+    @Test
+    public void starQueries() throws ParsingException {
+        for (int n = 4; n <= MAX_TABLES; n += 2) {
+            Vector<LogicalJoinNode> joins = createJoins(n, true);
+            JoinOptimizer dp = measure("star of " + n + " by DP", joins, MAX_TABLES);
+            // each set of points with the center is joined with each other point
+            assertEquals((n - 1) * (1L << (n - 2)), dp.getNumPairs());
+            measure("star of " + n + " greedily", joins, 0);
+        }
+    }
+
+    @Test
+    public void largeQueriesArePlannedGreedily() throws ParsingException {
+        JoinOptimizer jo = new JoinOptimizer(plan, createJoins(MAX_TABLES, true));
+        assertTrue(MAX_TABLES > JoinOptimizer.MAX_DP_TABLES);
+        assertEquals(MAX_TABLES - 1, jo.orderJoins(stats, filterSelectivities, false).size());
+        // every pair of plans of each round at most
+        assertTrue(jo.getNumPairs() <= MAX_TABLES * (MAX_TABLES - 1) / 2 * (MAX_TABLES - 1));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(JoinOptimizerBenchmarkTest.class);
+    }
+}
@@ -264,6 +264,44 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
         Assert.assertTrue(cardinality == 800 || cardinality == 2000);
     }
 
+    /**
+     * Verify that an equi-join of fields that are not keys is estimated from
+     * the number of distinct values of the fields
+     */
+    @Test
+    public void estimateJoinCardinalityFromDistinctValues() throws ParsingException {
+        TransactionId tid = new TransactionId();
+        Parser p = new Parser();
+        JoinOptimizer j = new JoinOptimizer(p.generateLogicalPlan(tid,
+                "SELECT * FROM " + tableName1 + " t1, " + tableName2
+                        + " t2 WHERE t1.c3 = t2.c4;"),
+                new Vector<LogicalJoinNode>());
+        LogicalJoinNode node = new LogicalJoinNode("t1", "t2", "c3", "c4",
+                Predicate.Op.EQUALS);
+
+        // both fields have the 20 values 0 to 19
+        Assert.assertEquals(20, stats1.estimateDistinctValues(3), 1);
+        Assert.assertEquals(20, stats2.estimateDistinctValues(4), 1);
+        HashMap<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        for (ArrayList<Integer> t : tuples2) {
+            Integer c = counts.get(t.get(4));
+            counts.put(t.get(4), c == null ? 1 : c + 1);
+        }
+        long actual = 0;
+        for (ArrayList<Integer> t : tuples1) {
+            Integer c = counts.get(t.get(3));
+            actual += c == null ? 0 : c;
+        }
+        int cardinality = j.estimateJoinCardinality(node, 1000, 10000, false,
+                false, TableStats.getStatsMap());
+        Assert.assertEquals(actual, cardinality, actual * 0.1);
+
+        // a side with fewer tuples than distinct values
+        cardinality = j.estimateJoinCardinality(node, 5, 10000, false, false,
+                TableStats.getStatsMap());
+        Assert.assertEquals(5 * 10000 / 20, cardinality, 5 * 10000 / 20 * 0.1);
+    }
+
     /**
      * Determine whether the orderJoins implementation is doing a reasonable job
      * of ordering joins, and not taking an unreasonable amount of time to do so
@@ -620,4 +658,162 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
         Assert.assertTrue(result.get(result.size() - 1).t2Alias.equals("a")
                 || result.get(result.size() - 1).t1Alias.equals("a"));
     }
+
+    /**
+     * Test a chain of joins in which joining both ends to a primary key first
+     * is cheapest, so that the plan is bushy, and check that the physical
+     * plan for it computes the join
+     */
+    @Test
+    public void bushyOrderJoinsTest() throws Exception {
+        final int ROWS = 500;
+        final int MAX_VALUE = 50;
+        String[] names = { "ba", "bb", "bc", "bd" };
+        String[] pkeys = { "c1", "c0", "c0", "c1" };
+        ArrayList<ArrayList<ArrayList<Integer>>> tuples = new ArrayList<ArrayList<ArrayList<Integer>>>();
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        for (int i = 0; i < names.length; i++) {
+            ArrayList<ArrayList<Integer>> t = new ArrayList<ArrayList<Integer>>();
+            HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, MAX_VALUE, null, t, "c");
+            Database.getCatalog().addTable(f, names[i], pkeys[i]);
+            stats.put(names[i], new TableStats(f.getId(), 10));
+            tuples.add(t);
+        }
+
+        // ba and bd are filtered, and each joins the primary key of its
+        // neighbour, so ba join bb and bc join bd are small
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new Parser().generateLogicalPlan(tid, "SELECT * FROM ba, bb, bc, bd "
+                + "WHERE ba.c1 < 5 AND bd.c1 < 5 AND ba.c0 = bb.c0 AND bb.c1 = bc.c1 AND bc.c0 = bd.c0;");
+        OpIterator it = lp.physicalPlan(tid, stats, false);
+
+        // the last join joins the plan of ba and bb with that of bc and bd
+        Vector<LogicalJoinNode> nodes = new Vector<LogicalJoinNode>();
+        nodes.add(new LogicalJoinNode("ba", "bb", "c0", "c0", Predicate.Op.EQUALS));
+        nodes.add(new LogicalJoinNode("bb", "bc", "c1", "c1", Predicate.Op.EQUALS));
+        nodes.add(new LogicalJoinNode("bc", "bd", "c0", "c0", Predicate.Op.EQUALS));
+        HashMap<String, Double> filterSelectivities = new HashMap<String, Double>();
+        filterSelectivities.put("ba", stats.get("ba").estimateSelectivity(1, Predicate.Op.LESS_THAN, new IntField(5)));
+        filterSelectivities.put("bb", 1.0);
+        filterSelectivities.put("bc", 1.0);
+        filterSelectivities.put("bd", stats.get("bd").estimateSelectivity(1, Predicate.Op.LESS_THAN, new IntField(5)));
+        Vector<LogicalJoinNode> result = new JoinOptimizer(lp, nodes).orderJoins(stats, filterSelectivities, false);
+        Assert.assertEquals(nodes.size(), result.size());
+        LogicalJoinNode last = result.get(result.size() - 1);
+        Assert.assertTrue(last.t1Alias.equals("bb") || last.t1Alias.equals("bc"));
+        Assert.assertTrue(last.t2Alias.equals("bb") || last.t2Alias.equals("bc"));
+
+        int expected = 0;
+        for (ArrayList<Integer> a : tuples.get(0)) {
+            if (a.get(1) >= 5)
+                continue;
+            for (ArrayList<Integer> b : tuples.get(1)) {
+                if (!a.get(0).equals(b.get(0)))
+                    continue;
+                for (ArrayList<Integer> c : tuples.get(2)) {
+                    if (!b.get(1).equals(c.get(1)))
+                        continue;
+                    for (ArrayList<Integer> d : tuples.get(3)) {
+                        if (d.get(1) < 5 && c.get(0).equals(d.get(0)))
+                            expected++;
+                    }
+                }
+            }
+        }
+        int actual = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            actual++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        Assert.assertEquals(expected, actual);
+    }
+
+    /**
+     * Verify that each join algorithm is costed only for the predicates it
+     * can evaluate, and that hashing and sorting get dearer once their input
+     * does not fit in memory
+     */
+    @Test
+    public void estimateJoinAlgorithmCostTest() throws ParsingException {
+        TransactionId tid = new TransactionId();
+        JoinOptimizer jo = new JoinOptimizer(new Parser().generateLogicalPlan(tid,
+                "SELECT * FROM " + tableName1 + " t1, " + tableName2
+                        + " t2 WHERE t1.c1 = t2.c2;"), new Vector<LogicalJoinNode>());
+        LogicalJoinNode equals = new LogicalJoinNode(tableName1, tableName2,
+                "c1", "c2", Predicate.Op.EQUALS);
+        LogicalJoinNode notEquals = new LogicalJoinNode(tableName1, tableName2,
+                "c1", "c2", Predicate.Op.NOT_EQUALS);
+        LogicalJoinNode lessThan = new LogicalJoinNode(tableName1, tableName2,
+                "c1", "c2", Predicate.Op.LESS_THAN);
+
+        double nl = jo.estimateJoinCost(equals, LogicalJoinNode.Algorithm.NESTED_LOOP, 1000, 10000, 100, 1000);
+        double bnl = jo.estimateJoinCost(equals, LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP, 1000, 10000, 100, 1000);
+        double hash = jo.estimateJoinCost(equals, LogicalJoinNode.Algorithm.HASH, 1000, 10000, 100, 1000);
+        double merge = jo.estimateJoinCost(equals, LogicalJoinNode.Algorithm.SORT_MERGE, 1000, 10000, 100, 1000);
+        Assert.assertTrue(hash < merge && merge < bnl && bnl < nl);
+        Assert.assertEquals(hash, jo.estimateJoinCost(equals, 1000, 10000, 100, 1000), 0.0);
+
+        // only the nested-loops joins evaluate <>
+        Assert.assertEquals(Double.POSITIVE_INFINITY,
+                jo.estimateJoinCost(notEquals, LogicalJoinNode.Algorithm.HASH, 1000, 10000, 100, 1000), 0.0);
+        Assert.assertEquals(Double.POSITIVE_INFINITY,
+                jo.estimateJoinCost(notEquals, LogicalJoinNode.Algorithm.SORT_MERGE, 1000, 10000, 100, 1000), 0.0);
+        Assert.assertEquals(jo.estimateJoinCost(notEquals, LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP,
+                1000, 10000, 100, 1000), jo.estimateJoinCost(notEquals, 1000, 10000, 100, 1000), 0.0);
+        // a range join is merged rather than hashed
+        Assert.assertEquals(Double.POSITIVE_INFINITY,
+                jo.estimateJoinCost(lessThan, LogicalJoinNode.Algorithm.HASH, 1000, 10000, 100, 1000), 0.0);
+        Assert.assertEquals(jo.estimateJoinCost(lessThan, LogicalJoinNode.Algorithm.SORT_MERGE,
+                1000, 10000, 100, 1000), jo.estimateJoinCost(lessThan, 1000, 10000, 100, 1000), 0.0);
+
+        // a build side that is partitioned costs more per tuple than one that
+        // fits in memory
+        int fits = HashEquiJoin.MAP_SIZE;
+        int spills = 4 * HashEquiJoin.MAP_SIZE;
+        double hashFits = jo.estimateJoinCost(equals, LogicalJoinNode.Algorithm.HASH, fits, 1, 0, 0);
+        double hashSpills = jo.estimateJoinCost(equals, LogicalJoinNode.Algorithm.HASH, spills, 1, 0, 0);
+        Assert.assertTrue(hashSpills / spills > hashFits / fits);
+        // so does a BNL join that scans the inner side once per block
+        double bnlFits = jo.estimateJoinCost(equals, LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP, Join.BLOCK_SIZE, 1, 0, 1000);
+        double bnlSpills = jo.estimateJoinCost(equals, LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP, 4 * Join.BLOCK_SIZE, 1, 0, 1000);
+        Assert.assertEquals(bnlFits + 3 * 1000 + 3 * Join.BLOCK_SIZE, bnlSpills, 0.0);
+    }
+
+    /**
+     * Verify that orderJoins chooses an algorithm for each join, and that
+     * instantiateJoin builds the operator of the chosen algorithm
+     */
+    @Test
+    public void chooseJoinAlgorithmTest() throws ParsingException {
+        TransactionId tid = new TransactionId();
+        String query = "SELECT * FROM " + tableName1 + " t1, " + tableName2
+                + " t2 WHERE t1.c1 = t2.c2;";
+        Vector<LogicalJoinNode> nodes = new Vector<LogicalJoinNode>();
+        nodes.add(new LogicalJoinNode("t1", "t2", "c1", "c2", Predicate.Op.EQUALS));
+        JoinOptimizer jo = new JoinOptimizer(new Parser().generateLogicalPlan(tid, query), nodes);
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(tableName1, stats1);
+        stats.put(tableName2, stats2);
+        HashMap<String, Double> filterSelectivities = new HashMap<String, Double>();
+        filterSelectivities.put("t1", 1.0);
+        filterSelectivities.put("t2", 1.0);
+        Vector<LogicalJoinNode> result = jo.orderJoins(stats, filterSelectivities, false);
+        Assert.assertEquals(LogicalJoinNode.Algorithm.HASH, result.get(0).algorithm);
+
+        LogicalJoinNode j = new LogicalJoinNode("t1", "t2", "c1", "c2", Predicate.Op.EQUALS);
+        Assert.assertTrue(JoinOptimizer.instantiateJoin(j.withAlgorithm(LogicalJoinNode.Algorithm.HASH),
+                new SeqScan(tid, tableId1, "t1"), new SeqScan(tid, tableId2, "t2")) instanceof HashEquiJoin);
+        Assert.assertTrue(JoinOptimizer.instantiateJoin(j.withAlgorithm(LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP),
+                new SeqScan(tid, tableId1, "t1"), new SeqScan(tid, tableId2, "t2")) instanceof Join);
+        OpIterator merge = JoinOptimizer.instantiateJoin(j.withAlgorithm(LogicalJoinNode.Algorithm.SORT_MERGE),
+                new SeqScan(tid, tableId1, "t1"), new SeqScan(tid, tableId2, "t2"));
+        Assert.assertTrue(merge instanceof SortMergeJoin);
+        Assert.assertTrue(((SortMergeJoin) merge).getChildren()[0] instanceof OrderBy);
+        // a heap file has no index to look t2 up through
+        Assert.assertTrue(JoinOptimizer.instantiateJoin(j.withAlgorithm(LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP),
+                new SeqScan(tid, tableId1, "t1"), new SeqScan(tid, tableId2, "t2")) instanceof HashEquiJoin);
+    }
 }
@@ -0,0 +1,148 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Serializes and deserializes every kind of page in a loop, printing the time
+ * and heap allocation per operation, and checks that serializing into a
+ * reused buffer allocates next to nothing.
+ */
+public class PageSerializationBenchmarkTest extends SimpleDbTestBase {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 50000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** Reads a page of one kind from its bytes. */
+    private interface PageReader {
+        Page read(byte[] data) throws IOException;
+    }
+
+    private static abstract class Operation {
+        abstract void run() throws IOException;
+    }
+
+    /**
+     * Run op in a loop and print its cost.
+     *
+     * @return the bytes allocated per operation
+     */
+    private static long measure(String name, Operation op) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        long thread = Thread.currentThread().getId();
+        long bytes = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            op.run();
+        }
+        double nanos = (System.nanoTime() - start) / (double) ITERATIONS;
+        bytes = (THREADS.getThreadAllocatedBytes(thread) - bytes) / ITERATIONS;
+        System.out.println(String.format("%-40s %8.0f ns/op %8d bytes/op", name, nanos, bytes));
+        return bytes;
+    }
+
+    private static void benchmark(String kind, final byte[] data, final PageReader reader) throws IOException {
+        final Page page = reader.read(data);
+        assertArrayEquals(data, page.getPageData());
+        final ByteBuffer buffer = ByteBuffer.allocate(data.length);
+        page.writePageData(buffer);
+        assertArrayEquals(data, buffer.array());
+
+        measure(kind + " deserialize", new Operation() {
+            void run() throws IOException {
+                reader.read(data);
+            }
+        });
+        long copy = measure(kind + " getPageData", new Operation() {
+            void run() {
+                page.getPageData();
+            }
+        });
+        long reused = measure(kind + " writePageData", new Operation() {
+            void run() {
+                buffer.clear();
+                page.writePageData(buffer);
+            }
+        });
+        assertTrue(reused < copy);
+        assertTrue(reused < data.length / 8);
+    }
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void addTable() throws Exception {
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+    }
+
+    @Test
+    public void heapPage() throws Exception {
+        benchmark("HeapPage", HeapPageReadTest.EXAMPLE_DATA, new PageReader() {
+            public Page read(byte[] data) throws IOException {
+                return new HeapPage(new HeapPageId(-1, -1), data);
+            }
+        });
+    }
+
+    @Test
+    public void leafPage() throws Exception {
+        benchmark("BTreeLeafPage", BTreeLeafPageTest.EXAMPLE_DATA, new PageReader() {
+            public Page read(byte[] data) throws IOException {
+                return new BTreeLeafPage(new BTreePageId(-1, -1, BTreePageId.LEAF), data, 0);
+            }
+        });
+    }
+
+    @Test
+    public void internalPage() throws Exception {
+        benchmark("BTreeInternalPage", BTreeInternalPageTest.EXAMPLE_DATA, new PageReader() {
+            public Page read(byte[] data) throws IOException {
+                return new BTreeInternalPage(new BTreePageId(-1, -1, BTreePageId.INTERNAL), data, 0);
+            }
+        });
+    }
+
+    @Test
+    public void headerPage() throws Exception {
+        BTreeHeaderPage header = new BTreeHeaderPage(new BTreePageId(-1, -1, BTreePageId.HEADER),
+                BTreeHeaderPage.createEmptyPageData());
+        header.init();
+        header.markSlotUsed(7, true);
+        benchmark("BTreeHeaderPage", header.getPageData(), new PageReader() {
+            public Page read(byte[] data) throws IOException {
+                return new BTreeHeaderPage(new BTreePageId(-1, -1, BTreePageId.HEADER), data);
+            }
+        });
+    }
+
+    @Test
+    public void rootPtrPage() throws Exception {
+        benchmark("BTreeRootPtrPage", BTreeRootPtrPage.createEmptyPageData(), new PageReader() {
+            public Page read(byte[] data) throws IOException {
+                return new BTreeRootPtrPage(new BTreePageId(-1, 0, BTreePageId.ROOT_PTR), data);
+            }
+        });
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageSerializationBenchmarkTest.class);
+    }
+}
@@ -0,0 +1,220 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReplacementPolicyTest {
+
+    /**
+     * Minimal page, only the dirty flag matters to a policy.
+     */
+    private static class StubPage implements Page {
+        private final PageId pid;
+        private TransactionId dirtier;
+
+        StubPage(PageId pid) {
+            this.pid = pid;
+        }
+
+        public PageId getId() {
+            return pid;
+        }
+
+        public TransactionId isDirty() {
+            return dirtier;
+        }
+
+        public void markDirty(boolean dirty, TransactionId tid) {
+            dirtier = dirty ? tid : null;
+        }
+
+        public byte[] getPageData() {
+            return new byte[0];
+        }
+
+        public void writePageData(ByteBuffer buffer) {
+        }
+
+        public Page getBeforeImage() {
+            return this;
+        }
+
+        public void setBeforeImage() {
+        }
+    }
+
+    /**
+     * A single partition pool of the given capacity driven by policy.
+     */
+    private static class SimulatedPool {
+        final ReplacementPolicy policy;
+        final int capacity;
+        final Map<PageId, Page> resident = new HashMap<>();
+        int hits = 0;
+        int misses = 0;
+
+        SimulatedPool(ReplacementPolicy.Kind kind, int capacity) {
+            this.policy = kind.create(capacity);
+            this.capacity = capacity;
+        }
+
+        void access(int pgNo) {
+            PageId pid = new HeapPageId(0, pgNo);
+            if (resident.containsKey(pid)) {
+                hits++;
+                policy.pageAccessed(pid);
+                return;
+            }
+            misses++;
+            if (resident.size() >= capacity) {
+                PageId victim = policy.evict(resident);
+                assertNotNull(victim);
+                assertNotNull(resident.remove(victim));
+            }
+            resident.put(pid, new StubPage(pid));
+            policy.pageLoaded(pid);
+        }
+
+        double hitRatio() {
+            return (double) hits / (hits + misses);
+        }
+    }
+
+    private static PageId pid(int pgNo) {
+        return new HeapPageId(0, pgNo);
+    }
+
+    /**
+     * A hot set of pages used over and over, first next to a light scan and
+     * then next to a scan that touches more pages between two uses of a hot
+     * page than fit in the pool.
+     */
+    private static SimulatedPool runMixedWorkload(ReplacementPolicy.Kind kind) {
+        SimulatedPool pool = new SimulatedPool(kind, 20);
+        int scanPage = 1000;
+        for (int round = 0; round < 50; round++) {
+            int scanPerHot = round < 20 ? 0 : 3;
+            for (int i = 0; i < 10; i++) {
+                pool.access(i);
+                for (int j = 0; j < scanPerHot; j++) {
+                    pool.access(scanPage++);
+                }
+            }
+            if (round < 20) {
+                pool.access(scanPage++);
+            }
+        }
+        return pool;
+    }
+
+    @Test
+    public void fifoEvictsInLoadOrder() {
+        SimulatedPool pool = new SimulatedPool(ReplacementPolicy.Kind.FIFO, 3);
+        pool.access(1);
+        pool.access(2);
+        pool.access(3);
+        pool.access(1);
+        pool.access(4);
+        assertFalse(pool.resident.containsKey(pid(1)));
+        assertTrue(pool.resident.containsKey(pid(2)));
+    }
+
+    @Test
+    public void clockGivesSecondChance() {
+        SimulatedPool pool = new SimulatedPool(ReplacementPolicy.Kind.CLOCK, 3);
+        pool.access(1);
+        pool.access(2);
+        pool.access(3);
+        pool.access(4);
+        // every frame was referenced, so the hand went around once
+        assertFalse(pool.resident.containsKey(pid(1)));
+        pool.access(2);
+        pool.access(5);
+        assertTrue(pool.resident.containsKey(pid(2)));
+        assertFalse(pool.resident.containsKey(pid(3)));
+    }
+
+    @Test
+    public void lruKEvictsPagesSeenOnceFirst() {
+        SimulatedPool pool = new SimulatedPool(ReplacementPolicy.Kind.LRU_K, 3);
+        pool.access(1);
+        pool.access(1);
+        pool.access(2);
+        pool.access(2);
+        pool.access(3);
+        pool.access(4);
+        assertFalse(pool.resident.containsKey(pid(3)));
+        pool.access(5);
+        assertFalse(pool.resident.containsKey(pid(4)));
+        assertTrue(pool.resident.containsKey(pid(1)));
+        assertTrue(pool.resident.containsKey(pid(2)));
+    }
+
+    @Test
+    public void twoQueuePromotesReloadedPages() {
+        TwoQueueReplacementPolicy policy = new TwoQueueReplacementPolicy(4);
+        Map<PageId, Page> resident = new HashMap<>();
+        for (int i = 1; i <= 3; i++) {
+            resident.put(pid(i), new StubPage(pid(i)));
+            policy.pageLoaded(pid(i));
+        }
+        assertEquals(pid(1), policy.evict(resident));
+        resident.remove(pid(1));
+        // 1 is remembered in A1out, so loading it again puts it in Am
+        policy.pageLoaded(pid(1));
+        resident.put(pid(1), new StubPage(pid(1)));
+        // A1in is over its quota of one page
+        assertEquals(pid(2), policy.evict(resident));
+        resident.remove(pid(2));
+        // A1in is within its quota, so Am gives up its LRU page
+        assertEquals(pid(1), policy.evict(resident));
+        resident.remove(pid(1));
+        assertEquals(pid(3), policy.evict(resident));
+    }
+
+    @Test
+    public void dirtyPagesAreNeverEvicted() {
+        for (ReplacementPolicy.Kind kind : ReplacementPolicy.Kind.values()) {
+            ReplacementPolicy policy = kind.create(2);
+            Map<PageId, Page> resident = new HashMap<>();
+            for (int i = 1; i <= 2; i++) {
+                resident.put(pid(i), new StubPage(pid(i)));
+                policy.pageLoaded(pid(i));
+            }
+            TransactionId tid = new TransactionId();
+            resident.get(pid(1)).markDirty(true, tid);
+            assertEquals(kind.toString(), pid(2), policy.evict(resident));
+            resident.remove(pid(2));
+            assertNull(kind.toString(), policy.evict(resident));
+
+            policy.pageRemoved(pid(1));
+            resident.remove(pid(1));
+            assertNull(kind.toString(), policy.evict(resident));
+        }
+    }
+
+    @Test
+    public void scanResistantPoliciesKeepTheHotSet() {
+        SimulatedPool fifo = runMixedWorkload(ReplacementPolicy.Kind.FIFO);
+        SimulatedPool clock = runMixedWorkload(ReplacementPolicy.Kind.CLOCK);
+        SimulatedPool lruK = runMixedWorkload(ReplacementPolicy.Kind.LRU_K);
+        SimulatedPool twoQ = runMixedWorkload(ReplacementPolicy.Kind.TWO_Q);
+        System.out.println(String.format("hit ratio on hot set + scan: FIFO %.3f, CLOCK %.3f, LRU_K %.3f, TWO_Q %.3f",
+                fifo.hitRatio(), clock.hitRatio(), lruK.hitRatio(), twoQ.hitRatio()));
+        assertTrue(lruK.hitRatio() > fifo.hitRatio());
+        assertTrue(twoQ.hitRatio() > fifo.hitRatio());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
@@ -0,0 +1,176 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import static org.junit.Assert.*;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int width2 = 3;
+  OpIterator scan1;
+  OpIterator scan2;
+  OpIterator eqJoin;
+  OpIterator ltJoin;
+
+  /**
+   * Initialize each unit test; both children are sorted on their first field
+   * and have duplicate keys
+   */
+  @Before
+  public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    3, 4,
+                    3, 5,
+                    5, 6,
+                    7, 8 });
+    this.scan2 = TestUtil.createTupleList(width2,
+        new int[] { 2, 2, 3,
+                    3, 3, 4,
+                    3, 4, 5,
+                    5, 6, 7,
+                    6, 7, 8 });
+    this.eqJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 3, 4, 3, 3, 4,
+                    3, 4, 3, 4, 5,
+                    3, 5, 3, 3, 4,
+                    3, 5, 3, 4, 5,
+                    5, 6, 5, 6, 7 });
+    this.ltJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 1, 2, 2, 2, 3, // 1 < 2, 3, 3, 5, 6
+                    1, 2, 3, 3, 4,
+                    1, 2, 3, 4, 5,
+                    1, 2, 5, 6, 7,
+                    1, 2, 6, 7, 8,
+                    3, 4, 5, 6, 7, // 3 < 5, 6
+                    3, 4, 6, 7, 8,
+                    3, 5, 5, 6, 7,
+                    3, 5, 6, 7, 8,
+                    5, 6, 6, 7, 8 }); // 5 < 6
+  }
+
+  /**
+   * @return the number of tuples left in it
+   */
+  private static int count(OpIterator it) throws Exception {
+    int n = 0;
+    while (it.hasNext()) {
+      it.next();
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getTupleDesc()
+   */
+  @Test
+  public void getTupleDesc() {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    TupleDesc expected = Utility.getTupleDesc(width1 + width2);
+    TupleDesc actual = op.getTupleDesc();
+    assertEquals(expected, actual);
+  }
+
+  /**
+   * Unit test for SortMergeJoin.rewind()
+   */
+  @Test
+  public void rewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    while (op.hasNext()) {
+      assertNotNull(op.next());
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    op.rewind();
+
+    eqJoin.open();
+    Tuple expected = eqJoin.next();
+    Tuple actual = op.next();
+    assertTrue(TestUtil.compareTuples(expected, actual));
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() using an = predicate, with a run of
+   * equal keys on both sides
+   */
+  @Test
+  public void eqJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+    op.rewind();
+    assertEquals(5, count(op));
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() using a &lt; predicate
+   */
+  @Test
+  public void ltJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.LESS_THAN, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    ltJoin.open();
+    TestUtil.matchAllTuples(ltJoin, op);
+    op.rewind();
+    assertEquals(10, count(op));
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() using the other range predicates,
+   * against the nested-loops Join
+   */
+  @Test
+  public void rangeJoins() throws Exception {
+    Predicate.Op[] ops = { Predicate.Op.LESS_THAN_OR_EQ,
+        Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ };
+    for (Predicate.Op o : ops) {
+      JoinPredicate pred = new JoinPredicate(0, o, 0);
+      SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+      Join expected = new Join(pred, scan1, scan2);
+      op.open();
+      expected.open();
+      TestUtil.matchAllTuples(expected, op);
+      // both joins read scan1 and scan2, so one at a time
+      expected.rewind();
+      int n = count(expected);
+      op.rewind();
+      assertEquals(n, count(op));
+      op.close();
+      expected.close();
+      scan1.open();
+      scan2.open();
+    }
+  }
+
+  /**
+   * Unit test for SortMergeJoin.isSortedOn()
+   */
+  @Test
+  public void isSortedOn() {
+    OrderBy asc = new OrderBy(1, true, scan1);
+    assertTrue(SortMergeJoin.isSortedOn(asc, 1));
+    assertFalse(SortMergeJoin.isSortedOn(asc, 0));
+    assertFalse(SortMergeJoin.isSortedOn(new OrderBy(1, false, scan1), 1));
+    assertTrue(SortMergeJoin.isSortedOn(
+        new Filter(new Predicate(0, Predicate.Op.GREATER_THAN, TestUtil.getField(2)), asc), 1));
+    assertFalse(SortMergeJoin.isSortedOn(scan1, 0));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SortMergeJoinTest.class);
+  }
+}
@@ -154,4 +154,41 @@ public class TableStatsTest extends SimpleDbTestBase {
 			Assert.assertEquals(0.0, s.estimateSelectivity(col, Predicate.Op.LESS_THAN_OR_EQ, belowMin), 0.001);
 		}
 	}
+
+	/**
+	 * Verify that the statistics of a table too large for the sample are
+	 * computed from a sample of its pages, and scaled up to the whole table
+	 */
+	@Test
+    public void sampledStatsTest() throws IOException, DbException, TransactionAbortedException {
+		final int numTuples = 200000;
+		final int maxCellVal = 1000;
+		final int sampleSize = 2000;
+		HeapFile big = SystemTestUtil.createRandomHeapFile(2, numTuples, maxCellVal, null, null);
+		Database.getCatalog().addTable(big, SystemTestUtil.getUUID());
+
+		TableStats s = new TableStats(big.getId(), IO_COST, sampleSize);
+		Assert.assertEquals(sampleSize, s.sampledTuples());
+		Assert.assertEquals(numTuples, s.totalTuples(), numTuples * 0.02);
+		Assert.assertEquals(big.numPages() * IO_COST, s.estimateScanCost(), 0.001);
+		for (int col = 0; col < 2; col++) {
+			Assert.assertEquals(0.5, s.estimateSelectivity(col, Predicate.Op.LESS_THAN, new IntField(maxCellVal / 2)), 0.05);
+			Assert.assertEquals(1.0 / maxCellVal, s.estimateSelectivity(col, Predicate.Op.EQUALS, new IntField(maxCellVal / 3)), 3.0 / maxCellVal);
+			Assert.assertEquals(0.0, s.estimateSelectivity(col, Predicate.Op.GREATER_THAN, new IntField(maxCellVal)), 0.001);
+		}
+
+		// the values of the pages read are counted, and scaled up to the
+		// table for a field that has more values than the sample
+		Assert.assertEquals(maxCellVal, s.estimateDistinctValues(0), maxCellVal * 0.1);
+		HeapFile unique = SystemTestUtil.createRandomHeapFile(1, numTuples, Integer.MAX_VALUE, null, null);
+		Database.getCatalog().addTable(unique, SystemTestUtil.getUUID());
+		TableStats u = new TableStats(unique.getId(), IO_COST, sampleSize);
+		Assert.assertEquals(numTuples, u.estimateDistinctValues(0), numTuples * 0.1);
+
+		// a table that fits in the sample is read in full
+		TableStats all = new TableStats(this.tableId, IO_COST, 10200);
+		Assert.assertEquals(10200, all.totalTuples());
+		Assert.assertEquals(10200, all.sampledTuples());
+		Assert.assertEquals(32, all.estimateDistinctValues(0), 1);
+	}
 }
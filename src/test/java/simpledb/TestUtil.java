@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -225,6 +226,11 @@ public class TestUtil {
             throw new RuntimeException("not implemented");
         }
 
+        public ArrayList<Page> insertTuples(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+            throw new RuntimeException("not implemented");
+        }
+
         public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
             throws DbException, TransactionAbortedException {
             throw new RuntimeException("not implemented");
@@ -308,6 +314,10 @@ public class TestUtil {
             cur++;
             return tup;
 		}
+
+		public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+			return TupleBatch.fill(this, new TupleBatch(getTupleDesc()));
+		}
     }
 
     /**
@@ -391,6 +401,7 @@ public class TestUtil {
                 throw new RuntimeException(e);
             }
             emptyFile.deleteOnExit();
+            FreeSpaceMap.fileOf(emptyFile).deleteOnExit();
         }
 
         protected void setUp() throws Exception {
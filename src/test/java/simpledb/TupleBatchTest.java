@@ -0,0 +1,105 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import static org.junit.Assert.*;
+
+public class TupleBatchTest extends SimpleDbTestBase {
+
+  int testWidth = 3;
+  OpIterator scan;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before
+  public void setUp() throws Exception {
+    this.scan = new TestUtil.MockScan(-5, 5, testWidth);
+    scan.open();
+  }
+
+  /**
+   * Unit test for TupleBatch.fill()
+   */
+  @Test
+  public void fill() throws Exception {
+    TupleBatch batch = new TupleBatch(scan.getTupleDesc(), 4);
+    for (int first = -5; first < 5; first += 4) {
+      assertSame(batch, TupleBatch.fill(scan, batch));
+      assertEquals(Math.min(4, 5 - first), batch.size());
+      for (int i = 0; i < batch.size(); i++) {
+        assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(first + i, testWidth), batch.getTuple(i)));
+      }
+    }
+    assertNull(TupleBatch.fill(scan, batch));
+  }
+
+  /**
+   * Unit test for TupleBatch.filter() on an int column
+   */
+  @Test
+  public void filter() throws Exception {
+    TupleBatch batch = TupleBatch.fill(scan, new TupleBatch(scan.getTupleDesc()));
+    batch.filter(new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, TestUtil.getField(2)));
+    assertEquals(3, batch.size());
+    batch.filter(new Predicate(0, Predicate.Op.NOT_EQUALS, TestUtil.getField(3)));
+    assertEquals(2, batch.size());
+    assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(2, testWidth), batch.getTuple(0)));
+    assertTrue(TestUtil.compareTuples(Utility.getHeapTuple(4, testWidth), batch.getTuple(1)));
+  }
+
+  /**
+   * Unit test for TupleBatch.filter() on a string column
+   */
+  @Test
+  public void filterStrings() {
+    TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+    TupleBatch batch = new TupleBatch(td);
+    String[] names = {"ann", "bob", "ann"};
+    for (int i = 0; i < names.length; i++) {
+      int row = batch.addRow();
+      batch.setInt(row, 0, i);
+      batch.setField(row, 1, new StringField(names[i], Type.STRING_LEN));
+    }
+    batch.filter(new Predicate(1, Predicate.Op.EQUALS, new StringField("ann", Type.STRING_LEN)));
+    assertEquals(2, batch.size());
+    assertEquals(new IntField(2), batch.getTuple(1).getField(0));
+  }
+
+  /**
+   * Unit test for TupleBatch.project()
+   */
+  @Test
+  public void project() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE});
+    TupleBatch batch = new TupleBatch(td);
+    int row = batch.addRow();
+    batch.setInt(row, 0, 1);
+    batch.setInt(row, 1, 2);
+    TupleBatch swapped = batch.project(new int[]{1, 0}, td);
+    assertEquals(1, swapped.size());
+    assertEquals(new IntField(2), swapped.getTuple(0).getField(0));
+    assertEquals(new IntField(1), swapped.getTuple(0).getField(1));
+  }
+
+  /**
+   * Unit test for TupleBatch.addRow() on a full batch
+   */
+  @Test(expected = IllegalStateException.class)
+  public void addRowWhenFull() {
+    TupleBatch batch = new TupleBatch(Utility.getTupleDesc(1), 1);
+    batch.addRow();
+    assertTrue(batch.isFull());
+    batch.addRow();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TupleBatchTest.class);
+  }
+}
@@ -29,6 +29,22 @@ public class TupleTest extends SimpleDbTestBase {
         assertEquals(new IntField(37), tup.getField(1));
     }
 
+    /**
+     * Unit test for Tuple.merge()
+     */
+    @Test
+    public void merge() {
+        Tuple t1 = Utility.getHeapTuple(new int[] { 1, 2 });
+        Tuple t2 = Utility.getHeapTuple(new int[] { 3, 4, 5 });
+        TupleDesc td = TupleDesc.merge(t1.getTupleDesc(), t2.getTupleDesc());
+
+        Tuple tup = Tuple.merge(td, t1, t2);
+
+        assertEquals(td, tup.getTupleDesc());
+        for (int i = 0; i < 5; i++)
+            assertEquals(new IntField(i + 1), tup.getField(i));
+    }
+
     /**
      * Unit test for Tuple.getTupleDesc()
      */
@@ -0,0 +1,150 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs plans both a tuple at a time and a batch at a time, checks that they
+ * return the same tuples, and compares the CPU time per row of a
+ * scan-filter-aggregate query.
+ */
+public class BatchExecutionTest extends SimpleDbTestBase {
+    private static final int ROWS = 200000;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final Comparator<ArrayList<Integer>> BY_VALUES = new Comparator<ArrayList<Integer>>() {
+        public int compare(ArrayList<Integer> a, ArrayList<Integer> b) {
+            for (int i = 0; i < a.size(); i++) {
+                int c = a.get(i).compareTo(b.get(i));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        }
+    };
+
+    private static ArrayList<ArrayList<Integer>> readTuples(OpIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        it.open();
+        while (it.hasNext()) {
+            rows.add(SystemTestUtil.tupleToList(it.next()));
+        }
+        it.close();
+        Collections.sort(rows, BY_VALUES);
+        return rows;
+    }
+
+    private static ArrayList<ArrayList<Integer>> readBatches(OpIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        it.open();
+        for (TupleBatch batch = it.nextBatch(); batch != null; batch = it.nextBatch()) {
+            assertTrue(batch.size() > 0);
+            for (int i = 0; i < batch.size(); i++) {
+                rows.add(SystemTestUtil.tupleToList(batch.getTuple(i)));
+            }
+        }
+        it.close();
+        Collections.sort(rows, BY_VALUES);
+        return rows;
+    }
+
+    @Test
+    public void testScanSeesUncommittedInserts() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 3000, 1000, null, tuples);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 500; i++) {
+            Tuple t = new Tuple(Utility.getTupleDesc(2));
+            t.setField(0, new IntField(-i));
+            t.setField(1, new IntField(i));
+            Database.getBufferPool().insertTuple(tid, table.getId(), t);
+            tuples.add(new ArrayList<Integer>(Arrays.asList(-i, i)));
+        }
+        Collections.sort(tuples, BY_VALUES);
+        assertEquals(tuples, readBatches(new SeqScan(tid, table.getId(), "")));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test
+    public void testBatchesMatchTuples() throws IOException, DbException, TransactionAbortedException {
+        HeapFile left = SystemTestUtil.createRandomHeapFile(3, 5000, 1000, null, null);
+        HeapFile right = SystemTestUtil.createRandomHeapFile(2, 3000, 1000, null, null);
+        TransactionId tid = new TransactionId();
+
+        OpIterator[] plans = new OpIterator[2];
+        ArrayList<ArrayList<Integer>> tuples = null;
+        for (int pass = 0; pass < 2; pass++) {
+            // select l.2, r.0 from l, r where l.1 < 300 and l.0 = r.1
+            OpIterator filter = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(300)),
+                    new SeqScan(tid, left.getId(), "l"));
+            OpIterator join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1),
+                    filter, new SeqScan(tid, right.getId(), "r"));
+            plans[pass] = new Project(new ArrayList<Integer>(Arrays.asList(2, 3)),
+                    new Type[]{Type.INT_TYPE, Type.INT_TYPE}, join);
+        }
+        tuples = readTuples(plans[0]);
+        assertTrue(tuples.size() > 0);
+        assertEquals(tuples, readBatches(plans[1]));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test
+    public void testScanFilterAggregate() throws IOException, DbException, TransactionAbortedException {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(3, ROWS, 1000, null, null);
+        TransactionId tid = new TransactionId();
+        Predicate predicate = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(500));
+
+        ArrayList<ArrayList<Integer>> tuples = null;
+        ArrayList<ArrayList<Integer>> batches = null;
+        long tupleTime = 0;
+        long batchTime = 0;
+        // the first round warms up
+        for (int round = 0; round < 3; round++) {
+            // select c0, sum(c2) from t where c1 < 500 group by c0, a tuple at a time
+            long start = THREADS.getCurrentThreadCpuTime();
+            OpIterator scan = new Filter(predicate, new SeqScan(tid, table.getId(), ""));
+            Aggregator aggregator = new IntegerAggregator(0, Type.INT_TYPE, 2, Aggregator.Op.SUM);
+            scan.open();
+            while (scan.hasNext()) {
+                aggregator.mergeTupleIntoGroup(scan.next());
+            }
+            scan.close();
+            tuples = readTuples(aggregator.iterator());
+            tupleTime = THREADS.getCurrentThreadCpuTime() - start;
+
+            // the same query through Aggregate, which reads batches
+            start = THREADS.getCurrentThreadCpuTime();
+            OpIterator aggregate = new Aggregate(new Filter(predicate, new SeqScan(tid, table.getId(), "")),
+                    2, 0, Aggregator.Op.SUM);
+            batches = readTuples(aggregate);
+            batchTime = THREADS.getCurrentThreadCpuTime() - start;
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println(String.format("scan-filter-aggregate over %d rows: %.0f ns/row a tuple at a time, "
+                + "%.0f ns/row in batches", ROWS, (double) tupleTime / ROWS, (double) batchTime / ROWS));
+        assertTrue(tuples.size() > 0);
+        assertEquals(tuples, batches);
+        assertTrue(batchTime < tupleTime);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BatchExecutionTest.class);
+    }
+}
@@ -0,0 +1,72 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Runs concurrent sequential scans against a buffer pool that is smaller than
+ * the table, once with a single partition and once with the default number of
+ * partitions. Every scan must see every tuple; the elapsed times are printed so
+ * the two configurations can be compared on a multi-core machine.
+ */
+public class BufferPoolConcurrencyTest extends SimpleDbTestBase {
+    private static final int ROWS = 64 * 1024;
+    private static final int BUFFER_PAGES = 32;
+
+    private long runScans(final HeapFile f, int threads, int partitions) throws Exception {
+        Database.resetBufferPool(BUFFER_PAGES, partitions);
+        final AtomicInteger scanned = new AtomicInteger(0);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        ArrayList<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Thread() {
+                public void run() {
+                    try {
+                        TransactionId tid = new TransactionId();
+                        SeqScan scan = new SeqScan(tid, f.getId(), "");
+                        scan.open();
+                        while (scan.hasNext()) {
+                            scan.next();
+                            scanned.incrementAndGet();
+                        }
+                        scan.close();
+                        Database.getBufferPool().transactionComplete(tid);
+                    } catch (Throwable t) {
+                        error.set(t);
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread t : workers)
+            t.start();
+        for (Thread t : workers)
+            t.join();
+        long elapsed = System.nanoTime() - start;
+        assertNull(error.get());
+        assertEquals(threads * ROWS, scanned.get());
+        return elapsed;
+    }
+
+    @Test public void testConcurrentScans() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        long single = runScans(f, threads, 1);
+        long partitioned = runScans(f, threads, BufferPool.DEFAULT_PARTITIONS);
+        System.out.printf("%d concurrent scans: 1 partition %.1f ms, %d partitions %.1f ms%n",
+                threads, single / 1e6, BufferPool.DEFAULT_PARTITIONS, partitioned / 1e6);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BufferPoolConcurrencyTest.class);
+    }
+}
@@ -0,0 +1,99 @@
+package simpledb.systemtest;
+
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that a scan reading through a BufferRing leaves the pages already
+ * cached in the buffer pool alone.
+ */
+public class BufferRingTest extends SimpleDbTestBase {
+    private static final int POOL_PAGES = 20;
+    private static final int HOT_PAGES = 10;
+    private static final int BIG_PAGES = 60;
+
+    /** Counts the number of readPage operations. */
+    private static class InstrumentedHeapFile extends HeapFile {
+        public int readCount = 0;
+
+        public InstrumentedHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            readCount += 1;
+            return super.readPage(pid);
+        }
+    }
+
+    private InstrumentedHeapFile hot;
+    private ArrayList<ArrayList<Integer>> hotTuples;
+    private HeapFile big;
+    private ArrayList<ArrayList<Integer>> bigTuples;
+
+    @Before
+    public void setUp() throws IOException, DbException, TransactionAbortedException {
+        Database.resetBufferPool(POOL_PAGES);
+        hotTuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * HOT_PAGES, 1000, null, hotTuples);
+        hot = new InstrumentedHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(hot, SystemTestUtil.getUUID());
+        bigTuples = new ArrayList<ArrayList<Integer>>();
+        big = SystemTestUtil.createRandomHeapFile(1, 992 * BIG_PAGES, null, bigTuples);
+    }
+
+    private void scanBig(BufferRing ring) throws DbException, TransactionAbortedException, IOException {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, big.getId(), "big", ring);
+        SystemTestUtil.matchTuples(scan, bigTuples);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test
+    public void testRingKeepsPoolPages() throws IOException, DbException, TransactionAbortedException {
+        SystemTestUtil.matchTuples(hot, hotTuples);
+        assertEquals(HOT_PAGES, hot.readCount);
+        hot.readCount = 0;
+
+        BufferRing ring = new BufferRing(4);
+        scanBig(ring);
+        // closing the scan releases the frames
+        assertEquals(0, ring.size());
+
+        SystemTestUtil.matchTuples(hot, hotTuples);
+        assertEquals(0, hot.readCount);
+    }
+
+    @Test
+    public void testScanWithoutRingEvictsPoolPages() throws IOException, DbException, TransactionAbortedException {
+        SystemTestUtil.matchTuples(hot, hotTuples);
+        hot.readCount = 0;
+
+        scanBig(null);
+
+        SystemTestUtil.matchTuples(hot, hotTuples);
+        assertTrue(hot.readCount > 0);
+    }
+
+    @Test
+    public void testScanExceedsBufferPool() {
+        assertTrue(new TableStats(big.getId(), 1000).scanExceedsBufferPool());
+        assertFalse(new TableStats(hot.getId(), 1000).scanExceedsBufferPool());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BufferRingTest.class);
+    }
+}
@@ -0,0 +1,167 @@
+package simpledb.systemtest;
+
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bulk loads a HeapFile through Insert, which inserts in batches, and
+ * compares it with inserting one tuple at a time.
+ */
+public class BulkInsertTest extends SimpleDbTestBase {
+    private static final int ROWS = 40000;
+    private static final int POOL_PAGES = 200;
+
+    @Before
+    public void setUp() {
+        Database.resetBufferPool(POOL_PAGES);
+    }
+
+    private static ArrayList<Tuple> rows(ArrayList<ArrayList<Integer>> expected) {
+        ArrayList<Tuple> rows = new ArrayList<Tuple>();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple tuple = new Tuple(Utility.getTupleDesc(2));
+            tuple.setField(0, new IntField(i));
+            tuple.setField(1, new IntField(-i));
+            rows.add(tuple);
+            expected.add(new ArrayList<Integer>(Arrays.asList(i, -i)));
+        }
+        return rows;
+    }
+
+    @Test
+    public void testBatchInsert() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 1000, 1000, null, tuples);
+        ArrayList<Tuple> rows = rows(tuples);
+
+        TransactionId tid = new TransactionId();
+        long start = System.nanoTime();
+        Insert insert = new Insert(tid, new TupleIterator(Utility.getTupleDesc(2), rows), table.getId());
+        insert.open();
+        assertEquals(ROWS, ((IntField) insert.next().getField(0)).getValue());
+        insert.close();
+        Database.getBufferPool().transactionComplete(tid);
+        long batch = System.nanoTime() - start;
+
+        ArrayList<ArrayList<Integer>> unused = new ArrayList<ArrayList<Integer>>();
+        HeapFile other = SystemTestUtil.createRandomHeapFile(2, 1000, 1000, null, unused);
+        tid = new TransactionId();
+        start = System.nanoTime();
+        for (Tuple tuple : rows(unused)) {
+            Database.getBufferPool().insertTuple(tid, other.getId(), tuple);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        long single = System.nanoTime() - start;
+
+        System.out.println(String.format("insert of %d rows: %.0f rows/s in batches, %.0f rows/s one at a time",
+                ROWS, ROWS / (batch / 1e9), ROWS / (single / 1e9)));
+        // the existing pages were topped up before new ones were added
+        assertEquals(other.numPages(), table.numPages());
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    @Test
+    public void testAbortedBatchInsert() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 1000, 1000, null, tuples);
+
+        Transaction t = new Transaction();
+        t.start();
+        Insert insert = new Insert(t.getId(), new TupleIterator(Utility.getTupleDesc(2),
+                rows(new ArrayList<ArrayList<Integer>>())), table.getId());
+        insert.open();
+        assertEquals(ROWS, ((IntField) insert.next().getField(0)).getValue());
+        insert.close();
+        int pages = table.numPages();
+        t.transactionComplete(true);
+        SystemTestUtil.matchTuples(table, tuples);
+
+        // the pages added for the aborted insert are empty and used again
+        TransactionId tid = new TransactionId();
+        insert = new Insert(tid, new TupleIterator(Utility.getTupleDesc(2), rows(tuples)), table.getId());
+        insert.open();
+        assertEquals(ROWS, ((IntField) insert.next().getField(0)).getValue());
+        insert.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(pages, table.numPages());
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    /** Counts the page reads and writes of a HeapFile. */
+    private static class CountingHeapFile extends HeapFile {
+        /** pages from this one on are counted when read */
+        int firstCounted = Integer.MAX_VALUE;
+        int pageReads;
+        int pageWrites;
+        int runWrites;
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            if (pid.getPageNumber() >= firstCounted) {
+                pageReads++;
+            }
+            return super.readPage(pid);
+        }
+
+        @Override
+        public void writePage(Page page) throws IOException {
+            pageWrites++;
+            super.writePage(page);
+        }
+
+        @Override
+        public void writePages(List<Page> pages) throws IOException {
+            runWrites++;
+            super.writePages(pages);
+        }
+    }
+
+    /**
+     * New pages of a batch insert are built in memory, never read from
+     * disk, and written once at commit, adjacent pages with one call
+     */
+    @Test
+    public void testNewPagesAreWrittenOnce() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 1000, 1000, null, tuples);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        table.firstCounted = table.numPages();
+
+        TransactionId tid = new TransactionId();
+        Insert insert = new Insert(tid, new TupleIterator(Utility.getTupleDesc(2), rows(tuples)), table.getId());
+        insert.open();
+        assertEquals(ROWS, ((IntField) insert.next().getField(0)).getValue());
+        insert.close();
+        assertTrue(table.numPages() > table.firstCounted + HeapFile.BULK_APPEND_PAGES);
+        assertEquals(0, table.pageReads);
+        assertEquals(0, table.pageWrites + table.runWrites);
+
+        // the topped up last page and the new pages after it are adjacent
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(0, table.pageWrites);
+        assertEquals(1, table.runWrites);
+        Database.resetBufferPool(POOL_PAGES);
+        SystemTestUtil.matchTuples(table, tuples);
+        assertEquals(0, table.pageWrites);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(BulkInsertTest.class);
+    }
+}
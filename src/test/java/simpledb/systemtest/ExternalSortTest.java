@@ -0,0 +1,110 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sorts tables larger than the memory budget of OrderBy, which then spills
+ * sorted runs to disk and merges them, and checks that the result is the
+ * same as that of a sort in memory, including the order of equal keys.
+ */
+public class ExternalSortTest extends SimpleDbTestBase {
+    private static final int ROWS = 30000;
+
+    /**
+     * @return the tuples of a random table whose second field numbers the rows,
+     *         so that the order of equal keys can be checked
+     */
+    private static ArrayList<Tuple> createTuples(int maxValue) {
+        Random random = new Random();
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(Utility.getTupleDesc(2));
+            t.setField(0, new IntField(random.nextInt(maxValue)));
+            t.setField(1, new IntField(i));
+            result.add(t);
+        }
+        return result;
+    }
+
+    private static ArrayList<ArrayList<Integer>> readAll(OpIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        while (it.hasNext())
+            tuples.add(SystemTestUtil.tupleToList(it.next()));
+        return tuples;
+    }
+
+    private static void validateSort(int maxValue, boolean asc, int budget, int expectedRuns)
+            throws DbException, TransactionAbortedException {
+        ArrayList<Tuple> tuples = createTuples(maxValue);
+
+        long start = System.nanoTime();
+        OrderBy inMemory = new OrderBy(0, asc, new TupleIterator(Utility.getTupleDesc(2), tuples));
+        inMemory.setMemoryBudget(ROWS);
+        inMemory.open();
+        ArrayList<ArrayList<Integer>> expected = readAll(inMemory);
+        inMemory.close();
+        long inMemoryTime = System.nanoTime() - start;
+        assertEquals(0, inMemory.getNumRuns());
+
+        start = System.nanoTime();
+        OrderBy external = new OrderBy(0, asc, new TupleIterator(Utility.getTupleDesc(2), tuples));
+        external.setMemoryBudget(budget);
+        external.open();
+        ArrayList<ArrayList<Integer>> actual = readAll(external);
+        long externalTime = System.nanoTime() - start;
+
+        System.out.println(String.format("sort of %d rows: %.1f ms in memory, %.1f ms in %d runs of %d",
+                ROWS, inMemoryTime / 1e6, externalTime / 1e6, external.getNumRuns(), budget));
+        assertEquals(expectedRuns, external.getNumRuns());
+        assertEquals(expected, actual);
+
+        external.rewind();
+        assertEquals(expected, readAll(external));
+        external.close();
+    }
+
+    @Test
+    public void testSortInRuns() throws DbException, TransactionAbortedException {
+        validateSort(ROWS, true, 1000, 30);
+        validateSort(ROWS, false, 1000, 30);
+    }
+
+    @Test
+    public void testRunsAreMergedInPasses() throws DbException, TransactionAbortedException {
+        // more runs than OrderBy.MERGE_FANIN
+        validateSort(ROWS, true, 100, 300);
+        assertTrue(300 > OrderBy.MERGE_FANIN);
+    }
+
+    @Test
+    public void testSortIsStable() throws DbException, TransactionAbortedException {
+        // every key is in most of the runs
+        validateSort(10, true, 100, 300);
+        validateSort(10, false, 1000, 30);
+    }
+
+    @Test
+    public void testSortOfEmptyAndExactRuns() throws DbException, TransactionAbortedException {
+        OrderBy empty = new OrderBy(0, true, new TupleIterator(Utility.getTupleDesc(2), new ArrayList<Tuple>()));
+        empty.setMemoryBudget(1);
+        empty.open();
+        assertTrue(readAll(empty).isEmpty());
+        empty.close();
+
+        // the last run is exactly full
+        validateSort(ROWS, true, ROWS / 3, 3);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ExternalSortTest.class);
+    }
+}
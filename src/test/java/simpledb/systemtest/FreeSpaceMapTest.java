@@ -0,0 +1,163 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that HeapFile inserts go to pages the free space map has room on,
+ * and that concurrent inserters do not wait for each other's pages.
+ */
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private static final int INSERTERS = 4;
+    private static final int ROWS_PER_INSERTER = 300;
+
+    private static void insertRows(HeapFile table, TransactionId tid, ArrayList<ArrayList<Integer>> expected,
+                                   int first, int count) throws DbException, TransactionAbortedException {
+        ArrayList<Tuple> rows = new ArrayList<Tuple>();
+        for (int i = first; i < first + count; i++) {
+            Tuple tuple = new Tuple(Utility.getTupleDesc(2));
+            tuple.setField(0, new IntField(i));
+            tuple.setField(1, new IntField(-i));
+            rows.add(tuple);
+            synchronized (expected) {
+                expected.add(new ArrayList<Integer>(Arrays.asList(i, -i)));
+            }
+        }
+        Insert insert = new Insert(tid, new TupleIterator(Utility.getTupleDesc(2), rows), table.getId());
+        insert.open();
+        assertEquals(count, ((IntField) insert.next().getField(0)).getValue());
+        insert.close();
+    }
+
+    @Test
+    public void testDeletedSpaceIsReused() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 5000, 1000, null, tuples);
+        int pages = table.numPages();
+
+        // empty the first page
+        TransactionId tid = new TransactionId();
+        HeapPageId first = new HeapPageId(table.getId(), 0);
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, first, Permissions.READ_ONLY);
+        ArrayList<Tuple> onFirst = new ArrayList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            onFirst.add(it.next());
+        }
+        for (Tuple t : onFirst) {
+            Database.getBufferPool().deleteTuple(tid, t);
+            tuples.remove(SystemTestUtil.tupleToList(t));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        insertRows(table, tid, tuples, 10000, onFirst.size());
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(pages, table.numPages());
+        page = (HeapPage) Database.getBufferPool().getPage(new TransactionId(), first, Permissions.READ_ONLY);
+        assertEquals(0, page.getNumEmptySlots());
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    @Test
+    public void testAbortedInsertLeavesRoom() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 5000, 1000, null, tuples);
+        int pages = table.numPages();
+        TransactionId tid = new TransactionId();
+        HeapPage last = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(table.getId(), pages - 1), Permissions.READ_ONLY);
+        int room = last.getNumEmptySlots();
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(room > 0);
+
+        // fill the last page and roll it back
+        tid = new TransactionId();
+        insertRows(table, tid, new ArrayList<ArrayList<Integer>>(), 10000, room);
+        assertEquals(pages, table.numPages());
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        insertRows(table, tid, tuples, 20000, room);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(pages, table.numPages());
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    @Test
+    public void testMapIsKeptWithTheTable() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 5000, 1000, null, tuples);
+        HeapFile table = Utility.openHeapFile(2, f);
+        TransactionId tid = new TransactionId();
+        insertRows(table, tid, tuples, 10000, 1000);
+        Database.getBufferPool().transactionComplete(tid);
+
+        // every page but the last is full, which the map on disk knows
+        int last = table.numPages() - 1;
+        FreeSpaceMap map = new FreeSpaceMap(f, last + 1);
+        assertEquals(last, map.nextFreePage(0));
+        assertTrue(map.isFree(last));
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        table = Utility.openHeapFile(2, f);
+        tid = new TransactionId();
+        insertRows(table, tid, tuples, 20000, 10);
+        Database.getBufferPool().transactionComplete(tid);
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    @Test
+    public void testConcurrentInsertersUseDifferentPages() throws Exception {
+        final ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        final HeapFile table = SystemTestUtil.createRandomHeapFile(2, 100, 1000, null, tuples);
+        // every inserter holds its pages until all of them have inserted
+        final CyclicBarrier inserted = new CyclicBarrier(INSERTERS);
+        final Exception[] errors = new Exception[INSERTERS];
+        Thread[] inserters = new Thread[INSERTERS];
+        long start = System.nanoTime();
+        for (int i = 0; i < INSERTERS; i++) {
+            final int inserter = i;
+            inserters[i] = new Thread() {
+                public void run() {
+                    try {
+                        TransactionId tid = new TransactionId();
+                        insertRows(table, tid, tuples, (inserter + 1) * 10000, ROWS_PER_INSERTER);
+                        inserted.await();
+                        Database.getBufferPool().transactionComplete(tid);
+                    } catch (Exception e) {
+                        errors[inserter] = e;
+                        inserted.reset();
+                    }
+                }
+            };
+            inserters[i].start();
+        }
+        for (Thread inserter : inserters) {
+            inserter.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Exception e : errors) {
+            if (e != null) {
+                throw e;
+            }
+        }
+        System.out.println(String.format("%d concurrent inserters of %d rows each: %.1f ms",
+                INSERTERS, ROWS_PER_INSERTER, elapsed / 1e6));
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
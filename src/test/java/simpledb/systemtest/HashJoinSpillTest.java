@@ -0,0 +1,148 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Joins tables larger than the memory budget of HashEquiJoin, which then
+ * spills partitions to disk, and checks that the result is the same as that
+ * of a join in memory and that neither child is read more than once.
+ */
+public class HashJoinSpillTest extends SimpleDbTestBase {
+    private static final int BUILD_ROWS = 30000;
+    private static final int PROBE_ROWS = 20000;
+    private static final int MAX_VALUE = 20000;
+
+    /** A TupleIterator that counts how often it is rewound. */
+    private static class CountingIterator extends TupleIterator {
+        private static final long serialVersionUID = 1L;
+        int rewinds;
+
+        CountingIterator(TupleDesc td, ArrayList<Tuple> tuples) {
+            super(td, tuples);
+        }
+
+        @Override
+        public void rewind() {
+            rewinds++;
+            super.rewind();
+        }
+    }
+
+    private static ArrayList<Tuple> readAll(DbFile table) throws DbException, TransactionAbortedException {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId(), "");
+        scan.open();
+        while (scan.hasNext()) {
+            tuples.add(scan.next());
+        }
+        scan.close();
+        try {
+            Database.getBufferPool().transactionComplete(tid);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return tuples;
+    }
+
+    /**
+     * @return the number of times each joined tuple was returned
+     */
+    private static HashMap<ArrayList<Integer>, Integer> join(HashEquiJoin join)
+            throws DbException, TransactionAbortedException {
+        HashMap<ArrayList<Integer>, Integer> counts = new HashMap<ArrayList<Integer>, Integer>();
+        join.open();
+        while (join.hasNext()) {
+            ArrayList<Integer> t = SystemTestUtil.tupleToList(join.next());
+            Integer count = counts.get(t);
+            counts.put(t, count == null ? 1 : count + 1);
+        }
+        join.close();
+        return counts;
+    }
+
+    private static void validateJoin(int buildMaxValue, int budget)
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<Tuple> build = readAll(SystemTestUtil.createRandomHeapFile(2, BUILD_ROWS, buildMaxValue, null, null));
+        ArrayList<Tuple> probe = readAll(SystemTestUtil.createRandomHeapFile(2, PROBE_ROWS, MAX_VALUE, null, null));
+        JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+        long start = System.nanoTime();
+        HashEquiJoin inMemory = new HashEquiJoin(pred, new TupleIterator(Utility.getTupleDesc(2), build),
+                new TupleIterator(Utility.getTupleDesc(2), probe));
+        inMemory.setMemoryBudget(BUILD_ROWS);
+        HashMap<ArrayList<Integer>, Integer> expected = join(inMemory);
+        long inMemoryTime = System.nanoTime() - start;
+        assertFalse(inMemory.hasSpilled());
+
+        CountingIterator buildSide = new CountingIterator(Utility.getTupleDesc(2), build);
+        CountingIterator probeSide = new CountingIterator(Utility.getTupleDesc(2), probe);
+        start = System.nanoTime();
+        HashEquiJoin spilling = new HashEquiJoin(pred, buildSide, probeSide);
+        spilling.setMemoryBudget(budget);
+        HashMap<ArrayList<Integer>, Integer> actual = join(spilling);
+        long spillingTime = System.nanoTime() - start;
+
+        System.out.println(String.format("join of %d and %d rows: %.1f ms in memory, %.1f ms with a budget of %d",
+                BUILD_ROWS, PROBE_ROWS, inMemoryTime / 1e6, spillingTime / 1e6, budget));
+        assertTrue(spilling.hasSpilled());
+        assertEquals(0, buildSide.rewinds);
+        assertEquals(0, probeSide.rewinds);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testSpilledJoin() throws IOException, DbException, TransactionAbortedException {
+        validateJoin(MAX_VALUE, 5000);
+    }
+
+    @Test
+    public void testPartitionsAreSplitAgain() throws IOException, DbException, TransactionAbortedException {
+        // every partition of the first split is larger than the budget
+        validateJoin(MAX_VALUE, 500);
+    }
+
+    @Test
+    public void testKeysLargerThanBudget() throws IOException, DbException, TransactionAbortedException {
+        // each key has about 3000 build tuples, which no split can separate
+        validateJoin(10, 1000);
+    }
+
+    @Test
+    public void testRewindSpilledJoin() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<Tuple> build = readAll(SystemTestUtil.createRandomHeapFile(2, 5000, 1000, null, null));
+        ArrayList<Tuple> probe = readAll(SystemTestUtil.createRandomHeapFile(2, 5000, 1000, null, null));
+        HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new TupleIterator(Utility.getTupleDesc(2), build), new TupleIterator(Utility.getTupleDesc(2), probe));
+        join.setMemoryBudget(100);
+        join.open();
+        int first = 0;
+        while (join.hasNext()) {
+            join.next();
+            first++;
+        }
+        join.rewind();
+        int second = 0;
+        while (join.hasNext()) {
+            join.next();
+            second++;
+        }
+        join.close();
+        assertTrue(first > 0);
+        assertEquals(first, second);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(HashJoinSpillTest.class);
+    }
+}
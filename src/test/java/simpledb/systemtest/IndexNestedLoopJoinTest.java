@@ -0,0 +1,142 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Joins heap files with a B+ tree through IndexNestedLoopJoin, checks that
+ * only the pages on the way to the matching leaves are read, and that the
+ * optimizer picks the index join for a selective outer side only.
+ */
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 2;
+    private static final int LEAF_PAGES = 100;
+    private static final int TUPLES_PER_LEAF = 502;
+
+    /** A BTreeFile that counts the pages read from disk. */
+    private static class InstrumentedBTreeFile extends BTreeFile {
+        int readCount = 0;
+
+        InstrumentedBTreeFile(File f, int keyField, TupleDesc td) {
+            super(f, keyField, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            readCount += 1;
+            return super.readPage(pid);
+        }
+    }
+
+    /**
+     * @return a B+ tree keyed on c0 whose tuples are (i, 2i) for i from 1 to
+     *         LEAF_PAGES full leaves, added to the catalog as name
+     */
+    private static InstrumentedBTreeFile createIndex(String name, ArrayList<ArrayList<Integer>> tuples)
+            throws IOException, DbException, TransactionAbortedException {
+        BTreeFile f = BTreeUtility.createBTreeFile(COLUMNS, LEAF_PAGES * TUPLES_PER_LEAF, null, tuples, 0);
+        InstrumentedBTreeFile table = new InstrumentedBTreeFile(f.getFile(), 0, Utility.getTupleDesc(COLUMNS, "c"));
+        Database.getCatalog().addTable(table, name);
+        return table;
+    }
+
+    private void validateJoin(Predicate.Op op, Predicate innerFilter, int outerRows, int maxReads)
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> innerTuples = new ArrayList<ArrayList<Integer>>();
+        InstrumentedBTreeFile inner = createIndex(SystemTestUtil.getUUID(), innerTuples);
+        ArrayList<ArrayList<Integer>> outerTuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile outer = SystemTestUtil.createRandomHeapFile(COLUMNS, outerRows,
+                LEAF_PAGES * TUPLES_PER_LEAF, null, outerTuples);
+
+        ArrayList<ArrayList<Integer>> expectedResults = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t1 : outerTuples) {
+            for (ArrayList<Integer> t2 : innerTuples) {
+                if (new IntField(t1.get(0)).compare(op, new IntField(t2.get(0)))
+                        && (innerFilter == null || innerFilter.filter(BTreeUtility.getBTreeTuple(t2)))) {
+                    ArrayList<Integer> out = new ArrayList<Integer>(t1);
+                    out.addAll(t2);
+                    expectedResults.add(out);
+                }
+            }
+        }
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        inner.readCount = 0;
+        TransactionId tid = new TransactionId();
+        OpIterator ss2 = new SeqScan(tid, inner.getId(), "i");
+        if (innerFilter != null)
+            ss2 = new Filter(innerFilter, ss2);
+        IndexNestedLoopJoin joinOp = new IndexNestedLoopJoin(new JoinPredicate(0, op, 0),
+                new SeqScan(tid, outer.getId(), "o"), ss2);
+        SystemTestUtil.matchTuples(joinOp, expectedResults);
+        assertEquals(outerRows, joinOp.getNumLookups());
+        joinOp.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue("read " + inner.readCount + " pages", inner.readCount <= maxReads);
+    }
+
+    @Test
+    public void testEqualsJoin() throws IOException, DbException, TransactionAbortedException {
+        // the root pointer, the root and one or two leaves per lookup
+        validateJoin(Predicate.Op.EQUALS, null, 20, 2 + 20 * 2);
+    }
+
+    @Test
+    public void testRangeJoinWithFilter() throws IOException, DbException, TransactionAbortedException {
+        // o.c0 > i.c0 reads the leaves up to o.c0, which the buffer pool
+        // cannot hold all of; i.c1 is 2 * i.c0
+        Predicate filter = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(1000));
+        validateJoin(Predicate.Op.GREATER_THAN, filter, 5, 5 * (3 + LEAF_PAGES));
+    }
+
+    @Test
+    public void testOptimizerPicksIndexJoinForSelectiveOuter() throws Exception {
+        final int IO_COST = 1000;
+        createIndex("inljinner", new ArrayList<ArrayList<Integer>>());
+        HeapFile outer = SystemTestUtil.createRandomHeapFile(COLUMNS, 2000,
+                LEAF_PAGES * TUPLES_PER_LEAF, null, null, "c");
+        Database.getCatalog().addTable(outer, "inljouter");
+        TableStats.setTableStats("inljinner", new TableStats(Database.getCatalog().getTableId("inljinner"), IO_COST));
+        TableStats.setTableStats("inljouter", new TableStats(Database.getCatalog().getTableId("inljouter"), IO_COST));
+
+        // about 2 of the outer tuples are looked up
+        OpIterator selective = plan("SELECT * FROM inljouter o, inljinner i "
+                + "WHERE o.c0 = i.c0 AND o.c1 < 100;");
+        assertTrue(containsIndexJoin(selective));
+        // every outer tuple would be looked up, so hashing is cheaper
+        OpIterator all = plan("SELECT * FROM inljouter o, inljinner i WHERE o.c0 = i.c0;");
+        assertFalse(containsIndexJoin(all));
+    }
+
+    private static OpIterator plan(String query) throws Exception {
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new Parser().generateLogicalPlan(tid, query);
+        return lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    }
+
+    private static boolean containsIndexJoin(OpIterator plan) {
+        if (plan instanceof IndexNestedLoopJoin)
+            return true;
+        if (plan instanceof Operator) {
+            for (OpIterator child : ((Operator) plan).getChildren()) {
+                if (child != null && containsIndexJoin(child))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+    }
+}
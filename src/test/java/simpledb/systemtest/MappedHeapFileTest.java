@@ -0,0 +1,117 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs reads, inserts, flushes and log rollback against a memory-mapped
+ * HeapFile.
+ */
+public class MappedHeapFileTest extends SimpleDbTestBase {
+
+    private HeapFile openMapped(File f) {
+        HeapFile table = new HeapFile(f, Utility.getTupleDesc(2), true);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        return table;
+    }
+
+    private void insertRows(HeapFile table, TransactionId tid, ArrayList<ArrayList<Integer>> expected, int first, int count)
+            throws DbException, TransactionAbortedException {
+        ArrayList<Tuple> rows = new ArrayList<Tuple>();
+        for (int i = first; i < first + count; i++) {
+            Tuple tuple = new Tuple(Utility.getTupleDesc(2));
+            tuple.setField(0, new IntField(i));
+            tuple.setField(1, new IntField(-i));
+            rows.add(tuple);
+            if (expected != null) {
+                expected.add(new ArrayList<Integer>(Arrays.asList(i, -i)));
+            }
+        }
+        Insert insert = new Insert(tid, new TupleIterator(Utility.getTupleDesc(2), rows), table.getId());
+        insert.open();
+        assertEquals(count, ((IntField) insert.next().getField(0)).getValue());
+        insert.close();
+    }
+
+    @Test
+    public void testReadAndAppend() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 2000, 1000, null, tuples);
+        HeapFile table = openMapped(f);
+        SystemTestUtil.matchTuples(table, tuples);
+
+        // fill the existing pages and append new ones past the mapping
+        TransactionId tid = new TransactionId();
+        int pages = table.numPages();
+        insertRows(table, tid, tuples, 10000, 2000);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(true, table.numPages() > pages);
+        SystemTestUtil.matchTuples(table, tuples);
+
+        // what the mapping wrote is on disk
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(openMapped(f), tuples);
+        SystemTestUtil.matchTuples(Utility.openHeapFile(2, f), tuples);
+    }
+
+    @Test
+    public void testRollback() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 100, 1000, null, tuples);
+        HeapFile table = openMapped(f);
+
+        Transaction t = new Transaction();
+        t.start();
+        insertRows(table, t.getId(), null, 10000, 10);
+        // write the uncommitted page through the mapping, then undo it from the log
+        Database.getBufferPool().flushAllPages();
+        Database.getLogFile().logAbort(t.getId());
+        Database.getBufferPool().transactionComplete(t.getId(), false);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    @Test
+    public void testPagesAreReadInPlaceAndCopiedOnWrite() throws IOException, DbException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 2000, 1000, null, tuples);
+        HeapFile table = openMapped(f);
+        HeapPageId pid = new HeapPageId(table.getId(), 0);
+        HeapPage page = (HeapPage) table.readPage(pid);
+        Tuple first = page.iterator().next();
+
+        // the page decodes the file's bytes, it was not copied when read
+        int slots = BufferPool.getPageSize() * 8 / (Utility.getTupleDesc(2).getSize() * 8 + 1);
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.seek((slots + 7) / 8);
+        raf.writeInt(4242);
+        raf.close();
+        assertEquals(4242, ((IntField) first.getField(0)).getValue());
+
+        // writing the page copies the region before overwriting it, so
+        // fields not decoded yet keep their values
+        HeapPage changed = (HeapPage) table.readPage(pid);
+        changed.deleteTuple(changed.iterator().next());
+        Tuple replacement = new Tuple(Utility.getTupleDesc(2));
+        replacement.setField(0, new IntField(-7));
+        replacement.setField(1, new IntField(-8));
+        changed.insertTuple(replacement);
+        table.writePage(changed);
+        assertEquals(tuples.get(0).get(1).intValue(), ((IntField) first.getField(1)).getValue());
+        assertEquals(-8, ((IntField) ((HeapPage) table.readPage(pid)).iterator().next().getField(1)).getValue());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
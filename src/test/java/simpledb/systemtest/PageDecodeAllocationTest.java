@@ -0,0 +1,92 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the time and heap allocation of reading HeapPages from disk, and
+ * checks that fields nobody asks for are not decoded.
+ */
+public class PageDecodeAllocationTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 8;
+    private static final int ROWS = 50000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Read every page of table and the first fields of its tuples.
+     *
+     * @return the bytes allocated per page
+     */
+    private long readPages(HeapFile table, int fields, long[] sum) {
+        long thread = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(thread);
+        for (int pageNo = 0; pageNo < table.numPages(); pageNo++) {
+            HeapPage page = (HeapPage) table.readPage(new HeapPageId(table.getId(), pageNo));
+            Iterator<Tuple> it = page.iterator();
+            while (it.hasNext()) {
+                Tuple tuple = it.next();
+                for (int i = 0; i < fields; i++) {
+                    sum[0] += ((IntField) tuple.getField(i)).getValue();
+                }
+            }
+        }
+        return (THREADS.getThreadAllocatedBytes(thread) - before) / table.numPages();
+    }
+
+    @Test
+    public void testOnlyReadFieldsAreDecoded() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, 1000, null, tuples);
+        long expected = 0;
+        for (ArrayList<Integer> tuple : tuples) {
+            expected += tuple.get(0);
+        }
+
+        // warm up
+        long[] sum = new long[1];
+        readPages(table, COLUMNS, sum);
+        readPages(table, 1, sum);
+
+        sum[0] = 0;
+        long start = System.nanoTime();
+        long oneField = readPages(table, 1, sum);
+        double oneFieldTime = (System.nanoTime() - start) / 1e3 / table.numPages();
+        assertEquals(expected, sum[0]);
+        start = System.nanoTime();
+        long allFields = readPages(table, COLUMNS, sum);
+        double allFieldsTime = (System.nanoTime() - start) / 1e3 / table.numPages();
+        System.out.println(String.format("reading a page of %d int columns: 1 field %d bytes %.1f us, "
+                + "all fields %d bytes %.1f us", COLUMNS, oneField, oneFieldTime, allFields, allFieldsTime));
+        assertTrue(oneField < allFields);
+    }
+
+    @Test
+    public void testUntouchedPageSerializesToItsData() throws IOException, DbException, TransactionAbortedException {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, 200, 1000, null, null);
+        HeapPageId pid = new HeapPageId(table.getId(), 0);
+        HeapPage page = (HeapPage) table.readPage(pid);
+        byte[] data = page.getPageData();
+
+        // decoding some of the fields does not change the page
+        Iterator<Tuple> it = page.iterator();
+        it.next().getField(3);
+        assertArrayEquals(data, page.getPageData());
+        assertArrayEquals(data, new HeapPage(pid, data).getPageData());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PageDecodeAllocationTest.class);
+    }
+}
@@ -0,0 +1,81 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that readPage reads each page of a HeapFile at its own offset, in
+ * any order, and prints how long a read of the first, the last and a random
+ * page takes. The times depend on the machine and what else it is doing, so
+ * they are only printed.
+ */
+public class PageReadLatencyTest extends SimpleDbTestBase {
+    private static final int PAGES = 2000;
+    private static final int READS = 500;
+
+    /** @return the value of the one tuple of page pageNo, which is pageNo */
+    private int readValue(HeapFile table, int pageNo) {
+        HeapPageId pid = new HeapPageId(table.getId(), pageNo);
+        HeapPage page = (HeapPage) table.readPage(pid);
+        assertEquals(pid, page.getId());
+        return ((IntField) page.iterator().next().getField(0)).getValue();
+    }
+
+    /** @return the average time of a readPage of pageNo in microseconds */
+    private double timeReads(HeapFile table, int pageNo) {
+        long start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            assertEquals(pageNo, readValue(table, pageNo));
+        }
+        return (System.nanoTime() - start) / 1e3 / READS;
+    }
+
+    @Test
+    public void testReadPagesAtAnyOffset() throws IOException, DbException {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HeapFile table = new HeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        // page n holds one tuple with the value n
+        FileOutputStream fos = new FileOutputStream(f);
+        for (int i = 0; i < PAGES; i++) {
+            HeapPage page = new HeapPage(new HeapPageId(table.getId(), i), HeapPage.createEmptyPageData());
+            page.insertTuple(Utility.getHeapTuple(i));
+            fos.write(page.getPageData());
+        }
+        fos.close();
+
+        // warm up
+        timeReads(table, 0);
+        timeReads(table, PAGES - 1);
+
+        double first = timeReads(table, 0);
+        double last = timeReads(table, PAGES - 1);
+        Random r = new Random(0);
+        long start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            int pageNo = r.nextInt(PAGES);
+            assertEquals(pageNo, readValue(table, pageNo));
+        }
+        double random = (System.nanoTime() - start) / 1e3 / READS;
+        System.out.println(String.format("readPage of %d page file: first page %.1f us, last page %.1f us, random page %.1f us",
+                PAGES, first, last, random));
+
+        // reads going backwards through the file find each page too
+        for (int pageNo = PAGES - 1; pageNo >= 0; pageNo--) {
+            assertEquals(pageNo, readValue(table, pageNo));
+        }
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PageReadLatencyTest.class);
+    }
+}
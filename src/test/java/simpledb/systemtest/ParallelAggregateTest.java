@@ -0,0 +1,120 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Aggregates a table large enough to be split across workers with every
+ * parallelism up to the number of cores and more, and checks that the result
+ * is the same as that of the aggregate on one thread.
+ */
+public class ParallelAggregateTest extends SimpleDbTestBase {
+    private static final int ROWS = 200000;
+    private static final int COLUMNS = 3;
+    private static final int GROUPS = 16;
+
+    /**
+     * @return the number of times each tuple of the aggregate was returned
+     */
+    private static HashMap<ArrayList<Integer>, Integer> aggregate(HeapFile table, Aggregator.Op op,
+            int groupColumn, Predicate filter, int parallelism, int expectedWorkers)
+            throws DbException, TransactionAbortedException, IOException {
+        TransactionId tid = new TransactionId();
+        OpIterator child = new SeqScan(tid, table.getId(), "");
+        if (filter != null)
+            child = new Filter(filter, child);
+        Aggregate ag = new Aggregate(child, 1, groupColumn, op);
+        ag.setParallelism(parallelism);
+        HashMap<ArrayList<Integer>, Integer> counts = new HashMap<ArrayList<Integer>, Integer>();
+        ag.open();
+        while (ag.hasNext()) {
+            ArrayList<Integer> t = SystemTestUtil.tupleToList(ag.next());
+            Integer count = counts.get(t);
+            counts.put(t, count == null ? 1 : count + 1);
+        }
+        ag.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(expectedWorkers, ag.getWorkersUsed());
+        return counts;
+    }
+
+    private static HeapFile createTable() throws IOException, DbException, TransactionAbortedException {
+        // few groups in column 0
+        return SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, GROUPS, null, null);
+    }
+
+    private static void validateAggregate(HeapFile table, Aggregator.Op op, int groupColumn, Predicate filter)
+            throws DbException, TransactionAbortedException, IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        HashMap<ArrayList<Integer>, Integer> expected = aggregate(table, op, groupColumn, filter, 1, 1);
+        long serial = System.nanoTime() - start;
+        for (int threads : new int[] { 2, cores, 2 * cores + 1 }) {
+            if (threads < 2)
+                continue;
+            start = System.nanoTime();
+            assertEquals(expected, aggregate(table, op, groupColumn, filter, threads, threads));
+            System.out.println(String.format("%s of %d rows%s: %.1f ms on 1 thread, %.1f ms on %d",
+                    op, ROWS, groupColumn == Aggregator.NO_GROUPING ? "" : " by group",
+                    serial / 1e6, (System.nanoTime() - start) / 1e6, threads));
+        }
+    }
+
+    @Test
+    public void testGroupedAggregates() throws DbException, TransactionAbortedException, IOException {
+        HeapFile table = createTable();
+        for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.AVG,
+                Aggregator.Op.COUNT, Aggregator.Op.MIN, Aggregator.Op.MAX }) {
+            validateAggregate(table, op, 0, null);
+        }
+    }
+
+    @Test
+    public void testUngroupedAggregates() throws DbException, TransactionAbortedException, IOException {
+        HeapFile table = createTable();
+        validateAggregate(table, Aggregator.Op.AVG, Aggregator.NO_GROUPING, null);
+        validateAggregate(table, Aggregator.Op.COUNT, Aggregator.NO_GROUPING, null);
+    }
+
+    @Test
+    public void testFilteredAggregate() throws DbException, TransactionAbortedException, IOException {
+        HeapFile table = createTable();
+        Predicate filter = new Predicate(2, Predicate.Op.LESS_THAN, new IntField(GROUPS / 2));
+        validateAggregate(table, Aggregator.Op.AVG, 0, filter);
+    }
+
+    /**
+     * The sum of a group is carried at full width to the average, as on one
+     * thread, even when it does not fit in an int.
+     */
+    @Test
+    public void testSumsBeyondInt() throws DbException, TransactionAbortedException, IOException {
+        HashMap<Integer, Integer> columns = new HashMap<Integer, Integer>();
+        columns.put(0, 7);
+        columns.put(1, 2000000000);
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, GROUPS, columns, null);
+        validateAggregate(table, Aggregator.Op.AVG, 0, null);
+        validateAggregate(table, Aggregator.Op.AVG, Aggregator.NO_GROUPING, null);
+        HashMap<ArrayList<Integer>, Integer> expected = new HashMap<ArrayList<Integer>, Integer>();
+        expected.put(new ArrayList<Integer>(Arrays.asList(7, 2000000000)), 1);
+        assertEquals(expected, aggregate(table, Aggregator.Op.AVG, 0, null, 4, 4));
+    }
+
+    @Test
+    public void testSmallTableIsNotSplit() throws DbException, TransactionAbortedException, IOException {
+        HeapFile table = SystemTestUtil.createRandomHeapFile(COLUMNS, 100, GROUPS, null, null);
+        aggregate(table, Aggregator.Op.SUM, 0, null, 4, 1);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ParallelAggregateTest.class);
+    }
+}
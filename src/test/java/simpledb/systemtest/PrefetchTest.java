@@ -0,0 +1,132 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the throughput of heap scans with and without read-ahead on a
+ * table whose pages take a while to read.
+ */
+public class PrefetchTest extends SimpleDbTestBase {
+    private static final int PAGES = 100;
+    private static final int READ_DELAY_MS = 2;
+
+    /** Simulates a disk with a fixed latency per page. */
+    private static class SlowHeapFile extends HeapFile {
+        public SlowHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            try {
+                Thread.sleep(READ_DELAY_MS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return super.readPage(pid);
+        }
+
+        /** A run of adjacent pages costs one delay, like one disk request. */
+        @Override
+        public List<Page> readPages(int pageNo, int count) throws IOException {
+            try {
+                Thread.sleep(READ_DELAY_MS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return super.readPages(pageNo, count);
+        }
+    }
+
+    /** Counts the calls of readPage and readPages. */
+    private static class CountingHeapFile extends HeapFile {
+        final AtomicInteger pageReads = new AtomicInteger();
+        final AtomicInteger runReads = new AtomicInteger();
+
+        public CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            pageReads.incrementAndGet();
+            return super.readPage(pid);
+        }
+
+        @Override
+        public List<Page> readPages(int pageNo, int count) throws IOException {
+            runReads.incrementAndGet();
+            return super.readPages(pageNo, count);
+        }
+    }
+
+    private long timeScan(HeapFile table, ArrayList<ArrayList<Integer>> tuples, int prefetchPages)
+            throws IOException, DbException, TransactionAbortedException {
+        Database.resetBufferPool(2 * PAGES);
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId(), "");
+        scan.setPrefetchPages(prefetchPages);
+        long start = System.nanoTime();
+        SystemTestUtil.matchTuples(scan, tuples);
+        long elapsed = System.nanoTime() - start;
+        Database.getBufferPool().transactionComplete(tid);
+        return elapsed;
+    }
+
+    @Test
+    public void testPrefetchSpeedsUpScan() throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000, null, tuples);
+        HeapFile table = new SlowHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+
+        long off = timeScan(table, tuples, 0);
+        long on = timeScan(table, tuples, HeapFile.DEFAULT_PREFETCH_PAGES);
+        System.out.println(String.format("scan of %d pages: prefetch off %.1f ms, prefetch %d pages %.1f ms",
+                PAGES, off / 1e6, HeapFile.DEFAULT_PREFETCH_PAGES, on / 1e6));
+        assertTrue(on < off);
+    }
+
+    /**
+     * A run of adjacent pages asked for ahead of time is read with one
+     * readPages call, and a scan then finds all of its pages resident.
+     */
+    @Test
+    public void testRunIsReadWithOneCall() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(1, 992 * PAGES, 1000, null, tuples);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(1));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        Database.resetBufferPool(2 * PAGES);
+
+        Database.getBufferPool().prefetchPages(new HeapPageId(table.getId(), 0), PAGES);
+        // once the read has started it is waited for rather than cancelled
+        long deadline = System.currentTimeMillis() + 10000;
+        while (table.runReads.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, table.runReads.get());
+
+        TransactionId tid = new TransactionId();
+        SystemTestUtil.matchTuples(new SeqScan(tid, table.getId(), ""), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(0, table.pageReads.get());
+        assertEquals(1, table.runReads.get());
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(PrefetchTest.class);
+    }
+}
@@ -0,0 +1,136 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Joins random tables with SortMergeJoin for every predicate it supports,
+ * checks which join JoinOptimizer.instantiateJoin picks, and compares a
+ * selective range join with the nested-loops Join.
+ */
+public class SortMergeJoinTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 2;
+
+    private static boolean matches(Predicate.Op op, int v1, int v2) {
+        return new IntField(v1).compare(op, new IntField(v2));
+    }
+
+    private void validateJoin(Predicate.Op op, int table1Rows, int table1MaxValue,
+            int table2Rows, int table2MaxValue)
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> t1Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(
+                COLUMNS, table1Rows, table1MaxValue, null, t1Tuples);
+        ArrayList<ArrayList<Integer>> t2Tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(
+                COLUMNS, table2Rows, table2MaxValue, null, t2Tuples);
+
+        ArrayList<ArrayList<Integer>> expectedResults = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t1 : t1Tuples) {
+            for (ArrayList<Integer> t2 : t2Tuples) {
+                if (matches(op, t1.get(0), t2.get(0))) {
+                    ArrayList<Integer> out = new ArrayList<Integer>(t1);
+                    out.addAll(t2);
+                    expectedResults.add(out);
+                }
+            }
+        }
+
+        TransactionId tid = new TransactionId();
+        OpIterator ss1 = new OrderBy(0, true, new SeqScan(tid, table1.getId(), ""));
+        OpIterator ss2 = new OrderBy(0, true, new SeqScan(tid, table2.getId(), ""));
+        SortMergeJoin joinOp = new SortMergeJoin(new JoinPredicate(0, op, 0), ss1, ss2);
+        SystemTestUtil.matchTuples(joinOp, expectedResults);
+        joinOp.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test
+    public void testEqualsJoin() throws IOException, DbException, TransactionAbortedException {
+        validateJoin(Predicate.Op.EQUALS, 1000, 200, 800, 200);
+        // every key is a long run on both sides
+        validateJoin(Predicate.Op.EQUALS, 300, 3, 200, 3);
+    }
+
+    @Test
+    public void testRangeJoins() throws IOException, DbException, TransactionAbortedException {
+        validateJoin(Predicate.Op.LESS_THAN, 300, 100, 200, 100);
+        validateJoin(Predicate.Op.LESS_THAN_OR_EQ, 300, 100, 200, 100);
+        validateJoin(Predicate.Op.GREATER_THAN, 300, 100, 200, 100);
+        validateJoin(Predicate.Op.GREATER_THAN_OR_EQ, 300, 100, 200, 100);
+        // child2 ends before most of child1
+        validateJoin(Predicate.Op.LESS_THAN, 300, 1000, 200, 50);
+    }
+
+    @Test
+    public void testInstantiateJoin() throws Exception {
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(COLUMNS, 10, null, null, "c");
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(COLUMNS, 10, null, null, "c");
+        TransactionId tid = new TransactionId();
+        SeqScan ss1 = new SeqScan(tid, table1.getId(), "t1");
+        SeqScan ss2 = new SeqScan(tid, table2.getId(), "t2");
+
+        LogicalJoinNode lt = new LogicalJoinNode("t1", "t2", "c0", "c1", Predicate.Op.LESS_THAN);
+        OpIterator j = JoinOptimizer.instantiateJoin(lt, ss1, ss2);
+        assertTrue(j instanceof SortMergeJoin);
+        assertTrue(SortMergeJoin.isSortedOn(((Operator) j).getChildren()[0], 0));
+        assertTrue(SortMergeJoin.isSortedOn(((Operator) j).getChildren()[1], 1));
+
+        LogicalJoinNode eq = new LogicalJoinNode("t1", "t2", "c0", "c1", Predicate.Op.EQUALS);
+        assertTrue(JoinOptimizer.instantiateJoin(eq, ss1, ss2) instanceof HashEquiJoin);
+        assertTrue(JoinOptimizer.instantiateJoin(eq, new OrderBy(0, true, ss1),
+                new OrderBy(1, true, ss2)) instanceof SortMergeJoin);
+
+        LogicalJoinNode ne = new LogicalJoinNode("t1", "t2", "c0", "c1", Predicate.Op.NOT_EQUALS);
+        assertTrue(JoinOptimizer.instantiateJoin(ne, ss1, ss2) instanceof Join);
+    }
+
+    private static int run(OpIterator it) throws DbException, TransactionAbortedException {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    @Test
+    public void testSelectiveRangeJoinIsCheaper()
+            throws IOException, DbException, TransactionAbortedException {
+        // only the child1 tuples below 100 match one of child2
+        HeapFile table1 = SystemTestUtil.createRandomHeapFile(COLUMNS, 4000, 10000, null, null);
+        HeapFile table2 = SystemTestUtil.createRandomHeapFile(COLUMNS, 4000, 100, null, null);
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.LESS_THAN, 0);
+        TransactionId tid = new TransactionId();
+
+        long start = System.nanoTime();
+        int expected = run(new Join(p, new SeqScan(tid, table1.getId(), ""),
+                new SeqScan(tid, table2.getId(), "")));
+        long nestedLoops = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int actual = run(new SortMergeJoin(p,
+                new OrderBy(0, true, new SeqScan(tid, table1.getId(), "")),
+                new OrderBy(0, true, new SeqScan(tid, table2.getId(), ""))));
+        long sortMerge = System.nanoTime() - start;
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println(String.format("range join of 4000 x 4000 rows, %d results: "
+                + "%.1f ms nested loops, %.1f ms sort-merge", actual, nestedLoops / 1e6, sortMerge / 1e6));
+        assertEquals(expected, actual);
+        assertTrue(sortMerge < nestedLoops);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(SortMergeJoinTest.class);
+    }
+}
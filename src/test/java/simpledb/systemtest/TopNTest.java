@@ -0,0 +1,159 @@
+package simpledb.systemtest;
+
+import org.junit.Test;
+import simpledb.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that TopN returns the first tuples OrderBy would, that Limit stops
+ * reading its child, and that queries with LIMIT are planned with them.
+ */
+public class TopNTest extends SimpleDbTestBase {
+    private static final int ROWS = 10000;
+
+    /** A TupleIterator that counts the tuples read from it. */
+    private static class CountingIterator extends TupleIterator {
+        private static final long serialVersionUID = 1L;
+        int reads;
+
+        CountingIterator(TupleDesc td, ArrayList<Tuple> tuples) {
+            super(td, tuples);
+        }
+
+        @Override
+        public Tuple next() {
+            reads++;
+            return super.next();
+        }
+    }
+
+    /**
+     * @return the tuples of a random table whose second field numbers the rows,
+     *         so that the order of equal keys can be checked
+     */
+    private static ArrayList<Tuple> createTuples(int maxValue) {
+        Random random = new Random();
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(Utility.getTupleDesc(2));
+            t.setField(0, new IntField(random.nextInt(maxValue)));
+            t.setField(1, new IntField(i));
+            result.add(t);
+        }
+        return result;
+    }
+
+    private static ArrayList<ArrayList<Integer>> readAll(OpIterator it, int max)
+            throws DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        it.open();
+        while (tuples.size() < max && it.hasNext())
+            tuples.add(SystemTestUtil.tupleToList(it.next()));
+        it.close();
+        return tuples;
+    }
+
+    private static void validateTopN(int maxValue, boolean asc, int limit)
+            throws DbException, TransactionAbortedException {
+        ArrayList<Tuple> tuples = createTuples(maxValue);
+        ArrayList<ArrayList<Integer>> expected = readAll(
+                new OrderBy(0, asc, new TupleIterator(Utility.getTupleDesc(2), tuples)), limit);
+        TopN top = new TopN(0, asc, limit, new TupleIterator(Utility.getTupleDesc(2), tuples));
+        assertEquals(expected, readAll(top, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testTopN() throws DbException, TransactionAbortedException {
+        validateTopN(ROWS, true, 10);
+        validateTopN(ROWS, false, 100);
+        validateTopN(ROWS, true, 0);
+        validateTopN(ROWS, true, 2 * ROWS);
+    }
+
+    @Test
+    public void testTopNIsStable() throws DbException, TransactionAbortedException {
+        // the limit cuts through a key with many tuples
+        validateTopN(10, true, 1500);
+        validateTopN(10, false, 1500);
+    }
+
+    @Test
+    public void testLimitStopsReadingChild() throws DbException, TransactionAbortedException {
+        ArrayList<Tuple> tuples = createTuples(ROWS);
+        CountingIterator child = new CountingIterator(Utility.getTupleDesc(2), tuples);
+        ArrayList<Integer> fields = new ArrayList<Integer>();
+        fields.add(1);
+        Limit limit = new Limit(10, new Project(fields, new Type[] { Type.INT_TYPE }, child));
+        limit.open();
+        int n = 0;
+        while (limit.hasNext()) {
+            assertEquals(n, ((IntField) limit.next().getField(0)).getValue());
+            n++;
+        }
+        assertEquals(10, n);
+        assertEquals(10, child.reads);
+
+        limit.rewind();
+        assertTrue(limit.hasNext());
+        limit.close();
+    }
+
+    private static OpIterator plan(String query) throws Exception {
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new Parser().generateLogicalPlan(tid, query);
+        return lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    }
+
+    @Test
+    public void testLimitQueries() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, ROWS, null, tuples, "c");
+        Database.getCatalog().addTable(table, "topn");
+        TableStats.setTableStats("topn", new TableStats(table.getId(), 1));
+
+        OpIterator top = plan("SELECT t.c0 FROM topn t ORDER BY t.c0 DESC LIMIT 5;");
+        assertTrue(top instanceof Project);
+        assertTrue(((Project) top).getChildren()[0] instanceof TopN);
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        for (ArrayList<Integer> t : tuples)
+            values.add(t.get(0));
+        Collections.sort(values, Collections.reverseOrder());
+        ArrayList<ArrayList<Integer>> actual = readAll(top, Integer.MAX_VALUE);
+        assertEquals(5, actual.size());
+        for (int i = 0; i < 5; i++)
+            assertEquals(values.get(i), actual.get(i).get(0));
+
+        OpIterator limited = plan("select * from topn limit 7 ;");
+        assertTrue(limited instanceof Limit);
+        assertEquals(7, readAll(limited, Integer.MAX_VALUE).size());
+
+        OpIterator unlimited = plan("SELECT * FROM topn t WHERE t.c0 > 0;");
+        assertFalse(unlimited instanceof Limit);
+    }
+
+    @Test
+    public void testLimitOnlyInQueries() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, ROWS, null, tuples, "c");
+        Database.getCatalog().addTable(table, "topn");
+        TableStats.setTableStats("topn", new TableStats(table.getId(), 1));
+
+        // statements other than queries with a LIMIT are rejected rather
+        // than run without it
+        new Parser().processNextStatement("INSERT INTO topn VALUES (1, 2) LIMIT 1;");
+        new Parser().processNextStatement("DELETE FROM topn WHERE topn.c0 > 0 LIMIT 1;");
+        SystemTestUtil.matchTuples(table, tuples);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(TopNTest.class);
+    }
+}